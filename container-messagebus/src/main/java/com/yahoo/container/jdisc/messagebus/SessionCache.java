@@ -111,7 +111,8 @@ public final class SessionCache extends AbstractComponent {
                 .setSlobrokConfigId(slobrokConfigId)
                 .setIdentity(new Identity(identity))
                 .setOOSServerPattern("search/cluster.*/rtx/*/clustercontroller")
-                .setListenPort(mbusConfig.port());
+                .setListenPort(mbusConfig.port())
+                .setNumNetworkThreads(mbusConfig.numnetworkthreads());
         return SharedMessageBus.newInstance(mbusParams, netParams);
     }
 
@@ -0,0 +1,35 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the container-search benchmarks. This accepts the usual JMH command line options,
+ * but runs all the benchmarks in this package and writes the results as JSON to
+ * container-search-benchmarks.json by default, such that the output of runs can be compared.
+ *
+ * @author agent
+ */
+public class BenchmarkRunner {
+
+    public static final String defaultResultFile = "container-search-benchmarks.json";
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getIncludes().isEmpty())
+            options.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+        if ( ! commandLine.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if ( ! commandLine.getResult().hasValue())
+            options.result(defaultResultFile);
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,76 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.fs4.DocsumPacket;
+import com.yahoo.fs4.PacketDecoder;
+import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
+import com.yahoo.prelude.fastsearch.FastHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding docsum packets as received from content nodes into fast hits,
+ * both when all fields are accessed and when only a single field is.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class DocsumDecodingBenchmark {
+
+    private DocsumDefinitionSet docsumDefinitions;
+    private List<byte[]> packets;
+    private List<String> fields;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        docsumDefinitions = Fixtures.docsumDefinitionSet();
+        fields = Fixtures.docsumFields();
+        packets = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            packets.add(Fixtures.docsumPacket(i));
+    }
+
+    @Benchmark
+    public void decodeAllFields(Blackhole blackhole) {
+        FastHit hit = decodeNext();
+        for (String field : fields)
+            blackhole.consume(hit.getField(field));
+    }
+
+    @Benchmark
+    public Object decodeOneField() {
+        return decodeNext().getField("title");
+    }
+
+    private FastHit decodeNext() {
+        byte[] packetData = packets.get(next++);
+        if (next == packets.size())
+            next = 0;
+        DocsumPacket packet = (DocsumPacket)PacketDecoder.decode(ByteBuffer.wrap(packetData));
+        FastHit hit = new FastHit();
+        hit.setGlobalId(packet.getGlobalId());
+        docsumDefinitions.lazyDecode("default", packet.getData(), hit);
+        return hit;
+    }
+
+}
@@ -0,0 +1,80 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.document.BucketId;
+import com.yahoo.document.BucketIdFactory;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.GlobalId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks computing the global id and bucket id of document ids given as UTF-8 bytes, as received by feed
+ * endpoints, by parsing them into document ids and by computing them directly from the bytes.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class DocumentIdHashingBenchmark {
+
+    private byte[][] ids;
+    private BucketIdFactory bucketIdFactory;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        List<String> documentIds = Fixtures.documentIds(1000);
+        ids = new byte[documentIds.size()][];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = documentIds.get(i).getBytes(StandardCharsets.UTF_8);
+        bucketIdFactory = new BucketIdFactory();
+    }
+
+    @Benchmark
+    public GlobalId globalIdThroughDocumentId() {
+        byte[] id = nextId();
+        return new GlobalId(new DocumentId(new String(id, StandardCharsets.UTF_8)).getGlobalId());
+    }
+
+    @Benchmark
+    public GlobalId globalIdFromUtf8() {
+        byte[] id = nextId();
+        return GlobalId.fromUtf8(id, 0, id.length);
+    }
+
+    @Benchmark
+    public BucketId bucketIdThroughDocumentId() {
+        byte[] id = nextId();
+        return bucketIdFactory.getBucketId(new DocumentId(new String(id, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public BucketId bucketIdFromUtf8() {
+        byte[] id = nextId();
+        return bucketIdFactory.getBucketId(id, 0, id.length);
+    }
+
+    private byte[] nextId() {
+        if (next == ids.length)
+            next = 0;
+        return ids[next++];
+    }
+
+}
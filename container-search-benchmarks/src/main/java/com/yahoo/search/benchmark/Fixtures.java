@@ -0,0 +1,202 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.GlobalId;
+import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
+import com.yahoo.prelude.fastsearch.DocumentdbInfoConfig;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Hit;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates the data used by the benchmarks.
+ * All fixtures are generated from fixed seeds, such that every run benchmarks the same input.
+ *
+ * @author agent
+ */
+final class Fixtures {
+
+    private static final long seed = 1234567;
+
+    private static final List<String> words =
+            Collections.unmodifiableList(Arrays.asList("madonna", "music", "video", "the", "best", "of", "pop",
+                                                       "queen", "tour", "live", "album", "new", "york", "london",
+                                                       "concert", "tickets", "review", "2017", "c++", "dvd"));
+
+    private static final List<String> indexes =
+            Collections.unmodifiableList(Arrays.asList("title", "body", "artist", "default"));
+
+    private Fixtures() {}
+
+    /** Returns queries in the simple query language, mixing terms, indexes, phrases and operators */
+    static List<String> simpleQueries(int count) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder b = new StringBuilder();
+            int terms = 1 + random.nextInt(6);
+            for (int t = 0; t < terms; t++) {
+                if (t > 0)
+                    b.append(" ");
+                switch (random.nextInt(5)) {
+                    case 0: b.append(pick(indexes, random)).append(":").append(pick(words, random)); break;
+                    case 1: b.append("\"").append(pick(words, random)).append(" ").append(pick(words, random)).append("\""); break;
+                    case 2: b.append("-").append(pick(words, random)); break;
+                    case 3: b.append("+").append(pick(words, random)); break;
+                    default: b.append(pick(words, random));
+                }
+            }
+            queries.add(b.toString());
+        }
+        return queries;
+    }
+
+    /** Returns YQL queries with nested boolean conditions, phrases and ranges */
+    static List<String> yqlQueries(int count) {
+        Random random = new Random(seed);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder b = new StringBuilder("select * from sources * where ");
+            int conditions = 1 + random.nextInt(4);
+            for (int c = 0; c < conditions; c++) {
+                if (c > 0)
+                    b.append(random.nextBoolean() ? " and " : " or ");
+                switch (random.nextInt(3)) {
+                    case 0: b.append(pick(indexes, random)).append(" contains \"").append(pick(words, random)).append("\""); break;
+                    case 1: b.append(pick(indexes, random)).append(" contains phrase(\"").append(pick(words, random))
+                             .append("\", \"").append(pick(words, random)).append("\")"); break;
+                    default: b.append("year > ").append(1950 + random.nextInt(70));
+                }
+            }
+            b.append(" limit ").append(10 + random.nextInt(20)).append(";");
+            queries.add(b.toString());
+        }
+        return queries;
+    }
+
+    /** Returns a query with the given number of hits and a query tree of a few terms */
+    static Query query(int hits) {
+        return new Query("?query=madonna+%22the+best+of%22+-live+title:queen&hits=" + hits + "&ranking=default");
+    }
+
+    /** Returns the summary class definitions of the docsums created by {@link #docsumPacket} */
+    static DocsumDefinitionSet docsumDefinitionSet() {
+        DocumentdbInfoConfig.Documentdb.Summaryclass.Builder summaryClass =
+                new DocumentdbInfoConfig.Documentdb.Summaryclass.Builder().id(0).name("default");
+        addField("title", "string", summaryClass);
+        addField("body", "longstring", summaryClass);
+        addField("artist", "string", summaryClass);
+        addField("year", "integer", summaryClass);
+        addField("timestamp", "int64", summaryClass);
+        addField("price", "double", summaryClass);
+        addField("thumbnail", "data", summaryClass);
+        DocumentdbInfoConfig.Documentdb.Builder documentdb = new DocumentdbInfoConfig.Documentdb.Builder().name("test");
+        documentdb.summaryclass(summaryClass);
+        DocumentdbInfoConfig config = new DocumentdbInfoConfig(new DocumentdbInfoConfig.Builder().documentdb(documentdb));
+        return new DocsumDefinitionSet(config.documentdb(0));
+    }
+
+    private static void addField(String name, String type, DocumentdbInfoConfig.Documentdb.Summaryclass.Builder summaryClass) {
+        summaryClass.fields(new DocumentdbInfoConfig.Documentdb.Summaryclass.Fields.Builder().name(name).type(type));
+    }
+
+    /** Returns the names of the fields in the docsums created by {@link #docsumPacket} */
+    static List<String> docsumFields() {
+        return Arrays.asList("title", "body", "artist", "year", "timestamp", "price", "thumbnail");
+    }
+
+    /** Returns a docsum packet, as sent from a content node, containing a slime encoded docsum */
+    static byte[] docsumPacket(int documentNumber) {
+        Random random = new Random(seed + documentNumber);
+        Slime slime = new Slime();
+        Cursor docsum = slime.setObject();
+        docsum.setString("title", text(4, random));
+        docsum.setString("body", text(200, random));
+        docsum.setString("artist", text(2, random));
+        docsum.setLong("year", 1950 + random.nextInt(70));
+        docsum.setLong("timestamp", 1500000000000L + random.nextInt(1000000000));
+        docsum.setDouble("price", random.nextInt(10000) / 100.0);
+        byte[] thumbnail = new byte[256];
+        random.nextBytes(thumbnail);
+        docsum.setData("thumbnail", thumbnail);
+        byte[] docsumData = BinaryFormat.encode(slime);
+
+        GlobalId globalId = new GlobalId(new DocumentId("id:test:test::" + documentNumber).getGlobalId());
+        int length = 4 + 4 + 4 + GlobalId.LENGTH + 4 + docsumData.length;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(length - 4); // the streamed packet length excludes the length field
+        buffer.putInt(205); // docsum packet code
+        buffer.putInt(1); // channel
+        buffer.put(globalId.getRawId());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(DocsumDefinitionSet.SLIME_MAGIC_ID);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.put(docsumData);
+        return buffer.array();
+    }
+
+    /** Returns a result with the given number of hits, each having fields of a range of types */
+    static Result result(int hits) {
+        Random random = new Random(seed);
+        Result result = new Result(query(hits));
+        result.setTotalHitCount(hits * 1000);
+        for (int i = 0; i < hits; i++) {
+            Hit hit = new Hit("id:test:test::" + i, 1.0 / (i + 1));
+            hit.setSource("test");
+            hit.setField("title", text(4, random));
+            hit.setField("body", text(50, random));
+            hit.setField("artist", text(2, random));
+            hit.setField("year", 1950 + random.nextInt(70));
+            hit.setField("timestamp", 1500000000000L + random.nextInt(1000000000));
+            hit.setField("price", random.nextInt(10000) / 100.0);
+            hit.setField("tags", Arrays.asList(pick(words, random), pick(words, random), pick(words, random)));
+            result.hits().add(hit);
+        }
+        return result;
+    }
+
+    /** Returns document ids of the id, doc, userdoc and groupdoc schemes, as most commonly fed */
+    static List<String> documentIds(int count) {
+        Random random = new Random(seed);
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 8) {
+                case 0: ids.add("doc:music:http://music.example.com/" + pick(words, random) + "/" + i); break;
+                case 1: ids.add("userdoc:music:" + random.nextInt(100000) + ":" + i); break;
+                case 2: ids.add("groupdoc:music:" + pick(words, random) + ":" + i); break;
+                case 3: ids.add("id:music:music:g=" + pick(words, random) + ":" + i); break;
+                case 4: ids.add("id:music:music:n=" + random.nextInt(100000) + ":" + i); break;
+                default: ids.add("id:music:music::" + pick(words, random) + "-" + pick(words, random) + "-" + i);
+            }
+        }
+        return ids;
+    }
+
+    /** Returns a number of words separated by spaces */
+    static String text(int wordCount, Random random) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0)
+                b.append(" ");
+            b.append(pick(words, random));
+        }
+        return b.toString();
+    }
+
+    private static String pick(List<String> list, Random random) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+}
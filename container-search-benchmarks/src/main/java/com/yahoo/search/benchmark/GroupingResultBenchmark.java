@@ -0,0 +1,99 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.component.chain.Chain;
+import com.yahoo.prelude.fastsearch.GroupingListHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.grouping.GroupingRequest;
+import com.yahoo.search.grouping.request.GroupingOperation;
+import com.yahoo.search.grouping.result.RootGroup;
+import com.yahoo.search.grouping.vespa.GroupingExecutor;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.searchlib.aggregation.CountAggregationResult;
+import com.yahoo.searchlib.aggregation.Group;
+import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.searchlib.expression.StringResultNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building the grouping result of a query from the groupings returned by the content nodes.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class GroupingResultBenchmark {
+
+    @Param({"10", "1000"})
+    public int groups;
+
+    private Grouping grouping;
+    private GroupingExecutor executor;
+    private Execution.Context context;
+
+    @Setup
+    public void setup() {
+        Group root = new Group();
+        for (int i = 0; i < groups; i++) {
+            root.addChild(new Group().setId(new StringResultNode("group" + i))
+                                     .setRank(groups - i)
+                                     .addAggregationResult(new CountAggregationResult(groups - i)));
+        }
+        grouping = new Grouping(0);
+        grouping.setRoot(root);
+        executor = new GroupingExecutor(new ComponentId("grouping"));
+        context = Execution.Context.createContextStub();
+    }
+
+    @Benchmark
+    public RootGroup build() {
+        Query query = Fixtures.query(10);
+        GroupingRequest request = GroupingRequest.newInstance(query);
+        request.setRootOperation(GroupingOperation.fromString("all(group(artist) each(output(count())))"));
+        Chain<Searcher> chain = new Chain<>(executor, new GroupingProvider(grouping));
+        Result result = new Execution(chain, context).search(query);
+        return request.getResultGroup(result);
+    }
+
+    /** Returns the same grouping in each pass, at the levels requested in that pass, as a content node would */
+    private static class GroupingProvider extends Searcher {
+
+        private final Grouping grouping;
+
+        GroupingProvider(Grouping grouping) {
+            this.grouping = grouping;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            Grouping requested = GroupingExecutor.getGroupingList(query).get(0);
+            grouping.setFirstLevel(requested.getFirstLevel());
+            grouping.setLastLevel(requested.getLastLevel());
+            Result result = execution.search(query);
+            result.hits().add(new GroupingListHit(Collections.singletonList(grouping), null));
+            return result;
+        }
+
+    }
+
+}
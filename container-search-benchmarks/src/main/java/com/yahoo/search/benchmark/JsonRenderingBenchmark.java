@@ -0,0 +1,68 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.yahoo.search.Result;
+import com.yahoo.search.rendering.JsonRenderer;
+import com.yahoo.search.searchchain.Execution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering results as JSON. Rendering happens in the calling thread.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class JsonRenderingBenchmark {
+
+    @Param({"10", "100"})
+    public int hits;
+
+    private JsonRenderer prototype;
+    private Result result;
+    private Execution execution;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setup() {
+        prototype = new JsonRenderer(MoreExecutors.directExecutor());
+        result = Fixtures.result(hits);
+        execution = new Execution(Execution.Context.createContextStub());
+        output = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        prototype.deconstruct();
+    }
+
+    @Benchmark
+    public int render() throws InterruptedException, ExecutionException {
+        output.reset();
+        JsonRenderer renderer = (JsonRenderer)prototype.clone(); // as done for each request in the container
+        renderer.init();
+        renderer.render(output, result, execution, null).get();
+        return output.size();
+    }
+
+}
@@ -0,0 +1,64 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.fs4.BufferTooSmallException;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding queries into the query packets sent to content nodes.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class QueryPacketEncodingBenchmark {
+
+    private Query query;
+    private Query queryWithProperties;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        query = Fixtures.query(10);
+        queryWithProperties = Fixtures.query(10);
+        queryWithProperties.getRanking().getFeatures().put("query(weight)", "0.5");
+        queryWithProperties.getRanking().getProperties().put("vespa.hitcollector.heapsize", "200");
+        queryWithProperties.getRanking().setSorting("-year +title");
+        buffer = ByteBuffer.allocate(64 * 1024);
+    }
+
+    @Benchmark
+    public int encode() throws BufferTooSmallException {
+        return encode(query);
+    }
+
+    @Benchmark
+    public int encodeWithPropertiesAndSorting() throws BufferTooSmallException {
+        return encode(queryWithProperties);
+    }
+
+    private int encode(Query query) throws BufferTooSmallException {
+        buffer.clear();
+        QueryPacket.create(query).encode(buffer, 1);
+        return buffer.position();
+    }
+
+}
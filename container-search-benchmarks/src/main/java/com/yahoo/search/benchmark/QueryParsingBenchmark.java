@@ -0,0 +1,75 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.search.Query;
+import com.yahoo.search.query.QueryTree;
+import com.yahoo.search.query.parser.Parsable;
+import com.yahoo.search.query.parser.Parser;
+import com.yahoo.search.query.parser.ParserEnvironment;
+import com.yahoo.search.query.parser.ParserFactory;
+import com.yahoo.search.yql.YqlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing of queries in the simple query language and in YQL.
+ * Each invocation parses the next query of a fixed list, to avoid benchmarking a single query shape.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class QueryParsingBenchmark {
+
+    private List<String> simpleQueries;
+    private List<String> yqlQueries;
+    private ParserEnvironment environment;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        simpleQueries = Fixtures.simpleQueries(1000);
+        yqlQueries = Fixtures.yqlQueries(1000);
+        environment = new ParserEnvironment().setLinguistics(new SimpleLinguistics());
+    }
+
+    @Benchmark
+    public QueryTree parseAll() {
+        Parser parser = ParserFactory.newInstance(Query.Type.ALL, environment);
+        return parser.parse(new Parsable().setQuery(nextQuery(simpleQueries)));
+    }
+
+    @Benchmark
+    public QueryTree parseAny() {
+        Parser parser = ParserFactory.newInstance(Query.Type.ANY, environment);
+        return parser.parse(new Parsable().setQuery(nextQuery(simpleQueries)));
+    }
+
+    @Benchmark
+    public QueryTree parseYql() {
+        return new YqlParser(environment).parse(new Parsable().setQuery(nextQuery(yqlQueries)));
+    }
+
+    private String nextQuery(List<String> queries) {
+        if (next == queries.size())
+            next = 0;
+        return queries.get(next++);
+    }
+
+}
@@ -0,0 +1,106 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.benchmark;
+
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.query.profile.QueryProfile;
+import com.yahoo.search.query.profile.QueryProfileRegistry;
+import com.yahoo.search.query.profile.compiled.CompiledQueryProfile;
+import com.yahoo.search.query.profile.compiled.CompiledQueryProfileRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks compilation of a query profile with variants, and lookup of values in the compiled profile.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class QueryProfileBenchmark {
+
+    private static final int variantValues = 10;
+    private static final int properties = 50;
+
+    private QueryProfileRegistry registry;
+    private CompiledQueryProfile compiledProfile;
+    private List<CompoundName> names;
+    private List<Map<String, String>> contexts;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        registry = createRegistry();
+        compiledProfile = registry.compile().findQueryProfile("default");
+
+        Random random = new Random(1234567);
+        names = new ArrayList<>();
+        contexts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add(new CompoundName("a.b.property" + random.nextInt(properties)));
+            Map<String, String> context = new HashMap<>();
+            context.put("x", "x" + random.nextInt(variantValues));
+            context.put("y", "y" + random.nextInt(variantValues));
+            contexts.add(context);
+        }
+    }
+
+    /** Creates a profile varying by two dimensions, with values set for many combinations of them */
+    private QueryProfileRegistry createRegistry() {
+        QueryProfileRegistry registry = new QueryProfileRegistry();
+        QueryProfile profile = new QueryProfile("default");
+        profile.setDimensions(new String[] {"x", "y"});
+        for (int p = 0; p < properties; p++) {
+            String name = "a.b.property" + p;
+            profile.set(name, "default", registry);
+            for (int x = 0; x < variantValues; x++) {
+                profile.set(name, "x" + x, new String[] {"x" + x}, registry);
+                if (p % 2 == 0)
+                    profile.set(name, "x" + x + "y" + x, new String[] {"x" + x, "y" + x}, registry);
+            }
+        }
+        registry.register(profile);
+        registry.freeze();
+        return registry;
+    }
+
+    @Benchmark
+    public CompiledQueryProfileRegistry compile() {
+        return registry.compile();
+    }
+
+    @Benchmark
+    public Object lookup() {
+        int i = next++;
+        if (next == names.size())
+            next = 0;
+        return compiledProfile.get(names.get(i), contexts.get(i), null);
+    }
+
+    @Benchmark
+    public Map<String, Object> listProperties() {
+        int i = next++;
+        if (next == names.size())
+            next = 0;
+        return compiledProfile.listValues(CompoundName.empty, contexts.get(i), null);
+    }
+
+}
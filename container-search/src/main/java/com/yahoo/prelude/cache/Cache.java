@@ -72,11 +72,26 @@ public class Cache<K, V> {
             cacheValue=new AgingCacheValue<>(valueSizeBytes,value, cacheKey);
         }
         currentSizeBytes+=(valueSizeBytes+keySizeBytes);
+        CacheValue<K, V> replaced = content.put(cacheKey, cacheValue);
+        if (replaced != null) {
+            currentSizeBytes-=replaced.sizeBytes();
+            currentSizeBytes-=replaced.getKey().sizeBytes();
+        }
         elems.put(content.size());
-        content.put(cacheKey, cacheValue);
         return true;
     }
 
+    /** Removes the given value if it is still the value of the given key */
+    private synchronized void synchRemove(CacheKey<K> k, CacheValue<K, V> value) {
+        if (content.get(k) != value) {
+            return;
+        }
+        content.remove(k);
+        currentSizeBytes-=value.sizeBytes();
+        currentSizeBytes-=value.getKey().sizeBytes();
+        elems.put(content.size());
+    }
+
     /**
      * Attempts to add a value to the cache
      *
@@ -102,6 +117,23 @@ public class Cache<K, V> {
         return synchPut(key, value, keySizeBytes, valueSizeBytes);
     }
 
+    /**
+     * Attempts to add a value to the cache, using the given estimate of the size of the key and value
+     * instead of calculating it
+     *
+     * @param key the key of the value
+     * @param value the value to add
+     * @param sizeBytes the estimated number of bytes used by the key and value
+     * @return true if the value was added, false if it could not be added
+     */
+    public boolean put(K key, V value, long sizeBytes) {
+        if (tooBigToCache(sizeBytes)) {
+            return false;
+        }
+        entrySizes.put(sizeBytes);
+        return synchPut(key, value, 0, sizeBytes);
+    }
+
     /**
      * Don't cache elems that are too big, even if there's space
      */
@@ -155,7 +187,7 @@ public class Cache<K, V> {
 
         if (value.expired(timeToLiveMillis)) {
             //  There was a value, which has now expired
-            remove(key);
+            synchRemove(cacheKey, value);
             return null;
         } else {
             return value.value();
@@ -168,7 +200,7 @@ public class Cache<K, V> {
      * @return true if the value was removed, false if it was not present
      */
     public synchronized boolean remove(K key) {
-        CacheValue<K, V> value=content.remove(key);
+        CacheValue<K, V> value=content.remove(new CacheKey<>(-1, key));
         if (value==null) {
             return false;
         }
@@ -178,10 +210,22 @@ public class Cache<K, V> {
         return true;
     }
 
-    public int size() {
+    /** Removes all the values in this cache */
+    public synchronized void clear() {
+        content.clear();
+        currentSizeBytes=0;
+        elems.put(0);
+    }
+
+    public synchronized int size() {
         return content.size();
     }
 
+    /** Returns the estimated number of bytes currently used by the keys and values of this cache */
+    public synchronized long sizeBytes() {
+        return currentSizeBytes;
+    }
+
     private static class CacheKey<K> {
         private long sizeBytes;
         private K key;
@@ -45,6 +45,7 @@ import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -105,7 +106,7 @@ public class ClusterSearcher extends Searcher {
                            FS4ResourcePool fs4ResourcePool,
                            VipStatus vipStatus) {
         super(id);
-        this.hasher = new Hasher();
+        this.hasher = new Hasher(Hasher.Strategy.valueOf(clusterConfig.nodeSelection().name()));
         this.fs4ResourcePool = fs4ResourcePool;
 
         Dispatcher dispatcher = new Dispatcher(dispatchConfig, fs4ResourcePool, clusterInfoConfig.nodeCount(), vipStatus);
@@ -129,7 +130,10 @@ public class ClusterSearcher extends Searcher {
         maxQueryCacheTimeout = ParameterParser.asMilliSeconds(clusterConfig.maxQueryCacheTimeout(),
                                                               DEFAULT_MAX_QUERY_CACHE_TIMEOUT);
 
-        CacheParams cacheParams = new CacheParams(createCache(clusterConfig, clusterModelName));
+        CacheControl cacheControl = createCache(clusterConfig, clusterModelName);
+        CacheParams cacheParams = new CacheParams(cacheControl);
+        if (cacheControl.isActive())
+            registerCacheStatistics(cacheControl, clusterModelName, manager);
         SummaryParameters docSumParams = new SummaryParameters(qrsConfig
                 .com().yahoo().prelude().fastsearch().FastSearcher().docsum()
                 .defaultclass());
@@ -274,6 +278,19 @@ public class ClusterSearcher extends Searcher {
         return new CacheControl(config.cacheSize(), config.cacheTimeout());
     }
 
+    /** Publishes the current state of the given packet cache each statistics logging cycle */
+    private static void registerCacheStatistics(CacheControl cacheControl, String clusterModelName, Statistics manager) {
+        registerCacheValue(clusterModelName + ".packetcache_hits", cacheControl::hits, manager);
+        registerCacheValue(clusterModelName + ".packetcache_misses", cacheControl::misses, manager);
+        registerCacheValue(clusterModelName + ".packetcache_evictions", cacheControl::evictions, manager);
+        registerCacheValue(clusterModelName + ".packetcache_bytes", cacheControl::bytesUsed, manager);
+    }
+
+    private static void registerCacheValue(String name, LongSupplier source, Statistics manager) {
+        new Value(name, manager, new Value.Parameters().setNameExtension(false).setLogRaw(true)
+                                                       .setCallback((handle, firstTime) -> ((Value)handle).put(source.getAsLong())));
+    }
+
     public String getClusterModelName() {
         return clusterModelName;
     }
@@ -354,14 +371,22 @@ public class ClusterSearcher extends Searcher {
     public void fill(com.yahoo.search.Result result, String summaryClass, Execution execution) {
         Query query = result.getQuery();
         int tries = 0;
+        List<VespaBackEndSearcher> tried = new ArrayList<>(1);
 
         do {
             // The loop is in case there are other searchers available
             // able to produce results
-            VespaBackEndSearcher searcher = hasher.select(tries++);
+            VespaBackEndSearcher searcher = hasher.select(tries++, tried);
             if (searcher != null) {
+                tried.add(searcher);
                 if (query.getTimeLeft() > 0) {
-                    doFill(searcher, result, summaryClass, execution);
+                    long start = System.nanoTime();
+                    hasher.started(searcher);
+                    try {
+                        doFill(searcher, result, summaryClass, execution);
+                    } finally {
+                        hasher.finished(searcher, System.nanoTime() - start);
+                    }
                 } else {
                     if (result.hits().getErrorHit() == null) {
                         result.hits().setError(ErrorMessage.createTimeout("No time left to get summaries"));
@@ -371,6 +396,7 @@ public class ClusterSearcher extends Searcher {
                 if (result.hits().getErrorHit() == null) {
                     result.hits().setError(ErrorMessage.createNoBackendsInService("Could not fill result"));
                 }
+                return;
             }
             // no error: good result, let's return
             if (result.hits().getError() == null) return;
@@ -397,22 +423,31 @@ public class ClusterSearcher extends Searcher {
 
     @Override
     public Result search(Query query, Execution execution) {
-        Result result;
+        Result result = null;
         int tries = 0;
+        List<VespaBackEndSearcher> tried = new ArrayList<>(1);
 
         do {
             // The loop is in case there are other searchers available able to produce results
             validateQueryTimeout(query);
             validateQueryCache(query);
-            VespaBackEndSearcher searcher = hasher.select(tries++);
+            VespaBackEndSearcher searcher = hasher.select(tries++, tried);
             if (searcher == null) {
+                if (result != null) return result; // all nodes are tried
                 return new Result(query, ErrorMessage.createNoBackendsInService("Could not search"));
             }
             if (query.getTimeLeft() <= 0) {
                 return new Result(query, ErrorMessage.createTimeout("No time left for searching"));
             }
 
-            result = doSearch(searcher, query, execution);
+            tried.add(searcher);
+            long start = System.nanoTime();
+            hasher.started(searcher);
+            try {
+                result = doSearch(searcher, query, execution);
+            } finally {
+                hasher.finished(searcher, System.nanoTime() - start);
+            }
 
             // no error: good result, let's return
             if (result.hits().getError() == null) {
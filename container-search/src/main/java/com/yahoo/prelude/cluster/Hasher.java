@@ -1,8 +1,12 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.cluster;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import com.yahoo.container.handler.VipStatus;
@@ -11,6 +15,11 @@ import com.yahoo.prelude.fastsearch.VespaBackEndSearcher;
 
 /**
  * Failover between multiple Vespa backends.
+ * <p>
+ * Local nodes are preferred to remote ones, and nodes already tried for a request are skipped.
+ * Among the remaining nodes, one is selected by the {@link Strategy} of this, using the number
+ * of requests in flight to each node and a moving average of its latency, as reported through
+ * {@link #started} and {@link #finished}.
  *
  * @author bratseth
  * @author Prashanth B. Bhat
@@ -18,31 +27,60 @@ import com.yahoo.prelude.fastsearch.VespaBackEndSearcher;
  */
 public class Hasher {
 
+    /** The strategies for selecting a node among the candidates */
+    public enum Strategy {
+
+        /** Select each node in turn */
+        ROUND_ROBIN,
+
+        /** Select the node with the fewest requests in flight, round robin between equally loaded nodes */
+        LEAST_OUTSTANDING,
+
+        /** Select the least loaded of two random nodes, where load is latency times requests in flight */
+        POWER_OF_TWO_CHOICES
+
+    }
+
+    /** The weight given to the latest latency sample in the moving average */
+    private static final double latencyDecay = 0.1;
+
     boolean running = false;
 
     private static final Logger log = Logger.getLogger(Hasher.class.getName());
     private static final Random tldSeeder = new Random();
 
-    private volatile VespaBackEndSearcher[] allNodes = new VespaBackEndSearcher[0];
-    private volatile VespaBackEndSearcher[] localNodes = new VespaBackEndSearcher[0];
+    private final Strategy strategy;
+
+    private volatile Node[] allNodes = new Node[0];
+    private volatile Node[] localNodes = new Node[0];
 
     private AtomicInteger avoidAllQrsHitSameTld = new AtomicInteger(tldSeed());
 
     /**
-     * Creates a hasher independent of the {@linkplain VipStatus programmatic VIP API}.
+     * Creates a round robin hasher independent of the {@linkplain VipStatus programmatic VIP API}.
      */
     public Hasher() {
+        this(Strategy.ROUND_ROBIN);
+    }
+
+    /**
+     * Creates a hasher independent of the {@linkplain VipStatus programmatic VIP API}.
+     *
+     * @param strategy the strategy used to select among the candidate nodes
+     */
+    public Hasher(Strategy strategy) {
+        this.strategy = strategy;
     }
 
     private static synchronized int tldSeed() {
         return tldSeeder.nextInt();
     }
 
-    static private VespaBackEndSearcher[] addNode(VespaBackEndSearcher node, VespaBackEndSearcher[] oldNodes) {
-        for (VespaBackEndSearcher n : oldNodes) {
-            if (n == node) return oldNodes; // already present
+    static private Node[] addNode(Node node, Node[] oldNodes) {
+        for (Node n : oldNodes) {
+            if (n.searcher == node.searcher) return oldNodes; // already present
         }
-        VespaBackEndSearcher[] newNodes = new VespaBackEndSearcher[oldNodes.length + 1];
+        Node[] newNodes = new Node[oldNodes.length + 1];
         System.arraycopy(oldNodes, 0, newNodes, 0, oldNodes.length);
         newNodes[oldNodes.length] = node;
         return newNodes;
@@ -50,30 +88,31 @@ public class Hasher {
 
     /**
      * Make a node available for search.
-     * @param node the backend searcher (must never be null)
+     * @param searcher the backend searcher (must never be null)
      */
-    public void add(VespaBackEndSearcher node) {
+    public void add(VespaBackEndSearcher searcher) {
+        Node node = new Node(searcher);
         allNodes = addNode(node, allNodes);
 
-        if (node.isLocalDispatching()) {
+        if (searcher.isLocalDispatching()) {
             localNodes = addNode(node, localNodes);
         }
     }
 
-    private VespaBackEndSearcher[] removeNode(VespaBackEndSearcher node, VespaBackEndSearcher[] oldNodes) {
+    private Node[] removeNode(VespaBackEndSearcher node, Node[] oldNodes) {
         int newLen = oldNodes.length;
-        for (VespaBackEndSearcher n : oldNodes) {
-            if (n == node) {
+        for (Node n : oldNodes) {
+            if (n.searcher == node) {
                 --newLen;
             }
         }
         if (newLen == oldNodes.length) {
             return oldNodes;
         }
-        VespaBackEndSearcher[] newNodes = new VespaBackEndSearcher[newLen];
+        Node[] newNodes = new Node[newLen];
         int idx = 0;
-        for (VespaBackEndSearcher n : oldNodes) {
-            if (n != node) {
+        for (Node n : oldNodes) {
+            if (n.searcher != node) {
                 newNodes[idx++] = n;
             }
         }
@@ -85,7 +124,7 @@ public class Hasher {
     public void remove(VespaBackEndSearcher node) {
         if (allNodes.length == 0) return;
 
-        VespaBackEndSearcher[] newNodes = removeNode(node, allNodes);
+        Node[] newNodes = removeNode(node, allNodes);
         if (newNodes != allNodes) {
             if (running && newNodes.length == 0) {
                 log.log(LogLevel.WARNING, "No longer any nodes for this cluster when"
@@ -109,26 +148,162 @@ public class Hasher {
         return allNodes.length;
     }
 
+    public Strategy getStrategy() { return strategy; }
+
     /**
-     * Return a node, prefer local nodes, try to skip already hit nodes.
+     * Return a node, prefer local nodes.
      *
-     * @param trynum hint for skipping (ignored in current implementation)
+     * @param trynum the number of nodes already tried for this request (ignored, use {@link #select(int, Collection)}
+     *               to skip the nodes already tried)
      * @return the selected node, or null if this hasher has no nodes
      */
     public VespaBackEndSearcher select(int trynum) {
-        VespaBackEndSearcher[] nodes = allNodes;
+        return select(trynum, Collections.emptyList());
+    }
 
-        if (localNodes.length > 0) {
-            nodes = localNodes;
+    /**
+     * Return a node, prefer local nodes, skip already tried nodes.
+     *
+     * @param trynum the number of nodes already tried for this request
+     * @param tried the nodes already tried for this request, which will not be returned
+     * @return the selected node, or null if this hasher has no nodes which are not already tried
+     */
+    public VespaBackEndSearcher select(int trynum, Collection<VespaBackEndSearcher> tried) {
+        Node[] nodes = untried(localNodes, tried);
+        if (nodes.length == 0) {
+            nodes = untried(allNodes, tried);
         }
         if (nodes.length == 0) {
             return null;
         }
+        if (nodes.length == 1) {
+            return nodes[0].searcher;
+        }
+        switch (strategy) {
+            case LEAST_OUTSTANDING: return selectLeastOutstanding(nodes).searcher;
+            case POWER_OF_TWO_CHOICES: return selectBestOfTwo(nodes).searcher;
+            default: return nodes[nextIndex(nodes.length)].searcher;
+        }
+    }
+
+    /** Returns the given nodes except those tried, or the given array itself if none are tried */
+    private Node[] untried(Node[] nodes, Collection<VespaBackEndSearcher> tried) {
+        if (tried.isEmpty()) return nodes;
+
+        int count = 0;
+        for (Node node : nodes) {
+            if ( ! tried.contains(node.searcher)) count++;
+        }
+        if (count == nodes.length) return nodes;
+
+        Node[] untried = new Node[count];
         int idx = 0;
-        if (nodes.length > 1) {
-            idx = Math.abs(avoidAllQrsHitSameTld.incrementAndGet() % nodes.length);
+        for (Node node : nodes) {
+            if ( ! tried.contains(node.searcher)) untried[idx++] = node;
+        }
+        return untried;
+    }
+
+    private int nextIndex(int nodeCount) {
+        return Math.abs(avoidAllQrsHitSameTld.incrementAndGet() % nodeCount);
+    }
+
+    private Node selectLeastOutstanding(Node[] nodes) {
+        int start = nextIndex(nodes.length);
+        Node best = nodes[start];
+        for (int i = 1; i < nodes.length; i++) {
+            Node candidate = nodes[(start + i) % nodes.length];
+            if (candidate.outstanding() < best.outstanding())
+                best = candidate;
         }
-        return nodes[idx];
+        return best;
+    }
+
+    private Node selectBestOfTwo(Node[] nodes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(nodes.length);
+        int second = random.nextInt(nodes.length - 1);
+        if (second >= first) second++;
+        return nodes[first].cost() <= nodes[second].cost() ? nodes[first] : nodes[second];
+    }
+
+    /** Must be called when a request is sent to a node returned by this */
+    public void started(VespaBackEndSearcher searcher) {
+        Node node = nodeOf(searcher);
+        if (node != null)
+            node.started();
+    }
+
+    /**
+     * Must be called when a request to a node returned by this has completed, whether successfully or not
+     *
+     * @param searcher the node the request was sent to
+     * @param latencyNanos the time from the request was sent until it completed, in nanoseconds
+     */
+    public void finished(VespaBackEndSearcher searcher, long latencyNanos) {
+        Node node = nodeOf(searcher);
+        if (node != null)
+            node.finished(latencyNanos);
+    }
+
+    /** Returns the number of requests currently in flight to the given node, or 0 if it is not in this */
+    public int outstanding(VespaBackEndSearcher searcher) {
+        Node node = nodeOf(searcher);
+        return node == null ? 0 : node.outstanding();
+    }
+
+    /** Returns the moving average latency of the given node in nanoseconds, or 0 if unknown */
+    public double averageLatency(VespaBackEndSearcher searcher) {
+        Node node = nodeOf(searcher);
+        return node == null ? 0 : node.averageLatency();
+    }
+
+    /** Returns the node of the given searcher. Node arrays are small, so linear search is faster than hashing. */
+    private Node nodeOf(VespaBackEndSearcher searcher) {
+        for (Node node : allNodes) {
+            if (node.searcher == searcher) return node;
+        }
+        return null;
+    }
+
+    /** A backend searcher and its recent load. */
+    private static final class Node {
+
+        private final VespaBackEndSearcher searcher;
+
+        private final AtomicInteger outstanding = new AtomicInteger(0);
+
+        /** The exponentially decaying average latency in nanoseconds, as double bits. 0 until the first sample. */
+        private final AtomicLong averageLatency = new AtomicLong(Double.doubleToLongBits(0));
+
+        Node(VespaBackEndSearcher searcher) {
+            this.searcher = searcher;
+        }
+
+        void started() {
+            outstanding.incrementAndGet();
+        }
+
+        void finished(long latencyNanos) {
+            outstanding.decrementAndGet();
+            while (true) {
+                long currentBits = averageLatency.get();
+                double current = Double.longBitsToDouble(currentBits);
+                double updated = current == 0 ? latencyNanos : current + latencyDecay * (latencyNanos - current);
+                if (averageLatency.compareAndSet(currentBits, Double.doubleToLongBits(updated))) return;
+            }
+        }
+
+        int outstanding() { return Math.max(0, outstanding.get()); }
+
+        double averageLatency() { return Double.longBitsToDouble(averageLatency.get()); }
+
+        /** Returns the expected cost of sending one more request to this node */
+        double cost() {
+            double latency = averageLatency();
+            return (outstanding() + 1) * (latency == 0 ? 1 : latency);
+        }
+
     }
 
 }
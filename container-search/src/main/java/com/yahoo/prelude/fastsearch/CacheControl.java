@@ -21,13 +21,13 @@ public class CacheControl {
     /** Whether this CacheControl actually should cache hits at all. */
     private final boolean activeCache;
 
-    /** Direct unsychronized cache access */
-    private final PacketCache packetCache;
+    /** The cache, which is thread safe, such that no synchronization is needed here */
+    private final ConcurrentPacketCache packetCache;
 
     public CacheControl(int sizeMegaBytes, double cacheTimeOutSeconds) {
         activeCache = sizeMegaBytes > 0 && cacheTimeOutSeconds > 0.0d;
         if (activeCache) {
-            packetCache = new PacketCache(sizeMegaBytes, 0, cacheTimeOutSeconds);
+            packetCache = new ConcurrentPacketCache(sizeMegaBytes, 0, cacheTimeOutSeconds);
         } else {
             packetCache = null;
         }
@@ -38,16 +38,28 @@ public class CacheControl {
         return packetCache.getCapacity();
     }
 
+    /** Returns whether this actually caches anything */
+    public final boolean isActive() { return activeCache; }
+
+    /** Returns the number of cache lookups which returned a value, or 0 if the cache is not active */
+    public final long hits() { return activeCache ? packetCache.hits() : 0; }
+
+    /** Returns the number of cache lookups which did not return a value, or 0 if the cache is not active */
+    public final long misses() { return activeCache ? packetCache.misses() : 0; }
+
+    /** Returns the number of entries evicted to make room for others, or 0 if the cache is not active */
+    public final long evictions() { return activeCache ? packetCache.evictions() : 0; }
+
+    /** Returns the number of bytes of packets currently cached, or 0 if the cache is not active */
+    public final long bytesUsed() { return activeCache ? packetCache.totalPacketSize() : 0; }
+
     public final boolean useCache(Query query) {
         return (activeCache && !query.getNoCache());
     }
 
     public final PacketWrapper lookup(CacheKey key, Query query) {
         if ((key != null) && useCache(query)) {
-            long now = System.currentTimeMillis();
-            synchronized (packetCache) {
-                return packetCache.get(key, now);
-            }
+            return packetCache.get(key, System.currentTimeMillis());
         }
         return null;
     }
@@ -65,9 +77,7 @@ public class CacheControl {
         oldTimestamp = wrapper.getTimestamp();
         wrapper = (PacketWrapper) wrapper.clone();
         wrapper.addResultPacket(resultPacket);
-        synchronized (packetCache) {
-            packetCache.put(key, wrapper, oldTimestamp);
-        }
+        packetCache.put(key, wrapper, oldTimestamp);
     }
 
     // updates phases after first phase phase in multi phase search
@@ -79,9 +89,7 @@ public class CacheControl {
 
         wrapper = (PacketWrapper) wrapper.clone();
         wrapper.addDocsums(packetKeys, packets);
-        synchronized (packetCache) {
-            packetCache.put(key, wrapper, wrapper.getTimestamp());
-        }
+        packetCache.put(key, wrapper, wrapper.getTimestamp());
     }
 
     void cache(CacheKey key, Query query, DocsumPacketKey[] packetKeys, Packet[] packets) {
@@ -93,17 +101,12 @@ public class CacheControl {
         PacketWrapper wrapper = lookup(key, query);
         if (wrapper == null) {
             wrapper = new PacketWrapper(key, packetKeys,packets);
-            long now = System.currentTimeMillis();
-            synchronized (packetCache) {
-                packetCache.put(key, wrapper, now);
-            }
+            packetCache.put(key, wrapper, System.currentTimeMillis());
         } else {
             wrapper = (PacketWrapper) wrapper.clone();
             wrapper.addResultPacket((QueryResultPacket) packets[0]);
             wrapper.addDocsums(packetKeys, packets, 1);
-            synchronized (packetCache) {
-                packetCache.put(key, wrapper, wrapper.getTimestamp());
-            }
+            packetCache.put(key, wrapper, wrapper.getTimestamp());
         }
     }
 
@@ -0,0 +1,350 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch;
+
+import com.yahoo.log.LogLevel;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A packet cache which may be accessed concurrently by many threads.
+ * The keys are spread over a number of segments, each of which is an LRU cache with its own lock
+ * and an equal share of the total byte capacity, such that threads accessing different segments never contend.
+ * <p>
+ * When a new entry would cause older entries to be evicted it is only admitted if it has been requested
+ * at least as frequently as the entry it would replace (TinyLFU admission). Frequencies are estimated
+ * by a lock free count-min sketch which is aged by halving all counters periodically.
+ * <p>
+ * Entries larger than the max item percentage of the total capacity are not cached,
+ * and entries older than the max age are removed when they are looked up.
+ *
+ * @author agent
+ */
+public class ConcurrentPacketCache {
+
+    private static final Logger log = Logger.getLogger(ConcurrentPacketCache.class.getName());
+
+    /** Small caches are not split into segments smaller than this, to avoid rejecting moderately sized items */
+    private static final int minSegmentCapacity = 1 << 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    private final FrequencySketch frequencies;
+
+    /** The maximum number of bytes of packets in this cache */
+    private final int capacity;
+
+    /** The max size of a cached item compared to the total size */
+    private volatile int maxCacheItemPercentage = 1;
+
+    /** The max age for a valid cache entry in milliseconds */
+    private final long maxAge;
+
+    private final AtomicLong totalSize = new AtomicLong(0);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates a cache with a size given by cachesizemegabytes*2^20+cachesizebytes,
+     * and a number of segments given by four times the number of available processors
+     *
+     * @param capacityMegaBytes the cache size, measured in megabytes
+     * @param capacityBytes additional number of bytes to add to the cache size
+     * @param maxAge seconds a cache entry is valid, 0 or less are illegal arguments
+     */
+    public ConcurrentPacketCache(int capacityMegaBytes, int capacityBytes, double maxAge) {
+        this(capacityMegaBytes, capacityBytes, maxAge, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a cache with a size given by cachesizemegabytes*2^20+cachesizebytes
+     *
+     * @param capacityMegaBytes the cache size, measured in megabytes
+     * @param capacityBytes additional number of bytes to add to the cache size
+     * @param maxAge seconds a cache entry is valid, 0 or less are illegal arguments
+     * @param concurrency the number of threads expected to access this concurrently.
+     *                    This is rounded up to a power of two to give the number of segments.
+     */
+    public ConcurrentPacketCache(int capacityMegaBytes, int capacityBytes, double maxAge, int concurrency) {
+        if (maxAge <= 0.0d)
+            throw new IllegalArgumentException("maxAge <= 0 not legal on 5.1, use some very large number for no timeout.");
+        if (capacityMegaBytes > (Integer.MAX_VALUE >> 20)) {
+            log.log(LogLevel.INFO, "Packet cache of more than 2 GB requested. Reverting to 2 GB packet cache.");
+            this.capacity = Integer.MAX_VALUE;
+        } else {
+            this.capacity = (capacityMegaBytes << 20) + capacityBytes;
+        }
+        if (this.capacity <= 0)
+            throw new IllegalArgumentException("Total cache size set to 0 or less bytes. If no caching is desired, avoid creating this object instead.");
+        this.maxAge = (long) (maxAge * 1000.0d);
+
+        int segmentCount = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        while (segmentCount > 1 && capacity / segmentCount < minSegmentCapacity)
+            segmentCount >>= 1;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = new Segment(capacity / segmentCount);
+        this.segmentMask = segmentCount - 1;
+        this.frequencies = new FrequencySketch();
+    }
+
+    /**
+     * Sets the max size of a cached item compared to the total size
+     * Cache requests for larger objects will be ignored
+     */
+    public void setMaxCacheItemPercentage(int maxCapacityPercentage) {
+        maxCacheItemPercentage = maxCapacityPercentage;
+    }
+
+    public int getCapacity() { return capacity >> 20; }
+
+    public int getByteCapacity() { return capacity; }
+
+    /** Returns the number of segments of this */
+    public int segmentCount() { return segments.length; }
+
+    public PacketWrapper get(CacheKey key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    public PacketWrapper get(CacheKey key, long now) {
+        int hash = spread(key.hashCode());
+        frequencies.increment(hash);
+        PacketWrapper result = segmentFor(hash).get(key, now);
+        if (result == null)
+            misses.increment();
+        else
+            hits.increment();
+        return result;
+    }
+
+    /**
+     * Adds a PacketWrapper object to this cache,
+     * unless the size is more than maxCacheItemPercentage of the total size
+     */
+    public PacketWrapper put(CacheKey key, PacketWrapper value) {
+        return put(key, value, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a PacketWrapper object to this cache,
+     * unless the size is more than maxCacheItemPercentage of the total size,
+     * or it is less frequently used than the entry it would replace
+     *
+     * @param timestamp the timestamp for the first packet in the array, unit milliseconds
+     * @return the previous value of this key, or null if none
+     */
+    public PacketWrapper put(CacheKey key, PacketWrapper value, long timestamp) {
+        int size = value.getPacketsSize();
+        if (size > 0)
+            value.setTimestamp(timestamp);
+
+        int hash = spread(key.hashCode());
+        Segment segment = segmentFor(hash);
+        if ((long)size * 100 > (long)capacity * maxCacheItemPercentage || size > segment.capacity) // don't insert if too big
+            return segment.remove(key); // remove the old one since that is now stale
+        return segment.put(key, value, hash);
+    }
+
+    public PacketWrapper remove(CacheKey key) {
+        return segmentFor(spread(key.hashCode())).remove(key);
+    }
+
+    public void clear() {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    /** Returns the number of entries in this cache */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /** Returns the total number of bytes of packets currently in this cache */
+    public long totalPacketSize() { return totalSize.get(); }
+
+    /** Returns the number of lookups which returned a value since this was created */
+    public long hits() { return hits.sum(); }
+
+    /** Returns the number of lookups which did not return a value since this was created */
+    public long misses() { return misses.sum(); }
+
+    /** Returns the number of entries removed to make room for others since this was created */
+    public long evictions() { return evictions.sum(); }
+
+    /** Returns the number of entries which were not added because they were less frequently used than the entries in the cache */
+    public long rejections() { return rejections.sum(); }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 16) & segmentMask];
+    }
+
+    /** Applies a supplemental hash function to defend against poor quality key hashes */
+    private static int spread(int hash) {
+        hash ^= (hash >>> 17);
+        hash *= 0xed5ad4bb;
+        hash ^= (hash >>> 11);
+        hash *= 0xac4c1b51;
+        hash ^= (hash >>> 15);
+        return hash;
+    }
+
+    /** An LRU cache of a part of the key space. All access is synchronized on the segment. */
+    private final class Segment {
+
+        private final LinkedHashMap<CacheKey, PacketWrapper> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+        /** The maximum number of bytes of packets in this segment */
+        private final int capacity;
+
+        /** The <i>current</i> number of bytes of packets in this segment */
+        private int size = 0;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized PacketWrapper get(CacheKey key, long now) {
+            PacketWrapper result = entries.get(key);
+            if (result == null) return null;
+
+            if ((now - result.getTimestamp()) > maxAge) {
+                remove(key);
+                return null;
+            }
+            return result;
+        }
+
+        synchronized PacketWrapper put(CacheKey key, PacketWrapper value, int hash) {
+            int newSize = value.getPacketsSize();
+            PacketWrapper previous = entries.get(key);
+            int available = capacity - size + (previous == null ? 0 : previous.getPacketsSize());
+            if (previous == null && newSize > available && ! admit(hash, newSize - available)) {
+                rejections.increment();
+                return previous;
+            }
+
+            entries.put(key, value);
+            addSize(newSize - (previous == null ? 0 : previous.getPacketsSize()));
+            evictOverflow();
+            return previous;
+        }
+
+        /**
+         * Returns whether a candidate entry with the given hash is used at least as frequently
+         * as the least recently used entries it would evict to free the given number of bytes
+         */
+        private boolean admit(int hash, int bytesNeeded) {
+            int candidateFrequency = frequencies.frequency(hash);
+            int freed = 0;
+            for (Iterator<Map.Entry<CacheKey, PacketWrapper>> i = entries.entrySet().iterator(); i.hasNext() && freed < bytesNeeded; ) {
+                Map.Entry<CacheKey, PacketWrapper> victim = i.next();
+                if (frequencies.frequency(spread(victim.getKey().hashCode())) > candidateFrequency) return false;
+                freed += victim.getValue().getPacketsSize();
+            }
+            return true;
+        }
+
+        private void evictOverflow() {
+            for (Iterator<PacketWrapper> i = entries.values().iterator(); size > capacity && i.hasNext(); ) {
+                PacketWrapper eldest = i.next();
+                addSize(-eldest.getPacketsSize());
+                i.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized PacketWrapper remove(CacheKey key) {
+            PacketWrapper removed = entries.remove(key);
+            if (removed != null)
+                addSize(-removed.getPacketsSize());
+            return removed;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            addSize(-size);
+        }
+
+        synchronized int size() { return entries.size(); }
+
+        private void addSize(int delta) {
+            size += delta;
+            totalSize.addAndGet(delta);
+        }
+
+    }
+
+    /**
+     * A count-min sketch of 4 bit counters estimating how often keys are requested.
+     * All counters are halved after a number of increments proportional to the sketch width,
+     * such that the estimates reflect recent rather than all-time popularity.
+     * This is lock free; increments racing with a halving may be lost, which is harmless.
+     */
+    static final class FrequencySketch {
+
+        private static final int depth = 4;
+        private static final int maxCount = 15;
+        private static final int[] seeds = { 0x97cb3127, 0xb1a1a4d7, 0x2c2b9d8f, 0x5f356495 };
+
+        private final AtomicIntegerArray table;
+        private final int mask;
+        private final int sampleSize;
+        private final AtomicInteger sampleCount = new AtomicInteger(0);
+
+        FrequencySketch() {
+            this(1 << 16);
+        }
+
+        FrequencySketch(int width) {
+            int tableSize = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+            this.table = new AtomicIntegerArray(tableSize);
+            this.mask = tableSize - 1;
+            this.sampleSize = 10 * tableSize;
+        }
+
+        void increment(int hash) {
+            boolean incremented = false;
+            for (int i = 0; i < depth; i++) {
+                int index = indexOf(hash, i);
+                int count = table.get(index);
+                if (count < maxCount)
+                    incremented |= table.compareAndSet(index, count, count + 1);
+            }
+            if (incremented && sampleCount.incrementAndGet() == sampleSize)
+                halve();
+        }
+
+        int frequency(int hash) {
+            int frequency = maxCount;
+            for (int i = 0; i < depth; i++)
+                frequency = Math.min(frequency, table.get(indexOf(hash, i)));
+            return frequency;
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length(); i++)
+                table.set(i, table.get(i) >>> 1);
+            sampleCount.set(0);
+        }
+
+        private int indexOf(int hash, int i) {
+            int h = (hash + seeds[i]) * seeds[i];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+    }
+
+}
@@ -1,8 +1,8 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.fastsearch;
 
-import com.yahoo.slime.BinaryFormat;
-import com.yahoo.slime.Slime;
+import com.yahoo.slime.BinaryView;
+import com.yahoo.slime.Inspector;
 import com.yahoo.data.access.slime.SlimeAdapter;
 import com.yahoo.vespa.config.search.SummaryConfig;
 import com.yahoo.prelude.ConfigurationException;
@@ -81,8 +81,9 @@ public final class DocsumDefinitionSet {
             hit.addSummary(docsum);
         } else {
             DocsumDefinition docsumDefinition = lookupDocsum(summaryClass);
-            Slime value = BinaryFormat.decode(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
-            hit.addSummary(docsumDefinition, new SlimeAdapter(value.get()));
+            // View the fields in place, such that only the fields which are accessed are decoded
+            Inspector value = BinaryView.inspect(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
+            hit.addSummary(docsumDefinition, new SlimeAdapter(value));
         }
     }
 
@@ -279,14 +279,12 @@ public class FastHit extends Hit {
     void addSummary(DocsumDefinition docsumDef, Inspector value) {
         for (DocsumField field : docsumDef.getFields()) {
             String fieldName = field.getName();
-            if (value.type() == Type.STRING &&
+            Inspector f = value.field(fieldName);
+            if (f.type() == Type.STRING &&
                 (field instanceof LongstringField || field instanceof StringField || field instanceof XMLField)) {
-                setDocsumFieldIfNotPresent(fieldName, new LazyString(field, value));
-            } else {
-                Inspector f = value.field(fieldName);
-                if (field.getEmulConfig().forceFillEmptyFields() || f.valid()) {
-                    setDocsumFieldIfNotPresent(fieldName, field.convert(f));
-                }
+                setDocsumFieldIfNotPresent(fieldName, new LazyString(field, f));
+            } else if (field.getEmulConfig().forceFillEmptyFields() || f.valid()) {
+                setDocsumFieldIfNotPresent(fieldName, field.convert(f));
             }
         }
     }
@@ -433,7 +431,7 @@ public class FastHit extends Hit {
         }
 
         Object getValue(String fieldName) {
-            return value.asString();
+            return fieldType.convert(value);
         }
 
         RawField getFieldAsUtf8(String fieldName) {
@@ -23,6 +23,7 @@ import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.dispatch.Dispatcher;
+import com.yahoo.search.dispatch.ResultMerger;
 import com.yahoo.search.dispatch.SearchCluster;
 import com.yahoo.search.grouping.GroupingRequest;
 import com.yahoo.search.grouping.request.GroupingOperation;
@@ -35,6 +36,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 
 import static com.yahoo.container.util.Util.quote;
@@ -59,6 +61,12 @@ public class FastSearcher extends VespaBackEndSearcher {
     /** The compression method which will be used with rpc dispatch. "lz4" (default) and "none" is supported. */
     private final static CompoundName dispatchCompression = new CompoundName("dispatch.compression");
 
+    /**
+     * If this is turned on queries are sent directly to all the nodes of a group and merged here,
+     * instead of going through fdispatch. The default is set in the dispatch config of the cluster.
+     */
+    private final static CompoundName dispatchFanout = new CompoundName("dispatch.fanout");
+
     /** Used to dispatch directly to search nodes over RPC, replacing the old fnet communication path */
     private final Dispatcher dispatcher;
 
@@ -172,6 +180,12 @@ public class FastSearcher extends VespaBackEndSearcher {
         try {
             if (dispatcher.searchCluster().groupSize() == 1)
                 forceSinglePassGrouping(query);
+
+            if (useDirectFanout(query)) {
+                Optional<Result> result = searchDirectFanout(query, execution);
+                if (result.isPresent()) return result.get();
+            }
+
             channel = chooseBackend(query).openChannel();
             channel.setQuery(query);
 
@@ -201,6 +215,64 @@ public class FastSearcher extends VespaBackEndSearcher {
         }
     }
     
+    /** Returns whether this query should, and can, be sent directly to all the nodes of a group */
+    private boolean useDirectFanout(Query query) {
+        if ( ! query.properties().getBoolean(dispatchFanout, dispatcher.usesDirectFanout())) return false;
+        if ( ! GroupingRequest.getRequests(query).isEmpty()) return false; // grouping is merged by fdispatch
+        if (query.getRanking().getSorting() != null) return false; // sort data is not returned to us
+        if (summaryNeedsQuery(query)) return false; // summaries are filled over rpc, which doesn't pass the query
+        return true;
+    }
+
+    /**
+     * Sends the query directly to all the nodes of a group and merges their hits here.
+     * The summaries of the returned hits are filled over rpc from the same nodes.
+     *
+     * @return the merged result, or empty if no group can currently serve this query
+     *         such that it should be sent through fdispatch instead
+     */
+    private Optional<Result> searchDirectFanout(Query query, Execution execution) {
+        Optional<SearchCluster.Group> group = dispatcher.searchCluster().groupForQuery();
+        if ( ! group.isPresent()) return Optional.empty();
+        query.trace(false, 2, "Dispatching directly to ", group.get());
+
+        if (query.getRanking().getQueryCache())
+            query.getSessionId(true); // create before cloning, such that the summary fill refers to the same session
+
+        // Each node must return all the hits up to the last one requested as we don't know where they are
+        Query nodeQuery = query.clone();
+        nodeQuery.setOffset(0);
+        nodeQuery.setHits(query.getOffset() + query.getHits());
+        QueryPacket queryPacket = QueryPacket.create(nodeQuery);
+
+        if (query.getPresentation().getSummary() == null)
+            query.getPresentation().setSummary(getDefaultDocsumClass());
+        setRPCSummaryFill(query);
+
+        List<Dispatcher.NodeResponse> responses = dispatcher.search(group.get(), queryPacket, query);
+        ResultMerger merger = new ResultMerger(query);
+        for (Dispatcher.NodeResponse response : responses) {
+            if (response.error().isPresent()) {
+                merger.addFailed(response.node(), response.error().get());
+                continue;
+            }
+            Result partialResult = new Result(query);
+            addMetaInfo(query, queryPacket.getQueryPacketData(), response.result().get(), partialResult, false);
+            addUnfilledHits(partialResult, response.result().get().getDocuments(), false, queryPacket.getQueryPacketData(), null);
+            for (Iterator<Hit> i = hitIterator(partialResult); i.hasNext(); ) {
+                Hit hit = i.next();
+                if (hit instanceof FastHit)
+                    ((FastHit)hit).setDistributionKey(response.node().key());
+            }
+            merger.add(partialResult);
+        }
+        Result result = merger.merged();
+
+        if (query.properties().getBoolean(Ranking.RANKFEATURES, false))
+            fill(result, query.getPresentation().getSummary(), execution);
+        return Optional.of(result);
+    }
+
     /** When we only search a single node, doing all grouping in one pass is more efficient */
     private void forceSinglePassGrouping(Query query) {
         for (GroupingRequest groupingRequest : GroupingRequest.getRequests(query))
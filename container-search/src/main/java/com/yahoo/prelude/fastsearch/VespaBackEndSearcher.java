@@ -116,6 +116,11 @@ public abstract class VespaBackEndSearcher extends PingableSearcher {
         return query.properties().getBoolean(dispatchSummaries);
     }
 
+    /** Makes summaries for this query be filled by dispatching directly to search nodes over RPC */
+    protected static void setRPCSummaryFill(Query query) {
+        query.properties().set(dispatchSummaries, true);
+    }
+
     /**
      * Returns whether we need to send the query when fetching summaries.
      * This is necessary if the query requests summary features or dynamic snippeting
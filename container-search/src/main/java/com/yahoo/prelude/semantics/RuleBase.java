@@ -4,6 +4,7 @@ package com.yahoo.prelude.semantics;
 import com.yahoo.search.Query;
 import com.yahoo.prelude.querytransform.PhraseMatcher;
 import com.yahoo.prelude.semantics.engine.RuleEngine;
+import com.yahoo.prelude.semantics.engine.RuleIndex;
 import com.yahoo.prelude.semantics.parser.ParseException;
 import com.yahoo.prelude.semantics.rule.*;
 import com.yahoo.protect.Validator;
@@ -38,6 +39,9 @@ public class RuleBase {
 
     private Map<String, NamedCondition> namedConditions=new java.util.LinkedHashMap<>();
 
+    /** The index of the rules of this by the terms triggering them, or null if this is not initialized */
+    private RuleIndex ruleIndex=null;
+
     /** The analyzer used to do evaluations over this rule base */
     private RuleEngine analyzer=new RuleEngine(this);
 
@@ -287,6 +291,7 @@ public class RuleBase {
     // Note that included rules are added though a list iterator, not this */
     public void addRule(ProductionRule productionRule) {
         productionRules.add(productionRule);
+        ruleIndex=null;
     }
 
     /** Returns a named condition, or null if no condition with that name exists */
@@ -302,8 +307,15 @@ public class RuleBase {
     public void initialize() {
         inlineIncluded();
         makeReferences();
+        ruleIndex=new RuleIndex(productionRules);
     }
 
+    /**
+     * Returns the index of the rules of this by the terms which may trigger them,
+     * or null if this is not initialized since rules were last added
+     */
+    public RuleIndex ruleIndex() { return ruleIndex; }
+
     /**
      * Analyzes a query over this rule base
      *
@@ -368,7 +380,7 @@ public class RuleBase {
         }
     }
 
-    /** Returns the rules in added order */
+    /** Returns the rules in added order. Rules must not be added or removed through this after initialization */
     public ListIterator<ProductionRule> ruleIterator() { return productionRules.listIterator(); }
 
     /** Returns the rules unmodifiable */
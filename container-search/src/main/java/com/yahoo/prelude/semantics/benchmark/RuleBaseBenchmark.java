@@ -28,6 +28,28 @@ public class RuleBaseBenchmark {
             }
         }
         RuleBase ruleBase = new RuleImporter().importFile(ruleBaseFile,fsaFile);
+        benchmark(ruleBase, ruleBaseFile, fsaFile, queryFile, iterations);
+    }
+
+    /**
+     * Benchmarks a generated rule base with the given number of rules, each of which is triggered
+     * by a distinct term, to measure how evaluation scales with the size of the rule base.
+     */
+    public void benchmarkGenerated(int ruleCount, String queryFile, int iterations)
+            throws IOException, ParseException {
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < ruleCount; i++) {
+            rules.append("term").append(i).append(" [category").append(i % 100).append("] -> rewritten").append(i).append(";\n");
+        }
+        for (int i = 0; i < 100 && i < ruleCount; i++) {
+            rules.append("[category").append(i).append("] :- category").append(i).append(", other").append(i).append(";\n");
+        }
+        RuleBase ruleBase = RuleBase.createFromString("generated", rules.toString(), null);
+        benchmark(ruleBase, "generated with " + ruleCount + " rules", null, queryFile, iterations);
+    }
+
+    private void benchmark(RuleBase ruleBase, String ruleBaseName, String fsaFile, String queryFile, int iterations)
+            throws IOException {
         ArrayList<String> queries = new ArrayList<>();
         BufferedReader reader = new BufferedReader(new FileReader(queryFile));
         String line;
@@ -44,7 +66,9 @@ public class RuleBaseBenchmark {
         }
         Date end = new Date();
         long elapsed = end.getTime()-start.getTime();
-        System.out.print("BENCHMARK: rulebase=" + ruleBaseFile +
+        System.out.print("BENCHMARK: rulebase=" + ruleBaseName +
+                "\n           rules=" + ruleBase.rules().size() +
+                "\n           untriggered rules=" + ruleBase.ruleIndex().untriggeredRuleCount() +
                 "\n           fsa=" + fsaFile +
                 "\n           queries=" + queryFile +
                 "\n           iterations=" + iterations +
@@ -53,13 +77,17 @@ public class RuleBaseBenchmark {
 
 
     public static void main(String[] args) {
-        if(args.length<3){
+        if(args.length<3 || (args[0].equals("-generate") && args.length<4)){
             System.out.println("USAGE: RuleBaseBenchmark ruleBaseFile queryFile iterations");
+            System.out.println("       RuleBaseBenchmark -generate ruleCount queryFile iterations");
             System.exit(1);
         }
 
         try {
-            new RuleBaseBenchmark().benchmark(args[0],args[1],Integer.parseInt(args[2]));
+            if (args[0].equals("-generate"))
+                new RuleBaseBenchmark().benchmarkGenerated(Integer.parseInt(args[1]),args[2],Integer.parseInt(args[3]));
+            else
+                new RuleBaseBenchmark().benchmark(args[0],args[1],Integer.parseInt(args[2]));
         }
         catch (Exception e) {
             System.out.println("ERROR: " + collectMessage(e));
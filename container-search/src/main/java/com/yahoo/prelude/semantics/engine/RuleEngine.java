@@ -7,7 +7,11 @@ import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.RuleBaseException;
 import com.yahoo.prelude.semantics.rule.ProductionRule;
 
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 
 /**
  * Evaluates the rules of a rule base. This method is thread safe on analyze calls, but
@@ -32,20 +36,12 @@ public class RuleEngine {
      *         If there is an error, this query is destroyed (unusable)
      */
     public String evaluate(Query query,int traceLevel) {
-        // TODO: This is O(query size*rule base size). We'll eventually need to create indices
-        //       on rules to look up rule candidates per term to make it O(query size) instead
-        //       Probably create indices on the first term like Prolog implementations use to
-
-        boolean matchedAnything=false;
         Evaluation evaluation=new Evaluation(query,traceLevel);
         evaluation.setStemming(rules.getStemming());
         evaluation.trace(2,"Evaluating query '" + evaluation.getQuery().getModel().getQueryTree().getRoot() + "':");
-        for (ListIterator<ProductionRule> i=rules.ruleIterator(); i.hasNext(); ) {
-            evaluation.reset();
-            ProductionRule rule=i.next();
-            boolean matched=matchRuleAtAllStartPoints(evaluation,rule);
-            matchedAnything|=matched;
-        }
+
+        RuleIndex index=rules.ruleIndex();
+        boolean matchedAnything=index!=null ? evaluateCandidates(evaluation,index) : evaluateAll(evaluation);
 
         if (!matchedAnything) return null;
 
@@ -57,6 +53,53 @@ public class RuleEngine {
         return error;
     }
 
+    /** Evaluates all the rules in order */
+    private boolean evaluateAll(Evaluation evaluation) {
+        boolean matchedAnything=false;
+        for (ListIterator<ProductionRule> i=rules.ruleIterator(); i.hasNext(); ) {
+            evaluation.reset();
+            ProductionRule rule=i.next();
+            boolean matched=matchRuleAtAllStartPoints(evaluation,rule);
+            matchedAnything|=matched;
+        }
+        return matchedAnything;
+    }
+
+    /**
+     * Evaluates in order the rules which may match the query according to the given index.
+     * As productions may add terms, the candidates are extended by the terms of the query after each match.
+     */
+    private boolean evaluateCandidates(Evaluation evaluation,RuleIndex index) {
+        boolean matchedAnything=false;
+        List<ProductionRule> indexedRules=index.rules();
+        BitSet candidates=index.newCandidates();
+        Set<String> indexedTerms=new HashSet<>();
+        addCandidates(evaluation,index,candidates,indexedTerms);
+        if (evaluation.getTraceLevel()>=3)
+            evaluation.trace(3,"Evaluating " + candidates.cardinality() + " of " + indexedRules.size() + " rules");
+
+        for (int i=candidates.nextSetBit(0); i>=0; i=candidates.nextSetBit(i+1)) {
+            evaluation.reset();
+            boolean matched=matchRuleAtAllStartPoints(evaluation,indexedRules.get(i));
+            if (matched)
+                addCandidates(evaluation,index,candidates,indexedTerms);
+            matchedAnything|=matched;
+        }
+        return matchedAnything;
+    }
+
+    /**
+     * Adds the rules triggered by the terms of the query which are not already looked up to the candidates.
+     * The items of the evaluation are always current here, as it is reset after each production.
+     */
+    private void addCandidates(Evaluation evaluation,RuleIndex index,BitSet candidates,Set<String> indexedTerms) {
+        for (FlattenedItem item : evaluation.items()) {
+            String term=item.getItem().stringValue();
+            if (term!=null && indexedTerms.add(term))
+                index.addCandidates(term,candidates);
+        }
+    }
+
     /** Match a rule at any starting point in the query */
     private boolean matchRuleAtAllStartPoints(Evaluation evaluation, ProductionRule rule) {
         boolean matchedAtLeastOnce=false;
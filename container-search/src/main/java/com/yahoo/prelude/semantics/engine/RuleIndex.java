@@ -0,0 +1,78 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.engine;
+
+import com.yahoo.prelude.semantics.rule.ProductionRule;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the rules of a rule base by the terms which must be present in a query for them to match,
+ * such that only the rules which may match a query need to be evaluated.
+ * Rules are identified by their position in evaluation order. Rules which have no trigger terms
+ * (see {@link com.yahoo.prelude.semantics.rule.Condition#triggerTerms}) are always candidates.
+ * <p>
+ * This is immutable and thread safe.
+ *
+ * @author agent
+ */
+public final class RuleIndex {
+
+    private final List<ProductionRule> rules;
+
+    /** The positions of the rules triggered by each term */
+    private final Map<String, BitSet> rulesByTerm = new HashMap<>();
+
+    /** The positions of the rules which must always be evaluated */
+    private final BitSet untriggeredRules = new BitSet();
+
+    /** Creates an index of the given rules, which must have their references made */
+    public RuleIndex(List<ProductionRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        for (int i = 0; i < this.rules.size(); i++) {
+            Set<String> terms = this.rules.get(i).getCondition().triggerTerms();
+            if (terms == null || terms.isEmpty()) {
+                untriggeredRules.set(i);
+            }
+            else {
+                for (String term : terms)
+                    rulesByTerm.computeIfAbsent(term, __ -> new BitSet()).set(i);
+            }
+        }
+    }
+
+    /** Returns the rules of this in evaluation order */
+    public List<ProductionRule> rules() { return rules; }
+
+    /** Returns the number of rules which are evaluated regardless of the terms of the query */
+    public int untriggeredRuleCount() { return untriggeredRules.cardinality(); }
+
+    /** Returns a new set of rule positions containing the rules which are always candidates */
+    BitSet newCandidates() {
+        return (BitSet)untriggeredRules.clone();
+    }
+
+    /**
+     * Adds the positions of the rules which may match when the given query term is present to the given set.
+     * As term conditions also matches the singular and plural form of the term when stemming, these forms
+     * of the query term also triggers rules.
+     */
+    void addCandidates(String queryTerm, BitSet candidates) {
+        addRulesOf(queryTerm, candidates);
+        addRulesOf(queryTerm + "s", candidates);
+        if (queryTerm.endsWith("s"))
+            addRulesOf(queryTerm.substring(0, queryTerm.length() - 1), candidates);
+    }
+
+    private void addRulesOf(String term, BitSet candidates) {
+        BitSet triggered = rulesByTerm.get(term);
+        if (triggered != null)
+            candidates.or(triggered);
+    }
+
+}
@@ -2,6 +2,7 @@
 package com.yahoo.prelude.semantics.rule;
 
 import java.util.Iterator;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 
@@ -26,6 +27,11 @@ public class ChoiceCondition extends CompositeCondition {
         return false;
     }
 
+    @Override
+    public Set<String> triggerTerms() {
+        return allSubConditionTriggerTerms();
+    }
+
     protected String toInnerString() {
          return toInnerString(", ");
      }
@@ -2,7 +2,9 @@
 package com.yahoo.prelude.semantics.rule;
 
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
@@ -89,6 +91,34 @@ public abstract class CompositeCondition extends Condition {
         }
     }
 
+    /**
+     * Returns the smallest set of trigger terms of any subcondition, or null if no subcondition has trigger terms.
+     * This is the trigger terms of conditions which only match if all their subconditions match.
+     */
+    protected final Set<String> smallestSubConditionTriggerTerms() {
+        Set<String> smallest=null;
+        for (Iterator<Condition> i=conditionIterator(); i.hasNext(); ) {
+            Set<String> terms=i.next().triggerTerms();
+            if (terms!=null && (smallest==null || terms.size()<smallest.size()))
+                smallest=terms;
+        }
+        return smallest;
+    }
+
+    /**
+     * Returns the union of the trigger terms of all the subconditions, or null if any subcondition has no trigger terms.
+     * This is the trigger terms of conditions which match if any of their subconditions match.
+     */
+    protected final Set<String> allSubConditionTriggerTerms() {
+        Set<String> all=new LinkedHashSet<>();
+        for (Iterator<Condition> i=conditionIterator(); i.hasNext(); ) {
+            Set<String> terms=i.next().triggerTerms();
+            if (terms==null) return null;
+            all.addAll(terms);
+        }
+        return all.isEmpty() ? null : all;
+    }
+
     /** Whether this should be output with parentheses, default is parent!=null */
     protected boolean useParentheses() {
         return getParent()!=null;
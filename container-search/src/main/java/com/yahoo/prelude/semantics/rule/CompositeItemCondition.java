@@ -5,6 +5,8 @@ import com.yahoo.prelude.query.PhraseItem;
 import com.yahoo.prelude.semantics.engine.Choicepoint;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 
+import java.util.Set;
+
 /**
  * A condition on the presense of a particular kind of composite item (possibly also with a particular content)
  *
@@ -25,6 +27,11 @@ public class CompositeItemCondition extends CompositeCondition {
 
     }
 
+    @Override
+    public Set<String> triggerTerms() {
+        return smallestSubConditionTriggerTerms();
+    }
+
     @Override
     protected String toInnerString() {
         if (getLabel()!=null)
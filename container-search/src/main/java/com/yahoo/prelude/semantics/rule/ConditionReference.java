@@ -12,6 +12,7 @@ import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 import com.yahoo.protect.Validator;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A reference to a named condition
@@ -35,6 +36,9 @@ public class ConditionReference extends Condition {
      */
     private boolean automataLookup=false;
 
+    /** True while the trigger terms of this are computed, to detect recursive references */
+    private boolean resolvingTriggerTerms=false;
+
     public ConditionReference(String conditionName) {
         this(null,conditionName);
     }
@@ -109,6 +113,19 @@ public class ConditionReference extends Condition {
         }
     }
 
+    /** Returns the trigger terms of the referenced condition, or null if this is an automata or recursive reference */
+    @Override
+    public Set<String> triggerTerms() {
+        if (automataLookup || namedCondition==null || resolvingTriggerTerms) return null;
+        try {
+            resolvingTriggerTerms=true;
+            return namedCondition.getCondition().triggerTerms();
+        }
+        finally {
+            resolvingTriggerTerms=false;
+        }
+    }
+
     protected boolean hasOpenChoicepoint(RuleEvaluation e) {
         if (namedCondition==null) return false;
         return namedCondition.getCondition().hasOpenChoicepoint(e);
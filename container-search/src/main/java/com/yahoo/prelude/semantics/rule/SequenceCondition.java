@@ -2,6 +2,7 @@
 package com.yahoo.prelude.semantics.rule;
 
 import java.util.Iterator;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.engine.Choicepoint;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
@@ -25,6 +26,11 @@ public class SequenceCondition extends CompositeCondition {
         return matches;
     }
 
+    @Override
+    public Set<String> triggerTerms() {
+        return smallestSubConditionTriggerTerms();
+    }
+
     protected boolean useParentheses() {
         return (getParent()!=null
                 && ! (getParent() instanceof ChoiceCondition));
@@ -5,6 +5,9 @@ import com.yahoo.prelude.query.TermItem;
 import com.yahoo.prelude.semantics.engine.NameSpace;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * A term in a rule
  *
@@ -85,6 +88,13 @@ public class TermCondition extends Condition {
         return false;
     }
 
+    /** Returns this term, unless this matches in another name space than the query */
+    @Override
+    public Set<String> triggerTerms() {
+        if (getNameSpace()!=null || term==null) return null;
+        return Collections.singleton(term);
+    }
+
     public String toInnerString() {
         return getLabelString() + term;
     }
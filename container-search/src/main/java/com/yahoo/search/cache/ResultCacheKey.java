@@ -0,0 +1,163 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.search.Query;
+import com.yahoo.search.grouping.GroupingRequest;
+import com.yahoo.search.query.Model;
+import com.yahoo.search.query.Presentation;
+import com.yahoo.search.query.Ranking;
+import com.yahoo.search.query.profile.QueryProfileProperties;
+import com.yahoo.search.query.profile.compiled.CompiledQueryProfile;
+import com.yahoo.search.query.ranking.Diversity;
+import com.yahoo.search.query.ranking.MatchPhase;
+import com.yahoo.search.query.ranking.Matching;
+import com.yahoo.search.query.ranking.SoftTimeout;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The key of a result in the result cache. This is a canonical serialization of everything in a query which may
+ * change its result: The query tree, sources and restricts, ranking, summary class, offset and hits, the
+ * grouping requests, the query profile variant it resolves to, and all its properties.
+ * Keys also include the generation of the cache they are looked up in.
+ * <p>
+ * Queries which have properties which have no canonical serialization, that is which are not
+ * strings, numbers, booleans or enums, can not be cached.
+ *
+ * @author agent
+ */
+final class ResultCacheKey {
+
+    private final String key;
+
+    private ResultCacheKey(String key) {
+        this.key = key;
+    }
+
+    /** Returns the key of the given query, or null if it can not be cached */
+    static ResultCacheKey of(Query query, long generation) {
+        StringBuilder b = new StringBuilder();
+        b.append("generation=").append(generation);
+        b.append("&offset=").append(query.getOffset());
+        b.append("&hits=").append(query.getHits());
+        appendModel(query.getModel(), b);
+        appendRanking(query.getRanking(), b);
+        appendPresentation(query.getPresentation(), b);
+        appendGrouping(query, b);
+        appendVariant(query, b);
+        if ( ! appendProperties(query, b)) return null;
+        return new ResultCacheKey(b.toString());
+    }
+
+    private static void appendModel(Model model, StringBuilder b) {
+        b.append("&model.queryTree=").append(model.getQueryTree());
+        b.append("&model.sources=").append(model.getSources());
+        b.append("&model.restrict=").append(model.getRestrict());
+        b.append("&model.searchPath=").append(model.getSearchPath());
+        b.append("&model.language=").append(model.getLanguage());
+    }
+
+    private static void appendRanking(Ranking ranking, StringBuilder b) {
+        b.append("&ranking.profile=").append(ranking.getProfile());
+        b.append("&ranking.sorting=").append(ranking.getSorting());
+        b.append("&ranking.location=").append(ranking.getLocation());
+        b.append("&ranking.listFeatures=").append(ranking.getListFeatures());
+        b.append("&ranking.features=").append(ranking.getFeatures());
+        b.append("&ranking.properties=").append(ranking.getProperties());
+
+        MatchPhase matchPhase = ranking.getMatchPhase();
+        b.append("&ranking.matchPhase=").append(matchPhase.getAttribute()).append(",").append(matchPhase.getAscending())
+         .append(",").append(matchPhase.getMaxHits()).append(",").append(matchPhase.getMaxFilterCoverage());
+        Diversity diversity = matchPhase.getDiversity();
+        if (diversity != null)
+            b.append(",").append(diversity.getAttribute()).append(",").append(diversity.getMinGroups())
+             .append(",").append(diversity.getCutoffFactor()).append(",").append(diversity.getCutoffStrategy());
+
+        Matching matching = ranking.getMatching();
+        b.append("&ranking.matching=").append(matching.getTermwiseLimit()).append(",").append(matching.getNumThreadsPerSearch())
+         .append(",").append(matching.getNumSearchPartitions()).append(",").append(matching.getMinHitsPerThread());
+
+        SoftTimeout softTimeout = ranking.getSoftTimeout();
+        b.append("&ranking.softtimeout=").append(softTimeout.getEnable()).append(",").append(softTimeout.getFactor())
+         .append(",").append(softTimeout.getTailcost());
+    }
+
+    private static void appendPresentation(Presentation presentation, StringBuilder b) {
+        b.append("&presentation.summary=").append(presentation.getSummary());
+        b.append("&presentation.bolding=").append(presentation.getBolding());
+        b.append("&presentation.summaryFields=").append(presentation.getSummaryFields());
+    }
+
+    private static void appendGrouping(Query query, StringBuilder b) {
+        for (GroupingRequest request : GroupingRequest.getRequests(query))
+            b.append("&grouping=").append(request.getRootOperation());
+    }
+
+    /** Appends the query profile and the values of all the dimensions it varies by in the given query */
+    private static void appendVariant(Query query, StringBuilder b) {
+        QueryProfileProperties profileProperties = query.properties().getInstance(QueryProfileProperties.class);
+        if (profileProperties == null) return;
+
+        CompiledQueryProfile profile = profileProperties.getQueryProfile();
+        b.append("&variant=").append(profile.getId());
+        if (query.getHttpRequest() == null) return;
+
+        Map<String, String> context = query.getHttpRequest().propertyMap();
+        for (String dimension : profile.getDimensions())
+            b.append(";").append(dimension).append("=").append(context.get(dimension));
+    }
+
+    /**
+     * Appends all the properties of the query, in order by name.
+     *
+     * @return false if the query has a property which can not be serialized
+     */
+    private static boolean appendProperties(Query query, StringBuilder b) {
+        for (Map.Entry<String, Object> property : new TreeMap<>(query.properties().listProperties()).entrySet()) {
+            Object value = property.getValue();
+            if (isGroupingRequests(value)) continue; // serialized above
+            if ( ! isSerializable(value)) return false;
+            b.append("&").append(property.getKey()).append("=").append(value);
+        }
+        return true;
+    }
+
+    private static boolean isGroupingRequests(Object value) {
+        if ( ! (value instanceof Collection)) return false;
+        for (Object element : (Collection<?>)value)
+            if ( ! (element instanceof GroupingRequest)) return false;
+        return true;
+    }
+
+    private static boolean isSerializable(Object value) {
+        return value == null ||
+               value instanceof String ||
+               value instanceof Number ||
+               value instanceof Boolean ||
+               value instanceof Character ||
+               value instanceof Enum;
+    }
+
+    /** Returns an estimate of the number of bytes used by this key */
+    long byteSize() {
+        return 40 + 2L * key.length();
+    }
+
+    @Override
+    public int hashCode() { return key.hashCode(); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if ( ! (o instanceof ResultCacheKey)) return false;
+        return this.key.equals(((ResultCacheKey)o).key);
+    }
+
+    @Override
+    public String toString() {
+        return "result cache key [" + key + "]";
+    }
+
+}
@@ -0,0 +1,139 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.google.inject.Inject;
+import com.yahoo.component.chain.dependencies.After;
+import com.yahoo.component.chain.dependencies.Before;
+import com.yahoo.prelude.cache.Cache;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.result.HitGroup;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchchain.PhaseNames;
+import com.yahoo.statistics.Counter;
+import com.yahoo.statistics.Statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A searcher which caches complete results, such that repeated queries are answered without
+ * querying the content nodes at all.
+ * <p>
+ * Results are cached by query tree, ranking, summary class, offset and hits, grouping requests,
+ * the query profile variant the query resolves to and the query properties. Only results without errors
+ * and with full coverage are cached. The size of a cached result is estimated from its number of hits.
+ * <p>
+ * Cached results are invalidated when they are older than the configured time to live,
+ * when this is reconfigured, and when {@link #invalidate} is called.
+ * Queries with <code>nocache</code> set bypass the cache, and queries with <code>nocachewrite</code>
+ * set are not written to it.
+ *
+ * @author agent
+ */
+@After(PhaseNames.TRANSFORMED_QUERY)
+@Before(PhaseNames.BLENDED_RESULT)
+public class ResultCacheSearcher extends Searcher {
+
+    private static final CompoundName nocachewrite = new CompoundName("nocachewrite");
+
+    private final Cache<ResultCacheKey, Result> cache;
+    private final boolean cacheFilled;
+    private final long estimatedHitSizeBytes;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    /** The generation of the cached content. Incrementing it makes all currently cached results unreachable */
+    private final AtomicLong generation = new AtomicLong(0);
+
+    @Inject
+    public ResultCacheSearcher(ResultCacheConfig config, Statistics manager) {
+        long timeToLiveMillis = config.timeToLiveSeconds() < 0 ? -1 : config.timeToLiveSeconds() * 1000L;
+        this.cache = new Cache<>(config.maxSizeMegabytes() * 1024L * 1024L,
+                                 timeToLiveMillis,
+                                 config.maxEntrySizeBytes(),
+                                 manager);
+        this.cacheFilled = config.cacheFilled();
+        this.estimatedHitSizeBytes = config.estimatedHitSizeBytes();
+        this.cacheHits = new Counter("resultcache_hits", manager, false);
+        this.cacheMisses = new Counter("resultcache_misses", manager, false);
+    }
+
+    @Override
+    public Result search(Query query, Execution execution) {
+        if (query.getNoCache())
+            return execution.search(query);
+
+        long currentGeneration = generation.get();
+        ResultCacheKey key = ResultCacheKey.of(query, currentGeneration);
+        if (key == null)
+            return execution.search(query);
+
+        Result cached = cache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            query.trace("Returning cached result", false, 3);
+            return copyFor(query, cached);
+        }
+        cacheMisses.increment();
+
+        Result result = execution.search(query);
+        if (cacheFilled)
+            execution.fill(result, query.getPresentation().getSummary());
+        if (isCacheable(query, result) && generation.get() == currentGeneration) // cache a copy, as the caller may modify the result
+            cache.put(key, result.clone(), key.byteSize() + estimatedHitSizeBytes * countHits(result.hits()));
+        return result;
+    }
+
+    /**
+     * Removes all results currently in this cache, such that subsequent queries are evaluated anew.
+     * Results of queries started before this is called are not cached, as their keys are of the previous generation.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    private boolean isCacheable(Query query, Result result) {
+        if (query.properties().getBoolean(nocachewrite)) return false;
+        if (result.hits().getError() != null) return false;
+        Coverage coverage = result.getCoverage(false);
+        return coverage == null || coverage.getFull();
+    }
+
+    /** Returns a copy of the given cached result which belongs to the given query */
+    private Result copyFor(Query query, Result cached) {
+        Result copy = cached.clone();
+        copy.setQuery(query);
+        retag(copy.hits(), query);
+        if (cached.getCoverage(false) != null) {
+            Coverage coverage = new Coverage(0, 0, true, 0);
+            coverage.merge(cached.getCoverage(false));
+            copy.setCoverage(coverage);
+        }
+        return copy;
+    }
+
+    /** Returns the number of hits, including hit groups, in the given group and all its subgroups */
+    private int countHits(HitGroup hits) {
+        int count = 0;
+        for (Hit hit : hits.asList()) {
+            count++;
+            if (hit instanceof HitGroup)
+                count += countHits((HitGroup)hit);
+        }
+        return count;
+    }
+
+    private void retag(HitGroup hits, Query query) {
+        for (Hit hit : hits.asList()) {
+            hit.retag(query);
+            if (hit instanceof HitGroup)
+                retag((HitGroup)hit, query);
+        }
+    }
+
+}
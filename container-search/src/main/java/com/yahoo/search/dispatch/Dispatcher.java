@@ -9,6 +9,13 @@ import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.handler.VipStatus;
 import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.ChannelTimeoutException;
+import com.yahoo.fs4.ErrorPacket;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.fs4.QueryResultPacket;
+import com.yahoo.fs4.mplex.FS4Channel;
+import com.yahoo.fs4.mplex.InvalidChannelException;
 import com.yahoo.prelude.fastsearch.FS4ResourcePool;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.prelude.fastsearch.TimeoutException;
@@ -23,9 +30,12 @@ import com.yahoo.slime.Slime;
 import com.yahoo.data.access.Inspector;
 import com.yahoo.vespa.config.search.DispatchConfig;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -33,7 +43,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A dispatcher communicates with search nodes to (in the future) perform queries and (now) fill hits.
+ * A dispatcher communicates with search nodes to perform queries and fill hits.
+ * Queries are (when enabled) sent directly to all the nodes of a group over fs4, while hits are filled over rpc.
  * This class is multithread safe.
  *
  * @author bratseth
@@ -52,10 +63,18 @@ public class Dispatcher extends AbstractComponent {
 
     private final Compressor compressor = new Compressor();
 
+    /** Used to send queries directly to search nodes over fs4, or null if not available */
+    private final FS4ResourcePool fs4ResourcePool;
+
+    /** Whether queries should by default be fanned out directly to search nodes rather than going through fdispatch */
+    private final boolean useDirectFanout;
+
     public Dispatcher(DispatchConfig dispatchConfig, FS4ResourcePool fs4ResourcePool,
                       int containerClusterSize, VipStatus vipStatus) {
         this.client = new RpcClient();
         this.searchCluster = new SearchCluster(dispatchConfig, fs4ResourcePool, containerClusterSize, vipStatus);
+        this.fs4ResourcePool = fs4ResourcePool;
+        this.useDirectFanout = dispatchConfig.useDirectFanout();
 
         // Create node rpc connections, indexed by the legacy "partid", which allows us to bridge
         // between fs4 calls (for search) and rpc calls (for summary fetch)
@@ -71,11 +90,91 @@ public class Dispatcher extends AbstractComponent {
         this.searchCluster = null;
         this.nodeConnections = ImmutableMap.copyOf(nodeConnections);
         this.client = client;
+        this.fs4ResourcePool = null;
+        this.useDirectFanout = false;
     }
     
     /** Returns the search cluster this dispatches to */
     public SearchCluster searchCluster() { return searchCluster; }
 
+    /** Returns whether queries should by default be sent directly to all the nodes of a group */
+    public boolean usesDirectFanout() { return useDirectFanout; }
+
+    /**
+     * Sends a query packet to all the nodes of the given group and waits for their responses.
+     * The packets are sent to all nodes before waiting for any response, so the time spent
+     * is bounded by the slowest node, or the timeout of the query.
+     *
+     * @param group the group to send the query to
+     * @param queryPacket the query packet to send to each node, which must request all the hits
+     *                    needed to produce the final merged result
+     * @param query the query, used for timeout and tracing
+     * @return a response for each node in the group, in the order of the nodes in the group
+     */
+    public List<NodeResponse> search(SearchCluster.Group group, QueryPacket queryPacket, Query query) {
+        List<FS4Channel> channels = new ArrayList<>(group.nodes().size());
+        List<NodeResponse> responses = new ArrayList<>(group.nodes().size());
+        try {
+            for (SearchCluster.Node node : group.nodes()) {
+                FS4Channel channel = fs4ResourcePool.getBackend(node.hostname(), node.fs4port()).openChannel();
+                channel.setQuery(query);
+                channels.add(channel);
+                responses.add(send(node, channel, queryPacket));
+            }
+
+            for (int i = 0; i < responses.size(); i++) {
+                if (responses.get(i) != null) continue; // failed sending
+                responses.set(i, receive(group.nodes().get(i), channels.get(i), query));
+            }
+            return responses;
+        }
+        finally {
+            for (FS4Channel channel : channels)
+                channel.close();
+        }
+    }
+
+    /** Sends a query packet to a node, and returns an error response if this fails, and null otherwise */
+    private NodeResponse send(SearchCluster.Node node, FS4Channel channel, QueryPacket queryPacket) {
+        try {
+            if ( ! channel.sendPacket(queryPacket))
+                return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError("Could not reach " + node));
+            return null;
+        }
+        catch (InvalidChannelException e) {
+            return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError("Invalid channel to " + node));
+        }
+        catch (IllegalStateException e) {
+            return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError("Illegal state in FS4 talking to " +
+                                                                                             node + ": " + e.getMessage()));
+        }
+        catch (IOException e) {
+            return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError("IO error sending query to " +
+                                                                                             node + ": " + e.getMessage()));
+        }
+    }
+
+    private NodeResponse receive(SearchCluster.Node node, FS4Channel channel, Query query) {
+        try {
+            BasicPacket[] packets = channel.receivePackets(Math.max(1, query.getTimeLeft()), 1);
+            if (packets.length == 0)
+                return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError(node + " got no packets back"));
+            if (packets[0] instanceof QueryResultPacket)
+                return NodeResponse.fromResult(node, (QueryResultPacket)packets[0]);
+            if (packets[0] instanceof ErrorPacket && ((ErrorPacket)packets[0]).getErrorCode() == 8)
+                return NodeResponse.fromError(node, ErrorMessage.createTimeout("Query timed out in " + node));
+            return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError("Received " + packets[0] +
+                                                                                             " from " + node +
+                                                                                             " when expecting a query result"));
+        }
+        catch (ChannelTimeoutException e) {
+            return NodeResponse.fromError(node, ErrorMessage.createTimeout("Timeout while waiting for " + node));
+        }
+        catch (InvalidChannelException e) {
+            return NodeResponse.fromError(node, ErrorMessage.createBackendCommunicationError("Invalid channel for " + node));
+        }
+    }
+
     /** Fills the given summary class by sending RPC requests to the right search nodes */
     public void fill(Result result, String summaryClass, CompressionType compression) {
         try {
@@ -149,6 +248,40 @@ public class Dispatcher extends AbstractComponent {
             nodeConnection.close();
     }
 
+    /** The response of a single node to a query: Either a query result packet or an error */
+    public static class NodeResponse {
+
+        private final SearchCluster.Node node;
+
+        // One of these will be non empty and the other not
+        private final Optional<QueryResultPacket> result;
+        private final Optional<ErrorMessage> error;
+
+        private NodeResponse(SearchCluster.Node node, Optional<QueryResultPacket> result, Optional<ErrorMessage> error) {
+            this.node = node;
+            this.result = result;
+            this.error = error;
+        }
+
+        public static NodeResponse fromResult(SearchCluster.Node node, QueryResultPacket result) {
+            return new NodeResponse(node, Optional.of(result), Optional.empty());
+        }
+
+        public static NodeResponse fromError(SearchCluster.Node node, ErrorMessage error) {
+            return new NodeResponse(node, Optional.empty(), Optional.of(error));
+        }
+
+        /** Returns the node which produced this response */
+        public SearchCluster.Node node() { return node; }
+
+        /** Returns the result packet, or empty if there is an error */
+        public Optional<QueryResultPacket> result() { return result; }
+
+        /** Returns the error, or empty if there is a result */
+        public Optional<ErrorMessage> error() { return error; }
+
+    }
+
     /** Receiver of the responses to a set of getDocsums requests */
     public static class GetDocsumsResponseReceiver {
 
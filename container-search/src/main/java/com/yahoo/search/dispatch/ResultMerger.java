@@ -0,0 +1,104 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.google.common.annotations.Beta;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the results returned from each of the nodes of a group into the single result
+ * which would have been returned by fdispatch for the same query.
+ * The partial results must contain the hits from offset 0 up to the offset+hits requested by the query.
+ *
+ * Nodes which failed to respond do not cause an error unless all nodes failed, but are reflected
+ * in the coverage of the merged result as active documents which were not searched.
+ *
+ * This class is not multithread safe.
+ *
+ * @author agent
+ */
+@Beta
+public class ResultMerger {
+
+    private final Query query;
+    private final List<Result> partialResults = new ArrayList<>();
+    private final List<ErrorMessage> errors = new ArrayList<>();
+
+    private long missingActiveDocuments = 0;
+    private boolean timedOut = false;
+
+    /** Creates a merger producing a result for the given query */
+    public ResultMerger(Query query) {
+        this.query = query;
+    }
+
+    /** Adds the result of a node which responded */
+    public void add(Result partialResult) {
+        partialResults.add(partialResult);
+    }
+
+    /** Adds a node which did not respond successfully */
+    public void addFailed(SearchCluster.Node node, ErrorMessage error) {
+        missingActiveDocuments += node.getActiveDocuments();
+        if (error.getCode() == ErrorMessage.timeoutCode)
+            timedOut = true;
+        errors.add(error);
+    }
+
+    /** Returns the merged result of the results and failures added to this */
+    public Result merged() {
+        Result result = new Result(query);
+        if (partialResults.isEmpty()) {
+            for (ErrorMessage error : errors)
+                result.hits().addError(error);
+            return result;
+        }
+
+        long totalHitCount = 0;
+        long docs = 0, active = missingActiveDocuments, soonActive = missingActiveDocuments;
+        int degradedReason = timedOut ? degradedByTimeout : 0;
+        boolean hasCoverage = missingActiveDocuments > 0;
+        for (Result partialResult : partialResults) {
+            totalHitCount += partialResult.getTotalHitCount();
+            Coverage coverage = partialResult.getCoverage(false);
+            if (coverage != null) {
+                hasCoverage = true;
+                docs += coverage.getDocs();
+                active += coverage.getActive();
+                soonActive += coverage.getSoonActive();
+                degradedReason |= degradedReasonOf(coverage);
+            }
+            for (Hit hit : partialResult.hits().asList())
+                result.hits().add(hit); // error hits are merged by the hit group
+        }
+        result.setTotalHitCount(totalHitCount);
+        if (hasCoverage)
+            result.setCoverage(new Coverage(docs, active).setSoonActive(soonActive).setDegradedReason(degradedReason));
+
+        result.hits().sort();
+        result.hits().trim(query.getOffset(), query.getHits());
+        if ( ! errors.isEmpty())
+            query.trace("Merged a partial result: " + errors.size() + " of " + (errors.size() + partialResults.size()) +
+                        " nodes failed, first error: " + errors.get(0), false, 2);
+        return result;
+    }
+
+    private static final int degradedByMatchPhase = 1;
+    private static final int degradedByTimeout = 2;
+    private static final int degradedByAdaptiveTimeout = 4;
+
+    private static int degradedReasonOf(Coverage coverage) {
+        int reason = 0;
+        if (coverage.isDegradedByMatchPhase()) reason |= degradedByMatchPhase;
+        if (coverage.isDegradedByTimeout()) reason |= degradedByTimeout;
+        if (coverage.isDegradedByAdapativeTimeout()) reason |= degradedByAdaptiveTimeout;
+        return reason;
+    }
+
+}
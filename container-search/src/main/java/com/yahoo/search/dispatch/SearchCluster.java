@@ -31,6 +31,7 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,6 +55,9 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
     private final ClusterMonitor<Node> clusterMonitor;
     private final VipStatus vipStatus;
 
+    /** The index of the next group to try when selecting a group to fan a query out to */
+    private final AtomicInteger nextGroup = new AtomicInteger(0);
+
     /**
      * A search node on this local machine having the entire corpus, which we therefore
      * should prefer to dispatch directly to, or empty if there is no such local search node.
@@ -138,7 +142,7 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
     private static ImmutableList<Node> toNodes(DispatchConfig dispatchConfig) {
         ImmutableList.Builder<Node> nodesBuilder = new ImmutableList.Builder<>();
         for (DispatchConfig.Node node : dispatchConfig.node())
-            nodesBuilder.add(new Node(node.host(), node.fs4port(), node.group()));
+            nodesBuilder.add(new Node(node.key(), node.host(), node.fs4port(), node.group()));
         return nodesBuilder.build();
     }
 
@@ -177,6 +181,23 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
         return directDispatchTarget;
     }
 
+    /**
+     * Returns a group which can serve a query alone, that is, all of whose nodes are working and which has
+     * sufficient coverage. Groups are selected round-robin. Returns empty if no group can currently be used.
+     */
+    public Optional<Group> groupForQuery() {
+        ImmutableList<Group> candidates = groups.values().asList();
+        if (candidates.isEmpty()) return Optional.empty();
+
+        int start = Math.abs(nextGroup.getAndIncrement() % candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Group group = candidates.get((start + i) % candidates.size());
+            if (group.hasSufficientCoverage() && group.isFullyWorking())
+                return Optional.of(group);
+        }
+        return Optional.empty();
+    }
+
     /** Used by the cluster monitor to manage node status */
     @Override
     public void working(Node node) {
@@ -343,6 +364,13 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
             return this.activeDocuments.get();
         }
 
+        /** Returns whether all the nodes of this group are currently responding to requests */
+        public boolean isFullyWorking() {
+            for (Node node : nodes)
+                if ( ! node.isWorking()) return false;
+            return true;
+        }
+
         @Override
         public String toString() { return "search group " + id; }
 
@@ -361,6 +389,7 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
     /** A node in a search cluster. This class is multithread safe. */
     public static class Node {
 
+        private final int key;
         private final String hostname;
         private final int fs4port;
         private final int group;
@@ -368,12 +397,21 @@ public class SearchCluster implements NodeManager<SearchCluster.Node> {
         private final AtomicBoolean working = new AtomicBoolean(true);
         private final AtomicLong activeDocuments = new AtomicLong(0);
 
+        /** For testing */
         public Node(String hostname, int fs4port, int group) {
+            this(0, hostname, fs4port, group);
+        }
+
+        public Node(int key, String hostname, int fs4port, int group) {
+            this.key = key;
             this.hostname = hostname;
             this.fs4port = fs4port;
             this.group = group;
         }
 
+        /** Returns the unique key of this node, which is also the distribution key of the hits it returns */
+        public int key() { return key; }
+
         public String hostname() { return hostname; }
 
         public int fs4port() { return fs4port; }
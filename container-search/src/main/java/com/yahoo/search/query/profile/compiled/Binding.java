@@ -4,6 +4,7 @@ package com.yahoo.search.query.profile.compiled;
 import com.yahoo.search.query.profile.DimensionBinding;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -75,6 +76,11 @@ public class Binding implements Comparable<Binding> {
         this.hashCode = bindingHash;
     }
 
+    /** Adds the names of the dimensions bound by this to the given collection */
+    void addDimensionsTo(Collection<String> dimensionNames) {
+        Collections.addAll(dimensionNames, dimensions);
+    }
+
     /** Returns true only if this binding is null (contains no values for its dimensions (if any) */
     public boolean isNull() { return dimensions.length == 0; }
 
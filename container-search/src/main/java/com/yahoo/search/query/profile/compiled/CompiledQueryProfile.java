@@ -9,9 +9,15 @@ import com.yahoo.search.query.profile.QueryProfileProperties;
 import com.yahoo.search.query.profile.SubstituteString;
 import com.yahoo.search.query.profile.types.QueryProfileType;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,6 +30,9 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
 
     private static final Pattern namePattern=Pattern.compile("[$a-zA-Z_/][-$a-zA-Z0-9_/()]*");
 
+    /** The max total number of values to cache in resolved variants of a profile */
+    private static final int maxCachedValues = 1 << 20;
+
     private final CompiledQueryProfileRegistry registry;
 
     /** The type of this, or null if none */
@@ -41,6 +50,24 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
     /** Values which are not overridable in this. Used as a set. */
     private final DimensionalMap<CompoundName, Object> unoverridables;
 
+    /** The names of the dimensions any value in this varies by, sorted alphabetically */
+    private final List<String> dimensions;
+
+    /** The values of the entries of this, by the index used in the prefix tree */
+    private final DimensionalValue<Object>[] values;
+
+    /** The keys of the entries of this, by their prefixes */
+    private final PrefixTree prefixes = new PrefixTree();
+
+    /**
+     * The values of all entries resolved in each variant (combination of dimension values) seen so far,
+     * by the variant dimension values
+     */
+    private final Map<List<String>, Object[]> variants = new ConcurrentHashMap<>();
+
+    /** The max number of variants to keep in variants */
+    private final int maxCachedVariants;
+
     /**
      * Creates a new query profile from an id.
      */
@@ -59,6 +86,9 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
         this.types = types;
         this.references = references;
         this.unoverridables = unoverridables;
+        this.dimensions = dimensionsOf(entries);
+        this.values = indexValues(entries, prefixes);
+        this.maxCachedVariants = Math.max(16, maxCachedValues / Math.max(1, values.length));
         if ( ! id.isAnonymous())
             validateName(id.getName());
     }
@@ -68,6 +98,30 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
     /** Returns the registry this belongs to, or null if none (in which case runtime profile reference assignment won't work) */
     public CompiledQueryProfileRegistry getRegistry() { return registry; }
 
+    private static List<String> dimensionsOf(DimensionalMap<CompoundName, Object> entries) {
+        Set<String> dimensions = new TreeSet<>();
+        for (Map.Entry<CompoundName, DimensionalValue<Object>> entry : entries.entrySet())
+            entry.getValue().addDimensionsTo(dimensions);
+        return Collections.unmodifiableList(new ArrayList<>(dimensions));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DimensionalValue<Object>[] indexValues(DimensionalMap<CompoundName, Object> entries, PrefixTree prefixes) {
+        DimensionalValue<Object>[] values = new DimensionalValue[entries.entrySet().size()];
+        int index = 0;
+        for (Map.Entry<CompoundName, DimensionalValue<Object>> entry : entries.entrySet()) {
+            values[index] = entry.getValue();
+            prefixes.add(entry.getKey(), index++);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the names of the dimensions which the values of this varies by, in alphabetical order.
+     * Two requests with the same values for these dimensions resolve to the same variant of this.
+     */
+    public List<String> getDimensions() { return dimensions; }
+
     /** Returns the type of this or null if it has no type */
     // TODO: Move into below
     public QueryProfileType getType() { return type; }
@@ -129,20 +183,49 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
      */
     public Map<String, Object> listValues(CompoundName prefix, Map<String,String> context, Properties substitution) {
         Map<String, Object> values = new HashMap<>();
-        for (Map.Entry<CompoundName, DimensionalValue<Object>> entry : entries.entrySet()) {
-            if ( entry.getKey().size() <= prefix.size()) continue;
-            if ( ! entry.getKey().hasPrefix(prefix)) continue;
+        PrefixTree.Node keys = prefixes.get(prefix);
+        if (keys == null) return values;
 
-            Object value = entry.getValue().get(context);
+        Object[] resolved = resolve(context);
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = resolved != null ? resolved[keys.index(i)] : this.values[keys.index(i)].get(context);
             if (value == null) continue;
 
             value = substitute(value, context, substitution);
-            CompoundName suffixName = entry.getKey().rest(prefix.size());
-            values.put(suffixName.toString(), value);
+            values.put(keys.suffix(i), value);
         }
         return values;
     }
 
+    /**
+     * Returns the values of all the entries of this in the variant given by the context, by the index of their key,
+     * or null if the variant is not cached and too many variants are cached already.
+     * The values are resolved and cached the first time a variant is seen.
+     */
+    private Object[] resolve(Map<String, String> context) {
+        List<String> variant = variantOf(context);
+        Object[] resolved = variants.get(variant);
+        if (resolved != null) return resolved;
+        if (variants.size() >= maxCachedVariants) return null;
+
+        resolved = new Object[values.length];
+        for (int i = 0; i < values.length; i++)
+            resolved[i] = values[i].get(context);
+        Object[] existing = variants.putIfAbsent(variant, resolved);
+        return existing != null ? existing : resolved;
+    }
+
+    /** Returns the values of the dimensions of this in the given context, which determines the variant it resolves to */
+    private List<String> variantOf(Map<String, String> context) {
+        if (dimensions.isEmpty()) return Collections.emptyList();
+        String[] variant = new String[dimensions.size()];
+        if (context != null) {
+            for (int i = 0; i < variant.length; i++)
+                variant[i] = context.get(dimensions.get(i));
+        }
+        return Arrays.asList(variant);
+    }
+
     public final Object get(String name) {
         return get(name, Collections.<String,String>emptyMap());
     }
@@ -4,6 +4,7 @@ package com.yahoo.search.query.profile.compiled;
 import com.yahoo.search.query.profile.DimensionBinding;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -48,6 +49,12 @@ public class DimensionalValue<VALUE> {
 
     public boolean isEmpty() { return values.isEmpty(); }
 
+    /** Adds the names of the dimensions which the variants of this depend on to the given collection */
+    void addDimensionsTo(Collection<String> dimensionNames) {
+        for (Value<VALUE> value : values)
+            value.binding().addDimensionsTo(dimensionNames);
+    }
+
     @Override
     public String toString() {
         return values.toString();
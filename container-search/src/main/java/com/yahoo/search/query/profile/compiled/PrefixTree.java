@@ -0,0 +1,71 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.profile.compiled;
+
+import com.yahoo.processing.request.CompoundName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A tree of the components of a set of compound names, where each node lists the names below it,
+ * such that the names having a given prefix can be found without testing every name.
+ * Each name is identified by an index given when it is added.
+ * <p>
+ * This is mutable while it is built and must not be changed once it is shared.
+ *
+ * @author agent
+ */
+final class PrefixTree {
+
+    private final Node root = new Node();
+
+    /** Adds a name, which will be listed by each of its prefixes, including the empty prefix */
+    void add(CompoundName name, int index) {
+        Node node = root;
+        for (int i = 0; i < name.size(); i++) {
+            node.add(name.rest(i).toString(), index);
+            node = node.child(name.get(i));
+        }
+    }
+
+    /** Returns the node listing the names which are longer than and starts by the given prefix, or null if none */
+    Node get(CompoundName prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.size() && node != null; i++)
+            node = node.children.get(prefix.get(i));
+        return node;
+    }
+
+    /** The names below a prefix */
+    static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<String> suffixes = new ArrayList<>();
+        private int[] indexes = new int[4];
+
+        private Node child(String component) {
+            return children.computeIfAbsent(component, __ -> new Node());
+        }
+
+        private void add(String suffix, int index) {
+            if (suffixes.size() == indexes.length)
+                indexes = Arrays.copyOf(indexes, indexes.length * 2);
+            indexes[suffixes.size()] = index;
+            suffixes.add(suffix);
+        }
+
+        /** Returns the number of names below this */
+        int size() { return suffixes.size(); }
+
+        /** Returns the part of the i'th name below this which follows the prefix of this node */
+        String suffix(int i) { return suffixes.get(i); }
+
+        /** Returns the index of the i'th name below this */
+        int index(int i) { return indexes[i]; }
+
+    }
+
+}
@@ -684,6 +684,15 @@ public class Hit extends ListenableFreezableClass implements Data, Comparable<Hi
         }
     }
 
+    /**
+     * Sets the query which produced this hit, also if it is already set.
+     * This is used when copies of hits produced by one query are returned to another, e.g from a cache,
+     * such that subsequent fill operations are done in the context of the new query.
+     */
+    public final void retag(Query query) {
+        this.query = query;
+    }
+
     // TODO: Deprecate
     /**
      * Returns a field of this hit XML escaped and without token
@@ -180,4 +180,43 @@ public class CacheTestCase extends TestCase {
         assertNotNull(cache.get("two"));
     }
 
+    public void testRemove() {
+        Cache cache=new Cache(10*1024,3600, 100*1024, Statistics.nullImplementation);
+        assertTrue(cache.put("foo", "bar"));
+        long sizeBytes = cache.sizeBytes();
+        assertTrue(cache.put("hey", "ho"));
+        assertTrue(cache.remove("hey"));
+        assertFalse(cache.remove("hey"));
+        assertNull(cache.get("hey"));
+        assertEquals(1, cache.size());
+        assertEquals(sizeBytes, cache.sizeBytes());
+    }
+
+    public void testPutExpiredKeyRepeatedly() throws InterruptedException {
+        Cache cache=new Cache(10*1024,1, 10000, Statistics.nullImplementation); // 10 KB, 1ms expire
+        byte[] twoKB = new byte[2*1024];
+        assertTrue(cache.put("two", twoKB, 2*1024));
+        for (int i = 0; i < 100; i++) {
+            Thread.sleep(2);
+            assertNull(cache.get("foo"));
+            assertTrue(cache.put("foo", "bar", 1024));
+        }
+        assertTrue(cache.containsKey("two"));
+        assertEquals(2, cache.size());
+        assertEquals(3*1024, cache.sizeBytes());
+    }
+
+    public void testClear() {
+        Cache cache=new Cache(10*1024,3600, 100*1024, Statistics.nullImplementation);
+        assertTrue(cache.put("foo", "bar", 1024));
+        assertTrue(cache.put("hey", "ho", 1024));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.sizeBytes());
+        assertNull(cache.get("foo"));
+        for (int i = 0; i < 10; i++)
+            assertTrue(cache.put("key" + i, "value" + i, 1000));
+        assertEquals(10, cache.size());
+    }
+
 }
@@ -10,6 +10,10 @@ import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.searchchain.Execution;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Tests the Hashing/failover/whatever functionality.
  *
@@ -125,4 +129,64 @@ public class HasherTestCase extends junit.framework.TestCase {
         assertTrue(hasher.select(0).isLocalDispatching());
     }
 
+    public void testSkipTriedNodes() {
+        Hasher hasher = new Hasher();
+        VespaBackEndSearcher v0 = new MockBackend();
+        VespaBackEndSearcher v1 = new MockBackend();
+        VespaBackEndSearcher v2 = new MockBackend();
+        v2.setLocalDispatching(false);
+        hasher.add(v0);
+        hasher.add(v1);
+        hasher.add(v2);
+
+        List<VespaBackEndSearcher> tried = new ArrayList<>();
+        tried.add(hasher.select(0, tried));
+        tried.add(hasher.select(1, tried));
+        assertTrue(tried.containsAll(Arrays.asList(v0, v1)));
+        assertSame("Remote nodes are used when all local nodes are tried", v2, hasher.select(2, tried));
+        tried.add(v2);
+        assertNull(hasher.select(3, tried));
+    }
+
+    public void testLeastOutstanding() {
+        Hasher hasher = new Hasher(Hasher.Strategy.LEAST_OUTSTANDING);
+        VespaBackEndSearcher v0 = new MockBackend();
+        VespaBackEndSearcher v1 = new MockBackend();
+        hasher.add(v0);
+        hasher.add(v1);
+
+        hasher.started(v0);
+        hasher.started(v0);
+        hasher.started(v1);
+        assertEquals(2, hasher.outstanding(v0));
+        for (int i = 0; i < 10; i++)
+            assertSame(v1, hasher.select(0));
+
+        hasher.finished(v0, 1000);
+        hasher.finished(v0, 1000);
+        assertEquals(0, hasher.outstanding(v0));
+        for (int i = 0; i < 10; i++)
+            assertSame(v0, hasher.select(0));
+    }
+
+    public void testPowerOfTwoChoices() {
+        Hasher hasher = new Hasher(Hasher.Strategy.POWER_OF_TWO_CHOICES);
+        VespaBackEndSearcher slow = new MockBackend();
+        VespaBackEndSearcher fast = new MockBackend();
+        hasher.add(slow);
+        hasher.add(fast);
+
+        hasher.started(slow);
+        hasher.finished(slow, 100 * 1000 * 1000);
+        hasher.started(fast);
+        hasher.finished(fast, 1000 * 1000);
+        assertEquals(1000 * 1000, hasher.averageLatency(fast), 0.1);
+        for (int i = 0; i < 10; i++)
+            assertSame(fast, hasher.select(0));
+
+        hasher.started(fast);
+        hasher.finished(fast, 3000 * 1000);
+        assertEquals("The latest sample has weight 0.1", 1200 * 1000, hasher.averageLatency(fast), 0.1);
+    }
+
 }
@@ -21,7 +21,9 @@ import org.junit.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 public class SlimeSummaryTestCase {
@@ -144,6 +146,24 @@ public class SlimeSummaryTestCase {
         assertEquals(tensor2, hit.getField("tensor_field2"));
     }
 
+    @Test
+    public void testStringFieldsAreDecodedOnAccess() {
+        String summary_cf = "file:src/test/java/com/yahoo/prelude/fastsearch/summary.cfg";
+        DocsumDefinitionSet set = createDocsumDefinitionSet(summary_cf);
+        byte[] docsum = makeDocsum(Tensor.from("tensor(x{}):{}"), Tensor.from("tensor(x{}):{}"));
+        FastHit hit = new FastHit();
+        set.lazyDecode("default", docsum, hit);
+        assertTrue(hit.fieldIsNotDecoded("string_field"));
+        assertTrue(hit.fieldIsNotDecoded("longstring_field"));
+        assertTrue(hit.fieldIsNotDecoded("xmlstring_field"));
+        assertFalse(hit.fieldIsNotDecoded("integer_field"));
+
+        assertEquals("longstring_value", new String(hit.fetchFieldAsUtf8("longstring_field").getUtf8(), StandardCharsets.UTF_8));
+        assertTrue(hit.fieldIsNotDecoded("longstring_field"));
+        assertThat(hit.getField("longstring_field"), equalTo((Object)"longstring_value"));
+        assertFalse(hit.fieldIsNotDecoded("longstring_field"));
+    }
+
     private DocsumDefinitionSet createDocsumDefinitionSet(String configID) {
         DocumentdbInfoConfig config = new ConfigGetter<>(DocumentdbInfoConfig.class).getConfig(configID);
         return new DocsumDefinitionSet(config.documentdb(0));
@@ -0,0 +1,133 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.fastsearch.test;
+
+import com.yahoo.fs4.BasicPacket;
+import com.yahoo.fs4.BufferTooSmallException;
+import com.yahoo.fs4.PacketDecoder;
+import com.yahoo.fs4.QueryPacket;
+import com.yahoo.prelude.fastsearch.CacheKey;
+import com.yahoo.prelude.fastsearch.ConcurrentPacketCache;
+import com.yahoo.prelude.fastsearch.PacketWrapper;
+import com.yahoo.search.Query;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the concurrent packet cache
+ *
+ * @author agent
+ */
+public class ConcurrentPacketCacheTestCase {
+
+    private static final int length = PacketCacheTestCase.length;
+    private static final int keySize = 30;
+
+    private static final CacheKey key1 = new CacheKey(QueryPacket.create(new Query("/?query=key1")));
+    private static final CacheKey key2 = new CacheKey(QueryPacket.create(new Query("/?query=key2")));
+    private static final CacheKey key3 = new CacheKey(QueryPacket.create(new Query("/?query=key3")));
+
+    @Test
+    public void testPutAndGet() throws BufferTooSmallException {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, (length + keySize) * 3 - 1, 1e64);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry(key1));
+        assertNotNull(cache.get(key1));
+        assertEquals(keySize + length, cache.totalPacketSize());
+
+        cache.put(key2, createCacheEntry(key2));
+        cache.put(key1, createCacheEntry(key1));
+        assertNotNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+        assertEquals(2, cache.size());
+        assertEquals((keySize + length) * 2, cache.totalPacketSize());
+    }
+
+    @Test
+    public void testAdmissionAndEviction() throws BufferTooSmallException {
+        // room for two entries
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, (length + keySize) * 3 - 1, 1e64);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry(key1));
+        cache.put(key2, createCacheEntry(key2));
+        assertNotNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+
+        cache.put(key3, createCacheEntry(key3));
+        assertEquals("key3 has never been requested, so it does not replace key1", 1, cache.rejections());
+
+        assertNull(cache.get(key3));
+        assertNull(cache.get(key3));
+        cache.put(key3, createCacheEntry(key3));
+        assertEquals("key3 is now more frequently requested than key1, which is evicted", 1, cache.evictions());
+
+        assertNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+        assertNotNull(cache.get(key3));
+        assertEquals((keySize + length) * 2, cache.totalPacketSize());
+
+        assertEquals(4, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testTooLargeItem() throws BufferTooSmallException {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, 100, 1e64);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry(null));
+        assertNull(cache.get(key1)); // 68 is more than 50% of the size
+        assertEquals(0, cache.totalPacketSize());
+    }
+
+    @Test
+    public void testClearingAndRemoving() throws BufferTooSmallException {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, length * 2, 1e64);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry(null));
+        cache.put(key2, createCacheEntry(null));
+        cache.remove(key1);
+        assertNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+        assertEquals(length, cache.totalPacketSize());
+
+        cache.clear();
+        assertNull(cache.get(key2));
+        assertEquals(0, cache.totalPacketSize());
+    }
+
+    @Test
+    public void testEntryAging() throws BufferTooSmallException {
+        ConcurrentPacketCache cache = new ConcurrentPacketCache(0, 1024, 5 * 3600);
+        cache.setMaxCacheItemPercentage(50);
+
+        cache.put(key1, createCacheEntry(null), System.currentTimeMillis() - 10 * 3600 * 1000);
+        cache.put(key2, createCacheEntry(null), System.currentTimeMillis());
+        assertNull(cache.get(key1));
+        assertNotNull(cache.get(key2));
+    }
+
+    @Test
+    public void testSegmenting() {
+        assertEquals(16, new ConcurrentPacketCache(64, 0, 1e64, 16).segmentCount());
+        assertEquals(16, new ConcurrentPacketCache(64, 0, 1e64, 9).segmentCount());
+        assertEquals("Small caches are not segmented", 1, new ConcurrentPacketCache(0, 1024, 1e64, 16).segmentCount());
+        assertEquals(Integer.MAX_VALUE, new ConcurrentPacketCache(2048, 0, 1e64, 16).getByteCapacity());
+    }
+
+    private PacketWrapper createCacheEntry(CacheKey key) throws BufferTooSmallException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        data.put(PacketCacheTestCase.queryResultPacketData);
+        data.flip();
+        BasicPacket[] content = new BasicPacket[] { PacketDecoder.extractPacket(data).packet };
+        return new PacketWrapper(key, content);
+    }
+
+}
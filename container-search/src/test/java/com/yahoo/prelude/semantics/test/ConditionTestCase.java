@@ -6,6 +6,8 @@ import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.engine.Evaluation;
 import com.yahoo.prelude.semantics.rule.ChoiceCondition;
 import com.yahoo.prelude.semantics.rule.ConditionReference;
+import com.yahoo.prelude.semantics.rule.EllipsisCondition;
+import com.yahoo.prelude.semantics.rule.LiteralCondition;
 import com.yahoo.prelude.semantics.rule.NamedCondition;
 import com.yahoo.prelude.semantics.rule.ProductionList;
 import com.yahoo.prelude.semantics.rule.ProductionRule;
@@ -13,6 +15,9 @@ import com.yahoo.prelude.semantics.rule.ReplacingProductionRule;
 import com.yahoo.prelude.semantics.rule.SequenceCondition;
 import com.yahoo.prelude.semantics.rule.TermCondition;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 /**
  * @author bratseth
  */
@@ -75,4 +80,21 @@ public class ConditionTestCase extends junit.framework.TestCase {
         assertTrue(query + "  matches " + reference,reference.matches(new Evaluation(query).freshRuleEvaluation()));
     }
 
+    public void testTriggerTerms() {
+        ChoiceCondition choice=new ChoiceCondition();
+        choice.addCondition(new TermCondition("foo"));
+        choice.addCondition(new TermCondition("bar"));
+        assertEquals(new HashSet<>(Arrays.asList("foo","bar")),choice.triggerTerms());
+
+        SequenceCondition sequence=new SequenceCondition();
+        sequence.addCondition(new EllipsisCondition());
+        sequence.addCondition(choice);
+        sequence.addCondition(new TermCondition("baz"));
+        assertEquals(new HashSet<>(Arrays.asList("baz")),sequence.triggerTerms());
+
+        choice.addCondition(new LiteralCondition("always"));
+        assertNull(choice.triggerTerms());
+        assertNull(new EllipsisCondition().triggerTerms());
+    }
+
 }
@@ -0,0 +1,49 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.test;
+
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.prelude.semantics.engine.RuleIndex;
+
+/**
+ * Tests that evaluating only the rules triggered by the terms of the query produces the same result
+ * as evaluating all rules
+ *
+ * @author agent
+ */
+public class RuleIndexTestCase extends RuleBaseAbstractTestCase {
+
+    public RuleIndexTestCase(String name) {
+        super(name,"ruleindex.sr");
+    }
+
+    public void testIndex() throws Exception {
+        RuleBase ruleBase=RuleBase.createFromFile(root + "ruleindex.sr",null);
+        RuleIndex index=ruleBase.ruleIndex();
+        assertEquals(5,index.rules().size());
+        assertEquals(1,index.untriggeredRuleCount());
+    }
+
+    public void testProductionTriggersLaterRule() {
+        assertSemantics("third","first");
+        assertSemantics("third","second");
+    }
+
+    public void testReferencedConditionTriggersRule() {
+        assertSemantics("petfood","cat food");
+        assertSemantics("petfood","dog food");
+        assertSemantics("AND bird food","bird food");
+    }
+
+    public void testStemmedTermTriggersRule() {
+        assertSemantics("petfood","dogs food");
+    }
+
+    public void testTermAfterEllipsisTriggersRule() {
+        assertSemantics("AND my kennel shelter","my kennel");
+    }
+
+    public void testUntriggeredRule() {
+        assertSemantics("AND dog pets","dog&ranking=pets");
+    }
+
+}
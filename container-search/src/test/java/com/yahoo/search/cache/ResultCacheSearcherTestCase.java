@@ -0,0 +1,154 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.cache;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.statistics.Statistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the result cache searcher
+ *
+ * @author agent
+ */
+public class ResultCacheSearcherTestCase {
+
+    @Test
+    public void testCaching() {
+        CountingSearcher backend = new CountingSearcher();
+        ResultCacheSearcher cache = createCache();
+        Chain<Searcher> chain = new Chain<>(cache, backend);
+
+        Result first = search("?query=foo", chain);
+        assertEquals(1, backend.searches);
+        assertEquals(2, first.getHitCount());
+
+        Query query = new Query("?query=foo");
+        Result second = new Execution(chain, Execution.Context.createContextStub()).search(query);
+        assertEquals("Served from the cache", 1, backend.searches);
+        assertEquals(2, second.getHitCount());
+        assertEquals("foo:0", second.hits().get(0).getId().toString());
+        assertSame(query, second.getQuery());
+        assertSame("Hits are retagged to the new query", query, second.hits().get(0).getQuery());
+        assertNotSame(first.hits().get(0), second.hits().get(0));
+
+        search("?query=foo&hits=5", chain);
+        search("?query=bar", chain);
+        assertEquals("Different queries are not served from the cache", 3, backend.searches);
+    }
+
+    @Test
+    public void testPropertiesArePartOfTheKey() {
+        CountingSearcher backend = new CountingSearcher();
+        Chain<Searcher> chain = new Chain<>(createCache(), backend);
+
+        search("?query=foo&custom=1", chain);
+        search("?query=foo&custom=1", chain);
+        assertEquals(1, backend.searches);
+        search("?query=foo&custom=2", chain);
+        assertEquals("Request properties are part of the key", 2, backend.searches);
+
+        Query query = new Query("?query=foo&custom=1");
+        query.properties().set("custom", "3");
+        new Execution(chain, Execution.Context.createContextStub()).search(query);
+        assertEquals("Properties set by searchers are part of the key", 3, backend.searches);
+    }
+
+    @Test
+    public void testQueriesWithObjectPropertiesAreNotCached() {
+        CountingSearcher backend = new CountingSearcher();
+        Chain<Searcher> chain = new Chain<>(createCache(), backend);
+
+        for (int i = 0; i < 2; i++) {
+            Query query = new Query("?query=foo");
+            query.properties().set("custom", new Object());
+            new Execution(chain, Execution.Context.createContextStub()).search(query);
+        }
+        assertEquals(2, backend.searches);
+    }
+
+    @Test
+    public void testNoCache() {
+        CountingSearcher backend = new CountingSearcher();
+        Chain<Searcher> chain = new Chain<>(createCache(), backend);
+
+        search("?query=foo&nocache=true", chain);
+        search("?query=foo&nocache=true", chain);
+        assertEquals(2, backend.searches);
+
+        search("?query=foo&nocachewrite=true", chain);
+        search("?query=foo", chain);
+        assertEquals("nocachewrite prevents writing the result", 4, backend.searches);
+    }
+
+    @Test
+    public void testInvalidation() {
+        CountingSearcher backend = new CountingSearcher();
+        ResultCacheSearcher cache = createCache();
+        Chain<Searcher> chain = new Chain<>(cache, backend);
+
+        search("?query=foo", chain);
+        search("?query=foo", chain);
+        assertEquals(1, backend.searches);
+
+        cache.invalidate();
+        search("?query=foo", chain);
+        assertEquals(2, backend.searches);
+    }
+
+    @Test
+    public void testIncompleteResultsAreNotCached() {
+        CountingSearcher backend = new CountingSearcher();
+        Chain<Searcher> chain = new Chain<>(createCache(), backend);
+
+        search("?query=error", chain);
+        search("?query=error", chain);
+        assertEquals(2, backend.searches);
+
+        search("?query=partial", chain);
+        search("?query=partial", chain);
+        assertEquals(4, backend.searches);
+    }
+
+    private ResultCacheSearcher createCache() {
+        ResultCacheConfig config = new ResultCacheConfig(new ResultCacheConfig.Builder().maxEntrySizeBytes(10 * 1024 * 1024));
+        return new ResultCacheSearcher(config, Statistics.nullImplementation);
+    }
+
+    private Result search(String request, Chain<Searcher> chain) {
+        return new Execution(chain, Execution.Context.createContextStub()).search(new Query(request));
+    }
+
+    private static class CountingSearcher extends Searcher {
+
+        int searches = 0;
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            searches++;
+            Result result = new Result(query);
+            String queryString = query.getModel().getQueryTree().toString();
+            if (queryString.equals("error")) {
+                result.hits().addError(ErrorMessage.createBackendCommunicationError("Backend down"));
+                return result;
+            }
+            result.setCoverage(new Coverage(100, 1, ! queryString.equals("partial")));
+            result.setTotalHitCount(2);
+            result.hits().add(new Hit(queryString + ":0", 1.0));
+            result.hits().add(new Hit(queryString + ":1", 0.5));
+            return result;
+        }
+
+    }
+
+}
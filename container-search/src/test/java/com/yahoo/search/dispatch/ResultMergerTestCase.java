@@ -0,0 +1,86 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.container.protect.Error;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests merging the results of the nodes in a group
+ *
+ * @author agent
+ */
+public class ResultMergerTestCase {
+
+    @Test
+    public void testMerging() {
+        Query query = new Query("?query=foo&hits=3&offset=1");
+        ResultMerger merger = new ResultMerger(query);
+        merger.add(partialResult(query, 100, 1000, "a", 0.9, "b", 0.5, "c", 0.1));
+        merger.add(partialResult(query, 50, 500, "d", 0.8, "e", 0.6));
+        Result result = merger.merged();
+
+        assertEquals(150, result.getTotalHitCount());
+        assertEquals(3, result.getConcreteHitCount());
+        assertEquals("d", result.hits().get(0).getId().toString());
+        assertEquals("e", result.hits().get(1).getId().toString());
+        assertEquals("b", result.hits().get(2).getId().toString());
+        assertEquals(1500, result.getCoverage(false).getDocs());
+        assertEquals(1500, result.getCoverage(false).getActive());
+        assertTrue(result.getCoverage(false).getFull());
+        assertNull(result.hits().getErrorHit());
+    }
+
+    @Test
+    public void testMergingWithTimedOutNode() {
+        Query query = new Query("?query=foo&hits=10");
+        SearchCluster.Node timedOut = new SearchCluster.Node(1, "host1", 123, 0);
+        timedOut.setActiveDocuments(500);
+
+        ResultMerger merger = new ResultMerger(query);
+        merger.add(partialResult(query, 100, 1000, "a", 0.9, "b", 0.5));
+        merger.addFailed(timedOut, ErrorMessage.createTimeout("Timeout while waiting for " + timedOut));
+        Result result = merger.merged();
+
+        assertEquals(2, result.getConcreteHitCount());
+        Coverage coverage = result.getCoverage(false);
+        assertEquals(1000, coverage.getDocs());
+        assertEquals(1500, coverage.getActive());
+        assertFalse(coverage.getFull());
+        assertTrue(coverage.isDegradedByTimeout());
+        assertNull("Partial results are not errors", result.hits().getErrorHit());
+    }
+
+    @Test
+    public void testMergingWhenAllNodesFail() {
+        Query query = new Query("?query=foo");
+        ResultMerger merger = new ResultMerger(query);
+        merger.addFailed(new SearchCluster.Node(0, "host0", 123, 0),
+                         ErrorMessage.createBackendCommunicationError("Could not reach host0"));
+        Result result = merger.merged();
+
+        assertEquals(0, result.getConcreteHitCount());
+        assertNotNull(result.hits().getErrorHit());
+        assertEquals(Error.BACKEND_COMMUNICATION_ERROR.code, result.hits().getError().getCode());
+    }
+
+    private Result partialResult(Query query, long totalHitCount, long docs, Object ... idsAndRelevances) {
+        Result result = new Result(query);
+        result.setTotalHitCount(totalHitCount);
+        result.setCoverage(new Coverage(docs, docs));
+        for (int i = 0; i < idsAndRelevances.length; i += 2)
+            result.hits().add(new Hit((String)idsAndRelevances[i], (Double)idsAndRelevances[i + 1]));
+        return result;
+    }
+
+}
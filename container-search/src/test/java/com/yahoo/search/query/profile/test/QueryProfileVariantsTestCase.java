@@ -1022,6 +1022,47 @@ public class QueryProfileVariantsTestCase extends junit.framework.TestCase {
         assertEquals("yahoo/alerts", cAlert.get("vertical.custid", toMap("entry=alert", "intl=us", "lang=en-US")));
     }
 
+    public void testListValuesInRepeatedVariants() {
+        QueryProfile profile = new QueryProfile("test");
+        profile.setDimensions(new String[] { "x", "y" });
+        profile.set("a.b", "default.ab", (QueryProfileRegistry)null);
+        profile.set("a.c.d", "default.acd", (QueryProfileRegistry)null);
+        profile.set("ax.b", "default.axb", (QueryProfileRegistry)null);
+        profile.set("a.b", "x1.ab", new String[] { "x1" }, null);
+        profile.set("a.e", "x1y1.ae", new String[] { "x1", "y1" }, null);
+        CompiledQueryProfile cprofile = profile.compile(null);
+
+        for (int i = 0; i < 2; i++) { // the second time, the variants are cached
+            Map<String, Object> values = cprofile.listValues("a", toMap("x=x1", "y=y1", "z=z1"));
+            assertEquals(3, values.size());
+            assertEquals("x1.ab", values.get("b"));
+            assertEquals("default.acd", values.get("c.d"));
+            assertEquals("x1y1.ae", values.get("e"));
+
+            values = cprofile.listValues("a", toMap("x=x1", "y=y2", "z=z2"));
+            assertEquals(2, values.size());
+            assertEquals("x1.ab", values.get("b"));
+            assertEquals("default.acd", values.get("c.d"));
+
+            values = cprofile.listValues("a", toMap("x=x2"));
+            assertEquals(2, values.size());
+            assertEquals("default.ab", values.get("b"));
+
+            values = cprofile.listValues("a.c", toMap("x=x1"));
+            assertEquals(1, values.size());
+            assertEquals("default.acd", values.get("d"));
+
+            values = cprofile.listValues("", toMap("x=x1", "y=y1"));
+            assertEquals("x1y1.ae", values.get("a.e"));
+            assertEquals("default.axb", values.get("ax.b"));
+            values = cprofile.listValues("", null);
+            assertEquals("default.ab", values.get("a.b"));
+            assertNull(values.get("a.e"));
+            assertTrue(cprofile.listValues("a.b", toMap("x=x1")).isEmpty());
+            assertTrue(cprofile.listValues("nonexisting", toMap("x=x1")).isEmpty());
+        }
+    }
+
     private void assertGet(String expectedValue, String parameter, String[] dimensionValues, QueryProfile profile, CompiledQueryProfile cprofile) {
         Map<String,String> context=toMap(profile,dimensionValues);
         assertEquals("Looking up '" + parameter + "' for '" + Arrays.toString(dimensionValues) + "'",expectedValue,cprofile.get(parameter,context));
@@ -49,6 +49,8 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
     private final ComponentRegistry<AbstractConcreteDocumentFactory> docFactoryRegistry;
     private final ChainRegistry<DocumentProcessor> chainRegistry = new ChainRegistry<>();
     private DocprocThreadPoolExecutor threadPool;
+    /** The pool processing the processings of a single request in parallel, or null if this is disabled */
+    private final ParallelProcessingPool parallelProcessingPool;
     private final ScheduledThreadPoolExecutor laterExecutor =
             new ScheduledThreadPoolExecutor(2, new DaemonThreadFactory("docproc-later-"));
     private ContainerDocumentConfig containerDocConfig;
@@ -61,11 +63,31 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
                                      ChainsModel chainsModel, SchemaMap schemaMap, Statistics statistics,
                                      Metric metric,
                                      ContainerDocumentConfig containerDocConfig) {
+        this(docprocServiceRegistry, documentProcessorComponentRegistry, docFactoryRegistry, threadPool,
+             documentTypeManager, chainsModel, schemaMap, statistics, metric, containerDocConfig, 0);
+    }
+
+    /**
+     * Creates a document processing handler
+     *
+     * @param documentParallelism the number of threads used to process the processings of a single request
+     *        in parallel, or 0 to process them sequentially in the thread running the request
+     */
+    public DocumentProcessingHandler(ComponentRegistry<DocprocService> docprocServiceRegistry,
+                                     ComponentRegistry<DocumentProcessor> documentProcessorComponentRegistry,
+                                     ComponentRegistry<AbstractConcreteDocumentFactory> docFactoryRegistry,
+                                     DocprocThreadPoolExecutor threadPool, DocumentTypeManager documentTypeManager,
+                                     ChainsModel chainsModel, SchemaMap schemaMap, Statistics statistics,
+                                     Metric metric,
+                                     ContainerDocumentConfig containerDocConfig,
+                                     int documentParallelism) {
         this.docprocServiceRegistry = docprocServiceRegistry;
         this.docFactoryRegistry = docFactoryRegistry;
         this.threadPool = threadPool;
         this.containerDocConfig = containerDocConfig;
         this.documentTypeManager = documentTypeManager;
+        this.parallelProcessingPool = (documentParallelism > 0) ? new ParallelProcessingPool(documentParallelism, metric)
+                                                                : null;
         DocprocService.schemaMap = schemaMap;
         threadPool.prestartCoreThread();
         laterExecutor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
@@ -103,7 +125,8 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
              params.getDocumentTypeManager(), params.getChainsModel(), params.getSchemaMap(),
              params.getStatisticsManager(),
              params.getMetric(),
-             params.getContainerDocConfig());
+             params.getContainerDocConfig(),
+             params.getDocumentParallelism());
     }
 
     @Inject
@@ -124,6 +147,7 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
                      .setDocumentExpansionFactor(containerMbusConfig.documentExpansionFactor())
                      .setContainerCoreMemoryMb(containerMbusConfig.containerCoreMemory())
                      .setMaxQueueTimeMs(docprocConfig.maxqueuetimems())
+                     .setDocumentParallelism(docprocConfig.documentparallelism())
                      .setDocumentTypeManager(new DocumentTypeManager(docManConfig))
                      .setChainsModel(buildFromConfig(chainsConfig)).setSchemaMap(configureMapping(mappingConfig))
                      .setStatisticsManager(manager)
@@ -134,6 +158,9 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
     @Override
     protected void destroy() {
         threadPool.shutdown();  //calling shutdownNow() seems like a bit of an overkill
+        if (parallelProcessingPool != null) {
+            parallelProcessingPool.shutdown();
+        }
     }
 
     public ComponentRegistry<DocprocService> getDocprocServiceRegistry() {
@@ -144,6 +171,10 @@ public class DocumentProcessingHandler extends AbstractRequestHandler {
         return chainRegistry;
     }
 
+    ParallelProcessingPool getParallelProcessingPool() {
+        return parallelProcessingPool;
+    }
+
     private static SchemaMap configureMapping(SchemamappingConfig mappingConfig) {
         SchemaMap map = new SchemaMap();
         map.configure(mappingConfig);
@@ -17,6 +17,7 @@ import com.yahoo.statistics.Statistics;
  */
 public class DocumentProcessingHandlerParameters {
     private int maxNumThreads = 0;
+    private int documentParallelism = 0;
     private double maxConcurrentFactor = 0.2;
     private double documentExpansionFactor = 20.0;
     private int containerCoreMemoryMb = 50;
@@ -113,6 +114,21 @@ public class DocumentProcessingHandlerParameters {
         return this;
     }
 
+    /**
+     * Returns the number of threads used to process the processings of a single request in parallel.&nbsp;The
+     * default value of 0 processes them sequentially in the thread running the request.
+     *
+     * @return the number of threads used to process the processings of a single request in parallel.
+     */
+    public int getDocumentParallelism() {
+        return documentParallelism;
+    }
+
+    public DocumentProcessingHandlerParameters setDocumentParallelism(int documentParallelism) {
+        this.documentParallelism = documentParallelism;
+        return this;
+    }
+
     public DocumentTypeManager getDocumentTypeManager() {
         return documentTypeManager;
     }
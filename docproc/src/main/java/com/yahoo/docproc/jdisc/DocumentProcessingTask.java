@@ -9,15 +9,21 @@ import com.yahoo.docproc.DocprocService;
 import com.yahoo.docproc.DocumentProcessor;
 import com.yahoo.docproc.HandledProcessingException;
 import com.yahoo.docproc.Processing;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentOperation;
 import com.yahoo.log.LogLevel;
 import com.yahoo.yolean.Exceptions;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
@@ -38,14 +44,26 @@ public class DocumentProcessingTask implements Comparable<DocumentProcessingTask
     private final static AtomicLong seq = new AtomicLong();
     private final long seqNum;
     private final DocprocService service;
+    private final ParallelProcessingPool parallelPool;
 
     public DocumentProcessingTask(RequestContext requestContext, DocumentProcessingHandler docprocHandler,
                                   DocprocService service) {
+        this(requestContext, docprocHandler, service,
+             docprocHandler == null ? null : docprocHandler.getParallelProcessingPool());
+    }
+
+    /**
+     * Creates a task which processes the processings of the request in parallel in the given pool,
+     * if there are several, or sequentially in the calling thread if the pool is null.
+     */
+    DocumentProcessingTask(RequestContext requestContext, DocumentProcessingHandler docprocHandler,
+                           DocprocService service, ParallelProcessingPool parallelPool) {
         seqNum = seq.getAndIncrement();
         this.requestContext = requestContext;
         this.docprocHandler = docprocHandler;
         this.waitCounter = 10;
         this.service = service;
+        this.parallelPool = parallelPool;
     }
 
     @Override
@@ -96,6 +114,9 @@ public class DocumentProcessingTask implements Comparable<DocumentProcessingTask
      * @param executor the DocprocService to use for processing
      */
     private DocumentProcessor.Progress process(DocprocExecutor executor) {
+        if (parallelPool != null && processings.size() > 1) {
+            return processInParallel(executor);
+        }
         Iterator<Processing> iterator = processings.iterator();
         List<Tuple2<DocumentProcessor.Progress, Processing>> later = new ArrayList<>();
         while (iterator.hasNext()) {
@@ -177,6 +198,182 @@ public class DocumentProcessingTask implements Comparable<DocumentProcessingTask
     }
 
 
+    /**
+     * Processes the processings of this in parallel. Processings of the same document are processed in order
+     * by the same task, and the next processing of a document is only started if the previous one was done.
+     * The results are joined and handled in the order of the processings before this returns.
+     */
+    private DocumentProcessor.Progress processInParallel(DocprocExecutor executor) {
+        Processing[] all = processings.toArray(new Processing[processings.size()]);
+        processings.clear();
+        List<List<Integer>> lanes = lanesOf(all);
+
+        Outcome[] outcomes;
+        try {
+            List<Future<Outcome[]>> pending = new ArrayList<>(lanes.size() - 1);
+            for (List<Integer> lane : lanes.subList(1, lanes.size())) {
+                pending.add(parallelPool.submit(() -> processLane(executor, all, lane)));
+            }
+            outcomes = processLane(executor, all, lanes.get(0));
+            for (Future<Outcome[]> lane : pending) {
+                Outcome[] laneOutcomes = join(lane);
+                for (int i = 0; i < laneOutcomes.length; i++) {
+                    if (laneOutcomes[i] != null) {
+                        outcomes[i] = laneOutcomes[i];
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Parallel processing of " + requestContext + " failed.", e);
+            requestContext.processingFailed(e);
+            return DocumentProcessor.Progress.FAILED;
+        }
+
+        DocumentProcessor.LaterProgress shortestDelay = null;
+        for (int i = 0; i < all.length; i++) {
+            Processing processing = all[i];
+            Outcome outcome = outcomes[i];
+            if (outcome.expired) {
+                log.log(Level.FINE, "Time is up for '" + processing + "'.");
+                requestContext.processingFailed(RequestContext.ErrorCode.ERROR_PROCESSING_FAILURE, "Time is up.");
+                return DocumentProcessor.Progress.FAILED;
+            } else if (outcome.exception != null) {
+                logProcessingFailure(processing, outcome.exception);
+                requestContext.processingFailed(outcome.exception);
+                return DocumentProcessor.Progress.FAILED;
+            } else if (outcome.progress == null) { // not started since an earlier processing of the document was not done
+                processings.add(processing);
+            } else if (DocumentProcessor.Progress.LATER.equals(outcome.progress)) {
+                processings.add(processing);
+                DocumentProcessor.LaterProgress later = (DocumentProcessor.LaterProgress) outcome.progress;
+                if (shortestDelay == null || later.getDelay() < shortestDelay.getDelay()) {
+                    shortestDelay = later;
+                }
+            } else if (DocumentProcessor.Progress.DONE.equals(outcome.progress)) {
+                processingsDone.add(processing);
+            } else {
+                logProcessingFailure(processing, null);
+                requestContext.processingFailed(RequestContext.ErrorCode.ERROR_PROCESSING_FAILURE,
+                        outcome.progress.getReason().orElse("Document processing failed."));
+                return outcome.progress;
+            }
+        }
+
+        if (shortestDelay != null) {
+            return shortestDelay;
+        } else {
+            requestContext.processingDone(processingsDone);
+            return DocumentProcessor.Progress.DONE;
+        }
+    }
+
+    /**
+     * Processes the given processings in order, stopping at the first one which is not done.
+     *
+     * @return the outcomes of the processings of this lane, indexed by processing, with null for
+     *         processings in other lanes and processings which were not started
+     */
+    private Outcome[] processLane(DocprocExecutor executor, Processing[] all, List<Integer> lane) {
+        Outcome[] outcomes = new Outcome[all.length];
+        for (int index : lane) {
+            outcomes[index] = Outcome.NOT_STARTED;
+        }
+        for (int index : lane) {
+            if (requestContext.hasExpired()) {
+                outcomes[index] = Outcome.EXPIRED;
+                break;
+            }
+            try {
+                outcomes[index] = new Outcome(executor.process(all[index]), null);
+            } catch (Exception e) {
+                outcomes[index] = new Outcome(DocumentProcessor.Progress.FAILED, e);
+            }
+            if ( ! DocumentProcessor.Progress.DONE.equals(outcomes[index].progress)) break;
+        }
+        return outcomes;
+    }
+
+    private Outcome[] join(Future<Outcome[]> lane) {
+        try {
+            return lane.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for parallel processing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException("Parallel processing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Groups processings into lanes which can be processed in parallel. All processings of a document
+     * are in the same lane, in their original order.
+     *
+     * @return the indexes of the processings of each lane
+     */
+    static List<List<Integer>> lanesOf(Processing[] processings) {
+        Map<DocumentId, List<Integer>> laneOfDocument = new HashMap<>();
+        List<List<Integer>> lanes = new ArrayList<>();
+        for (int i = 0; i < processings.length; i++) {
+            List<Integer> lane = null;
+            for (DocumentOperation operation : processings[i].getDocumentOperations()) {
+                List<Integer> existing = laneOfDocument.get(operation.getId());
+                if (existing == null || existing == lane) continue;
+
+                if (lane == null) {
+                    lane = existing;
+                } else { // this processing joins two lanes: Merge them, keeping the order of the processings
+                    List<Integer> merged = new ArrayList<>(lane.size() + existing.size());
+                    merged.addAll(lane);
+                    merged.addAll(existing);
+                    merged.sort(null);
+                    lane.clear();
+                    lane.addAll(merged);
+                    for (int index : existing) {
+                        for (DocumentOperation mergedOperation : processings[index].getDocumentOperations()) {
+                            laneOfDocument.put(mergedOperation.getId(), lane);
+                        }
+                    }
+                    existing.clear();
+                }
+            }
+            if (lane == null) {
+                lane = new ArrayList<>();
+                lanes.add(lane);
+            }
+            lane.add(i);
+            for (DocumentOperation operation : processings[i].getDocumentOperations()) {
+                laneOfDocument.put(operation.getId(), lane);
+            }
+        }
+        lanes.removeIf(List::isEmpty);
+        return lanes;
+    }
+
+    /** The result of processing a single processing in parallel */
+    private static class Outcome {
+
+        static final Outcome NOT_STARTED = new Outcome(null, null, false);
+        static final Outcome EXPIRED = new Outcome(null, null, true);
+
+        final DocumentProcessor.Progress progress;
+        final Exception exception;
+        final boolean expired;
+
+        Outcome(DocumentProcessor.Progress progress, Exception exception) {
+            this(progress, exception, false);
+        }
+
+        private Outcome(DocumentProcessor.Progress progress, Exception exception, boolean expired) {
+            this.progress = progress;
+            this.exception = exception;
+            this.expired = expired;
+        }
+
+    }
+
     void queueFull() {
         requestContext.processingFailed(RequestContext.ErrorCode.ERROR_BUSY,
                                         "Queue temporarily full. Returning message " + requestContext +
@@ -0,0 +1,78 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.docproc.jdisc;
+
+import com.yahoo.jdisc.Metric;
+import com.yahoo.log.LogLevel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A fork-join pool used to process the processings of a single request in parallel,
+ * in addition to the thread of the {@link DocprocThreadPoolExecutor} running the request.
+ * Reports the time tasks spend queued and running in this pool as metrics.
+ *
+ * @author agent
+ */
+class ParallelProcessingPool {
+
+    static final String METRIC_NAME_QUEUE_TIME = "parallel_processing_queue_time";
+    static final String METRIC_NAME_RUN_TIME = "parallel_processing_run_time";
+
+    private static Logger log = Logger.getLogger(ParallelProcessingPool.class.getName());
+
+    private final ForkJoinPool pool;
+    private final Metric metric;
+
+    /**
+     * Creates a pool
+     *
+     * @param parallelism the number of threads of this pool
+     * @param metric the metric receiving queue and run times, in milliseconds
+     */
+    ParallelProcessingPool(int parallelism, Metric metric) {
+        this.pool = new ForkJoinPool(parallelism, new WorkerThreadFactory(), null, false);
+        this.metric = metric;
+        log.log(LogLevel.DEBUG, "Created docproc parallel processing pool with " + parallelism + " threads.");
+    }
+
+    /** Submits a task to this, which is run by one of the threads of this pool */
+    <T> Future<T> submit(Callable<T> task) {
+        long queuedAt = System.nanoTime();
+        return pool.submit(() -> {
+            long startedAt = System.nanoTime();
+            metric.set(METRIC_NAME_QUEUE_TIME, toMillis(startedAt - queuedAt), null);
+            try {
+                return task.call();
+            } finally {
+                metric.set(METRIC_NAME_RUN_TIME, toMillis(System.nanoTime() - startedAt), null);
+            }
+        });
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("docproc-parallel-" + threadCount.getAndIncrement());
+            return thread;
+        }
+
+    }
+
+}
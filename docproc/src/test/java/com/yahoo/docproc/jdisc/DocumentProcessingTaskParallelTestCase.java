@@ -0,0 +1,145 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.docproc.jdisc;
+
+import com.yahoo.docproc.CallStack;
+import com.yahoo.docproc.DocprocService;
+import com.yahoo.docproc.DocumentProcessor;
+import com.yahoo.docproc.Processing;
+import com.yahoo.docproc.jdisc.metric.NullMetric;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentUpdate;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author agent
+ */
+public class DocumentProcessingTaskParallelTestCase {
+
+    private final DocumentType type = new DocumentType("test");
+
+    @Test
+    public void processings_of_the_same_document_are_in_the_same_lane() {
+        Processing[] processings = { processing("a"), processing("b"), processing("a"), processing("c"),
+                                     processing("b", "c") };
+        List<List<Integer>> lanes = DocumentProcessingTask.lanesOf(processings);
+        assertEquals(2, lanes.size());
+        assertEquals(Arrays.asList(0, 2), lanes.get(0));
+        assertEquals(Arrays.asList(1, 3, 4), lanes.get(1));
+    }
+
+    @Test
+    public void processings_are_processed_in_parallel_and_in_order_per_document() {
+        List<Processing> processings = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Processing processing = processing("doc" + (i % 5));
+            processing.setVariable("sequence", i);
+            processings.add(processing);
+        }
+        RecordingProcessor processor = new RecordingProcessor();
+        DocprocService service = new DocprocService("parallel");
+        service.setCallStack(new CallStack().addLast(processor));
+        TestRequestContext context = new TestRequestContext(processings);
+
+        ParallelProcessingPool pool = new ParallelProcessingPool(4, new NullMetric());
+        try {
+            new DocumentProcessingTask(context, null, service, pool).run();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertNull(context.failure);
+        assertEquals(processings, context.done);
+        assertEquals(5, processor.sequences.size());
+        for (List<Integer> sequences : processor.sequences.values()) {
+            assertEquals(8, sequences.size());
+            for (int i = 1; i < sequences.size(); i++) {
+                assertEquals(sequences.get(i - 1) + 5, (int) sequences.get(i));
+            }
+        }
+    }
+
+    private Processing processing(String ... localIds) {
+        Processing processing = new Processing();
+        for (String localId : localIds) {
+            processing.addDocumentOperation(new DocumentUpdate(type, new DocumentId("id:ns:test::" + localId)));
+        }
+        return processing;
+    }
+
+    private static class RecordingProcessor extends DocumentProcessor {
+
+        final Map<DocumentId, List<Integer>> sequences = new HashMap<>();
+
+        @Override
+        public Progress process(Processing processing) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            for (DocumentOperation operation : processing.getDocumentOperations()) {
+                synchronized (sequences) {
+                    sequences.computeIfAbsent(operation.getId(), id -> new ArrayList<>())
+                             .add((Integer) processing.getVariable("sequence"));
+                }
+            }
+            return Progress.DONE;
+        }
+
+    }
+
+    private static class TestRequestContext implements RequestContext {
+
+        private final List<Processing> processings;
+        List<Processing> done = null;
+        Object failure = null;
+
+        TestRequestContext(List<Processing> processings) {
+            this.processings = new ArrayList<>(processings);
+        }
+
+        @Override
+        public List<Processing> getProcessings() { return processings; }
+
+        @Override
+        public String getServiceName() { return "parallel"; }
+
+        @Override
+        public URI getUri() { return null; }
+
+        @Override
+        public boolean isProcessable() { return true; }
+
+        @Override
+        public int getApproxSize() { return 0; }
+
+        @Override
+        public int getPriority() { return 0; }
+
+        @Override
+        public void processingDone(List<Processing> processings) { done = new ArrayList<>(processings); }
+
+        @Override
+        public void processingFailed(ErrorCode error, String msg) { failure = msg; }
+
+        @Override
+        public void processingFailed(Exception exception) { failure = exception; }
+
+        @Override
+        public void skip() { }
+
+    }
+
+}
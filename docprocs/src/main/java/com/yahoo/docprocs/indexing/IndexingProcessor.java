@@ -9,14 +9,17 @@ import com.yahoo.component.chain.dependencies.Before;
 import com.yahoo.component.chain.dependencies.Provides;
 import com.yahoo.docproc.DocumentProcessor;
 import com.yahoo.docproc.Processing;
+import com.yahoo.docproc.jdisc.metric.NullMetric;
 import com.yahoo.document.*;
 import com.yahoo.document.config.DocumentmanagerConfig;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.language.Linguistics;
 import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.configdefinition.IlscriptsConfig;
 import com.yahoo.vespa.indexinglanguage.AdapterFactory;
 import com.yahoo.vespa.indexinglanguage.SimpleAdapterFactory;
 import com.yahoo.vespa.indexinglanguage.expressions.Expression;
+import com.yahoo.vespa.indexinglanguage.linguistics.AnnotationCache;
 
 /**
  * @author <a href="mailto:simon@yahoo-inc.com">Simon Thoresen</a>
@@ -30,10 +33,15 @@ public class IndexingProcessor extends DocumentProcessor {
     public final static String INDEXING_START = "indexingStart";
     public final static String INDEXING_END = "indexingEnd";
 
+    final static String METRIC_NAME_ANNOTATION_CACHE_HITS = "annotation_cache_hits";
+    final static String METRIC_NAME_ANNOTATION_CACHE_MISSES = "annotation_cache_misses";
+    final static String METRIC_NAME_ANNOTATION_CACHE_EVICTIONS = "annotation_cache_evictions";
+
     private final static FastLogger log = FastLogger.getLogger(IndexingProcessor.class.getName());
     private final DocumentTypeManager docTypeMgr;
     private final ScriptManager scriptMgr;
     private final AdapterFactory adapterFactory;
+    private final Metric metric;
 
     private class ExpressionSelector extends SimpleAdapterFactory.SelectExpression {
         @Override
@@ -42,13 +50,21 @@ public class IndexingProcessor extends DocumentProcessor {
         }
     }
 
-    @Inject
     public IndexingProcessor(DocumentmanagerConfig documentmanagerConfig,
                              IlscriptsConfig ilscriptsConfig,
                              Linguistics linguistics) {
+        this(documentmanagerConfig, ilscriptsConfig, linguistics, new NullMetric());
+    }
+
+    @Inject
+    public IndexingProcessor(DocumentmanagerConfig documentmanagerConfig,
+                             IlscriptsConfig ilscriptsConfig,
+                             Linguistics linguistics,
+                             Metric metric) {
         docTypeMgr = DocumentTypeManagerConfigurer.configureNewManager(documentmanagerConfig);
         scriptMgr = new ScriptManager(docTypeMgr, ilscriptsConfig, linguistics);
         adapterFactory = new SimpleAdapterFactory(new ExpressionSelector());
+        this.metric = metric;
     }
 
     @Override
@@ -72,9 +88,21 @@ public class IndexingProcessor extends DocumentProcessor {
         }
         proc.getDocumentOperations().clear();
         proc.getDocumentOperations().addAll(out);
+        reportAnnotationCacheMetrics();
         return Progress.DONE;
     }
 
+    /** Reports the lookups and evictions of the annotation cache of this thread since they were last reported */
+    private void reportAnnotationCacheMetrics() {
+        AnnotationCache cache = AnnotationCache.ofCurrentThread();
+        if (cache == null) return;
+
+        metric.add(METRIC_NAME_ANNOTATION_CACHE_HITS, cache.hitCount(), null);
+        metric.add(METRIC_NAME_ANNOTATION_CACHE_MISSES, cache.missCount(), null);
+        metric.add(METRIC_NAME_ANNOTATION_CACHE_EVICTIONS, cache.evictionCount(), null);
+        cache.resetCounts();
+    }
+
     DocumentTypeManager getDocumentTypeManager() {
         return docTypeMgr;
     }
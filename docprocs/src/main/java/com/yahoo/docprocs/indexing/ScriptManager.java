@@ -6,6 +6,7 @@ import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.language.Linguistics;
 import com.yahoo.log.LogLevel;
 import com.yahoo.vespa.configdefinition.IlscriptsConfig;
+import com.yahoo.vespa.indexinglanguage.CommonPrefixOptimizer;
 import com.yahoo.vespa.indexinglanguage.ScriptParserContext;
 import com.yahoo.vespa.indexinglanguage.expressions.InputExpression;
 import com.yahoo.vespa.indexinglanguage.expressions.ScriptExpression;
@@ -77,6 +78,7 @@ public class ScriptManager {
         ScriptParserContext parserContext = new ScriptParserContext(linguistics);
         parserContext.getAnnotatorConfig().setMaxTermOccurrences(config.maxtermoccurrences());
         parserContext.getAnnotatorConfig().setMaxTokenLength(config.fieldmatchmaxlength());
+        parserContext.getAnnotatorConfig().setAnnotationCacheSize(config.annotationcachesize());
 
         for (IlscriptsConfig.Ilscript ilscript : config.ilscript()) {
             InputExpression.FieldPathOptimizer fieldPathOptimizer = new InputExpression.FieldPathOptimizer(docTypeMgr.getDocumentType(ilscript.doctype()));
@@ -109,7 +111,7 @@ public class ScriptManager {
                 }
             }
 
-            ScriptExpression script = new ScriptExpression(expressions);
+            ScriptExpression script = (ScriptExpression)new CommonPrefixOptimizer().convert(new ScriptExpression(expressions));
             script.select(fieldPathOptimizer, fieldPathOptimizer);
             fieldScripts.put(FULL, new DocumentScript(ilscript.doctype(), ilscript.docfield(),script));
             documentFieldScripts.put(ilscript.doctype(), Collections.unmodifiableMap(fieldScripts));
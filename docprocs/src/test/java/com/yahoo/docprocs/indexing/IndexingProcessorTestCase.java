@@ -13,12 +13,15 @@ import com.yahoo.document.datatypes.StringFieldValue;
 import com.yahoo.document.update.AssignValueUpdate;
 import com.yahoo.document.update.FieldUpdate;
 import com.yahoo.document.update.ValueUpdate;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.language.Linguistics;
 import com.yahoo.language.simple.SimpleLinguistics;
 import com.yahoo.vespa.configdefinition.IlscriptsConfig;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
@@ -113,6 +116,28 @@ public class IndexingProcessorTestCase {
         assertSame(input, output);
     }
 
+    @Test
+    public void requireThatAnnotationCacheLookupsAreReportedAsMetrics() {
+        IlscriptsConfig.Builder ilscripts = new IlscriptsConfig.Builder().annotationcachesize(100000);
+        ilscripts.ilscript(new IlscriptsConfig.Ilscript.Builder().doctype("music")
+                                                                  .docfield("artist")
+                                                                  .docfield("title")
+                                                                  .content("input artist | tokenize | attribute title"));
+        RecordingMetric metric = new RecordingMetric();
+        indexer = new IndexingProcessor(ConfigGetter.getConfig(DocumentmanagerConfig.class, CONFIG_ID),
+                                        new IlscriptsConfig(ilscripts),
+                                        new SimpleLinguistics(),
+                                        metric);
+        for (int i = 0; i < 3; i++) {
+            Document input = new Document(indexer.getDocumentTypeManager().getDocumentType("music"), "doc:scheme:");
+            input.setFieldValue("artist", new StringFieldValue("Clementine"));
+            process(new DocumentPut(input));
+        }
+        assertEquals(2L, metric.sums.get(IndexingProcessor.METRIC_NAME_ANNOTATION_CACHE_HITS));
+        assertEquals(1L, metric.sums.get(IndexingProcessor.METRIC_NAME_ANNOTATION_CACHE_MISSES));
+        assertEquals(0L, metric.sums.get(IndexingProcessor.METRIC_NAME_ANNOTATION_CACHE_EVICTIONS));
+    }
+
     private DocumentOperation process(DocumentOperation input) {
         Processing proc = new Processing();
         proc.getDocumentOperations().add(input);
@@ -128,4 +153,26 @@ public class IndexingProcessorTestCase {
                                      ConfigGetter.getConfig(IlscriptsConfig.class, configId),
                                      new SimpleLinguistics());
     }
+
+    private static class RecordingMetric implements Metric {
+
+        final Map<String, Long> sums = new HashMap<>();
+
+        @Override
+        public void set(String key, Number val, Context ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(String key, Number val, Context ctx) {
+            sums.merge(key, val.longValue(), Long::sum);
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) {
+            return null;
+        }
+
+    }
+
 }
@@ -3,6 +3,8 @@ package com.yahoo.document;
 
 import com.yahoo.document.idstring.*;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * A bucket id contains bit used for various purposes. In most use cases, these can use the default
  * settings, but the number of bits used for the different purposes is configurable, to allow for
@@ -80,6 +82,10 @@ public class BucketIdFactory {
         return gidbits & gidMask;
     }
 
+    private static long getLocation(byte[] gid) {
+        return (gid[0] & 0xFFl) | ((gid[1] & 0xFFl) << 8) | ((gid[2] & 0xFFl) << 16) | ((gid[3] & 0xFFl) << 24);
+    }
+
     /**
      * Get the bucket id for a given document.
      *
@@ -87,8 +93,10 @@ public class BucketIdFactory {
      * @return The bucket id.
      */
     public BucketId getBucketId(DocumentId doc) {
-        long location = doc.getScheme().getLocation();
         byte[] gid = doc.getGlobalId();
+        // The global id starts by the 32 least significant bits of the location, so use those rather than
+        // computing the location again when they are all the location bits used
+        long location = getLocationBitCount() <= 32 ? getLocation(gid) : doc.getScheme().getLocation();
 
         long gidContribution = getGidContribution(gid);
 
@@ -101,4 +109,24 @@ public class BucketIdFactory {
         return new BucketId(64 - BucketId.COUNT_BITS, initialCount | (gidMask & gidContribution) | (locationMask & location));
     }
 
+    /**
+     * Get the bucket id for a document id given as UTF-8 bytes. For the common schemes, this computes the
+     * bucket id directly from the bytes, without creating a document id or a global id.
+     *
+     * @param utf8 The array containing the document id.
+     * @param offset The start of the document id in the array.
+     * @param length The number of bytes of the document id.
+     * @return The bucket id.
+     * @throws IllegalArgumentException if this is not a valid document id
+     */
+    public BucketId getBucketId(byte[] utf8, int offset, int length) {
+        DocumentIdHasher hasher = DocumentIdHasher.get();
+        if ( ! hasher.hash(utf8, offset, length))
+            return getBucketId(new DocumentId(new String(utf8, offset, length, StandardCharsets.UTF_8)));
+
+        // The gid bytes 4-11 are the corresponding bytes of the digest, see GlobalId
+        long gidContribution = getGidContribution(hasher.digest()) & gidMask;
+        return new BucketId(64 - BucketId.COUNT_BITS, initialCount | gidContribution | (locationMask & hasher.location()));
+    }
+
 }
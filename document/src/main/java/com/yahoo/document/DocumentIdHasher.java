@@ -0,0 +1,222 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document;
+
+import com.yahoo.collections.MD5;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * Computes the location and the MD5 digest which make up the global id of a document id directly from the
+ * UTF-8 bytes of the id, without parsing it into an {@link com.yahoo.document.idstring.IdString} or
+ * encoding it again, and without allocating.
+ * <p>
+ * This handles ids of the id, doc, userdoc and groupdoc schemes which are well-formed UTF-8 in the canonical
+ * form produced by IdString, which is what the global id is computed from. Other ids are rejected, such that
+ * callers can fall back to parsing the id, which also produces the appropriate errors for invalid ids.
+ * <p>
+ * Instances are not thread-safe. Use {@link #get} to obtain the instance of the calling thread.
+ *
+ * @author agent
+ */
+final class DocumentIdHasher {
+
+    private static final ThreadLocal<DocumentIdHasher> perThread = ThreadLocal.withInitial(DocumentIdHasher::new);
+
+    private static final byte[] ID = { 'i', 'd' };
+    private static final byte[] DOC = { 'd', 'o', 'c' };
+    private static final byte[] USERDOC = { 'u', 's', 'e', 'r', 'd', 'o', 'c' };
+    private static final byte[] GROUPDOC = { 'g', 'r', 'o', 'u', 'p', 'd', 'o', 'c' };
+
+    private final MessageDigest md5 = MD5.md5.get();
+    private final byte[] digest = new byte[16];
+    private long location;
+
+    private DocumentIdHasher() { }
+
+    /** Returns the instance of the calling thread */
+    static DocumentIdHasher get() {
+        return perThread.get();
+    }
+
+    /**
+     * Computes the location and digest of the given id.
+     *
+     * @return whether the id could be handled, if false the location and digest of this are undefined
+     */
+    boolean hash(byte[] id, int offset, int length) {
+        int end = offset + length;
+        if ( ! isWellFormedUtf8(id, offset, end)) return false;
+
+        int schemeEnd = indexOf(id, ':', offset, end);
+        if (schemeEnd < 0) return false;
+        int namespaceEnd = indexOf(id, ':', schemeEnd + 1, end);
+        if (namespaceEnd <= schemeEnd + 1) return false; // missing or empty
+
+        if (equals(id, offset, schemeEnd, ID)) {
+            int typeEnd = indexOf(id, ':', namespaceEnd + 1, end);
+            if (typeEnd < 0) return false;
+            int keyValuesStart = typeEnd + 1;
+            int keyValuesEnd = indexOf(id, ':', keyValuesStart, end);
+            if (keyValuesEnd < 0) return false;
+            if (keyValuesEnd == keyValuesStart) {
+                location = hashLocation(id, keyValuesEnd + 1, end);
+            }
+            else if (keyValuesEnd - keyValuesStart < 2 || id[keyValuesStart + 1] != '=') {
+                return false;
+            }
+            else if (id[keyValuesStart] == 'g' && indexOf(id, ',', keyValuesStart, keyValuesEnd) < 0) {
+                location = hashLocation(id, keyValuesStart + 2, keyValuesEnd);
+            }
+            else if (id[keyValuesStart] == 'n') {
+                if ( ! parseCanonicalLong(id, keyValuesStart + 2, keyValuesEnd)) return false;
+            }
+            else {
+                return false;
+            }
+        }
+        else if (equals(id, offset, schemeEnd, DOC)) {
+            // the location is a hash of the whole id, which is computed below
+        }
+        else if (equals(id, offset, schemeEnd, USERDOC)) {
+            int userEnd = indexOf(id, ':', namespaceEnd + 1, end);
+            if (userEnd < 0 || ! parseCanonicalUnsignedLong(id, namespaceEnd + 1, userEnd)) return false;
+        }
+        else if (equals(id, offset, schemeEnd, GROUPDOC)) {
+            int groupEnd = indexOf(id, ':', namespaceEnd + 1, end);
+            if (groupEnd < 0) return false;
+            location = hashLocation(id, namespaceEnd + 1, groupEnd);
+        }
+        else {
+            return false;
+        }
+
+        digest(id, offset, end);
+        if (equals(id, offset, schemeEnd, DOC)) {
+            location = toLocation(digest);
+        }
+        return true;
+    }
+
+    /** Returns the location computed by the last successful call to {@link #hash} */
+    long location() { return location; }
+
+    /** Returns the MD5 digest of the whole id computed by the last successful call to {@link #hash} */
+    byte[] digest() { return digest; }
+
+    private long hashLocation(byte[] bytes, int start, int end) {
+        digest(bytes, start, end);
+        return toLocation(digest);
+    }
+
+    private void digest(byte[] bytes, int start, int end) {
+        md5.update(bytes, start, end - start);
+        try {
+            md5.digest(digest, 0, digest.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e); // cannot happen, as the buffer is large enough
+        }
+    }
+
+    private static long toLocation(byte[] md5sum) {
+        long result = 0;
+        for (int i = 0; i < 8; ++i) {
+            result |= (md5sum[i] & 0xFFl) << (8 * i);
+        }
+        return result;
+    }
+
+    /** Parses a long in the form produced by Long.toString into location */
+    private boolean parseCanonicalLong(byte[] bytes, int start, int end) {
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if ( ! isCanonicalNumber(bytes, i, end) || (negative && bytes[i] == '0')) return false;
+        long value = 0; // accumulated negatively, to be able to represent Long.MIN_VALUE
+        for (; i < end; ++i) {
+            int digit = bytes[i] - '0';
+            if (value < Long.MIN_VALUE / 10) return false;
+            value *= 10;
+            if (value < Long.MIN_VALUE + digit) return false;
+            value -= digit;
+        }
+        if ( ! negative && value == Long.MIN_VALUE) return false;
+        location = negative ? value : -value;
+        return true;
+    }
+
+    /** Parses an unsigned 64 bit number in the form produced by UserDocIdString into location */
+    private boolean parseCanonicalUnsignedLong(byte[] bytes, int start, int end) {
+        if ( ! isCanonicalNumber(bytes, start, end)) return false;
+        long value = 0;
+        for (int i = start; i < end; ++i) {
+            int digit = bytes[i] - '0';
+            if (Long.compareUnsigned(value, Long.divideUnsigned(-1L, 10)) > 0) return false;
+            long next = value * 10 + digit;
+            if (Long.compareUnsigned(next, value * 10) < 0) return false;
+            value = next;
+        }
+        location = value;
+        return true;
+    }
+
+    /** Returns whether the given range is a non-empty sequence of digits without leading zeros */
+    private static boolean isCanonicalNumber(byte[] bytes, int start, int end) {
+        if (start >= end) return false;
+        if (bytes[start] == '0' && end - start > 1) return false;
+        for (int i = start; i < end; ++i) {
+            if (bytes[i] < '0' || bytes[i] > '9') return false;
+        }
+        return true;
+    }
+
+    private static boolean equals(byte[] bytes, int start, int end, byte[] value) {
+        if (end - start != value.length) return false;
+        for (int i = 0; i < value.length; ++i) {
+            if (bytes[start + i] != value[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, char c, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (bytes[i] == c) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the given range is well-formed UTF-8, i.e whether decoding and encoding it again
+     * produces the same bytes.
+     */
+    static boolean isWellFormedUtf8(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; ) {
+            int c = bytes[i] & 0xff;
+            if (c < 0x80) {
+                ++i;
+                continue;
+            }
+            int continuations;
+            if (c >= 0xc2 && c <= 0xdf)
+                continuations = 1;
+            else if (c >= 0xe0 && c <= 0xef)
+                continuations = 2;
+            else if (c >= 0xf0 && c <= 0xf4)
+                continuations = 3;
+            else
+                return false;
+            if (i + continuations >= end) return false;
+
+            // Disallow overlong encodings, surrogates and code points above U+10FFFF
+            int min = (c == 0xe0) ? 0xa0 : (c == 0xf0) ? 0x90 : 0x80;
+            int max = (c == 0xed) ? 0x9f : (c == 0xf4) ? 0x8f : 0xbf;
+            int second = bytes[i + 1] & 0xff;
+            if (second < min || second > max) return false;
+            for (int j = 2; j <= continuations; ++j) {
+                if ((bytes[i + j] & 0xc0) != 0x80) return false;
+            }
+            i += continuations + 1;
+        }
+        return true;
+    }
+
+}
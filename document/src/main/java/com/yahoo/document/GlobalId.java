@@ -6,6 +6,7 @@ import com.yahoo.document.idstring.IdString;
 import com.yahoo.vespa.objects.Deserializer;
 import com.yahoo.vespa.objects.Serializer;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -41,17 +42,36 @@ public class GlobalId implements Comparable {
      * @param id The document id to derive from.
      */
     public GlobalId(IdString id) {
-        byte [] raw = MD5.md5.get().digest(id.toUtf8().wrap().array());
-        long location = id.getLocation();
+        this(id.getLocation(), MD5.md5.get().digest(id.toUtf8().getBytes()));
+    }
+
+    private GlobalId(long location, byte[] md5) {
         this.raw = new byte [LENGTH];
         for (int i = 0; i < 4; ++i) {
             this.raw[i] = (byte)((location >> (8 * i)) & 0xFF);
         }
         for (int i=4; i < LENGTH; i++) {
-            this.raw[i] = raw[i];
+            this.raw[i] = md5[i];
         }
     }
 
+    /**
+     * Returns the global id of the document id given as UTF-8 bytes. This computes the global id directly
+     * from the bytes for the common schemes, without creating a {@link DocumentId}, and is equivalent to
+     * <code>new GlobalId(new DocumentId(new String(utf8, offset, length, UTF_8)).getScheme())</code>.
+     *
+     * @param utf8 the array containing the document id
+     * @param offset the start of the document id in the array
+     * @param length the number of bytes of the document id
+     * @throws IllegalArgumentException if this is not a valid document id
+     */
+    public static GlobalId fromUtf8(byte[] utf8, int offset, int length) {
+        DocumentIdHasher hasher = DocumentIdHasher.get();
+        if (hasher.hash(utf8, offset, length))
+            return new GlobalId(hasher.location(), hasher.digest());
+        return new GlobalId(new DocumentId(new String(utf8, offset, length, StandardCharsets.UTF_8)).getScheme());
+    }
+
     /**
      * Constructs a global id by deserializing content from the given byte buffer.
      *
@@ -22,6 +22,15 @@ public class Struct extends StructuredFieldValue {
     private Hashlet<Integer, FieldValue> values = new Hashlet<>();
     private int [] order = null;
 
+    /**
+     * The fields whose values are still in serialized form, or null if all values are decoded.
+     * This is set when a struct is read lazily and shrinks as fields are accessed.
+     * While this is non-null, the values and the serialized fields are only accessed while holding the lock of this,
+     * such that concurrent reads are safe. It is set to null after the last field is decoded, which publishes the
+     * decoded values to readers which do not lock.
+     */
+    private volatile SerializedFields serialized = null;
+
     private int version;
 
     private int [] getInOrder() {
@@ -81,10 +90,13 @@ public class Struct extends StructuredFieldValue {
     @Override
     public Struct clone() {
         Struct struct = (Struct) super.clone();
-        struct.values = new Hashlet<>();
-        struct.values.reserve(values.size());
-        for (int i = 0; i < values.size(); i++) {
-            struct.values.put(values.key(i), values.value(i).clone());
+        synchronized (this) {
+            struct.values = new Hashlet<>();
+            struct.values.reserve(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                struct.values.put(values.key(i), values.value(i).clone());
+            }
+            struct.serialized = (serialized == null) ? null : serialized.copy();
         }
         return struct;
     }
@@ -92,18 +104,102 @@ public class Struct extends StructuredFieldValue {
     @Override
     public void clear() {
         values = new Hashlet<>();
+        serialized = null;
         invalidateOrder();
     }
 
     @Override
     public Iterator<Map.Entry<Field, FieldValue>> iterator() {
+        decodeAll();
         return new FieldSet().iterator();
     }
 
     public Set<Map.Entry<Field, FieldValue>> getFields() {
+        decodeAll();
+        return new FieldSet();
+    }
+
+    /**
+     * Returns the fields of this whose values are decoded, without decoding any serialized field values.
+     * The remaining fields are returned by {@link #getSerializedFields}. Callers which use both must hold
+     * the lock of this struct while doing so, to get a consistent view if other threads are reading it.
+     */
+    public Set<Map.Entry<Field, FieldValue>> getDecodedFields() {
         return new FieldSet();
     }
 
+    /**
+     * Sets the fields of this which should be kept in serialized form until they are accessed.
+     * This is used by deserializers to read structs lazily, and replaces any serialized fields already set.
+     * A lazily read struct decodes field values when they are first read. This is thread safe, but as with
+     * any struct, it must not be modified while it is read by other threads.
+     *
+     * @param serialized the serialized fields, none of which may also have a decoded value in this
+     */
+    public synchronized void setSerializedFields(SerializedFields serialized) {
+        this.serialized = (serialized == null || serialized.size() == 0) ? null : serialized;
+    }
+
+    /** Returns the fields of this which are not yet decoded, or null if all field values are decoded */
+    public SerializedFields getSerializedFields() {
+        return serialized;
+    }
+
+    /** Decodes the serialized field at the given index. The lock of this must be held. */
+    private FieldValue decode(SerializedFields serialized, int index) {
+        int id = serialized.fieldId(index);
+        FieldValue value = serialized.decode(index, getDataType().getField(id));
+        values.put(id, value);
+        invalidateOrder();
+        serialized.remove(index);
+        if (serialized.size() == 0) {
+            this.serialized = null; // publishes the decoded values
+        }
+        return value;
+    }
+
+    private void decodeAll() {
+        if (serialized != null) {
+            decodeAllSerialized();
+        }
+    }
+
+    private synchronized void decodeAllSerialized() {
+        SerializedFields serialized;
+        while ((serialized = this.serialized) != null) {
+            decode(serialized, serialized.size() - 1);
+        }
+    }
+
+    private synchronized FieldValue getFieldValueDecoding(Field field) {
+        SerializedFields serialized = this.serialized;
+        if (serialized != null) {
+            int index = serialized.indexOf(field.getId());
+            if (index >= 0) {
+                return decode(serialized, index);
+            }
+        }
+        return values.get(field.getId());
+    }
+
+    private synchronized void discardSerialized(int fieldId) {
+        SerializedFields serialized = this.serialized;
+        if (serialized == null) return;
+
+        int index = serialized.indexOf(fieldId);
+        if (index >= 0) {
+            serialized.remove(index);
+            if (serialized.size() == 0) {
+                this.serialized = null;
+            }
+        }
+    }
+
+    private synchronized int getFieldCountDecoding() {
+        SerializedFields serialized = this.serialized;
+        return values.size() + (serialized == null ? 0 : serialized.size());
+    }
+
     @Override
     public void printXml(XmlStream xml) {
         if (getDataType().equals(PositionDataType.INSTANCE)) {
@@ -119,6 +215,9 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public FieldValue getFieldValue(Field field) {
+        if (serialized != null) {
+            return getFieldValueDecoding(field);
+        }
         return values.get(field.getId());
     }
 
@@ -130,6 +229,9 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public int getFieldCount() {
+        if (serialized != null) {
+            return getFieldCountDecoding();
+        }
         return values.size();
     }
 
@@ -156,6 +258,9 @@ public class Struct extends StructuredFieldValue {
                     "Inconsistent field: " + field);
         }
 
+        if (serialized != null) {
+            discardSerialized(field.getId());
+        }
         int index = values.getIndexOfKey(field.getId());
         if (index == -1) {
             values.put(field.getId(), value);
@@ -167,7 +272,7 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public FieldValue removeFieldValue(Field field) {
-        FieldValue found = values.get(field.getId());
+        FieldValue found = getFieldValue(field);
         if (found != null) {
             Hashlet<Integer, FieldValue> copy = new Hashlet<>();
             copy.reserve(values.size() - 1);
@@ -215,11 +320,14 @@ public class Struct extends StructuredFieldValue {
         if (!super.equals(o)) return false;
 
         Struct struct = (Struct) o;
+        decodeAll();
+        struct.decodeAll();
         return values.equals(struct.values);
     }
 
     @Override
     public int hashCode() {
+        decodeAll();
         int result = super.hashCode();
         result = 31 * result + values.hashCode();
         return result;
@@ -227,6 +335,7 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public String toString() {
+        decodeAll();
         StringBuilder retVal = new StringBuilder();
         retVal.append("Struct (").append(getDataType()).append("): ");
         int [] increasing = getInOrder();
@@ -249,6 +358,8 @@ public class Struct extends StructuredFieldValue {
             return cmp;
         }
         Struct rhs = (Struct)obj;
+        decodeAll();
+        rhs.decodeAll();
         cmp = values.size() - rhs.values.size();
         if (cmp != 0) {
             return cmp;
@@ -360,6 +471,89 @@ public class Struct extends StructuredFieldValue {
         }
     }
 
+    /**
+     * The values of some fields of a struct, kept in their serialized form until they are accessed.
+     * Each value is a region of a shared byte array which must not be modified.
+     */
+    public static final class SerializedFields {
+
+        /** Decodes a single serialized field value */
+        public interface Decoder {
+
+            FieldValue decode(Field field, byte[] data, int offset, int length);
+
+        }
+
+        private final byte[] data;
+        private final Decoder decoder;
+        private int[] ids;
+        private int[] offsets;
+        private int[] lengths;
+        private int size = 0;
+
+        public SerializedFields(byte[] data, Decoder decoder, int capacity) {
+            this.data = data;
+            this.decoder = decoder;
+            this.ids = new int[capacity];
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+        }
+
+        /** Adds the serialized value of a field, given as the current id of the field and a region of the data */
+        public void add(int fieldId, int offset, int length) {
+            if (size == ids.length) {
+                int capacity = Math.max(4, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            ids[size] = fieldId;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+
+        public int size() { return size; }
+
+        public byte[] data() { return data; }
+
+        public int fieldId(int index) { return ids[index]; }
+
+        public int offset(int index) { return offsets[index]; }
+
+        public int length(int index) { return lengths[index]; }
+
+        int indexOf(int fieldId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == fieldId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        FieldValue decode(int index, Field field) {
+            return decoder.decode(field, data, offsets[index], lengths[index]);
+        }
+
+        void remove(int index) {
+            size--;
+            ids[index] = ids[size];
+            offsets[index] = offsets[size];
+            lengths[index] = lengths[size];
+        }
+
+        SerializedFields copy() {
+            SerializedFields copy = new SerializedFields(data, decoder, 0);
+            copy.ids = Arrays.copyOf(ids, size);
+            copy.offsets = Arrays.copyOf(offsets, size);
+            copy.lengths = Arrays.copyOf(lengths, size);
+            copy.size = size;
+            return copy;
+        }
+
+    }
+
     public static <T> T getFieldValue(FieldValue struct, DataType structType, String fieldName, Class<T> fieldType) {
         if (!(struct instanceof Struct)) {
             return null;
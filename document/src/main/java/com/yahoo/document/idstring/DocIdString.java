@@ -2,7 +2,6 @@
 package com.yahoo.document.idstring;
 
 import com.yahoo.collections.MD5;
-import com.yahoo.text.Utf8;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -32,7 +31,7 @@ public class DocIdString extends IdString {
      */
     public long getLocation() {
         long result = 0;
-        byte[] md5sum = MD5.md5.get().digest(Utf8.toBytes(toString()));
+        byte[] md5sum = MD5.md5.get().digest(toUtf8().getBytes());
         for (int i=0; i<8; ++i) {
             result |= (md5sum[i] & 0xFFl) << (8*i);
         }
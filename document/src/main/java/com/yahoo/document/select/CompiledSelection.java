@@ -0,0 +1,647 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.select;
+
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.Field;
+import com.yahoo.document.FieldPath;
+import com.yahoo.document.FieldPathEntry;
+import com.yahoo.document.PrimitiveDataType;
+import com.yahoo.document.datatypes.FieldValue;
+import com.yahoo.document.datatypes.StructuredFieldValue;
+import com.yahoo.document.select.rule.*;
+
+import java.util.Stack;
+import java.util.regex.Pattern;
+
+/**
+ * A document selection expression compiled for evaluation over documents of a single document type.
+ * Field paths are resolved against the document type once, document type tests and constant sub-expressions
+ * are folded, and evaluation allocates no result lists. Expressions which only refer to the document id
+ * (and other document independent terms) are compiled once for all document types.
+ * Evaluation gives the same result as interpreting the expression tree, except that evaluation of a
+ * logical expression stops as soon as its result is decided.
+ *
+ * Expressions which cannot be compiled (those using variables, functions on or arithmetic over document fields,
+ * or fields which are not single primitive values) are left to interpretation.
+ *
+ * @author agent
+ */
+class CompiledSelection {
+
+    /**
+     * The outcome of evaluating a condition. This is a result, or EMPTY, which is the outcome the interpreter
+     * produces (as an empty result list) when comparing a missing field. It is false when converted to a result,
+     * but unlike false it also makes an "or" of it false.
+     */
+    private enum Outcome {
+
+        TRUE, FALSE, INVALID, EMPTY;
+
+        Result toResult() {
+            switch (this) {
+                case TRUE: return Result.TRUE;
+                case INVALID: return Result.INVALID;
+                default: return Result.FALSE;
+            }
+        }
+
+        static Outcome of(Result result) {
+            switch (result) {
+                case TRUE: return TRUE;
+                case FALSE: return FALSE;
+                default: return INVALID;
+            }
+        }
+
+    }
+
+    /** The value of a field which is not set in the document */
+    private static final Object MISSING = new Object();
+
+    private final Condition condition;
+
+    private CompiledSelection(Condition condition) {
+        this.condition = condition;
+    }
+
+    /** Returns whether the document operation of the given context is accepted by this */
+    public Result accepts(Context context) {
+        return condition.evaluate(context).toResult();
+    }
+
+    /**
+     * Compiles an expression for document operations (puts and updates) of the given document type.
+     *
+     * @param expression the expression to compile
+     * @param type the document type to compile for, or null to compile an expression which does not
+     *        depend on the document type, for any document operation
+     * @return the compiled selection, or null if this expression cannot be compiled
+     */
+    public static CompiledSelection compile(ExpressionNode expression, DocumentType type) {
+        if (type == null && ! isDocumentIndependent(expression)) return null;
+        try {
+            return new CompiledSelection(new Compiler(type).compileCondition(expression, false));
+        } catch (UnsupportedExpressionException e) {
+            return null;
+        }
+    }
+
+    /** Returns whether the given expression can be evaluated without looking at the document type or content */
+    public static boolean isDocumentIndependent(ExpressionNode expression) {
+        DocumentDependencyVisitor visitor = new DocumentDependencyVisitor();
+        expression.accept(visitor);
+        return ! visitor.dependsOnDocument;
+    }
+
+    private static class Compiler {
+
+        private final DocumentType type;
+
+        Compiler(DocumentType type) {
+            this.type = type;
+        }
+
+        /**
+         * Compiles a node into a condition.
+         *
+         * @param emptyMatters whether the consumer of this condition distinguishes between FALSE and EMPTY
+         */
+        Condition compileCondition(ExpressionNode node, boolean emptyMatters) {
+            if (node instanceof EmbracedNode)
+                return compileCondition(((EmbracedNode)node).getNode(), emptyMatters);
+            if (node instanceof NegationNode)
+                return compileNegation((NegationNode)node);
+            if (node instanceof LogicNode)
+                return compileLogic((LogicNode)node, emptyMatters);
+            if (node instanceof ComparisonNode)
+                return compileComparison((ComparisonNode)node);
+            if (node instanceof DocumentNode) {
+                if (type == null) throw new UnsupportedExpressionException();
+                return new Constant(type.isA(((DocumentNode)node).getType()) ? Outcome.TRUE : Outcome.FALSE);
+            }
+            Value value = compileValue(node);
+            if (value.isConstant())
+                return new Constant(ValueCondition.outcomeOf(value, value.evaluate(null)));
+            return new ValueCondition(value);
+        }
+
+        private Condition compileNegation(NegationNode node) {
+            Condition operand = compileCondition(node.getNode(), false);
+            if (operand.isConstant())
+                return new Constant(Not.invert(operand.evaluate(null)));
+            return new Not(operand);
+        }
+
+        /** Combines the items of a logic node into a tree using the same operator precedence as the interpreter */
+        private Condition compileLogic(LogicNode node, boolean emptyMatters) {
+            // Conjunctions may be operands of a disjunction here, where they must not turn EMPTY into FALSE
+            for (LogicNode.NodeItem item : node.getItems()) {
+                if (item.getOperator() == LogicNode.OR) emptyMatters = true;
+            }
+            Stack<Item> buf = new Stack<>();
+            for (LogicNode.NodeItem item : node.getItems()) {
+                if ( ! buf.isEmpty()) {
+                    while (buf.peek().operator > item.getOperator()) {
+                        combine(buf, emptyMatters);
+                    }
+                }
+                buf.push(new Item(item.getOperator(), item.getNode()));
+            }
+            while (buf.size() > 1) {
+                combine(buf, emptyMatters);
+            }
+            return buf.pop().condition(emptyMatters);
+        }
+
+        private void combine(Stack<Item> buf, boolean emptyMatters) {
+            Item rhs = buf.pop();
+            Item lhs = buf.pop();
+            switch (rhs.operator) {
+                case LogicNode.AND:
+                    buf.push(new Item(lhs.operator, And.create(lhs.condition(emptyMatters), rhs.condition(emptyMatters),
+                                                               emptyMatters)));
+                    break;
+                case LogicNode.OR:
+                    buf.push(new Item(lhs.operator, Or.create(lhs.condition(true), rhs.condition(true))));
+                    break;
+                default:
+                    throw new IllegalStateException("Arithmetic operator " + rhs.operator + " not supported.");
+            }
+        }
+
+        /** An operand on the stack used to build logic expressions */
+        private class Item {
+
+            final int operator;
+            private final ExpressionNode node;
+            private Condition condition;
+
+            Item(int operator, ExpressionNode node) {
+                this.operator = operator;
+                this.node = node;
+            }
+
+            Item(int operator, Condition condition) {
+                this.operator = operator;
+                this.node = null;
+                this.condition = condition;
+            }
+
+            Condition condition(boolean emptyMatters) {
+                if (condition == null)
+                    condition = compileCondition(node, emptyMatters);
+                return condition;
+            }
+
+        }
+
+        private Condition compileComparison(ComparisonNode node) {
+            Value lhs = compileValue(node.getLHS());
+            Value rhs = compileValue(node.getRHS());
+            Comparison comparison = new Comparison(node, lhs, rhs);
+            if (lhs.isConstant() && rhs.isConstant()) {
+                try {
+                    return new Constant(comparison.evaluate(null));
+                } catch (RuntimeException e) {
+                    // Leave it to evaluation to fail in the usual way
+                }
+            }
+            return comparison;
+        }
+
+        private Value compileValue(ExpressionNode node) {
+            if (node instanceof AttributeNode && valueOf((AttributeNode)node) instanceof DocumentNode)
+                return compileFieldAccess((AttributeNode)node);
+            if ( ! isDocumentIndependent(node))
+                throw new UnsupportedExpressionException();
+            if (isConstant(node)) {
+                try {
+                    return new ConstantValue(node.evaluate(null));
+                } catch (RuntimeException e) {
+                    // Leave it to evaluation to fail in the usual way
+                }
+            }
+            return new NodeValue(node);
+        }
+
+        private Value compileFieldAccess(AttributeNode node) {
+            if (type == null) throw new UnsupportedExpressionException();
+            StringBuilder path = new StringBuilder();
+            for (AttributeNode.Item item : node.getItems()) {
+                if (item.getType() == AttributeNode.Item.FUNCTION) throw new UnsupportedExpressionException();
+                if (path.length() > 0) path.append(".");
+                path.append(item.getName());
+            }
+            if ( ! type.isA(((DocumentNode)valueOf(node)).getType()))
+                return new ConstantValue(Result.FALSE);
+
+            FieldPath fieldPath;
+            try {
+                fieldPath = type.buildFieldPath(path.toString());
+            } catch (RuntimeException e) {
+                throw new UnsupportedExpressionException();
+            }
+            if (fieldPath.isEmpty() || ! (fieldPath.getResultingDataType() instanceof PrimitiveDataType))
+                throw new UnsupportedExpressionException();
+            Field[] fields = new Field[fieldPath.size()];
+            for (int i = 0; i < fields.length; i++) {
+                FieldPathEntry entry = fieldPath.get(i);
+                if (entry.getType() != FieldPathEntry.Type.STRUCT_FIELD) throw new UnsupportedExpressionException();
+                fields[i] = entry.getFieldRef();
+            }
+            return new FieldAccess(fields);
+        }
+
+        private static ExpressionNode valueOf(AttributeNode node) {
+            ExpressionNode value = node.getValue();
+            while (value instanceof EmbracedNode)
+                value = ((EmbracedNode)value).getNode();
+            return value;
+        }
+
+        private static boolean isConstant(ExpressionNode node) {
+            if (node instanceof LiteralNode) return true;
+            if (node instanceof EmbracedNode) return isConstant(((EmbracedNode)node).getNode());
+            if (node instanceof ArithmeticNode) {
+                for (ArithmeticNode.NodeItem item : ((ArithmeticNode)node).getItems()) {
+                    if ( ! isConstant(item.getNode())) return false;
+                }
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+    private static abstract class Condition {
+
+        /** Returns whether this may evaluate to EMPTY */
+        boolean canBeEmpty() { return false; }
+
+        /** Returns whether this always evaluates to the same outcome without looking at the context */
+        boolean isConstant() { return false; }
+
+        abstract Outcome evaluate(Context context);
+
+    }
+
+    private static class Constant extends Condition {
+
+        private final Outcome outcome;
+
+        Constant(Outcome outcome) { this.outcome = outcome; }
+
+        @Override
+        boolean isConstant() { return true; }
+
+        @Override
+        Outcome evaluate(Context context) { return outcome; }
+
+    }
+
+    private static class Not extends Condition {
+
+        private final Condition operand;
+
+        Not(Condition operand) { this.operand = operand; }
+
+        @Override
+        Outcome evaluate(Context context) { return invert(operand.evaluate(context)); }
+
+        static Outcome invert(Outcome outcome) {
+            switch (outcome) {
+                case TRUE: return Outcome.FALSE;
+                case INVALID: return Outcome.INVALID;
+                default: return Outcome.TRUE;
+            }
+        }
+
+    }
+
+    private static class And extends Condition {
+
+        private final Condition lhs, rhs;
+        /** Whether we may return FALSE without evaluating rhs when lhs is FALSE */
+        private final boolean stopOnFalse;
+
+        private And(Condition lhs, Condition rhs, boolean stopOnFalse) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+            this.stopOnFalse = stopOnFalse;
+        }
+
+        static Condition create(Condition lhs, Condition rhs, boolean emptyMatters) {
+            boolean stopOnFalse = ! emptyMatters || ! rhs.canBeEmpty();
+            if (lhs.isConstant()) {
+                Outcome outcome = lhs.evaluate(null);
+                if (outcome == Outcome.TRUE) return rhs;
+                if (outcome == Outcome.FALSE && stopOnFalse) return lhs;
+            }
+            if (rhs.isConstant()) {
+                Outcome outcome = rhs.evaluate(null);
+                if (outcome == Outcome.TRUE) return lhs;
+                if (outcome == Outcome.FALSE && ( ! emptyMatters || ! lhs.canBeEmpty())) return rhs;
+            }
+            return new And(lhs, rhs, stopOnFalse);
+        }
+
+        @Override
+        boolean canBeEmpty() { return lhs.canBeEmpty() || rhs.canBeEmpty(); }
+
+        @Override
+        Outcome evaluate(Context context) {
+            Outcome left = lhs.evaluate(context);
+            if (left == Outcome.EMPTY) return Outcome.EMPTY;
+            if (left == Outcome.FALSE && stopOnFalse) return Outcome.FALSE;
+            Outcome right = rhs.evaluate(context);
+            if (right == Outcome.EMPTY) return Outcome.EMPTY;
+            if (left == Outcome.TRUE && right == Outcome.TRUE) return Outcome.TRUE;
+            if (left == Outcome.FALSE || right == Outcome.FALSE) return Outcome.FALSE;
+            return Outcome.INVALID;
+        }
+
+    }
+
+    private static class Or extends Condition {
+
+        private final Condition lhs, rhs;
+
+        private Or(Condition lhs, Condition rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        static Condition create(Condition lhs, Condition rhs) {
+            if (lhs.isConstant()) {
+                Outcome outcome = lhs.evaluate(null);
+                if (outcome == Outcome.FALSE) return rhs;
+                if (outcome == Outcome.TRUE && ! rhs.canBeEmpty()) return lhs;
+            }
+            if (rhs.isConstant()) {
+                Outcome outcome = rhs.evaluate(null);
+                if (outcome == Outcome.FALSE) return lhs;
+                if (outcome == Outcome.TRUE && ! lhs.canBeEmpty()) return rhs;
+            }
+            return new Or(lhs, rhs);
+        }
+
+        @Override
+        boolean canBeEmpty() { return lhs.canBeEmpty() || rhs.canBeEmpty(); }
+
+        @Override
+        Outcome evaluate(Context context) {
+            Outcome left = lhs.evaluate(context);
+            if (left == Outcome.EMPTY) return Outcome.EMPTY;
+            if (left == Outcome.TRUE && ! rhs.canBeEmpty()) return Outcome.TRUE;
+            Outcome right = rhs.evaluate(context);
+            if (right == Outcome.EMPTY) return Outcome.EMPTY;
+            if (left == Outcome.TRUE || right == Outcome.TRUE) return Outcome.TRUE;
+            if (left == Outcome.FALSE && right == Outcome.FALSE) return Outcome.FALSE;
+            return Outcome.INVALID;
+        }
+
+    }
+
+    /** A value used as a condition */
+    private static class ValueCondition extends Condition {
+
+        private final Value value;
+
+        ValueCondition(Value value) { this.value = value; }
+
+        @Override
+        boolean canBeEmpty() { return value.isField(); }
+
+        @Override
+        Outcome evaluate(Context context) {
+            return outcomeOf(value, value.evaluate(context));
+        }
+
+        static Outcome outcomeOf(Value value, Object result) {
+            if (value.isField()) {
+                if (result == MISSING) return Outcome.EMPTY;
+                if (result instanceof FieldValue) return Outcome.TRUE;
+            }
+            return Outcome.of(Result.toResult(result));
+        }
+
+    }
+
+    /** A comparison which resolves field values to at most a single value, but otherwise as ComparisonNode */
+    private static class Comparison extends Condition {
+
+        private final OperandComparison comparison;
+        private final String operator;
+        private final Value lhs, rhs;
+        /** The precompiled pattern of each side, if it is a constant and this is a string match */
+        private final Pattern lhsPattern, rhsPattern;
+
+        Comparison(ComparisonNode node, Value lhs, Value rhs) {
+            this.comparison = new OperandComparison(node.getOperator());
+            this.operator = node.getOperator();
+            this.lhs = lhs;
+            this.rhs = rhs;
+            this.lhsPattern = patternOf(lhs);
+            this.rhsPattern = patternOf(rhs);
+        }
+
+        private Pattern patternOf(Value value) {
+            if ( ! value.isConstant()) return null;
+            if ( ! operator.equals("=~") && ! operator.equals("=")) return null;
+            String pattern = "" + value.evaluate(null);
+            try {
+                return Pattern.compile(operator.equals("=~") ? pattern : OperandComparison.toRegex(pattern));
+            } catch (RuntimeException e) {
+                return null; // Leave it to evaluation to fail in the usual way
+            }
+        }
+
+        @Override
+        boolean canBeEmpty() { return lhs.isField() || rhs.isField(); }
+
+        @Override
+        Outcome evaluate(Context context) {
+            Object left = lhs.evaluate(context);
+            Object right = rhs.evaluate(context);
+            if (left == null && right == null) return Outcome.TRUE;
+            if (left == Result.INVALID || right == Result.INVALID) return Outcome.INVALID;
+
+            boolean leftIsList = lhs.isField() && isFieldResult(left);
+            boolean rightIsList = rhs.isField() && isFieldResult(right);
+            if (leftIsList && rightIsList) {
+                if ( ! operator.equals("==") && ! operator.equals("!=")) return Outcome.INVALID;
+                if (left == MISSING || right == MISSING) {
+                    boolean equal = left == right;
+                    return (operator.equals("==") == equal) ? Outcome.TRUE : Outcome.FALSE;
+                }
+                return compare(left, right, rhsPattern);
+            }
+            else if (leftIsList) {
+                if (right == null) return Outcome.FALSE;
+                if (left == MISSING) return Outcome.EMPTY;
+                return compare(left, right, rhsPattern);
+            }
+            else if (rightIsList) { // The interpreter compares with the field value on the left here too
+                if (left == null) return Outcome.FALSE;
+                if (right == MISSING) return Outcome.EMPTY;
+                return compare(right, left, lhsPattern);
+            }
+            return compare(left, right, rhsPattern);
+        }
+
+        private Outcome compare(Object lhs, Object rhs, Pattern rhsPattern) {
+            if (rhsPattern != null)
+                return rhsPattern.matcher("" + lhs).find() ? Outcome.TRUE : Outcome.FALSE;
+            return Outcome.of(comparison.compare(lhs, rhs));
+        }
+
+        private static boolean isFieldResult(Object value) {
+            return value == MISSING || value instanceof FieldValue;
+        }
+
+    }
+
+    /** Compares single operands exactly as ComparisonNode does */
+    private static class OperandComparison extends ComparisonNode {
+
+        OperandComparison(String operator) {
+            super(null, operator, null);
+        }
+
+        Result compare(Object lhs, Object rhs) { return evaluateBool(lhs, rhs); }
+
+        static String toRegex(String glob) { return globToRegex(glob); }
+
+    }
+
+    private static abstract class Value {
+
+        /** Returns whether this is a document field, which evaluates to a field value, MISSING, or a result */
+        boolean isField() { return false; }
+
+        /** Returns whether this always evaluates to the same value without looking at the context */
+        boolean isConstant() { return false; }
+
+        abstract Object evaluate(Context context);
+
+    }
+
+    private static class ConstantValue extends Value {
+
+        private final Object value;
+
+        ConstantValue(Object value) { this.value = value; }
+
+        @Override
+        boolean isConstant() { return true; }
+
+        @Override
+        Object evaluate(Context context) { return value; }
+
+    }
+
+    /** A document independent value which is computed by the expression node */
+    private static class NodeValue extends Value {
+
+        private final ExpressionNode node;
+
+        NodeValue(ExpressionNode node) { this.node = node; }
+
+        @Override
+        Object evaluate(Context context) { return node.evaluate(context); }
+
+    }
+
+    /** Accesses a single primitive field value through a path of struct fields resolved at compile time */
+    private static class FieldAccess extends Value {
+
+        private final Field[] path;
+
+        FieldAccess(Field[] path) { this.path = path; }
+
+        @Override
+        boolean isField() { return true; }
+
+        @Override
+        Object evaluate(Context context) {
+            DocumentOperation op = context.getDocumentOperation();
+            if (op instanceof DocumentUpdate) return Result.INVALID;
+
+            FieldValue value = ((DocumentPut)op).getDocument();
+            for (Field field : path) {
+                value = ((StructuredFieldValue)value).getFieldValue(field);
+                if (value == null) return MISSING;
+            }
+            return value;
+        }
+
+    }
+
+    private static class UnsupportedExpressionException extends RuntimeException {
+
+        UnsupportedExpressionException() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    /** Finds whether an expression refers to document types, document content or variables */
+    private static class DocumentDependencyVisitor implements Visitor {
+
+        boolean dependsOnDocument = false;
+
+        public void visit(ArithmeticNode node) {
+            for (ArithmeticNode.NodeItem item : node.getItems()) {
+                item.getNode().accept(this);
+            }
+        }
+
+        public void visit(AttributeNode node) {
+            node.getValue().accept(this);
+        }
+
+        public void visit(ComparisonNode node) {
+            node.getLHS().accept(this);
+            node.getRHS().accept(this);
+        }
+
+        public void visit(DocumentNode node) {
+            dependsOnDocument = true;
+        }
+
+        public void visit(EmbracedNode node) {
+            node.getNode().accept(this);
+        }
+
+        public void visit(IdNode node) {
+        }
+
+        public void visit(LiteralNode node) {
+        }
+
+        public void visit(LogicNode node) {
+            for (LogicNode.NodeItem item : node.getItems()) {
+                item.getNode().accept(this);
+            }
+        }
+
+        public void visit(NegationNode node) {
+            node.getNode().accept(this);
+        }
+
+        public void visit(NowNode node) {
+        }
+
+        public void visit(SearchColumnNode node) {
+        }
+
+        public void visit(VariableNode node) {
+            dependsOnDocument = true;
+        }
+
+    }
+
+}
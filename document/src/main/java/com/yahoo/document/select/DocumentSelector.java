@@ -2,12 +2,19 @@
 package com.yahoo.document.select;
 
 import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentUpdate;
 import com.yahoo.document.select.parser.ParseException;
 import com.yahoo.document.select.parser.SelectInput;
 import com.yahoo.document.select.parser.SelectParser;
 import com.yahoo.document.select.parser.TokenMgrError;
 import com.yahoo.document.select.rule.ExpressionNode;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * <p>A document selector is a filter which accepts or rejects documents
  * based on their type and content. A document selector has a textual
@@ -19,8 +26,17 @@ import com.yahoo.document.select.rule.ExpressionNode;
  */
 public class DocumentSelector {
 
+    /** The max number of document types we keep a compiled expression for */
+    private static final int maxCompiledTypes = 64;
+
     private ExpressionNode expression;
 
+    /** The expression compiled for all document operations, or null if it depends on the document type */
+    private final CompiledSelection documentIndependent;
+
+    /** Copy-on-write map from document type to the expression compiled for it, or to null if it cannot be compiled */
+    private volatile Map<DocumentType, CompiledSelection> compiled = Collections.emptyMap();
+
     /**
      * Creates a document selector from a Document Selection Language string
      *
@@ -40,6 +56,7 @@ public class DocumentSelector {
             throw (ParseException)t.initCause(e instanceof ParseException ?
                                               new ParseException(input.formatException(e.getMessage())) : e);
         }
+        documentIndependent = CompiledSelection.compile(expression, null);
     }
 
     /**
@@ -61,9 +78,36 @@ public class DocumentSelector {
      * @throws RuntimeException if the evaluation enters an illegal state
      */
     public Result accepts(Context context) {
+        CompiledSelection selection = compiledFor(context.getDocumentOperation());
+        if (selection != null) return selection.accepts(context);
         return Result.toResult(expression.evaluate(context));
     }
 
+    /** Returns the expression compiled for the given operation, or null if it must be interpreted */
+    private CompiledSelection compiledFor(DocumentOperation op) {
+        if (documentIndependent != null) return documentIndependent;
+
+        DocumentType type;
+        if (op instanceof DocumentPut)
+            type = ((DocumentPut)op).getDocument().getDataType();
+        else if (op instanceof DocumentUpdate)
+            type = ((DocumentUpdate)op).getDocumentType();
+        else
+            return null;
+
+        Map<DocumentType, CompiledSelection> compiled = this.compiled;
+        if (compiled.containsKey(type)) return compiled.get(type);
+        if (compiled.size() >= maxCompiledTypes) return null;
+
+        CompiledSelection selection = CompiledSelection.compile(expression, type);
+        synchronized (this) {
+            Map<DocumentType, CompiledSelection> updated = new IdentityHashMap<>(this.compiled);
+            updated.put(type, selection);
+            this.compiled = updated;
+        }
+        return selection;
+    }
+
     /**
      * Returns the list of different variables resulting in a true state for this
      * expression.
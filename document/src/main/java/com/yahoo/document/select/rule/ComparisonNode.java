@@ -291,7 +291,7 @@ public class ComparisonNode implements ExpressionNode {
      * @param rhs Right hand side of operation.
      * @return The evaluation result.
      */
-    private Result evaluateBool(Object lhs, Object rhs) {
+    protected Result evaluateBool(Object lhs, Object rhs) {
         if (operator.equals("==")) {
             return evaluateEquals(lhs, rhs);
         } else if (operator.equals("!=")) {
@@ -382,7 +382,7 @@ public class ComparisonNode implements ExpressionNode {
      * @param glob The glob pattern.
      * @return The regex string.
      */
-    private String globToRegex(String glob) {
+    protected static String globToRegex(String glob) {
         StringBuilder ret = new StringBuilder();
         ret.append("^");
         for (int i = 0; i < glob.length(); i++) {
@@ -399,7 +399,7 @@ public class ComparisonNode implements ExpressionNode {
      * @param glob The glob character.
      * @return The regex string.
      */
-    private String globToRegex(char glob) {
+    private static String globToRegex(char glob) {
         switch (glob) {
             case'*':
                 return ".*";
@@ -19,6 +19,18 @@ public class DocumentDeserializerFactory {
         return new VespaDocumentDeserializerHead(manager, buf);
     }
 
+    /**
+     * Creates a de-serializer for the current head document format which reads the fields of documents lazily:
+     * Each field value is decoded when it is first accessed, and fields which are never accessed are
+     * copied as is if the document is serialized again. The layout of the fields is validated when the document
+     * is read, but a malformed field value fails when the field is first accessed.
+     */
+    public static DocumentDeserializer createLazyHead(DocumentTypeManager manager, GrowableByteBuffer buf) {
+        VespaDocumentDeserializerHead deserializer = new VespaDocumentDeserializerHead(manager, buf);
+        deserializer.setLazyDocumentFields(true);
+        return deserializer;
+    }
+
     /**
      * Creates a de-serializer for the document format that was created on Vespa 4.2.
      */
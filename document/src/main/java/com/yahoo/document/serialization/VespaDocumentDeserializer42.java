@@ -87,6 +87,8 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
     private DocumentTypeManager manager;
     GrowableByteBuffer body;
     private short version;
+    /** Whether the fields of document headers and bodies are decoded when first accessed rather than when read */
+    private boolean lazyDocumentFields = false;
     private List<SpanNode> spanNodes;
     private List<Annotation> annotations;
     private int[] stringPositions;
@@ -108,6 +110,16 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
 
     final public DocumentTypeManager getDocumentTypeManager() { return manager; }
 
+    /**
+     * Sets whether documents read by this should keep their field values in serialized form
+     * and decode each of them on first access. Fields which are never accessed are written back
+     * as a copy of their serialized bytes when the document is serialized again.
+     * This only applies to documents on the current serialization format.
+     */
+    void setLazyDocumentFields(boolean lazyDocumentFields) {
+        this.lazyDocumentFields = lazyDocumentFields;
+    }
+
     public void read(Document document) {
          read(null, document);
     }
@@ -136,16 +148,17 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
 
         doc.setDataType(readDocumentType());
 
+        boolean lazy = lazyDocumentFields && version == Document.SERIALIZED_VERSION;
         if ((content & 0x2) != 0) {
-            doc.getHeader().deserialize(new Field("header"),this);
+            readStruct(doc.getHeader(), lazy);
         }
         if ((content & 0x4) != 0) {
-            doc.getBody().deserialize(new Field("body"),this);
+            readStruct(doc.getBody(), lazy);
         } else if (body != null) {
             GrowableByteBuffer header = getBuf();
             setBuf(body);
             body = null;
-            doc.getBody().deserialize(new Field("body"), this);
+            readStruct(doc.getBody(), lazy);
             body = getBuf();
             setBuf(header);
         }
@@ -297,6 +310,10 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
     }
 
     public void read(FieldBase fieldDef, Struct s) {
+        readStruct(s, false);
+    }
+
+    private void readStruct(Struct s, boolean lazy) {
         s.setVersion(version);
         int startPos = position();
 
@@ -358,6 +375,25 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
 
         s.clear();
         StructDataType type = s.getDataType();
+        if (lazy) {
+            Struct.SerializedFields serialized = new Struct.SerializedFields(destination, new FieldDecoder(manager, version), numberOfFields);
+            int fieldPos = position();
+            for (int i=0; i<numberOfFields; ++i) {
+                int fieldId = fieldIdsAndLengths.get(i).first;
+                long length = fieldIdsAndLengths.get(i).second;
+                if (length < 0 || fieldPos + length > destination.length) {
+                    throw new DeserializationException("Field " + fieldId + " of length " + length + " at " + fieldPos +
+                                                       " exceeds the " + destination.length + " bytes of struct data");
+                }
+                if (type.getField(fieldId, version) != null) { // ignoring unknown fields
+                    serialized.add(fieldId, fieldPos, (int)length);
+                }
+                fieldPos += (int)length;
+            }
+            s.setSerializedFields(serialized);
+            buf = bigBuf;
+            return;
+        }
         for (int i=0; i<numberOfFields; ++i) {
             Field structField = type.getField(fieldIdsAndLengths.get(i).first, version);
             if (structField == null) {
@@ -795,4 +831,26 @@ public class VespaDocumentDeserializer42 extends VespaDocumentSerializer42 imple
         return spanList;
     }
 
+    /** Decodes the field values of lazily read structs, each using a new deserializer */
+    private static class FieldDecoder implements Struct.SerializedFields.Decoder {
+
+        private final DocumentTypeManager manager;
+        private final short version;
+
+        FieldDecoder(DocumentTypeManager manager, short version) {
+            this.manager = manager;
+            this.version = version;
+        }
+
+        @Override
+        public FieldValue decode(Field field, byte[] data, int offset, int length) {
+            VespaDocumentDeserializer42 deserializer =
+                    new VespaDocumentDeserializer42(manager, GrowableByteBuffer.wrap(data, offset, length), null, version);
+            FieldValue value = field.getDataType().createFieldValue();
+            value.deserialize(field, deserializer);
+            return value;
+        }
+
+    }
+
 }
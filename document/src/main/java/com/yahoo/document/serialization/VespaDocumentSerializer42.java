@@ -310,13 +310,25 @@ public class VespaDocumentSerializer42 extends BufferSerializer implements Docum
         List<Integer> fieldIds = new LinkedList<>();
         List<java.lang.Integer> fieldLengths = new LinkedList<>();
 
-        for (Map.Entry<Field, FieldValue> value : s.getFields()) {
+        synchronized (s) { // such that no fields are decoded by other threads while they are written
+            for (Map.Entry<Field, FieldValue> value : s.getDecodedFields()) {
 
-            int startPos = buffer.position();
-            value.getValue().serialize(value.getKey(), this);
+                int startPos = buffer.position();
+                value.getValue().serialize(value.getKey(), this);
 
-            fieldLengths.add(buffer.position() - startPos);
-            fieldIds.add(value.getKey().getId(s.getVersion()));
+                fieldLengths.add(buffer.position() - startPos);
+                fieldIds.add(value.getKey().getId(s.getVersion()));
+            }
+
+            // Fields of lazily read structs which are never accessed are copied as is
+            Struct.SerializedFields serialized = s.getSerializedFields();
+            if (serialized != null) {
+                for (int i = 0; i < serialized.size(); i++) {
+                    buffer.put(serialized.data(), serialized.offset(i), serialized.length(i));
+                    fieldLengths.add(serialized.length(i));
+                    fieldIds.add(serialized.fieldId(i));
+                }
+            }
         }
 
         // Switch buffers again:
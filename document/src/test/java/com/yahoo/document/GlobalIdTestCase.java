@@ -1,6 +1,7 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -84,4 +85,41 @@ public class GlobalIdTestCase extends junit.framework.TestCase {
         verifyGidToBucketIdMapping("doc:myns:http://foo.bar");
         verifyGidToBucketIdMapping("doc:jsrthsdf:a234aleingzldkifvasdfgadf");
     }
+
+    private void assertFromUtf8(String idString) {
+        DocumentId documentId = new DocumentId(idString);
+        byte[] utf8 = ("prefix" + idString + "suffix").getBytes(StandardCharsets.UTF_8);
+        int length = idString.getBytes(StandardCharsets.UTF_8).length;
+        GlobalId globalId = GlobalId.fromUtf8(utf8, 6, length);
+        assertEquals(new GlobalId(documentId.getGlobalId()), globalId);
+        assertEquals(bucketIdFactory.getBucketId(documentId), bucketIdFactory.getBucketId(utf8, 6, length));
+    }
+
+    public void testFromUtf8() {
+        assertFromUtf8("id:ns:type::local");
+        assertFromUtf8("id:ns:type::local:with:colons");
+        assertFromUtf8("id:ns:type:g=group:local");
+        assertFromUtf8("id:ns:type:n=1234:local");
+        assertFromUtf8("id:ns:type:n=-9223372036854775808:local");
+        assertFromUtf8("userdoc:ns:1:abc");
+        assertFromUtf8("userdoc:hsgf:18446744073700000000:dfdfsdfg");
+        assertFromUtf8("groupdoc:ns:somegroup:hmm");
+        assertFromUtf8("doc:myns:http://foo.bar");
+        assertFromUtf8("doc:ns:bl\u00e5b\u00e6r:\u20ac\ud83d\ude00");
+        // Not in canonical form, or not handled directly
+        assertFromUtf8("id:ns:type:n=0042:local");
+        assertFromUtf8("userdoc:ns:-1:abc");
+        assertFromUtf8("orderdoc(4,2):ns:group:12:local");
+    }
+
+    public void testFromUtf8WithInvalidId() {
+        byte[] utf8 = "id:ns:type:x=1:local".getBytes(StandardCharsets.UTF_8);
+        try {
+            GlobalId.fromUtf8(utf8, 0, utf8.length);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Illegal key 'x'", e.getMessage());
+        }
+    }
+
 }
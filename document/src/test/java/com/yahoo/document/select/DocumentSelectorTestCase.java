@@ -644,6 +644,37 @@ public class DocumentSelectorTestCase extends junit.framework.TestCase {
         assertEquals(Result.FALSE, evaluate("test.structarrmap{$x}.key == 17 AND test.stringweightedset{$x}", documents.get(1)));
     }
 
+    public void testCompiledEvaluationEqualsInterpretation() throws ParseException {
+        List<DocumentOperation> operations = new ArrayList<>(createDocs());
+        operations.add(new DocumentPut(manager.getDocumentType("test"), new DocumentId("doc:scheme:")));
+        operations.add(new DocumentUpdate(manager.getDocumentType("test"), new DocumentId("doc:scheme:")));
+        String[] expressions = {
+                "test", "test or music", "not test and true",
+                "test.hint", "test.hint == 24", "test.hint != 24", "test.hint > 14.5", "14 < test.hint",
+                "test.hint == test.hint", "test.hint != test.hstring", "test.hint < test.hint",
+                "test.hstring == \"foo\"", "test.hstring = \"*a*\"", "test.hstring =~ \"^[YB]\"", "\"foo\" = test.hstring",
+                "test.hstring == null", "null == test.hstring", "test.mystruct.key == 14", "test.mystruct.value",
+                "test.hint == 24 or true", "true or test.hint == 24", "false or test.hint == 24",
+                "test.hint == 24 and false", "false and test.hint == 24", "test.hint == 24 and test.hfloat > 1.5",
+                "test.hint == 24 and false or true", "true or test.hint == 24 and false", "not (test.hint > 20 or false)",
+                "(test.hint > 20 and test.hstring) or test.content = \"ba*\"", "music.hint > 10 or test.hint > 10",
+                "id.namespace == \"myspace\" and test.hint > 14", "id.user == 1234 or id.scheme == \"doc\"",
+                "1 + 2 > 2 and test.hfloat < 2.2", "test.hint.abs() > 0", "test.intarray[0] == 3"
+        };
+        for (String expression : expressions) {
+            DocumentSelector selector = new DocumentSelector(expression);
+            for (DocumentOperation op : operations) {
+                Result interpreted;
+                try {
+                    interpreted = selector.getMatchingResultList(op).toResult();
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                assertEquals(expression + " on " + op.getId(), interpreted, selector.accepts(op));
+            }
+        }
+    }
+
     public void testTicket1769674() throws ParseException {
         assertParseError("music.uri=\"junk",
                          "Lexical error at line -1, column 17.  Encountered: <EOF> after : \"\\\"junk\"");
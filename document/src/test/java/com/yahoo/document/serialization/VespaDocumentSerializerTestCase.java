@@ -20,7 +20,17 @@ import com.yahoo.io.GrowableByteBuffer;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -129,4 +139,99 @@ public class VespaDocumentSerializerTestCase {
         // rounded up to 4096 bytes.
         assertTrue(buf.remaining() < 4096);
     }
+
+    static class LazyFixture extends CompressionFixture {
+
+        final Document doc;
+        final byte[] serialized;
+
+        LazyFixture() {
+            docType.addField("my_str", DataType.STRING);
+            docType.addField("my_int", DataType.INT);
+
+            doc = new Document(docType, "id:foo:map_of_structs::lazy");
+            doc.setFieldValue("my_str", new StringFieldValue(COMPRESSABLE_STRING));
+            doc.setFieldValue("my_int", new IntegerFieldValue(42));
+            serialized = serializeHead(doc);
+        }
+
+        static byte[] serializeHead(Document doc) {
+            GrowableByteBuffer buf = new GrowableByteBuffer();
+            DocumentSerializerFactory.createHead(buf).write(doc);
+            buf.flip();
+            byte[] bytes = new byte[buf.remaining()];
+            buf.get(bytes);
+            return bytes;
+        }
+
+        Document deserializeLazily() {
+            return manager.createDocument(DocumentDeserializerFactory.createLazyHead(manager, GrowableByteBuffer.wrap(serialized)));
+        }
+
+        Document deserialize(byte[] serialized) {
+            return manager.createDocument(GrowableByteBuffer.wrap(serialized));
+        }
+    }
+
+    @Test
+    public void lazily_read_document_decodes_fields_on_access() {
+        LazyFixture fixture = new LazyFixture();
+
+        Document lazy = fixture.deserializeLazily();
+        assertNotNull(lazy.getHeader().getSerializedFields());
+        assertEquals(2, lazy.getFieldCount());
+        assertEquals(new IntegerFieldValue(42), lazy.getFieldValue("my_int"));
+        assertEquals(1, lazy.getHeader().getSerializedFields().size());
+        assertEquals(2, lazy.getFieldCount());
+        assertEquals(fixture.doc, lazy);
+        assertNull(lazy.getHeader().getSerializedFields());
+    }
+
+    @Test
+    public void untouched_fields_of_lazily_read_document_are_serialized_as_is() {
+        LazyFixture fixture = new LazyFixture();
+
+        assertArrayEquals(fixture.serialized, LazyFixture.serializeHead(fixture.deserializeLazily()));
+
+        Document modified = fixture.deserializeLazily();
+        modified.setFieldValue("my_int", new IntegerFieldValue(7));
+        assertEquals(1, modified.getHeader().getSerializedFields().size());
+        Document result = fixture.deserialize(LazyFixture.serializeHead(modified));
+        assertEquals(new IntegerFieldValue(7), result.getFieldValue("my_int"));
+        assertEquals(new StringFieldValue(CompressionFixture.COMPRESSABLE_STRING), result.getFieldValue("my_str"));
+
+        Document removed = fixture.deserializeLazily();
+        assertEquals(new StringFieldValue(CompressionFixture.COMPRESSABLE_STRING), removed.removeFieldValue("my_str"));
+        Document clone = removed.clone();
+        result = fixture.deserialize(LazyFixture.serializeHead(clone));
+        assertNull(result.getFieldValue("my_str"));
+        assertEquals(new IntegerFieldValue(42), result.getFieldValue("my_int"));
+        assertEquals(1, result.getFieldCount());
+    }
+
+    @Test
+    public void lazily_read_document_can_be_read_by_multiple_threads() throws Exception {
+        LazyFixture fixture = new LazyFixture();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 100; i++) {
+            Document lazy = fixture.deserializeLazily();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> reads = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                String field = thread % 2 == 0 ? "my_str" : "my_int";
+                reads.add(executor.submit(() -> {
+                    start.await();
+                    return fixture.doc.getFieldValue(field).equals(lazy.getFieldValue(field)) &&
+                           lazy.getFieldCount() == 2;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> read : reads) {
+                assertTrue(read.get());
+            }
+            assertEquals(fixture.doc, lazy);
+        }
+        executor.shutdown();
+    }
+
 }
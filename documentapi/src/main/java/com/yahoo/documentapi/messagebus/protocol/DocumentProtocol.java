@@ -370,6 +370,20 @@ public class DocumentProtocol implements Protocol {
         return this;
     }
 
+    /**
+     * Sets whether the documents of decoded messages are read lazily. Each field value is then decoded when it is
+     * first accessed, and fields which are never accessed are copied as is if the message is encoded again, which
+     * saves work when messages are mostly forwarded. A malformed field value then fails when it is accessed rather
+     * than when the message is decoded. This is off by default.
+     *
+     * @param lazy Whether to decode document fields lazily.
+     * @return This, to allow chaining.
+     */
+    public DocumentProtocol setLazyDocumentDecoding(boolean lazy) {
+        routableRepository.setLazyDocumentDecoding(lazy);
+        return this;
+    }
+
     /**
      * Adds a new routable factory to this protocol. This method is thread-safe, and may be invoked on a protocol object
      * that is already in use by a message bus instance. Notice that you must explicitly register a factory for each
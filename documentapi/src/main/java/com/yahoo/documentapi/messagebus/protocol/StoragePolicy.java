@@ -2,6 +2,7 @@
 package com.yahoo.documentapi.messagebus.protocol;
 
 import com.yahoo.concurrent.CopyOnWriteHashMap;
+import com.yahoo.concurrent.ThreadFactoryFactory;
 import com.yahoo.config.subscription.ConfigSourceSet;
 import com.yahoo.document.BucketId;
 import com.yahoo.document.BucketIdFactory;
@@ -23,6 +24,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -312,6 +317,12 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
         private ClusterState cachedClusterState = null;
         private int oldClusterVersionGottenCount = 0;
         private final int maxOldClusterVersionBeforeSendingRandom; // Reset cluster version protection
+        /** Builds distributor tables for new cluster states outside the routing thread */
+        private final ThreadPoolExecutor distributorTableBuilder =
+                new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                       ThreadFactoryFactory.getDaemonThreadFactory("storagepolicy.distributortable"));
+        /** The newest cluster state we want a distributor table for */
+        private volatile ClusterState distributorTableState = null;
 
         public DistributorSelectionLogic(Parameters params, ExternalSlobrokPolicy policy) {
             this.hostFetcher = params.createHostFetcher(policy);
@@ -322,10 +333,33 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
         }
 
         public void destroy() {
+            distributorTableBuilder.shutdownNow();
             hostFetcher.close();
             distribution.close();
         }
 
+        /**
+         * Requests a precomputed distributor table for the given state, such that routing with it becomes
+         * a table lookup once it is built. Only the newest requested state is built if several arrive at once.
+         */
+        private void prepareDistributorTable(ClusterState state) {
+            distributorTableState = state;
+            try {
+                distributorTableBuilder.execute(() -> {
+                    ClusterState newest = distributorTableState;
+                    if (newest == null) return;
+                    try {
+                        distribution.prepareDistributorTable(newest, owningBucketStates);
+                    } catch (RuntimeException e) {
+                        log.log(LogLevel.WARNING, "Failed building distributor table for cluster state version " +
+                                               newest.getVersion(), e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Destroyed; routing falls back to computing each distributor
+            }
+        }
+
         public String getTargetSpec(RoutingContext context, BucketId bucketId) {
             String sendRandomReason = null;
             MessageContext messageContext = new MessageContext(cachedClusterState);
@@ -403,7 +437,10 @@ public class StoragePolicy extends ExternalSlobrokPolicy {
 
         private void updateCachedRoutingStateFromWrongDistribution(MessageContext context, ClusterState newState) {
             if (cachedClusterState == null || newState.getVersion() >= cachedClusterState.getVersion()) {
-                cachedClusterState = newState;
+                if ( ! newState.equals(cachedClusterState)) { // Keep the instance our distributor table is built for
+                    cachedClusterState = newState;
+                    prepareDistributorTable(newState);
+                }
                 if (newState.getClusterState().equals(State.UP)) {
                     hostFetcher.updateValidTargets(newState);
                 }
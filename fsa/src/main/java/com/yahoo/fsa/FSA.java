@@ -11,7 +11,9 @@ import java.nio.CharBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 
 /**
@@ -293,6 +295,243 @@ public class FSA {
         }
     }
 
+    /**
+     * Class used to find the accepted strings which are within a maximum edit distance of a word.
+     * <p>
+     * The automaton is traversed depth first while keeping one row of the Levenshtein distance matrix
+     * per symbol of the current path, which simulates a Levenshtein automaton of the word intersected with
+     * this automaton: A branch is abandoned as soon as no string starting by it can be within the maximum
+     * distance, so only a small part of the automaton is visited for small distances.
+     * Distances are counted in unicode code points for utf-8 automata, and in bytes otherwise.
+     * </p><p>
+     * Matches are passed to a consumer as a {@link Match} which is reused for all the matches of a lookup,
+     * such that no objects are created per candidate unless its string or data is requested.
+     * Like {@link State}, an instance must only be used by one thread at the time.
+     * </p>
+     */
+    public static class FuzzyMatcher {
+
+        /**
+         * A string accepted by the automaton within the maximum edit distance of the looked up word.
+         * This is only valid until the consumer it is passed to returns.
+         */
+        public static class Match {
+
+            private final FuzzyMatcher matcher;
+            private int state;
+            private int hash;
+            private int length;
+            private int distance;
+
+            private Match(FuzzyMatcher matcher) {
+                this.matcher = matcher;
+            }
+
+            /** Returns the edit distance between the looked up word and this */
+            public int distance() { return distance; }
+
+            /** Returns the perfect hash value of this, or 0 if the automaton has no perfect hash */
+            public int hash() { return hash; }
+
+            /** Returns the number of bytes in the encoded string of this */
+            public int length() { return length; }
+
+            /** Returns a byte of the encoded string of this */
+            public byte byteAt(int index) {
+                if (index < 0 || index >= length)
+                    throw new IndexOutOfBoundsException("Index " + index + " is outside [0, " + length + ")");
+                return matcher.path[index];
+            }
+
+            /** Returns the string of this, which is decoded on each call */
+            public String string() {
+                return matcher.fsa.decode(ByteBuffer.wrap(matcher.path, 0, length));
+            }
+
+            /** Returns a new buffer containing the data of this */
+            public ByteBuffer data() {
+                return matcher.fsa.data(state);
+            }
+
+            /** Returns the data of this as a string */
+            public String dataString() {
+                return matcher.fsa.dataString(state);
+            }
+
+            @Override
+            public String toString() {
+                return "match '" + string() + "', distance: " + distance;
+            }
+        }
+
+        private final FSA fsa;
+        private final int maxEdits;
+        private final int prefixLength;
+        private final boolean utf8;
+        private final Match match;
+
+        /** The symbols of the looked up word which follows the prefix */
+        private int[] target = new int[16];
+        private int targetLength;
+
+        /** The distance matrix rows of the symbols of the current path */
+        private int[][] rows = new int[16][];
+
+        /** The bytes of the current path */
+        private byte[] path = new byte[64];
+
+        private Consumer<Match> consumer;
+
+        private FuzzyMatcher(FSA fsa, int maxEdits, int prefixLength) {
+            if (maxEdits < 0)
+                throw new IllegalArgumentException("Max edits can not be negative, was " + maxEdits);
+            if (prefixLength < 0)
+                throw new IllegalArgumentException("Prefix length can not be negative, was " + prefixLength);
+            this.fsa = fsa;
+            this.maxEdits = maxEdits;
+            this.prefixLength = prefixLength;
+            this.utf8 = "UTF-8".equals(fsa._charset.name());
+            this.match = new Match(this);
+        }
+
+        /**
+         * Passes each string accepted by the automaton which is within the maximum edit distance
+         * of the given word, and which starts by the same prefix symbols as the word, to the given consumer.
+         */
+        public void match(String word, Consumer<Match> consumer) {
+            ByteBuffer encoded = fsa.encode(word);
+            int state = fsa.start();
+            int hash = 0;
+            int pathLength = 0;
+            int symbols = 0;
+            targetLength = 0;
+            while (encoded.hasRemaining()) {
+                int symbolLength = Math.min(symbolLength(encoded.get(encoded.position()) & 0xff), encoded.remaining());
+                if (symbols++ < prefixLength) {
+                    for (int i = 0; i < symbolLength; i++) {
+                        byte symbol = encoded.get();
+                        hash += fsa.hashDelta(state, symbol);
+                        state = fsa.delta(state, symbol);
+                        if (state == 0) return;
+                        ensurePathCapacity(pathLength + 1);
+                        path[pathLength++] = symbol;
+                    }
+                }
+                else {
+                    int symbol = 0;
+                    for (int i = 0; i < symbolLength; i++)
+                        symbol = addByte(symbol, encoded.get() & 0xff, i == 0, symbolLength);
+                    if (targetLength == target.length)
+                        target = Arrays.copyOf(target, target.length * 2);
+                    target[targetLength++] = symbol;
+                }
+            }
+
+            int[] firstRow = row(0);
+            for (int i = 0; i <= targetLength; i++)
+                firstRow[i] = i;
+            this.consumer = consumer;
+            try {
+                if (targetLength <= maxEdits && fsa.isFinal(state))
+                    accept(state, hash, pathLength, targetLength);
+                traverse(state, hash, pathLength, 0, 0, 0);
+            }
+            finally {
+                this.consumer = null;
+            }
+        }
+
+        /**
+         * Visits the states following the given state.
+         *
+         * @param depth the number of complete symbols in the path following the prefix
+         * @param symbol the value of the incomplete symbol at the end of the path, if any
+         * @param remainingBytes the number of bytes missing to complete the symbol at the end of the path
+         */
+        private void traverse(int state, int hash, int pathLength, int depth, int symbol, int remainingBytes) {
+            ensurePathCapacity(pathLength + 1);
+            for (int s = 1; s < 255; s++) {
+                byte b = (byte)s;
+                int next = fsa.delta(state, b);
+                if (next == 0) continue;
+
+                int nextHash = hash + fsa.hashDelta(state, b);
+                path[pathLength] = b;
+                if (remainingBytes == 0) {
+                    int symbolLength = symbolLength(s);
+                    if (symbolLength > 1) {
+                        traverse(next, nextHash, pathLength + 1, depth, addByte(0, s, true, symbolLength), symbolLength - 1);
+                        continue;
+                    }
+                }
+                else if (remainingBytes > 1) {
+                    traverse(next, nextHash, pathLength + 1, depth, addByte(symbol, s, false, 0), remainingBytes - 1);
+                    continue;
+                }
+                int completeSymbol = remainingBytes == 0 ? s : addByte(symbol, s, false, 0);
+
+                if (computeRow(depth + 1, completeSymbol) > maxEdits) continue;
+                int distance = rows[depth + 1][targetLength];
+                if (distance <= maxEdits && fsa.isFinal(next))
+                    accept(next, nextHash, pathLength + 1, distance);
+                traverse(next, nextHash, pathLength + 1, depth + 1, 0, 0);
+            }
+        }
+
+        /** Computes the distance matrix row of the given depth, and returns the smallest distance in it */
+        private int computeRow(int depth, int symbol) {
+            int[] previous = rows[depth - 1];
+            int[] row = row(depth);
+            row[0] = previous[0] + 1;
+            int smallest = row[0];
+            for (int i = 1; i <= targetLength; i++) {
+                int distance = previous[i - 1] + (target[i - 1] == symbol ? 0 : 1);
+                distance = Math.min(distance, previous[i] + 1);
+                distance = Math.min(distance, row[i - 1] + 1);
+                row[i] = distance;
+                smallest = Math.min(smallest, distance);
+            }
+            return smallest;
+        }
+
+        private int[] row(int depth) {
+            if (depth == rows.length)
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            if (rows[depth] == null || rows[depth].length <= targetLength)
+                rows[depth] = new int[Math.max(targetLength + 1, 16)];
+            return rows[depth];
+        }
+
+        private void ensurePathCapacity(int length) {
+            if (length > path.length)
+                path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+        }
+
+        private void accept(int state, int hash, int pathLength, int distance) {
+            match.state = state;
+            match.hash = hash;
+            match.length = pathLength;
+            match.distance = distance;
+            consumer.accept(match);
+        }
+
+        /** Returns the number of bytes of the symbol starting by the given byte */
+        private int symbolLength(int firstByte) {
+            if ( ! utf8 || firstByte < 0x80) return 1;
+            if ((firstByte & 0xe0) == 0xc0) return 2;
+            if ((firstByte & 0xf0) == 0xe0) return 3;
+            if ((firstByte & 0xf8) == 0xf0) return 4;
+            return 1;
+        }
+
+        /** Returns the value of a symbol after adding the given byte to it */
+        private static int addByte(int symbol, int b, boolean first, int symbolLength) {
+            if ( ! first) return symbol << 6 | (b & 0x3f);
+            return symbolLength == 1 ? b : b & (0x7f >> symbolLength);
+        }
+
+    }
+
     public State getState(){
         return new State(this);
     }
@@ -312,6 +551,16 @@ public class FSA {
         return new Iterator(state);
     }
 
+    /**
+     * Returns a new fuzzy matcher of this.
+     *
+     * @param maxEdits the max number of inserted, removed or substituted symbols in matches
+     * @param prefixLength the number of symbols at the start of looked up words which must match exactly
+     */
+    public FuzzyMatcher fuzzyMatcher(int maxEdits, int prefixLength) {
+        return new FuzzyMatcher(this, maxEdits, prefixLength);
+    }
+
     private boolean _ok = false;
     private MappedByteBuffer _header;
     private MappedByteBuffer _symbol_tab;
@@ -0,0 +1,70 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.fsa.test;
+
+import com.yahoo.fsa.FSA;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author agent
+ */
+public class FuzzyMatcherTestCase extends junit.framework.TestCase {
+
+    private FSA fsa;
+
+    public FuzzyMatcherTestCase(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        fsa = new FSA("src/test/fsa/test-iterator.fsa");
+    }
+
+    public void testExactMatch() {
+        assertEquals("{dacia=0}", match("dacia", 0, 0).toString());
+    }
+
+    public void testSubstitutionInsertionAndRemoval() {
+        assertEquals("{dacia=1, dacite=1}", match("dacie", 1, 0).toString());
+        assertEquals("{abdomen=1}", match("abdomn", 1, 0).toString());
+        assertEquals("{abacus=1}", match("abacuss", 1, 0).toString());
+        assertEquals("{abdominous=1}", match("abdominus", 2, 0).toString());
+        assertEquals("{}", match("xyz", 2, 0).toString());
+    }
+
+    public void testPrefixLength() {
+        assertEquals("{dacia=1}", match("bacia", 1, 0).toString());
+        assertEquals("{}", match("bacia", 1, 1).toString());
+        assertEquals("{dacia=1, daciaa=2, daciab=2, dacite=2}", match("dacix", 2, 4).toString());
+    }
+
+    public void testMatchData() {
+        StringBuilder data = new StringBuilder();
+        fsa.fuzzyMatcher(1, 0).match("abadam", match -> data.append(match.dataString())
+                                                         .append(":").append(match.distance())
+                                                         .append(":").append(match.length()));
+        assertEquals("abadan:1:6", data.toString());
+    }
+
+    public void testUtf8DistanceIsCountedInCodePoints() {
+        FSA utf8 = new FSA("src/test/fsa/utf8.fsa");
+        String word = new String(new byte[] { (byte)0xe0, (byte)0xa4, (byte)0xb9, (byte)0xe0, (byte)0xa4, (byte)0xbf,
+                                              (byte)0xe0, (byte)0xa4, (byte)0xa8, (byte)0xe0, (byte)0xa5, (byte)0x8d,
+                                              (byte)0xe0, (byte)0xa4, (byte)0xa6, (byte)0xe0, (byte)0xa5, (byte)0x80 },
+                                 Charset.forName("utf-8"));
+        String misspelled = word.substring(0, 2) + "x" + word.substring(3);
+        Map<String, Integer> matches = new TreeMap<>();
+        utf8.fuzzyMatcher(1, 0).match(misspelled, match -> matches.put(match.string(), match.distance()));
+        assertEquals(1, matches.size());
+        assertEquals(1, (int)matches.get(word));
+    }
+
+    private Map<String, Integer> match(String word, int maxEdits, int prefixLength) {
+        Map<String, Integer> matches = new TreeMap<>();
+        fsa.fuzzyMatcher(maxEdits, prefixLength).match(word, match -> matches.put(match.string(), match.distance()));
+        return matches;
+    }
+
+}
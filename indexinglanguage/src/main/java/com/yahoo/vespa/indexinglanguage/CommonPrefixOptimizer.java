@@ -0,0 +1,170 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.vespa.indexinglanguage.expressions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optimizes scripts by executing the common prefix of consecutive statements only once.
+ * Typical examples are statements which tokenize the same input before writing it to different
+ * fields, such as
+ * <pre>
+ * input foo | tokenize normalize | index foo;
+ * input foo | tokenize normalize | summary foo;
+ * </pre>
+ * which become
+ * <pre>
+ * input foo | tokenize normalize | { index foo; summary foo; };
+ * </pre>
+ * This also applies to statements which clear the state and guard the input, as generated by the config model.
+ * Statements are only combined when this does not change the result, i.e when the prefix is a
+ * pure transformation of an input field and the remainders only transform the value and write it to
+ * fields which are not the input.
+ *
+ * @author agent
+ */
+public class CommonPrefixOptimizer extends ExpressionConverter {
+
+    @Override
+    protected boolean shouldConvert(Expression exp) {
+        return exp instanceof ScriptExpression;
+    }
+
+    @Override
+    protected Expression doConvert(Expression exp) {
+        List<Statement> statements = new ArrayList<>();
+        for (StatementExpression statement : (ScriptExpression)exp) {
+            statements.add(new Statement((StatementExpression)innerConvert(statement)));
+        }
+
+        List<StatementExpression> optimized = new ArrayList<>();
+        for (int i = 0; i < statements.size(); ) {
+            Statement first = statements.get(i);
+            int prefixLength = first.pureInputPrefixLength();
+            int end = i + 1;
+            while (end < statements.size() && prefixLength > 1) {
+                int sharedLength = first.sharedPrefixLength(statements.get(end), prefixLength);
+                if (sharedLength < 2) break;
+                prefixLength = sharedLength;
+                end++;
+            }
+            if (end - i < 2 || ! canCombine(statements.subList(i, end), prefixLength)) {
+                optimized.add(first.expression);
+                i++;
+            } else {
+                optimized.add(combine(statements.subList(i, end), prefixLength));
+                i = end;
+            }
+        }
+        return new ScriptExpression(optimized);
+    }
+
+    private static boolean canCombine(List<Statement> statements, int prefixLength) {
+        String inputField = ((InputExpression)statements.get(0).body.get(0)).getFieldName();
+        for (Statement statement : statements) {
+            for (Expression exp : statement.body.subList(prefixLength, statement.body.size())) {
+                if (exp instanceof OutputExpression) {
+                    if (((OutputExpression)exp).getFieldName().equals(inputField)) return false;
+                } else if (exp instanceof InputExpression || ! isPureTransform(exp)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static StatementExpression combine(List<Statement> statements, int prefixLength) {
+        Statement first = statements.get(0);
+        List<StatementExpression> remainders = new ArrayList<>();
+        for (Statement statement : statements) {
+            remainders.add(new StatementExpression(statement.body.subList(prefixLength, statement.body.size())));
+        }
+        List<Expression> body = new ArrayList<>(first.body.subList(0, prefixLength));
+        body.add(new ScriptExpression(remainders));
+        return first.wrap(body);
+    }
+
+    /**
+     * Returns whether the given expression only computes a new value from the current one, without
+     * side effects or dependencies on anything else than the current value and the language.
+     * Expressions which modify their input value, such as ngram, are not pure as the value may be shared.
+     */
+    static boolean isPureTransform(Expression exp) {
+        return exp instanceof InputExpression ||
+               exp instanceof TokenizeExpression ||
+               exp instanceof NormalizeExpression ||
+               exp instanceof LowerCaseExpression ||
+               exp instanceof TrimExpression ||
+               exp instanceof ExactExpression ||
+               exp instanceof SplitExpression ||
+               exp instanceof FlattenExpression ||
+               exp instanceof ToStringExpression;
+    }
+
+    /** A top level statement, with any leading clear_state and guard unwrapped */
+    private static class Statement {
+
+        final StatementExpression expression;
+        final boolean clearsState;
+        final boolean guarded;
+        final List<Expression> body;
+
+        Statement(StatementExpression expression) {
+            this.expression = expression;
+            List<Expression> body = expression.asList();
+            clearsState = ! body.isEmpty() && body.get(0) instanceof ClearStateExpression;
+            if (clearsState) {
+                body = body.subList(1, body.size());
+            }
+            List<Expression> guardedBody = body.size() == 1 ? guardedBody(body.get(0)) : null;
+            guarded = guardedBody != null;
+            this.body = guarded ? guardedBody : body;
+        }
+
+        private static List<Expression> guardedBody(Expression exp) {
+            if ( ! (exp instanceof GuardExpression)) return null;
+            Expression inner = ((GuardExpression)exp).getInnerExpression();
+            if (inner instanceof ScriptExpression && ((ScriptExpression)inner).size() == 1) {
+                inner = ((ScriptExpression)inner).get(0);
+            }
+            if ( ! (inner instanceof StatementExpression)) return null;
+            return ((StatementExpression)inner).asList();
+        }
+
+        /** Returns the length of the prefix of this which starts by an input and only contains pure transforms */
+        int pureInputPrefixLength() {
+            if (body.isEmpty() || ! (body.get(0) instanceof InputExpression)) return 0;
+            int length = 1;
+            while (length < body.size() && isPureTransform(body.get(length)) && ! (body.get(length) instanceof InputExpression))
+                length++;
+            return length;
+        }
+
+        /** Returns the length of the prefix of at most the given length which this has in common with the given statement */
+        int sharedPrefixLength(Statement other, int maxLength) {
+            if (clearsState != other.clearsState || guarded != other.guarded) return 0;
+            int length = 0;
+            while (length < maxLength && length < other.body.size() && body.get(length).equals(other.body.get(length)))
+                length++;
+            return length;
+        }
+
+        /** Returns a statement with the same clear_state and guard as this, around the given body */
+        StatementExpression wrap(List<Expression> body) {
+            List<Expression> statement = new ArrayList<>();
+            if (clearsState) {
+                statement.add(new ClearStateExpression());
+            }
+            if (guarded) {
+                statement.add(new GuardExpression(new StatementExpression(body)));
+            } else {
+                statement.addAll(body);
+            }
+            return new StatementExpression(statement);
+        }
+
+    }
+
+}
@@ -0,0 +1,258 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage.linguistics;
+
+import com.yahoo.document.annotation.Annotation;
+import com.yahoo.document.annotation.AnnotationTypes;
+import com.yahoo.document.annotation.Span;
+import com.yahoo.document.annotation.SpanTree;
+import com.yahoo.document.annotation.SpanTrees;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.language.Language;
+import com.yahoo.language.Linguistics;
+import com.yahoo.language.process.StemMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of the linguistics annotations of short strings, to avoid tokenizing, normalizing and stemming
+ * strings which are repeated across fields and documents, such as titles and categories, again.
+ * The annotations are stored as a compact list of spans and terms which is replayed as a span tree on a hit.
+ * <p>
+ * Caches are owned by a single thread and obtained by {@link #forCurrentThread}, such that no synchronization
+ * is needed. The least recently used strings are evicted when the estimated size of a cache exceeds its byte limit.
+ * Each cache counts its hits, misses and evictions until the counts are reset by the thread owning it.
+ *
+ * @author agent
+ */
+public final class AnnotationCache {
+
+    /** Strings longer than this are never cached */
+    public static final int MAX_TEXT_LENGTH = 256;
+
+    private static final ThreadLocal<AnnotationCache> perThread = new ThreadLocal<>();
+
+    private final Map<Key, Spans> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    AnnotationCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Returns the cache of the calling thread, which is created if it does not exist or has another byte limit */
+    public static AnnotationCache forCurrentThread(long maxBytes) {
+        AnnotationCache cache = perThread.get();
+        if (cache == null || cache.maxBytes != maxBytes) {
+            cache = new AnnotationCache(maxBytes);
+            perThread.set(cache);
+        }
+        return cache;
+    }
+
+    /** Returns the cache of the calling thread, or null if it has none */
+    public static AnnotationCache ofCurrentThread() {
+        return perThread.get();
+    }
+
+    /** Returns whether strings of the given length may be cached */
+    public static boolean isCacheable(String text) {
+        return text.length() <= MAX_TEXT_LENGTH;
+    }
+
+    /** Returns the cached annotations of the given key, or null if they are not cached */
+    Spans get(Key key) {
+        Spans spans = entries.get(key);
+        if (spans != null)
+            hits++;
+        else
+            misses++;
+        return spans;
+    }
+
+    /** Caches the given annotations, evicting the least recently used ones if this becomes larger than its limit */
+    void put(Key key, Spans spans) {
+        long size = key.byteSize() + spans.byteSize();
+        if (size > maxBytes) return;
+
+        Spans previous = entries.put(key, spans);
+        if (previous != null) {
+            bytes -= key.byteSize() + previous.byteSize();
+        }
+        bytes += size;
+        for (Iterator<Map.Entry<Key, Spans>> i = entries.entrySet().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            Map.Entry<Key, Spans> eldest = i.next();
+            bytes -= eldest.getKey().byteSize() + eldest.getValue().byteSize();
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /** Returns the number of strings in this cache */
+    public int size() { return entries.size(); }
+
+    /** Returns the estimated number of bytes used by this cache */
+    public long byteSize() { return bytes; }
+
+    /** Returns the byte limit of this cache */
+    public long maxBytes() { return maxBytes; }
+
+    /** Returns the number of lookups which found the string in this since the counts were last reset */
+    public long hitCount() { return hits; }
+
+    /** Returns the number of lookups which did not find the string in this since the counts were last reset */
+    public long missCount() { return misses; }
+
+    /** Returns the number of strings evicted from this since the counts were last reset */
+    public long evictionCount() { return evictions; }
+
+    /** Returns the ratio of lookups which are hits since the counts were last reset, or 0 if there has been no lookups */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    /** Sets the hit, miss and eviction counts of this to 0 */
+    public void resetCounts() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /** The string and the settings which determine its annotations */
+    static final class Key {
+
+        private final Linguistics linguistics;
+        private final String text;
+        private final Language language;
+        private final StemMode stemMode;
+        private final boolean removeAccents;
+        private final int maxTermOccurrences;
+        private final int maxTokenizeLength;
+        private final int hashCode;
+
+        Key(Linguistics linguistics, String text, AnnotatorConfig config) {
+            this.linguistics = linguistics;
+            this.text = text;
+            this.language = config.getLanguage();
+            this.stemMode = config.getStemMode();
+            this.removeAccents = config.getRemoveAccents();
+            this.maxTermOccurrences = config.getMaxTermOccurrences();
+            this.maxTokenizeLength = config.getMaxTokenizeLength();
+            this.hashCode = text.hashCode() * 31 + language.hashCode() * 7 + stemMode.hashCode() +
+                            (removeAccents ? 1 : 0) + maxTermOccurrences + maxTokenizeLength;
+        }
+
+        long byteSize() {
+            return 64 + 2L * text.length();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if ( ! (obj instanceof Key)) return false;
+            Key other = (Key)obj;
+            return hashCode == other.hashCode &&
+                   linguistics == other.linguistics &&
+                   language == other.language &&
+                   stemMode == other.stemMode &&
+                   removeAccents == other.removeAccents &&
+                   maxTermOccurrences == other.maxTermOccurrences &&
+                   maxTokenizeLength == other.maxTokenizeLength &&
+                   text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+    }
+
+    /**
+     * The spans and term annotations of a string, in the order they were created.
+     * A null term means a term annotation without a value.
+     */
+    static final class Spans {
+
+        /** Pairs of span start and length */
+        private final int[] spans;
+
+        /** The index into terms of the first term of each span, followed by the total number of terms */
+        private final int[] termStarts;
+
+        private final String[] terms;
+
+        private Spans(int[] spans, int[] termStarts, String[] terms) {
+            this.spans = spans;
+            this.termStarts = termStarts;
+            this.terms = terms;
+        }
+
+        /** Returns a new span tree containing these spans and annotations */
+        SpanTree toSpanTree() {
+            SpanTree tree = new SpanTree(SpanTrees.LINGUISTICS);
+            for (int i = 0; i < termStarts.length - 1; i++) {
+                Span span = tree.spanList().span(spans[2 * i], spans[2 * i + 1]);
+                for (int j = termStarts[i]; j < termStarts[i + 1]; j++) {
+                    span.annotate(terms[j] == null ? new Annotation(AnnotationTypes.TERM)
+                                                   : new Annotation(AnnotationTypes.TERM, new StringFieldValue(terms[j])));
+                }
+            }
+            return tree;
+        }
+
+        long byteSize() {
+            long size = 64 + 4L * spans.length + 4L * termStarts.length + 8L * terms.length;
+            for (String term : terms) {
+                if (term != null) {
+                    size += 40 + 2L * term.length();
+                }
+            }
+            return size;
+        }
+
+        /** Records spans and terms as they are created */
+        static final class Builder {
+
+            private int[] spans = new int[16];
+            private final List<Integer> termStarts = new ArrayList<>();
+            private final List<String> terms = new ArrayList<>();
+
+            /** Adds a span, which receives the terms added until the next span is added */
+            void addSpan(int from, int length) {
+                int index = termStarts.size();
+                if (2 * index + 1 >= spans.length) {
+                    spans = Arrays.copyOf(spans, spans.length * 2);
+                }
+                spans[2 * index] = from;
+                spans[2 * index + 1] = length;
+                termStarts.add(terms.size());
+            }
+
+            /** Adds a term annotation with the given value, or no value if it is null, to the last added span */
+            void addTerm(String term) {
+                if (termStarts.isEmpty()) throw new IllegalStateException("A span must be added before terms");
+                terms.add(term);
+            }
+
+            Spans build() {
+                int[] starts = new int[termStarts.size() + 1];
+                for (int i = 0; i < termStarts.size(); i++) {
+                    starts[i] = termStarts.get(i);
+                }
+                starts[termStarts.size()] = terms.size();
+                return new Spans(Arrays.copyOf(spans, 2 * termStarts.size()), starts, terms.toArray(new String[0]));
+            }
+
+        }
+
+    }
+
+}
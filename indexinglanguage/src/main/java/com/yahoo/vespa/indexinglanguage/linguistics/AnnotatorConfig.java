@@ -15,6 +15,7 @@ public class AnnotatorConfig implements Cloneable {
     private boolean removeAccents;
     private int maxTermOccurences;
     private int maxTokenizeLength;
+    private long annotationCacheSize;
 
     public static final int DEFAULT_MAX_TERM_OCCURRENCES;
     private static final int DEFAULT_MAX_TOKENIZE_LENGTH;
@@ -31,6 +32,7 @@ public class AnnotatorConfig implements Cloneable {
         removeAccents = false;
         maxTermOccurences = DEFAULT_MAX_TERM_OCCURRENCES;
         maxTokenizeLength = DEFAULT_MAX_TOKENIZE_LENGTH;
+        annotationCacheSize = 0;
     }
 
     public AnnotatorConfig(AnnotatorConfig rhs) {
@@ -39,6 +41,7 @@ public class AnnotatorConfig implements Cloneable {
         removeAccents = rhs.removeAccents;
         maxTermOccurences = rhs.maxTermOccurences;
         maxTokenizeLength = rhs.maxTokenizeLength;
+        annotationCacheSize = rhs.annotationCacheSize;
     }
 
     public Language getLanguage() {
@@ -91,6 +94,20 @@ public class AnnotatorConfig implements Cloneable {
         return maxTokenizeLength;
     }
 
+    /** Returns the max bytes per thread used to cache the annotations of short strings, where 0 disables caching */
+    public long getAnnotationCacheSize() {
+        return annotationCacheSize;
+    }
+
+    /**
+     * Sets the max bytes per thread used to cache the annotations of short strings, see {@link AnnotationCache}.
+     * As this does not change the annotations produced, it is not part of the identity of this.
+     */
+    public AnnotatorConfig setAnnotationCacheSize(long annotationCacheSize) {
+        this.annotationCacheSize = annotationCacheSize;
+        return this;
+    }
+
     public boolean hasNonDefaultMaxTokenLength() {
         return maxTokenizeLength != DEFAULT_MAX_TOKENIZE_LENGTH;
     }
@@ -63,6 +63,15 @@ public class LinguisticsAnnotator {
     public boolean annotate(StringFieldValue text) {
         if (text.getSpanTree(SpanTrees.LINGUISTICS) != null) return true;  // Already annotated with LINGUISTICS.
 
+        AnnotationCache cache = null;
+        AnnotationCache.Key key = null;
+        if (config.getAnnotationCacheSize() > 0 && AnnotationCache.isCacheable(text.getString())) {
+            cache = AnnotationCache.forCurrentThread(config.getAnnotationCacheSize());
+            key = new AnnotationCache.Key(factory, text.getString(), config);
+            AnnotationCache.Spans cached = cache.get(key);
+            if (cached != null) return setSpanTree(text, cached.toSpanTree());
+        }
+
         Tokenizer tokenizer = factory.getTokenizer();
         String input = (text.getString().length() <=  config.getMaxTokenizeLength())
                 ? text.getString()
@@ -71,10 +80,18 @@ public class LinguisticsAnnotator {
                                                     config.getRemoveAccents());
         TermOccurrences termOccurrences = new TermOccurrences(config.getMaxTermOccurrences());
         SpanTree tree = new SpanTree(SpanTrees.LINGUISTICS);
+        SpanBuilder spans = new SpanBuilder(tree.spanList(), cache != null);
         for (Token token : tokens) {
-            addAnnotationSpan(text.getString(), tree.spanList(), tokenizer, token, config.getStemMode(), termOccurrences);
+            addAnnotationSpan(text.getString(), spans, tokenizer, token, config.getStemMode(), termOccurrences);
         }
 
+        if (cache != null) {
+            cache.put(key, spans.recorded());
+        }
+        return setSpanTree(text, tree);
+    }
+
+    private static boolean setSpanTree(StringFieldValue text, SpanTree tree) {
         if (tree.numAnnotations() == 0) return false;
         text.setSpanTree(tree);
         return true;
@@ -96,17 +113,17 @@ public class LinguisticsAnnotator {
         return new Annotation(AnnotationTypes.TERM, new StringFieldValue(annotationValue));
     }
 
-    private static void addAnnotation(Span here, String term, String orig, TermOccurrences termOccurrences) {
+    private static void addAnnotation(SpanBuilder spans, Span here, String term, String orig, TermOccurrences termOccurrences) {
         if (termOccurrences.termCountBelowLimit(term)) {
-            here.annotate(lowerCaseTermAnnotation(term, orig));
+            spans.annotate(here, lowerCaseTermAnnotation(term, orig));
         }
     }
 
-    private static void addAnnotationSpan(String input, SpanList parent, Tokenizer tokenizer, Token token, StemMode mode, TermOccurrences termOccurrences) {
+    private static void addAnnotationSpan(String input, SpanBuilder spans, Tokenizer tokenizer, Token token, StemMode mode, TermOccurrences termOccurrences) {
         if (!token.isSpecialToken()) {
             if (token.getNumComponents() > 0) {
                 for (int i = 0; i < token.getNumComponents(); ++i) {
-                    addAnnotationSpan(input, parent, tokenizer, token.getComponent(i), mode, termOccurrences);
+                    addAnnotationSpan(input, spans, tokenizer, token.getComponent(i), mode, termOccurrences);
                 }
                 return;
             }
@@ -126,9 +143,9 @@ public class LinguisticsAnnotator {
                                                "the bounds of the input string; " + input);
         }
         if (mode == StemMode.ALL) {
-            Span where = parent.span(pos, len);
+            Span where = spans.span(pos, len);
             String lowercasedOrig = toLowerCase(orig);
-            addAnnotation(where, orig, orig, termOccurrences);
+            addAnnotation(spans, where, orig, orig, termOccurrences);
 
             String lowercasedTerm = lowercasedOrig;
             String term = token.getTokenString();
@@ -139,7 +156,7 @@ public class LinguisticsAnnotator {
                 lowercasedTerm = toLowerCase(term);
             }
             if (! lowercasedOrig.equals(lowercasedTerm)) {
-                addAnnotation(where, term, orig, termOccurrences);
+                addAnnotation(spans, where, term, orig, termOccurrences);
             }
             for (int i = 0; i < token.getNumStems(); i++) {
                 String stem = token.getStem(i);
@@ -147,7 +164,7 @@ public class LinguisticsAnnotator {
                 if (! (lowercasedOrig.equals(lowercasedStem)
                        || lowercasedTerm.equals(lowercasedStem)))
                 {
-                    addAnnotation(where, stem, orig, termOccurrences);
+                    addAnnotation(spans, where, stem, orig, termOccurrences);
                 }
             }
         } else {
@@ -159,9 +176,42 @@ public class LinguisticsAnnotator {
                 return;
             }
             if (termOccurrences.termCountBelowLimit(term))  {
-                parent.span(pos, len).annotate(lowerCaseTermAnnotation(term, token.getOrig()));
+                spans.annotate(spans.span(pos, len), lowerCaseTermAnnotation(term, token.getOrig()));
             }
         }
     }
 
+    /** Creates spans and annotations in a span list, and optionally records them for caching */
+    private static class SpanBuilder {
+
+        private final SpanList spans;
+        private final AnnotationCache.Spans.Builder recorder;
+
+        SpanBuilder(SpanList spans, boolean record) {
+            this.spans = spans;
+            this.recorder = record ? new AnnotationCache.Spans.Builder() : null;
+        }
+
+        Span span(int from, int length) {
+            if (recorder != null) {
+                recorder.addSpan(from, length);
+            }
+            return spans.span(from, length);
+        }
+
+        /** Adds the given term annotation to the given span, which must be the last one created */
+        void annotate(Span span, Annotation annotation) {
+            span.annotate(annotation);
+            if (recorder != null) {
+                recorder.addTerm(annotation.hasFieldValue() ? ((StringFieldValue)annotation.getFieldValue()).getString()
+                                                            : null);
+            }
+        }
+
+        AnnotationCache.Spans recorded() {
+            return recorder.build();
+        }
+
+    }
+
 }
@@ -0,0 +1,84 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage;
+
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.vespa.indexinglanguage.expressions.*;
+import com.yahoo.vespa.indexinglanguage.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class CommonPrefixOptimizerTestCase {
+
+    @Test
+    public void requireThatCommonPrefixOfConsecutiveStatementsIsShared() throws ParseException {
+        assertOptimized("{ input foo | tokenize normalize | index bar; input foo | tokenize normalize | summary baz; }",
+                        "{ input foo | tokenize normalize | { index bar; summary baz; }; }");
+        assertOptimized("{ input foo | trim | lowercase | attribute a; input foo | trim | lowercase | summary b; " +
+                        "input foo | trim | index c; }",
+                        "{ input foo | trim | { lowercase | attribute a; lowercase | summary b; index c; }; }");
+    }
+
+    @Test
+    public void requireThatGuardedStatementsAreCombined() throws ParseException {
+        Expression optimized = optimize("{ clear_state | guard { input foo | tokenize | index bar; }; " +
+                                        "clear_state | guard { input foo | tokenize | summary baz; }; }");
+        ScriptExpression script = (ScriptExpression)optimized;
+        assertEquals(1, script.size());
+        assertTrue(script.get(0).get(0) instanceof ClearStateExpression);
+        assertTrue(script.get(0).get(1) instanceof GuardExpression);
+        assertTrue(optimized.toString().contains("{ index bar; summary baz; }"));
+    }
+
+    @Test
+    public void requireThatStatementsAreNotCombinedWhenThatCouldChangeTheResult() throws ParseException {
+        assertNotOptimized("{ input foo | index bar; input foo | summary baz; }");
+        assertNotOptimized("{ input foo | lowercase | index bar; input foo | trim | summary baz; }");
+        assertNotOptimized("{ input foo | lowercase | set_var tmp; input foo | lowercase | summary baz; }");
+        assertNotOptimized("{ input foo | lowercase | set_language; input foo | lowercase | summary baz; }");
+        assertNotOptimized("{ input foo | lowercase | attribute foo; input foo | lowercase | summary baz; }");
+        assertNotOptimized("{ input foo | lowercase | index bar; now | attribute stamp; input foo | lowercase | summary baz; }");
+        assertNotOptimized("{ input foo | lowercase | index bar; clear_state | guard { input foo | lowercase | summary baz; }; }");
+    }
+
+    @Test
+    public void requireThatOptimizedScriptProducesTheSameOutput() throws ParseException {
+        DocumentType type = new DocumentType("mytype");
+        type.addField("src", DataType.STRING);
+        type.addField("a", DataType.STRING);
+        type.addField("b", DataType.STRING);
+        type.addField("c", DataType.STRING);
+        Document input = new Document(type, "doc:scheme:");
+        input.setFieldValue("src", new StringFieldValue("  Foo Bar "));
+
+        Expression script = Expression.fromString("{ input src | trim | lowercase | attribute a; " +
+                                                  "input src | trim | lowercase | summary b; " +
+                                                  "input src | trim | index c; }");
+        Document expected = Expression.execute(script, input);
+        Document actual = Expression.execute(new CommonPrefixOptimizer().convert(script), input);
+        assertEquals(new StringFieldValue("foo bar"), actual.getFieldValue("a"));
+        assertEquals(new StringFieldValue("foo bar"), actual.getFieldValue("b"));
+        assertEquals(new StringFieldValue("Foo Bar"), actual.getFieldValue("c"));
+        assertEquals(expected, actual);
+    }
+
+    private static Expression optimize(String script) throws ParseException {
+        return new CommonPrefixOptimizer().convert(Expression.fromString(script));
+    }
+
+    private static void assertOptimized(String input, String expected) throws ParseException {
+        assertEquals(ScriptExpression.fromString(expected).toString(), optimize(input).toString());
+    }
+
+    private static void assertNotOptimized(String script) throws ParseException {
+        assertOptimized(script, script);
+    }
+
+}
@@ -0,0 +1,177 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.indexinglanguage.linguistics;
+
+import com.yahoo.document.annotation.SpanTree;
+import com.yahoo.document.annotation.SpanTrees;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.language.Language;
+import com.yahoo.language.Linguistics;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.process.Tokenizer;
+import com.yahoo.language.simple.SimpleLinguistics;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class AnnotationCacheTestCase {
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    @Test
+    public void requireThatCachedAnnotationsAreEqualToTokenizedAnnotations() {
+        for (StemMode stemMode : StemMode.values()) {
+            CountingTokenizer tokenizer = new CountingTokenizer();
+            Linguistics linguistics = newLinguistics(tokenizer);
+            AnnotatorConfig uncached = new AnnotatorConfig().setStemMode(stemMode);
+            AnnotatorConfig cached = new AnnotatorConfig(uncached).setAnnotationCacheSize(CACHE_SIZE);
+            for (String text : new String[] { "Running Shoes", "running shoes", "Boots & Shoes", "Running Shoes" }) {
+                SpanTree expected = annotate(linguistics, uncached, text);
+                assertEquals(expected, annotate(linguistics, cached, text));
+                assertEquals(expected, annotate(linguistics, cached, text));
+            }
+            assertEquals(4 + 3, tokenizer.count);
+        }
+    }
+
+    @Test
+    public void requireThatHitsAndMissesAreCounted() {
+        Linguistics linguistics = newLinguistics(new CountingTokenizer());
+        AnnotatorConfig config = new AnnotatorConfig().setAnnotationCacheSize(CACHE_SIZE);
+        AnnotationCache cache = AnnotationCache.forCurrentThread(CACHE_SIZE);
+        cache.resetCounts();
+        annotate(linguistics, config, "category");
+        annotate(linguistics, config, "category");
+        annotate(linguistics, config, "category");
+        assertSame(cache, AnnotationCache.ofCurrentThread());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(2.0 / 3, cache.hitRate(), 0.0001);
+
+        cache.resetCounts();
+        assertEquals(0, cache.hitCount());
+        assertEquals(0, cache.missCount());
+        assertEquals(0, cache.hitRate(), 0);
+    }
+
+    @Test
+    public void requireThatAnnotationsDependOnTheConfig() {
+        CountingTokenizer tokenizer = new CountingTokenizer();
+        Linguistics linguistics = newLinguistics(tokenizer);
+        AnnotatorConfig config = new AnnotatorConfig().setAnnotationCacheSize(CACHE_SIZE);
+        annotate(linguistics, config, "Shoes");
+        annotate(linguistics, new AnnotatorConfig(config).setStemMode(StemMode.ALL), "Shoes");
+        annotate(linguistics, new AnnotatorConfig(config).setRemoveAccents(true), "Shoes");
+        annotate(linguistics, new AnnotatorConfig(config).setLanguage(Language.GERMAN), "Shoes");
+        annotate(newLinguistics(tokenizer), config, "Shoes");
+        assertEquals(5, tokenizer.count);
+        annotate(linguistics, config, "Shoes");
+        assertEquals(5, tokenizer.count);
+    }
+
+    @Test
+    public void requireThatStringsWithoutAnnotationsAreCached() {
+        CountingTokenizer tokenizer = new CountingTokenizer();
+        Linguistics linguistics = newLinguistics(tokenizer);
+        AnnotatorConfig config = new AnnotatorConfig().setAnnotationCacheSize(CACHE_SIZE);
+        assertNull(annotate(linguistics, config, " - "));
+        assertNull(annotate(linguistics, config, " - "));
+        assertEquals(1, tokenizer.count);
+    }
+
+    @Test
+    public void requireThatLongStringsAreNotCached() {
+        CountingTokenizer tokenizer = new CountingTokenizer();
+        Linguistics linguistics = newLinguistics(tokenizer);
+        AnnotatorConfig config = new AnnotatorConfig().setAnnotationCacheSize(CACHE_SIZE);
+        StringBuilder text = new StringBuilder();
+        while (text.length() <= AnnotationCache.MAX_TEXT_LENGTH) {
+            text.append("word ");
+        }
+        annotate(linguistics, config, text.toString());
+        annotate(linguistics, config, text.toString());
+        assertEquals(2, tokenizer.count);
+    }
+
+    @Test
+    public void requireThatCacheIsBoundedByBytes() {
+        AnnotatorConfig config = new AnnotatorConfig().setAnnotationCacheSize(2000);
+        Linguistics linguistics = newLinguistics(new CountingTokenizer());
+        for (int i = 0; i < 100; i++) {
+            annotate(linguistics, config, "term" + i);
+        }
+        AnnotationCache cache = AnnotationCache.forCurrentThread(2000);
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.size() < 100);
+        assertTrue(cache.byteSize() <= cache.maxBytes());
+    }
+
+    @Test
+    public void requireThatLeastRecentlyUsedStringsAreEvicted() {
+        AnnotationCache cache = new AnnotationCache(1000);
+        AnnotatorConfig config = new AnnotatorConfig();
+        Linguistics linguistics = new SimpleLinguistics();
+        AnnotationCache.Spans spans = new AnnotationCache.Spans.Builder().build();
+        AnnotationCache.Key first = new AnnotationCache.Key(linguistics, "first", config);
+        cache.put(first, spans);
+        int i = 0;
+        while (cache.size() < 3) {
+            cache.put(new AnnotationCache.Key(linguistics, "other" + i++, config), spans);
+        }
+        assertTrue(cache.get(first) != null);
+        while (cache.evictionCount() == 0) {
+            cache.put(new AnnotationCache.Key(linguistics, "other" + i++, config), spans);
+        }
+        assertTrue(cache.get(first) != null);
+        assertNull(cache.get(new AnnotationCache.Key(linguistics, "other0", config)));
+    }
+
+    @Test
+    public void requireThatCachingIsDisabledByDefault() {
+        CountingTokenizer tokenizer = new CountingTokenizer();
+        Linguistics linguistics = newLinguistics(tokenizer);
+        annotate(linguistics, new AnnotatorConfig(), "Shoes");
+        annotate(linguistics, new AnnotatorConfig(), "Shoes");
+        assertEquals(2, tokenizer.count);
+        assertFalse(new AnnotatorConfig().getAnnotationCacheSize() > 0);
+    }
+
+    private static SpanTree annotate(Linguistics linguistics, AnnotatorConfig config, String text) {
+        StringFieldValue value = new StringFieldValue(text);
+        new LinguisticsAnnotator(linguistics, config).annotate(value);
+        return value.getSpanTree(SpanTrees.LINGUISTICS);
+    }
+
+    private static Linguistics newLinguistics(Tokenizer tokenizer) {
+        Linguistics linguistics = Mockito.mock(Linguistics.class);
+        Mockito.when(linguistics.getTokenizer()).thenReturn(tokenizer);
+        return linguistics;
+    }
+
+    private static class CountingTokenizer implements Tokenizer {
+
+        final Tokenizer tokenizer = new SimpleLinguistics().getTokenizer();
+        int count = 0;
+
+        @Override
+        public Iterable<Token> tokenize(String input, Language language, StemMode stemMode, boolean removeAccents) {
+            count++;
+            return tokenizer.tokenize(input, language, stemMode, removeAccents);
+        }
+
+        @Override
+        public String getReplacementTerm(String term) {
+            return tokenizer.getReplacementTerm(term);
+        }
+
+    }
+
+}
@@ -39,6 +39,7 @@ class Connection extends Target {
     private int           activeReqs = 0;
     private int           writeWork  = 0;
     private Transport     parent;
+    private TransportThread transportThread;
     private Supervisor    owner;
     private Spec          spec;
     private SocketChannel channel;
@@ -85,6 +86,7 @@ class Connection extends Target {
                       SocketChannel channel) {
 
         this.parent = parent;
+        this.transportThread = parent.selectThread();
         this.owner = owner;
         this.channel = channel;
         server = true;
@@ -94,6 +96,7 @@ class Connection extends Target {
     public Connection(Transport parent, Supervisor owner, Spec spec, Object context) {
         super(context);
         this.parent = parent;
+        this.transportThread = parent.selectThread();
         this.owner = owner;
         this.spec = spec;
         server = false;
@@ -112,6 +115,10 @@ class Connection extends Target {
         return parent;
     }
 
+    public TransportThread transportThread() {
+        return transportThread;
+    }
+
     public int allocateKey() {
         long v = requestId.getAndIncrement();
         v = v*2 + (server ? 1 : 0);
@@ -148,7 +155,7 @@ class Connection extends Target {
             }
         }
         if (enableWrite) {
-            parent.enableWrite(this);
+            transportThread.enableWrite(this);
         }
         return accepted;
     }
@@ -389,7 +396,7 @@ class Connection extends Target {
     }
 
     public void close() {
-        parent.closeConnection(this);
+        transportThread.closeConnection(this);
     }
 
     public String toString() {
@@ -2,10 +2,7 @@
 package com.yahoo.jrt;
 
 
-import java.io.IOException;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
-import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,166 +13,66 @@ import java.util.logging.Logger;
  * multiplexed network IO, handles scheduled tasks and keeps track of
  * some additional helper threads. A single Transport object can back
  * multiple {@link Supervisor} objects.
+ * <p>
+ * A Transport may run several reactor threads. Each connection is
+ * assigned to the thread handling the fewest connections when it is
+ * created, and all IO for that connection is then performed by that
+ * thread. Tasks and commands passed to {@link #perform perform} are
+ * run by the first thread.
  **/
 public class Transport {
 
-    private static final int OPEN    = 1;
-    private static final int CLOSING = 2;
-    private static final int CLOSED  = 3;
-
-    private class Run implements Runnable {
-        public void run() {
-            try {
-                Transport.this.run();
-            } catch (Throwable problem) {
-                handleFailure(problem, Transport.this);
-            }
-        }
-    }
-
-    private class AddConnectionCmd implements Runnable {
-        private Connection conn;
-        AddConnectionCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleAddConnection(conn); }
-    }
-
-    private class CloseConnectionCmd implements Runnable {
-        private Connection conn;
-        CloseConnectionCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleCloseConnection(conn); }
-    }
-
-    private class EnableWriteCmd implements Runnable {
-        private Connection conn;
-        EnableWriteCmd(Connection conn) { this.conn = conn; }
-        public void run() { handleEnableWrite(conn); }
-    }
-
-    private class SyncCmd implements Runnable {
-        boolean done = false;
-        public synchronized void waitDone() {
-            while (!done) {
-                try { wait(); } catch (InterruptedException e) {}
-            }
-        }
-        public synchronized void run() {
-            done = true;
-            notify();
-        }
-    }
-
     private static Logger log = Logger.getLogger(Transport.class.getName());
 
     private FatalErrorHandler fatalHandler; // NB: this must be set first
-    private Thread            thread;
-    private Queue             queue;
-    private Queue             myQueue;
+    private TransportThread[] threads;
     private Connector         connector;
     private Closer            closer;
-    private Scheduler         scheduler;
-    private int               state;
-    private Selector          selector;
-
-    private void handleAddConnection(Connection conn) {
-        if (conn.isClosed()) {
-            if (conn.hasSocket()) {
-                closer.closeLater(conn);
-            }
-            return;
-        }
-        if (!conn.init(selector)) {
-            handleCloseConnection(conn);
-        }
-    }
-
-    private void handleCloseConnection(Connection conn) {
-        if (conn.isClosed()) {
-            return;
-        }
-        conn.fini();
-        if (conn.hasSocket()) {
-            closer.closeLater(conn);
-        }
-    }
+    private AtomicInteger     runningThreads;
 
-    private void handleEnableWrite(Connection conn) {
-        if (conn.isClosed()) {
-            return;
+    /**
+     * Create a new Transport object with the given fatal error
+     * handler and number of reactor threads.
+     *
+     * @param fatalHandler fatal error handler
+     * @param threads the number of threads performing network IO,
+     *                must be at least 1
+     **/
+    public Transport(FatalErrorHandler fatalHandler, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A transport needs at least one thread, got " + threads);
         }
-        conn.enableWrite();
-    }
-
-    private boolean postCommand(Runnable cmd) {
-        boolean wakeup;
         synchronized (this) {
-            if (state == CLOSED) {
-                return false;
-            }
-            wakeup = queue.isEmpty();
-            queue.enqueue(cmd);
-        }
-        if (wakeup) {
-            selector.wakeup();
-        }
-        return true;
-    }
-
-    private void handleEvents() {
-        synchronized (this) {
-            queue.flush(myQueue);
-        }
-        while (!myQueue.isEmpty()) {
-            ((Runnable)myQueue.dequeue()).run();
-        }
-    }
-
-    private boolean handleIOEvents(Connection conn,
-                                   SelectionKey key) {
-        if (conn.isClosed()) {
-            return true;
-        }
-        if (key.isReadable()) {
-            try {
-                conn.read();
-            } catch (IOException e) {
-                conn.setLostReason(e);
-                return false;
-            }
+            this.fatalHandler = fatalHandler; // NB: this must be set first
         }
-        if (key.isWritable()) {
-            try {
-                conn.write();
-            } catch (IOException e) {
-                conn.setLostReason(e);
-                return false;
-            }
+        runningThreads = new AtomicInteger(threads);
+        connector = new Connector(this);
+        closer    = new Closer(this);
+        this.threads = new TransportThread[threads];
+        for (int i = 0; i < threads; i++) {
+            this.threads[i] = new TransportThread(this, threads == 1 ? "<transport>" : "<transport-" + i + ">");
         }
-        return true;
     }
 
     /**
-     * Create a new Transport object with the given fatal error handler.
+     * Create a new Transport object with the given fatal error handler
+     * and a single reactor thread.
      *
      * @param fatalHandler fatal error handler
      **/
     public Transport(FatalErrorHandler fatalHandler) {
-        synchronized (this) {
-            this.fatalHandler = fatalHandler; // NB: this must be set first
-        }
-        thread    = new Thread(new Run(), "<transport>");
-        queue     = new Queue();
-        myQueue   = new Queue();
-        connector = new Connector(this);
-        closer    = new Closer(this);
-        scheduler = new Scheduler(System.currentTimeMillis());
-        state     = OPEN;
-        try {
-            selector = Selector.open();
-        } catch (Exception e) {
-            throw new Error("Could not open transport selector", e);
-        }
-        thread.setDaemon(true);
-        thread.start();
+        this(fatalHandler, 1);
+    }
+
+    /**
+     * Create a Transport object with no fatal error handler and the
+     * given number of reactor threads.
+     *
+     * @param threads the number of threads performing network IO,
+     *                must be at least 1
+     **/
+    public Transport(int threads) {
+        this(null, threads);
     }
 
     /**
@@ -207,6 +104,23 @@ public class Transport {
         Runtime.getRuntime().halt(1);
     }
 
+    /**
+     * Select the thread which should handle a new connection. The
+     * selected thread will count the connection until it is closed.
+     *
+     * @return the thread currently handling the fewest connections
+     **/
+    TransportThread selectThread() {
+        TransportThread selected = threads[0];
+        for (int i = 1; i < threads.length; i++) {
+            if (threads[i].connections() < selected.connections()) {
+                selected = threads[i];
+            }
+        }
+        selected.assignConnection();
+        return selected;
+    }
+
     /**
      * Listen to the given address. This method is called by a {@link
      * Supervisor} object.
@@ -241,38 +155,23 @@ public class Transport {
     }
 
     /**
-     * Add a connection to the set of connections handled by this
-     * Transport. Invoked by the {@link Connector} class.
+     * Add a connection to the set of connections handled by the
+     * thread it is assigned to. Invoked by the {@link Connector}
+     * class.
      *
      * @param conn the connection to add
      **/
     void addConnection(Connection conn) {
-        if (!postCommand(new AddConnectionCmd(conn))) {
-            perform(new CloseConnectionCmd(conn));
-        }
+        conn.transportThread().addConnection(conn);
     }
 
     /**
-     * Request an asynchronous close of a connection.
+     * Close the socket of a connection in the closer thread.
      *
-     * @param conn the connection to close
+     * @param conn the connection to close the socket of
      **/
-    void closeConnection(Connection conn) {
-        postCommand(new CloseConnectionCmd(conn));
-    }
-
-    /**
-     * Request an asynchronous enabling of write events for a
-     * connection.
-     *
-     * @param conn the connection to enable write events for
-     **/
-    void enableWrite(Connection conn) {
-        if (Thread.currentThread() == thread) {
-            handleEnableWrite(conn);
-        } else {
-            postCommand(new EnableWriteCmd(conn));
-        }
+    void closeLater(Connection conn) {
+        closer.closeLater(conn);
     }
 
     /**
@@ -283,28 +182,21 @@ public class Transport {
      * @param cmd what to run when the task is executed
      **/
     public Task createTask(Runnable cmd) {
-        return new Task(scheduler, cmd);
+        return threads[0].createTask(cmd);
     }
 
     /**
      * Perform the given command in such a way that it does not run
      * concurrently with the transport thread or other commands
      * performed by invoking this method. This method will continue to
-     * work even after the transport thread has been shut down.
+     * work even after the transport thread has been shut down. If
+     * this has multiple threads, the command is only guaranteed not
+     * to run concurrently with the first one, which runs all tasks.
      *
      * @param cmd the command to perform
      **/
     public void perform(Runnable cmd) {
-        if (Thread.currentThread() == thread) {
-            cmd.run();
-            return;
-        }
-        if (!postCommand(cmd)) {
-            join();
-            synchronized (thread) {
-                cmd.run();
-            }
-        }
+        threads[0].perform(cmd);
     }
 
     /**
@@ -319,56 +211,30 @@ public class Transport {
      * @return this object, to enable chaining
      **/
     public Transport sync() {
-        SyncCmd cmd = new SyncCmd();
-        if (postCommand(cmd)) {
-            cmd.waitDone();
-        } else {
-            join();
+        for (TransportThread thread : threads) {
+            thread.sync();
         }
         return this;
     }
 
-    private void run() {
-        while (state == OPEN) {
-
-            // perform I/O selection
-            try {
-                selector.select(100);
-            } catch (IOException e) {
-                log.log(Level.WARNING, "error during select", e);
-            }
-
-            // handle internal events
-            handleEvents();
-
-            // handle I/O events
-            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-            while (keys.hasNext()) {
-                SelectionKey key = keys.next();
-                Connection conn = (Connection) key.attachment();
-                keys.remove();
-                if (!handleIOEvents(conn, key)) {
-                    handleCloseConnection(conn);
-                }
-            }
-
-            // check scheduled tasks
-            scheduler.checkTasks(System.currentTimeMillis());
-        }
+    /**
+     * Invoked by each transport thread when it is shutting down, to
+     * let pending connects complete before it stops accepting new
+     * connections.
+     **/
+    void waitConnectorDone() {
         connector.shutdown().waitDone();
-        synchronized (this) {
-            state = CLOSED;
-        }
-        handleEvents();
-        Iterator<SelectionKey> keys = selector.keys().iterator();
-        while (keys.hasNext()) {
-            SelectionKey key = keys.next();
-            Connection conn = (Connection) key.attachment();
-            handleCloseConnection(conn);
+    }
+
+    /**
+     * Invoked by each transport thread when it is done. The last one
+     * shuts down the helper threads.
+     **/
+    void threadDone() {
+        if (runningThreads.decrementAndGet() == 0) {
+            closer.shutdown().join();
+            connector.exit().join();
         }
-        try { selector.close(); } catch (Exception e) {}
-        closer.shutdown().join();
-        connector.exit().join();
     }
 
     /**
@@ -377,11 +243,8 @@ public class Transport {
      * @return this object, to enable chaining with join
      **/
     public Transport shutdown() {
-        synchronized (this) {
-            if (state == OPEN) {
-                state = CLOSING;
-                selector.wakeup();
-            }
+        for (TransportThread thread : threads) {
+            thread.shutdown();
         }
         return this;
     }
@@ -390,11 +253,8 @@ public class Transport {
      * Wait for the transport thread to finish.
      **/
     public void join() {
-        while (true) {
-            try {
-                thread.join();
-                return;
-            } catch (InterruptedException e) {}
+        for (TransportThread thread : threads) {
+            thread.join();
         }
     }
 }
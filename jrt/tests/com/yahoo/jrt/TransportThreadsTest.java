@@ -0,0 +1,98 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.jrt;
+
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class TransportThreadsTest extends junit.framework.TestCase {
+
+    private static final int THREADS = 4;
+    private static final int CONNECTIONS = 8;
+
+    Supervisor server;
+    Acceptor   acceptor;
+    Supervisor client;
+    Set<String> serverThreads = new HashSet<>();
+
+    public TransportThreadsTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws ListenFailedException {
+        server   = new Supervisor(new Transport(THREADS));
+        client   = new Supervisor(new Transport(THREADS));
+        acceptor = server.listen(new Spec(Test.PORT));
+        server.addMethod(new Method("inc", "i", "i", this, "rpc_inc"));
+    }
+
+    public void tearDown() {
+        acceptor.shutdown().join();
+        client.transport().shutdown().join();
+        server.transport().shutdown().join();
+    }
+
+    public void rpc_inc(Request req) {
+        synchronized (serverThreads) {
+            serverThreads.add(Thread.currentThread().getName());
+        }
+        req.returnValues().add(new Int32Value(req.parameters().get(0).asInt32() + 1));
+    }
+
+    public void testConnectionsAreSpreadOverThreads() {
+        Target[] targets = new Target[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            targets[i] = client.connect(new Spec("localhost", Test.PORT));
+        }
+        for (int i = 0; i < CONNECTIONS; i++) {
+            Request req = new Request("inc");
+            req.parameters().add(new Int32Value(i));
+            targets[i].invokeSync(req, 60.0);
+            assertTrue(!req.isError());
+            assertEquals(i + 1, req.returnValues().get(0).asInt32());
+        }
+        assertEquals(THREADS, serverThreads.size());
+        for (Target target : targets) {
+            target.close();
+        }
+    }
+
+    public void testMethodsAreAvailableFromAllThreads() {
+        Target[] targets = new Target[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            targets[i] = client.connect(new Spec("localhost", Test.PORT));
+        }
+        server.addMethod(new Method("dec", "i", "i", this, "rpc_dec"));
+        for (int i = 0; i < CONNECTIONS; i++) {
+            Request req = new Request("dec");
+            req.parameters().add(new Int32Value(i));
+            targets[i].invokeSync(req, 60.0);
+            assertTrue(!req.isError());
+            assertEquals(i - 1, req.returnValues().get(0).asInt32());
+        }
+        for (Target target : targets) {
+            target.close();
+        }
+    }
+
+    public void rpc_dec(Request req) {
+        req.returnValues().add(new Int32Value(req.parameters().get(0).asInt32() - 1));
+    }
+
+    public void testClosedConnectionsAreNotCounted() {
+        Transport transport = client.transport();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            Target target = client.connect(new Spec("localhost", Test.PORT));
+            Request req = new Request("inc");
+            req.parameters().add(new Int32Value(i));
+            target.invokeSync(req, 60.0);
+            assertTrue(!req.isError());
+            target.close();
+        }
+        transport.sync();
+        Connection conn = (Connection)client.connect(new Spec("localhost", Test.PORT));
+        assertEquals(1, conn.transportThread().connections());
+        conn.close();
+    }
+}
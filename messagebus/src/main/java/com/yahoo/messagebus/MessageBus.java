@@ -62,6 +62,7 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
     private final CopyOnWriteHashMap<String, MessageHandler> sessions = new CopyOnWriteHashMap<String, MessageHandler>();
     private final Network net;
     private final Messenger msn;
+    private final Messenger[] sessionMessengers;
     private final Resender resender;
     private int maxPendingCount = 0;
     private int maxPendingSize = 0;
@@ -140,6 +141,10 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
 
         // Start messenger.
         msn = new Messenger();
+        sessionMessengers = new Messenger[params.getNumSessionMessengers()];
+        for (int i = 0; i < sessionMessengers.length; ++i) {
+            sessionMessengers[i] = new Messenger("Messenger-session-" + i);
+        }
 
         RetryPolicy retryPolicy = params.getRetryPolicy();
         if (retryPolicy != null) {
@@ -152,6 +157,9 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
         careTaker.start();
 
         msn.start();
+        for (Messenger sessionMessenger : sessionMessengers) {
+            sessionMessenger.start();
+        }
     }
 
     /**
@@ -190,6 +198,9 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
             protocolRepository.clearPolicyCache();
             net.shutdown();
             msn.destroy();
+            for (Messenger sessionMessenger : sessionMessengers) {
+                sessionMessenger.destroy();
+            }
             if (resender != null) {
                 resender.destroy();
             }
@@ -207,6 +218,9 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
      */
     public void sync() {
         msn.sync();
+        for (Messenger sessionMessenger : sessionMessengers) {
+            sessionMessenger.sync();
+        }
         net.sync();
     }
 
@@ -420,10 +434,32 @@ public class MessageBus implements ConfigHandler, NetworkOwner, MessageHandler,
             deliverError(msg, ErrorCode.SESSION_BUSY, "Session '" + net.getConnectionSpec() + "/" + session +
                                                       "' is busy, try again later.");
         } else {
-            msn.deliverMessage(msg, msgHandler);
+            sessionMessenger(msgHandler).deliverMessage(msg, msgHandler);
         }
     }
 
+    /**
+     * Delivers a routed reply to the handler which sent the message, which is typically a session. This is done
+     * directly in the calling messenger thread unless there are session messengers.
+     */
+    void deliverSessionReply(Reply reply, ReplyHandler handler) {
+        if (sessionMessengers.length == 0)
+            handler.handleReply(reply);
+        else
+            sessionMessenger(handler).deliverReply(reply, handler);
+    }
+
+    /**
+     * Returns the messenger which delivers to the given session handler. All deliveries to the same handler
+     * use the same messenger, such that they happen in order.
+     */
+    private Messenger sessionMessenger(Object handler) {
+        if (sessionMessengers.length == 0) return msn;
+        int hash = System.identityHashCode(handler);
+        hash ^= hash >>> 16;
+        return sessionMessengers[(hash & 0x7fffffff) % sessionMessengers.length];
+    }
+
     /**
      * <p>Adds a protocol to the internal repository of protocols, replacing any
      * previous instance of the protocol and clearing the associated routing
@@ -19,6 +19,7 @@ public class MessageBusParams {
     private RetryPolicy retryPolicy;
     private int maxPendingCount;
     private int maxPendingSize;
+    private int numSessionMessengers;
 
     /**
      * Constructs a new instance of this parameter object with default values for all members.
@@ -27,6 +28,7 @@ public class MessageBusParams {
         retryPolicy = new RetryTransientErrorsPolicy();
         maxPendingCount = 1024;
         maxPendingSize = 128 * 1024 * 1024;
+        numSessionMessengers = 0;
     }
 
     /**
@@ -39,6 +41,7 @@ public class MessageBusParams {
         retryPolicy = params.retryPolicy;
         maxPendingCount = params.maxPendingCount;
         maxPendingSize = params.maxPendingSize;
+        numSessionMessengers = params.numSessionMessengers;
     }
 
     /**
@@ -143,4 +146,30 @@ public class MessageBusParams {
         this.maxPendingSize = maxSize;
         return this;
     }
+
+    /**
+     * Returns the number of messenger threads which deliver messages and replies to sessions.
+     *
+     * @return The number of session messengers.
+     */
+    public int getNumSessionMessengers() {
+        return numSessionMessengers;
+    }
+
+    /**
+     * Sets the number of messenger threads which deliver messages and replies to sessions. The sessions are spread
+     * over these threads, such that a slow handler of one session does not delay the handlers of sessions on other
+     * threads, while the handlers of each session are still called in order from a single thread. If this is 0,
+     * which is the default, everything is delivered by the single messenger thread which also does the routing.
+     *
+     * @param numSessionMessengers The number of session messengers to set.
+     * @return This, to allow chaining.
+     */
+    public MessageBusParams setNumSessionMessengers(int numSessionMessengers) {
+        if (numSessionMessengers < 0)
+            throw new IllegalArgumentException("The number of session messengers cannot be negative, got " +
+                                               numSessionMessengers);
+        this.numSessionMessengers = numSessionMessengers;
+        return this;
+    }
 }
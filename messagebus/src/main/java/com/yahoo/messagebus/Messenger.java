@@ -3,30 +3,54 @@ package com.yahoo.messagebus;
 
 import com.yahoo.log.LogLevel;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 /**
  * <p>This class implements a single thread that is able to process arbitrary
- * tasks. Tasks are enqueued using the synchronized {@link #enqueue(Task)}
+ * tasks. Tasks are enqueued using the thread-safe {@link #enqueue(Task)}
  * method, and are run in the order they were enqueued.</p>
  *
+ * <p>Tasks are added to a lock-free queue, so producers never block each
+ * other or the messenger thread. The messenger thread drains the queue in
+ * batches, and only parks when it finds the queue empty.</p>
+ *
  * @author <a href="mailto:simon@yahoo-inc.com">Simon Thoresen</a>
  */
 public class Messenger implements Runnable {
 
     private static final Logger log = Logger.getLogger(Messenger.class.getName());
+
+    /** The max number of tasks to run between each run of the recurrent tasks */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /** The max time to park when there are no tasks, before running the recurrent tasks again */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     private final AtomicBoolean destroyed = new AtomicBoolean(false);
+    private final AtomicBoolean parked = new AtomicBoolean(false);
     private final List<Task> children = new ArrayList<>();
-    private final Queue<Task> queue = new ArrayDeque<>();
-    private final Thread thread = new Thread(this, "Messenger");
+    private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
 
     public Messenger() {
+        this("Messenger");
+    }
+
+    /**
+     * <p>Creates a messenger whose thread has the given name.</p>
+     *
+     * @param name The name of the messenger thread.
+     */
+    public Messenger(String name) {
+        thread = new Thread(this, name);
         thread.setDaemon(true);
     }
 
@@ -88,11 +112,9 @@ public class Messenger implements Runnable {
             task.destroy();
             return;
         }
-        synchronized (this) {
-            queue.offer(task);
-            if (queue.size() == 1) {
-                notify();
-            }
+        queue.offer(task);
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
         }
     }
 
@@ -122,15 +144,11 @@ public class Messenger implements Runnable {
         enqueue(Terminate.INSTANCE);
         if (!destroyed.getAndSet(true)) {
             try {
-                synchronized (this) {
-                    while (!queue.isEmpty()) {
-                        wait();
-                    }
-                }
                 thread.join();
             } catch (final InterruptedException e) {
                 // ignore
             }
+            destroyQueued(); // in case the thread was never started
             done = true;
         }
         return done;
@@ -139,49 +157,58 @@ public class Messenger implements Runnable {
     @Override
     public void run() {
         while (true) {
-            Task task = null;
-            synchronized (this) {
-                if (queue.isEmpty()) {
-                    try {
-                        wait(100);
-                    } catch (final InterruptedException e) {
-                        continue;
-                    }
-                }
-                if (queue.size() > 0) {
-                    task = queue.poll();
+            int batchSize = 0;
+            for (Task task; batchSize < MAX_BATCH_SIZE && (task = queue.poll()) != null; ++batchSize) {
+                if (task == Terminate.INSTANCE) {
+                    terminate();
+                    return;
                 }
+                runTask(task);
             }
-            if (task == Terminate.INSTANCE) {
-                break;
-            }
-            if (task != null) {
-                try {
-                    task.run();
-                } catch (final Exception e) {
-                    log.log(LogLevel.ERROR, "An exception was thrown while running " + task.getClass().getName(), e);
-                }
-                try {
-                    task.destroy();
-                } catch (final Exception e) {
-                    log.warning("An exception was thrown while destroying " + task.getClass().getName() + ": " +
-                                e.toString());
-                    log.warning("Someone, somewhere might have to wait indefinetly for something.");
-                }
+            if (batchSize == 0) {
+                park();
             }
             for (final Task child : children) {
                 child.run();
             }
         }
+    }
+
+    /** Parks the messenger thread until a task is enqueued or the park times out */
+    private void park() {
+        parked.set(true);
+        if (queue.isEmpty()) { // recheck, as a task may have been enqueued before it could see the flag
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        parked.set(false);
+        Thread.interrupted(); // an interrupt only wakes the thread, as before
+    }
+
+    private static void runTask(final Task task) {
+        try {
+            task.run();
+        } catch (final Exception e) {
+            log.log(LogLevel.ERROR, "An exception was thrown while running " + task.getClass().getName(), e);
+        }
+        try {
+            task.destroy();
+        } catch (final Exception e) {
+            log.warning("An exception was thrown while destroying " + task.getClass().getName() + ": " +
+                        e.toString());
+            log.warning("Someone, somewhere might have to wait indefinetly for something.");
+        }
+    }
+
+    private void terminate() {
         for (final Task child : children) {
             child.destroy();
         }
-        synchronized (this) {
-            while (!queue.isEmpty()) {
-                final Task task = queue.poll();
-                task.destroy();
-            }
-            notify();
+        destroyQueued();
+    }
+
+    private void destroyQueued() {
+        for (Task task; (task = queue.poll()) != null; ) {
+            task.destroy();
         }
     }
 
@@ -86,8 +86,7 @@ public class SendProxy implements MessageHandler, ReplyHandler {
                 }
             }
 
-            ReplyHandler handler = reply.popHandler();
-            handler.handleReply(reply);
+            mbus.deliverSessionReply(reply, reply.popHandler());
         }
     }
 }
@@ -13,6 +13,10 @@ public class RouteMetricSet extends MetricSet {
     public MetricSet allErrors = new MetricSet("errors");
     public MetricSet failures = new MetricSet("failures");
     public AverageMetric latency = new AverageMetric("latency", this);
+    /** The number of payload bytes sent on this route, before compression */
+    public CountMetric rawBytes = new CountMetric("rawbytes", this);
+    /** The number of payload bytes sent on this route, after compression */
+    public CountMetric compressedBytes = new CountMetric("compressedbytes", this);
 
     private Map<Integer, CountMetric> errorMap = new HashMap<Integer, CountMetric>();
 
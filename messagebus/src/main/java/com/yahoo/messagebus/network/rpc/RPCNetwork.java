@@ -45,6 +45,7 @@ public class RPCNetwork implements Network, MethodHandler {
     private final Mirror mirror;
     private final Register register;
     private final Map<VersionSpecification, RPCSendAdapter> sendAdapters = new HashMap<>();
+    private RPCSendAdapter compressingSendAdapter;
     private NetworkOwner owner;
     private final SlobrokConfigSubscriber slobroksConfig;
     private final LinkedHashMap<String, Route> lruRouteMap = new LinkedHashMap<>(10000, 0.5f, true);
@@ -65,7 +66,7 @@ public class RPCNetwork implements Network, MethodHandler {
     public RPCNetwork(RPCNetworkParams params, SlobrokConfigSubscriber slobrokConfig) {
         this.slobroksConfig = slobrokConfig;
         identity = params.getIdentity();
-        orb = new Supervisor(new Transport());
+        orb = new Supervisor(new Transport(params.getNumNetworkThreads()));
         orb.setMaxInputBufferSize(params.getMaxInputBufferSize());
         orb.setMaxOutputBufferSize(params.getMaxOutputBufferSize());
         targetPool = new RPCTargetPool(params.getConnectionExpireSecs());
@@ -165,6 +166,8 @@ public class RPCNetwork implements Network, MethodHandler {
         RPCSendAdapter adapter = new RPCSendV1();
         addSendAdapter(new VersionSpecification(5), adapter);
         addSendAdapter(new VersionSpecification(6), adapter);
+        compressingSendAdapter = new RPCSendV2();
+        compressingSendAdapter.attach(this);
     }
 
     @Override
@@ -434,7 +437,9 @@ public class RPCNetwork implements Network, MethodHandler {
                 return;
             }
             for (RoutingNode recipient : ctx.recipients) {
-                adapter.send(recipient, ctx.version, payload, timeRemaining);
+                RPCTarget target = ((RPCServiceAddress)recipient.getServiceAddress()).getTarget();
+                RPCSendAdapter recipientAdapter = target.supportsSendV2() ? compressingSendAdapter : adapter;
+                recipientAdapter.send(recipient, ctx.version, payload, timeRemaining);
             }
         }
     }
@@ -20,6 +20,7 @@ public class RPCNetworkParams {
     private int maxInputBufferSize = 256 * 1024;
     private int maxOutputBufferSize = 256 * 1024;
     private double connectionExpireSecs = 30;
+    private int numNetworkThreads = 1;
 
     /**
      * Constructs a new instance of this class with reasonable default values.
@@ -42,6 +43,7 @@ public class RPCNetworkParams {
         connectionExpireSecs = params.connectionExpireSecs;
         maxInputBufferSize = params.maxInputBufferSize;
         maxOutputBufferSize = params.maxOutputBufferSize;
+        numNetworkThreads = params.numNetworkThreads;
     }
 
     /**
@@ -207,4 +209,26 @@ public class RPCNetworkParams {
         this.maxOutputBufferSize = maxOutputBufferSize;
         return this;
     }
+
+    /**
+     * Returns the number of threads performing network IO for the underlying transport.
+     *
+     * @return The number of threads.
+     */
+    public int getNumNetworkThreads() {
+        return numNetworkThreads;
+    }
+
+    /**
+     * Sets the number of threads performing network IO for the underlying transport. Connections are spread over
+     * these threads, so using more than one lets the network scale beyond a single core when there are many
+     * connections.
+     *
+     * @param numNetworkThreads The number of threads, at least 1.
+     * @return This, to allow chaining.
+     */
+    public RPCNetworkParams setNumNetworkThreads(int numNetworkThreads) {
+        this.numNetworkThreads = numNetworkThreads;
+        return this;
+    }
 }
@@ -0,0 +1,343 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import com.yahoo.component.Version;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.jrt.*;
+import com.yahoo.messagebus.*;
+import com.yahoo.messagebus.Error;
+import com.yahoo.messagebus.ErrorCode;
+import com.yahoo.messagebus.ReplyHandler;
+import com.yahoo.messagebus.metrics.RouteMetricSet;
+import com.yahoo.messagebus.routing.Hop;
+import com.yahoo.messagebus.routing.Route;
+import com.yahoo.messagebus.routing.RoutingNode;
+import com.yahoo.text.Utf8Array;
+
+/**
+ * Implements the parts of the request adapters which are common to all versions of the send method. Subclasses
+ * decide how messages and replies are laid out in the RPC request.
+ *
+ * @author <a href="mailto:simon@yahoo-inc.com">Simon Thoresen</a>
+ */
+public abstract class RPCSend implements MethodHandler, ReplyHandler, RequestWaiter, RPCSendAdapter {
+
+    private RPCNetwork net = null;
+    private String clientIdent = "client";
+    private String serverIdent = "server";
+
+    /** Returns the type string of the return values of the RPC method implemented by this */
+    protected abstract String getReturnSpec();
+
+    /** Returns the description of the RPC method implemented by this */
+    protected abstract Method buildMethod();
+
+    /**
+     * Returns the payload to send for the given serialized message or reply.
+     *
+     * @param payload The serialized message or reply.
+     * @return The payload as it should be sent.
+     */
+    protected abstract Compressor.Compression compress(byte[] payload);
+
+    /**
+     * Creates the RPC request to send for a message.
+     *
+     * @param version       The version the payload is serialized as.
+     * @param route         The route the message should follow after reaching the recipient.
+     * @param address       The address of the recipient.
+     * @param msg           The message to send.
+     * @param timeRemaining The time remaining until the message expires.
+     * @param payload       The payload to send, as returned by {@link #compress}.
+     * @param traceLevel    The trace level of the message.
+     * @return The request to send.
+     */
+    protected abstract Request encodeRequest(Version version, Route route, RPCServiceAddress address, Message msg,
+                                             long timeRemaining, Compressor.Compression payload, int traceLevel);
+
+    /** Returns the parameters of an incoming request for a message */
+    protected abstract Params toParams(Values parameters);
+
+    /** Returns the components of a reply from the return values of a request */
+    protected abstract ReplyParams toReplyParams(Values returnValues);
+
+    /**
+     * Adds the return values of a reply to a request.
+     *
+     * @param ret     The return values to add to.
+     * @param reply   The reply to return.
+     * @param version The version the payload is serialized as.
+     * @param payload The serialized reply, which is empty if the reply has no payload.
+     */
+    protected abstract void createResponse(Values ret, Reply reply, Version version, byte[] payload);
+
+    @Override
+    public final void attach(RPCNetwork net) {
+        this.net = net;
+        String prefix = net.getIdentity().getServicePrefix();
+        if (prefix != null && prefix.length() > 0) {
+            clientIdent = "'" + prefix + "'";
+            serverIdent = clientIdent;
+        }
+        net.getSupervisor().addMethod(buildMethod());
+    }
+
+    @Override
+    public final void send(RoutingNode recipient, Version version, byte[] payload, long timeRemaining) {
+        SendContext ctx = new SendContext(recipient, timeRemaining);
+        RPCServiceAddress address = (RPCServiceAddress)recipient.getServiceAddress();
+        Message msg = recipient.getMessage();
+        Route route = new Route(recipient.getRoute());
+        Hop hop = route.removeHop(0);
+
+        Compressor.Compression compressed = compress(payload);
+        RouteMetricSet metrics = recipient.getRouteMetrics();
+        if (metrics != null) {
+            metrics.rawBytes.inc(payload.length);
+            metrics.compressedBytes.inc(compressed.data().length);
+        }
+        Request req = encodeRequest(version, route, address, msg, timeRemaining, compressed, ctx.trace.getLevel());
+
+        if (ctx.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            ctx.trace.trace(TraceLevel.SEND_RECEIVE,
+                            "Sending message (version " + version + ") from " + clientIdent + " to '" +
+                            address.getServiceName() + "' with " + ctx.timeout + " seconds timeout.");
+        }
+
+        if (hop.getIgnoreResult()) {
+            address.getTarget().getJRTTarget().invokeVoid(req);
+            if (ctx.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
+                ctx.trace.trace(TraceLevel.SEND_RECEIVE,
+                                "Not waiting for a reply from '" + address.getServiceName() + "'.");
+            }
+            Reply reply = new EmptyReply();
+            reply.getTrace().swap(ctx.trace);
+            net.getOwner().deliverReply(reply, recipient);
+        } else {
+            req.setContext(ctx);
+            address.getTarget().getJRTTarget().invokeAsync(req, ctx.timeout, this);
+        }
+        req.discardParameters(); // allow garbage collection of request parameters
+    }
+
+    @Override
+    public final void handleRequestDone(Request req) {
+        SendContext ctx = (SendContext)req.getContext();
+        String serviceName = ((RPCServiceAddress)ctx.recipient.getServiceAddress()).getServiceName();
+        Reply reply = null;
+        Error error = null;
+        if (!req.checkReturnTypes(getReturnSpec())) {
+            // Map all known JRT errors to the appropriate message bus error.
+            reply = new EmptyReply();
+            switch (req.errorCode()) {
+            case com.yahoo.jrt.ErrorCode.TIMEOUT:
+                error = new Error(com.yahoo.messagebus.ErrorCode.TIMEOUT,
+                                  "A timeout occured while waiting for '" + serviceName + "' (" +
+                                  ctx.timeout + " seconds expired); " + req.errorMessage());
+                break;
+            case com.yahoo.jrt.ErrorCode.CONNECTION:
+                error = new Error(com.yahoo.messagebus.ErrorCode.CONNECTION_ERROR,
+                                  "A connection error occured for '" + serviceName + "'; " + req.errorMessage());
+                break;
+            default:
+                error = new Error(com.yahoo.messagebus.ErrorCode.NETWORK_ERROR,
+                                  "A network error occured for '" + serviceName + "'; " + req.errorMessage());
+            }
+        } else {
+            // Retrieve all reply components from JRT request object.
+            ReplyParams params = toReplyParams(req.returnValues());
+
+            // Make sure that the owner understands the protocol.
+            if (params.payload.length > 0) {
+                Protocol protocol = net.getOwner().getProtocol(params.protocolName);
+                if (protocol != null) {
+                    Routable routable = protocol.decode(params.version, params.payload);
+                    if (routable != null) {
+                        if (routable instanceof Reply) {
+                            reply = (Reply)routable;
+                        } else {
+                            error = new Error(com.yahoo.messagebus.ErrorCode.DECODE_ERROR,
+                                              "Payload decoded to a reply when expecting a message.");
+                        }
+                    } else {
+                        error = new Error(com.yahoo.messagebus.ErrorCode.DECODE_ERROR,
+                                          "Protocol '" + protocol.getName() + "' failed to decode routable.");
+                    }
+                } else {
+                    error = new Error(com.yahoo.messagebus.ErrorCode.UNKNOWN_PROTOCOL,
+                                      "Protocol '" + params.protocolName + "' is not known by " + serverIdent + ".");
+                }
+            }
+            if (reply == null) {
+                reply = new EmptyReply();
+            }
+            reply.setRetryDelay(params.retryDelay);
+            for (int i = 0; i < params.errorCodes.length && i < params.errorMessages.length; i++) {
+                reply.addError(new Error(params.errorCodes[i],
+                                         params.errorMessages[i],
+                                         params.errorServices[i].length() > 0 ? params.errorServices[i] : serviceName));
+            }
+            if (ctx.trace.getLevel() > 0) {
+                ctx.trace.getRoot().addChild(TraceNode.decode(params.trace));
+            }
+        }
+        if (ctx.trace.shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            ctx.trace.trace(TraceLevel.SEND_RECEIVE,
+                            "Reply (type " + reply.getType() + ") received at " + clientIdent + ".");
+        }
+        reply.getTrace().swap(ctx.trace);
+        if (error != null) {
+            reply.addError(error);
+        }
+        net.getOwner().deliverReply(reply, ctx.recipient);
+    }
+
+    @Override
+    public final void invoke(Request request) {
+        request.detach();
+        Params params = toParams(request.parameters());
+
+        request.discardParameters(); // allow garbage collection of request parameters
+
+        // Make sure that the owner understands the protocol.
+        Protocol protocol = net.getOwner().getProtocol(params.protocolName);
+        if (protocol == null) {
+            replyError(request, params.version, params.traceLevel,
+                       new com.yahoo.messagebus.Error(ErrorCode.UNKNOWN_PROTOCOL,
+                                                      "Protocol '" + params.protocolName + "' is not known by " + serverIdent + "."));
+            return;
+        }
+        Routable routable = protocol.decode(params.version, params.payload);
+        if (routable == null) {
+            replyError(request, params.version, params.traceLevel,
+                       new Error(ErrorCode.DECODE_ERROR,
+                                 "Protocol '" + protocol.getName() + "' failed to decode routable."));
+            return;
+        }
+        if (routable instanceof Reply) {
+            replyError(request, params.version, params.traceLevel,
+                       new Error(ErrorCode.DECODE_ERROR,
+                                 "Payload decoded to a reply when expecting a message."));
+            return;
+        }
+        Message msg = (Message)routable;
+        if (params.route != null && params.route.length() > 0) {
+            msg.setRoute(net.getRoute(params.route));
+        }
+        msg.setContext(new ReplyContext(request, params.version));
+        msg.pushHandler(this);
+        msg.setRetryEnabled(params.retryEnabled);
+        msg.setRetry(params.retry);
+        msg.setTimeReceivedNow();
+        msg.setTimeRemaining(params.timeRemaining);
+        msg.getTrace().setLevel(params.traceLevel);
+        if (msg.getTrace().shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            msg.getTrace().trace(TraceLevel.SEND_RECEIVE,
+                                 "Message (type " + msg.getType() + ") received at " + serverIdent + " for session '" + params.session + "'.");
+        }
+        net.getOwner().deliverMessage(msg, params.session);
+    }
+
+    @Override
+    public final void handleReply(Reply reply) {
+        ReplyContext ctx = (ReplyContext)reply.getContext();
+        reply.setContext(null);
+
+        // Add trace information.
+        if (reply.getTrace().shouldTrace(TraceLevel.SEND_RECEIVE)) {
+            reply.getTrace().trace(TraceLevel.SEND_RECEIVE,
+                                   "Sending reply (version " + ctx.version + ") from " + serverIdent + ".");
+        }
+
+        // Encode and return the reply through the RPC request.
+        byte[] payload = new byte[0];
+        if (reply.getType() != 0) {
+            Protocol protocol = net.getOwner().getProtocol(reply.getProtocol());
+            if (protocol != null) {
+                payload = protocol.encode(ctx.version, reply);
+            }
+            if (payload == null || payload.length == 0) {
+                reply.addError(new Error(ErrorCode.ENCODE_ERROR,
+                                         "An error occured while encoding the reply."));
+                payload = new byte[0];
+            }
+        }
+        createResponse(ctx.request.returnValues(), reply, ctx.version, payload);
+        ctx.request.returnRequest();
+    }
+
+    /**
+     * Send an error reply for a given request.
+     *
+     * @param request    The JRT request to reply to.
+     * @param version    The version to serialize for.
+     * @param traceLevel The trace level to set in the reply.
+     * @param err        The error to reply with.
+     */
+    private void replyError(Request request, Version version, int traceLevel, Error err) {
+        Reply reply = new EmptyReply();
+        reply.setContext(new ReplyContext(request, version));
+        reply.getTrace().setLevel(traceLevel);
+        reply.addError(err);
+        handleReply(reply);
+    }
+
+    /** Returns the given payload as an uncompressed payload */
+    protected static Compressor.Compression uncompressed(byte[] payload) {
+        return new Compressor.Compression(CompressionType.NONE, payload.length, payload);
+    }
+
+    /** The components of an incoming request for a message */
+    protected static final class Params {
+
+        Version version;
+        String route;
+        String session;
+        boolean retryEnabled;
+        int retry;
+        long timeRemaining;
+        Utf8Array protocolName;
+        byte[] payload;
+        int traceLevel;
+
+    }
+
+    /** The components of a reply to a request for a message */
+    protected static final class ReplyParams {
+
+        Version version;
+        double retryDelay;
+        int[] errorCodes;
+        String[] errorMessages;
+        String[] errorServices;
+        Utf8Array protocolName;
+        byte[] payload;
+        String trace;
+
+    }
+
+    private static class SendContext {
+
+        final RoutingNode recipient;
+        final Trace trace;
+        final double timeout;
+
+        SendContext(RoutingNode recipient, long timeRemaining) {
+            this.recipient = recipient;
+            trace = new Trace(recipient.getTrace().getLevel());
+            timeout = timeRemaining * 0.001;
+        }
+    }
+
+    private static class ReplyContext {
+
+        final Request request;
+        final Version version;
+
+        public ReplyContext(Request request, Version version) {
+            this.request = request;
+            this.version = version;
+        }
+    }
+}
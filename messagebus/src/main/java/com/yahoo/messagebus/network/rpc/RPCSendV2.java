@@ -0,0 +1,145 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.messagebus.network.rpc;
+
+import com.yahoo.component.Version;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.jrt.*;
+import com.yahoo.jrt.StringValue;
+import com.yahoo.messagebus.*;
+import com.yahoo.messagebus.Error;
+import com.yahoo.messagebus.routing.Route;
+
+/**
+ * Implements the request adapter for method "mbus.send2". This is the same as "mbus.send1", except that message and
+ * reply payloads larger than a threshold are sent LZ4 compressed, together with their type of compression and
+ * uncompressed size.
+ *
+ * @author agent
+ */
+public class RPCSendV2 extends RPCSend {
+
+    /** The smallest payload which is compressed */
+    static final int COMPRESSION_MIN_SIZE = 512;
+
+    static final String METHOD_NAME = "mbus.send2";
+    private final String METHOD_PARAMS = "sssbilsbixi";
+    private final String METHOD_RETURN = "sdISSsbixs";
+
+    private final Compressor compressor = new Compressor(CompressionType.LZ4, 0, 0.95, COMPRESSION_MIN_SIZE);
+
+    @Override
+    protected String getReturnSpec() { return METHOD_RETURN; }
+
+    @Override
+    protected Method buildMethod() {
+        Method method = new Method(METHOD_NAME, METHOD_PARAMS, METHOD_RETURN, this);
+        method.methodDesc("Send a message bus request with a possibly compressed payload and get a reply back.");
+        method.paramDesc(0, "version", "The version of the message.")
+                .paramDesc(1, "route", "Names of additional hops to visit.")
+                .paramDesc(2, "session", "The local session that should receive this message.")
+                .paramDesc(3, "retryEnabled", "Whether or not this message can be resent.")
+                .paramDesc(4, "retry", "The number of times the sending of this message has been retried.")
+                .paramDesc(5, "timeRemaining", "The number of milliseconds until timeout.")
+                .paramDesc(6, "protocol", "The name of the protocol that knows how to decode this message.")
+                .paramDesc(7, "compression", "The compression type of the payload.")
+                .paramDesc(8, "uncompressedSize", "The size of the payload when uncompressed.")
+                .paramDesc(9, "payload", "The protocol specific message payload.")
+                .paramDesc(10, "level", "The trace level of the message.");
+        method.returnDesc(0, "version", "The lowest version the message was serialized as.")
+                .returnDesc(1, "retryDelay", "The retry request of the reply.")
+                .returnDesc(2, "errorCodes", "The reply error codes.")
+                .returnDesc(3, "errorMessages", "The reply error messages.")
+                .returnDesc(4, "errorServices", "The reply error service names.")
+                .returnDesc(5, "protocol", "The name of the protocol that knows how to decode this reply.")
+                .returnDesc(6, "compression", "The compression type of the payload.")
+                .returnDesc(7, "uncompressedSize", "The size of the payload when uncompressed.")
+                .returnDesc(8, "payload", "The protocol specific reply payload.")
+                .returnDesc(9, "trace", "A string representation of the trace.");
+        return method;
+    }
+
+    @Override
+    protected Compressor.Compression compress(byte[] payload) {
+        return compressor.compress(payload);
+    }
+
+    private byte[] decompress(Values values, int compressionIndex) {
+        CompressionType type = CompressionType.valueOf(values.get(compressionIndex).asInt8());
+        int uncompressedSize = values.get(compressionIndex + 1).asInt32();
+        byte[] payload = values.get(compressionIndex + 2).asData();
+        return type.isCompressed() ? compressor.decompress(payload, type, uncompressedSize) : payload;
+    }
+
+    @Override
+    protected Request encodeRequest(Version version, Route route, RPCServiceAddress address, Message msg,
+                                    long timeRemaining, Compressor.Compression payload, int traceLevel) {
+        Request req = new Request(METHOD_NAME);
+        req.parameters().add(new StringValue(version.toString()));
+        req.parameters().add(new StringValue(route.toString()));
+        req.parameters().add(new StringValue(address.getSessionName()));
+        req.parameters().add(new Int8Value(msg.getRetryEnabled() ? (byte)1 : (byte)0));
+        req.parameters().add(new Int32Value(msg.getRetry()));
+        req.parameters().add(new Int64Value(timeRemaining));
+        req.parameters().add(new StringValue(msg.getProtocol()));
+        req.parameters().add(new Int8Value(payload.type().getCode()));
+        req.parameters().add(new Int32Value(payload.uncompressedSize()));
+        req.parameters().add(new DataValue(payload.data()));
+        req.parameters().add(new Int32Value(traceLevel));
+        return req;
+    }
+
+    @Override
+    protected Params toParams(Values args) {
+        Params p = new Params();
+        p.version = new Version(args.get(0).asUtf8Array());
+        p.route = args.get(1).asString();
+        p.session = args.get(2).asString();
+        p.retryEnabled = (args.get(3).asInt8() != 0);
+        p.retry = args.get(4).asInt32();
+        p.timeRemaining = args.get(5).asInt64();
+        p.protocolName = args.get(6).asUtf8Array();
+        p.payload = decompress(args, 7);
+        p.traceLevel = args.get(10).asInt32();
+        return p;
+    }
+
+    @Override
+    protected ReplyParams toReplyParams(Values ret) {
+        ReplyParams p = new ReplyParams();
+        p.version = new Version(ret.get(0).asUtf8Array());
+        p.retryDelay = ret.get(1).asDouble();
+        p.errorCodes = ret.get(2).asInt32Array();
+        p.errorMessages = ret.get(3).asStringArray();
+        p.errorServices = ret.get(4).asStringArray();
+        p.protocolName = ret.get(5).asUtf8Array();
+        p.payload = decompress(ret, 6);
+        p.trace = ret.get(9).asString();
+        return p;
+    }
+
+    @Override
+    protected void createResponse(Values ret, Reply reply, Version version, byte[] payload) {
+        int[] eCodes = new int[reply.getNumErrors()];
+        String[] eMessages = new String[reply.getNumErrors()];
+        String[] eServices = new String[reply.getNumErrors()];
+        for (int i = 0; i < reply.getNumErrors(); ++i) {
+            Error error = reply.getError(i);
+            eCodes[i] = error.getCode();
+            eMessages[i] = error.getMessage();
+            eServices[i] = error.getService() != null ? error.getService() : "";
+        }
+        Compressor.Compression compressed = compress(payload);
+        ret.add(new StringValue(version.toString()));
+        ret.add(new DoubleValue(reply.getRetryDelay()));
+        ret.add(new Int32Array(eCodes));
+        ret.add(new StringArray(eMessages));
+        ret.add(new StringArray(eServices));
+        ret.add(new StringValue(reply.getProtocol()));
+        ret.add(new Int8Value(compressed.type().getCode()));
+        ret.add(new Int32Value(compressed.uncompressedSize()));
+        ret.add(new DataValue(compressed.data()));
+        ret.add(new StringValue(reply.getTrace().getRoot() != null ? reply.getTrace().getRoot().encode() : ""));
+    }
+
+}
@@ -25,6 +25,9 @@ public class RPCTarget implements RequestWaiter {
     private final Target target;
     private boolean targetInvoked = false;
     private Version version = null;
+    private Version pendingVersion = null;
+    private boolean sendV2Supported = false;
+    private double resolveTimeout;
     private List<VersionHandler> versionHandlers = new LinkedList<>();
 
     /**
@@ -108,6 +111,7 @@ public class RPCTarget implements RequestWaiter {
                 if (!targetInvoked) {
                     targetInvoked = true;
                     shouldInvoke = true;
+                    resolveTimeout = timeout;
                 }
             }
         }
@@ -122,26 +126,38 @@ public class RPCTarget implements RequestWaiter {
         }
     }
 
+    /**
+     * <p>Returns whether this target accepts messages sent with {@link
+     * RPCSendV2}. This is known once the version of this target is
+     * resolved.</p>
+     *
+     * @return True if payloads to this target may be compressed.
+     */
+    public synchronized boolean supportsSendV2() {
+        return sendV2Supported;
+    }
+
     @Override
     public void handleRequestDone(Request req) {
+        if (req.methodName().equals("mbus.getVersion")) {
+            Version parsed = parseVersion(req);
+            if (parsed != null) {
+                // Ask whether the target knows the compressing send method before passing on its version
+                Request methodInfo = new Request("frt.rpc.getMethodInfo");
+                methodInfo.parameters().add(new StringValue(RPCSendV2.METHOD_NAME));
+                synchronized (this) {
+                    pendingVersion = parsed;
+                }
+                target.invokeAsync(methodInfo, resolveTimeout, this);
+                return;
+            }
+        }
         List<VersionHandler> handlers;
-        boolean shouldLog = log.isLoggable(LogLevel.DEBUG);
         synchronized (this) {
             targetInvoked = false;
-            if (req.checkReturnTypes("s")) {
-                String str = req.returnValues().get(0).asString();
-                try {
-                    version = new Version(str);
-                    if (shouldLog) {
-                        log.log(LogLevel.DEBUG, "Target '" + name + "' has version " + version + ".");
-                    }
-                } catch (IllegalArgumentException e) {
-                    log.log(LogLevel.WARNING, "Failed to parse '" + str + "' as version for target '" + name + "'.", e);
-                }
-            } else {
-                log.log(LogLevel.INFO, "Method mbus.getVersion() failed for target '" + name + "'; " +
-                                       req.errorMessage());
-            }
+            version = pendingVersion;
+            pendingVersion = null;
+            sendV2Supported = version != null && !req.isError();
             handlers = versionHandlers;
             versionHandlers = new LinkedList<>();
         }
@@ -150,6 +166,25 @@ public class RPCTarget implements RequestWaiter {
         }
     }
 
+    private Version parseVersion(Request req) {
+        if ( ! req.checkReturnTypes("s")) {
+            log.log(LogLevel.INFO, "Method mbus.getVersion() failed for target '" + name + "'; " +
+                                   req.errorMessage());
+            return null;
+        }
+        String str = req.returnValues().get(0).asString();
+        try {
+            Version version = new Version(str);
+            if (log.isLoggable(LogLevel.DEBUG)) {
+                log.log(LogLevel.DEBUG, "Target '" + name + "' has version " + version + ".");
+            }
+            return version;
+        } catch (IllegalArgumentException e) {
+            log.log(LogLevel.WARNING, "Failed to parse '" + str + "' as version for target '" + name + "'.", e);
+            return null;
+        }
+    }
+
     /**
      * <p>Declares a version handler used when resolving the version of a
      * target. An instance of this is passed to {@link
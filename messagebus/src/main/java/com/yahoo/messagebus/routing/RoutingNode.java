@@ -769,6 +769,15 @@ public class RoutingNode implements ReplyHandler {
         return children;
     }
 
+    /**
+     * Returns the metrics of the route of the message being routed, or null if the message has no route.
+     *
+     * @return The route metrics.
+     */
+    public RouteMetricSet getRouteMetrics() {
+        return parent != null ? parent.getRouteMetrics() : routeMetrics;
+    }
+
     /**
      * Returns the service address of this node. This is attached by the network layer, and should only ever be present
      * in leaf nodes.
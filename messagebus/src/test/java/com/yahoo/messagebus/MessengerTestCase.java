@@ -3,9 +3,12 @@ package com.yahoo.messagebus;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -95,6 +98,59 @@ public class MessengerTestCase {
         assertTrue(tryMessenger(msn));
     }
 
+    @Test
+    public void requireThatTasksOfEachProducerAreRunInOrder() throws InterruptedException {
+        final Messenger msn = new Messenger();
+        msn.start();
+        final int numProducers = 8;
+        final int numTasks = 10000;
+        final List<List<Integer>> runs = new ArrayList<>();
+        final List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < numProducers; ++i) {
+            final List<Integer> run = new ArrayList<>();
+            runs.add(run);
+            producers.add(new Thread(() -> {
+                for (int j = 0; j < numTasks; ++j) {
+                    final int sequence = j;
+                    msn.enqueue(new Messenger.Task() {
+                        @Override
+                        public void run() {
+                            run.add(sequence);
+                        }
+
+                        @Override
+                        public void destroy() {
+
+                        }
+                    });
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        msn.sync();
+        for (List<Integer> run : runs) {
+            assertEquals(numTasks, run.size());
+            for (int j = 0; j < numTasks; ++j) {
+                assertEquals(j, (int)run.get(j));
+            }
+        }
+        msn.destroy();
+    }
+
+    @Test
+    public void requireThatQueuedTasksAreDestroyedOnDestroy() throws InterruptedException {
+        Messenger msn = new Messenger();
+        MyTask task = new MyTask();
+        msn.enqueue(task);
+        msn.destroy();
+        assertTrue(task.destroyLatch.await(60, TimeUnit.SECONDS));
+    }
+
     private static boolean tryMessenger(Messenger msn) {
         MyTask task = new MyTask();
         msn.enqueue(task);
@@ -5,6 +5,7 @@ import com.yahoo.component.Version;
 import com.yahoo.jrt.ListenFailedException;
 import com.yahoo.jrt.slobrok.server.Slobrok;
 import com.yahoo.messagebus.*;
+import com.yahoo.messagebus.metrics.RouteMetricSet;
 import com.yahoo.messagebus.network.Identity;
 import com.yahoo.messagebus.network.rpc.test.TestServer;
 import com.yahoo.messagebus.routing.Route;
@@ -90,12 +91,57 @@ public class SendAdapterTestCase {
         }
     }
 
+    @Test
+    public void requireThatLargePayloadsAreCompressed() {
+        String value = largeValue();
+        assertEquals(value, sendAndReply(value));
+
+        RouteMetricSet metrics = srcServer.mb.getMetrics().getRouteMetrics(Route.parse("dst/session"));
+        long rawBytes = metrics.rawBytes.get().longValue();
+        long compressedBytes = metrics.compressedBytes.get().longValue();
+        assertTrue(rawBytes > value.length());
+        assertTrue("Compressed " + rawBytes + " bytes to " + compressedBytes, compressedBytes < rawBytes / 10);
+    }
+
+    @Test
+    public void requireThatPayloadsAreNotCompressedForRecipientsWithoutSendV2() {
+        dstServer.net.getSupervisor().removeMethod("mbus.send2");
+        String value = largeValue();
+        assertEquals(value, sendAndReply(value));
+
+        RouteMetricSet metrics = srcServer.mb.getMetrics().getRouteMetrics(Route.parse("dst/session"));
+        assertTrue(metrics.rawBytes.get().longValue() > value.length());
+        assertEquals(metrics.rawBytes.get().longValue(), metrics.compressedBytes.get().longValue());
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
     //
     // Utilities
     //
     ////////////////////////////////////////////////////////////////////////////////
 
+    private static String largeValue() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            b.append("compressible ");
+        }
+        return b.toString();
+    }
+
+    /** Sends a message with the given value directly to the destination and returns the value it received */
+    private String sendAndReply(String value) {
+        assertTrue(srcSession.send(new SimpleMessage(value), Route.parse("dst/session")).isAccepted());
+        Message msg = ((Receptor)dstSession.getMessageHandler()).getMessage(300);
+        assertNotNull(msg);
+        Reply reply = new SimpleReply(((SimpleMessage)msg).getValue());
+        reply.swapState(msg);
+        dstSession.reply(reply);
+        reply = ((Receptor)srcSession.getReplyHandler()).getReply(300);
+        assertNotNull(reply);
+        assertFalse(reply.hasErrors());
+        return ((SimpleReply)reply).getValue();
+    }
+
     private void assertVersionedSend(Version srcVersion, Version itrVersion, Version dstVersion) {
         System.out.println("Sending from " + srcVersion + " through " + itrVersion + " to " + dstVersion + ":");
         srcServer.net.setVersion(srcVersion);
@@ -2,6 +2,8 @@
 package com.yahoo.search.predicate;
 
 import com.google.common.annotations.Beta;
+import com.yahoo.search.predicate.serialization.MappedFileReader;
+import com.yahoo.search.predicate.serialization.MappedFileWriter;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -41,6 +43,21 @@ public class Config {
         return new Config(arity, lowerBound, upperBound, useConjunctionAlgorithm);
     }
 
+    public void writeToMappedFile(MappedFileWriter out) throws IOException {
+        out.writeInt(arity);
+        out.writeLong(lowerBound);
+        out.writeLong(upperBound);
+        out.writeBoolean(useConjunctionAlgorithm);
+    }
+
+    public static Config fromMappedFile(MappedFileReader in) throws IOException {
+        int arity = in.readInt();
+        long lowerBound = in.readLong();
+        long upperBound = in.readLong();
+        boolean useConjunctionAlgorithm = in.readBoolean();
+        return new Config(arity, lowerBound, upperBound, useConjunctionAlgorithm);
+    }
+
     public static class Builder {
         private int arity = 8;
         private long lowerBound = Long.MIN_VALUE;
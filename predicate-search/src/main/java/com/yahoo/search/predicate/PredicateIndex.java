@@ -6,11 +6,14 @@ import com.yahoo.document.predicate.Predicate;
 import com.yahoo.search.predicate.index.*;
 import com.yahoo.search.predicate.index.conjunction.ConjunctionHit;
 import com.yahoo.search.predicate.index.conjunction.ConjunctionIndex;
+import com.yahoo.search.predicate.serialization.MappedFileReader;
+import com.yahoo.search.predicate.serialization.MappedFileWriter;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -31,6 +34,9 @@ import java.util.stream.Stream;
  * </p><p>
  * Note that the {@link PredicateIndex} is thread-safe, but a {@link Searcher} is not.
  * Each thread <strong>must</strong> use its own searcher.
+ * </p><p>
+ * An index can be written to and read from a stream, or written to a file which is memory mapped when read
+ * (see {@link #fromMappedFile}), which is faster to load and keeps the posting lists and intervals off the heap.
  * </p>
  * @author <a href="mailto:magnarn@yahoo-inc.com">Magnar Nedland</a>
  * @author bjorncs
@@ -38,6 +44,8 @@ import java.util.stream.Stream;
 @Beta
 public class PredicateIndex {
     private static final int SERIALIZATION_FORMAT_VERSION = 3;
+    private static final int MAPPED_FILE_MAGIC = 0x50524458; // "PRDX"
+    private static final int MAPPED_FILE_FORMAT_VERSION = 1;
 
     private final PredicateRangeTermExpander expander;
     private final int[] internalToExternalIdMapping;
@@ -142,6 +150,74 @@ public class PredicateIndex {
         );
     }
 
+    /**
+     * Writes this index to a file in the format read by {@link #fromMappedFile}.
+     * The file is overwritten if it exists.
+     */
+    public void writeToMappedFile(Path file) throws IOException {
+        try (MappedFileWriter out = new MappedFileWriter(file)) {
+            out.writeInt(MAPPED_FILE_MAGIC);
+            out.writeInt(MAPPED_FILE_FORMAT_VERSION);
+            config.writeToMappedFile(out);
+            out.writeIntArray(internalToExternalIdMapping);
+            out.writeByteArray(minFeatureIndex);
+            out.writeShortArray(intervalEnds);
+            out.writeInt(highestIntervalEnd);
+            out.writeIntArray(zeroConstraintDocuments);
+            intervalIndex.writeToMappedFile(out);
+            boundsIndex.writeToMappedFile(out);
+            conjunctionIntervalIndex.writeToMappedFile(out);
+            intervalStore.writeToMappedFile(out);
+            conjunctionIndex.writeToMappedFile(out);
+        }
+    }
+
+    /**
+     * Reads an index from a file written by {@link #writeToMappedFile}.
+     * The posting lists and intervals are memory mapped rather than read into the heap, such that the index
+     * is available without reading the whole file, and the pages of the file are shared by all
+     * instances mapping it, such as the indexes of consecutive container generations.
+     * The file must not be changed while the index is in use.
+     */
+    public static PredicateIndex fromMappedFile(Path file) throws IOException {
+        try (MappedFileReader in = new MappedFileReader(file)) {
+            int magic = in.readInt();
+            if (magic != MAPPED_FILE_MAGIC) {
+                throw new IllegalArgumentException(String.format(
+                        "'%s' is not a mapped predicate index file. Expected magic %x, was %x.", file, MAPPED_FILE_MAGIC, magic));
+            }
+            int version = in.readInt();
+            if (version != MAPPED_FILE_FORMAT_VERSION) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid mapped file format version. Expected %d, was %d.", MAPPED_FILE_FORMAT_VERSION, version));
+            }
+            Config config = Config.fromMappedFile(in);
+            int[] internalToExternalIdMapping = in.readIntArray();
+            byte[] minFeatureIndex = in.readByteArray();
+            short[] intervalEnds = in.readShortArray();
+            int highestIntervalEnd = in.readInt();
+            int[] zeroConstraintDocuments = in.readIntArray();
+            SimpleIndex intervalIndex = SimpleIndex.fromMappedFile(in);
+            SimpleIndex boundsIndex = SimpleIndex.fromMappedFile(in);
+            SimpleIndex conjunctionIntervalIndex = SimpleIndex.fromMappedFile(in);
+            PredicateIntervalStore intervalStore = PredicateIntervalStore.fromMappedFile(in);
+            ConjunctionIndex conjunctionIndex = ConjunctionIndex.fromMappedFile(in);
+            return new PredicateIndex(
+                    config,
+                    internalToExternalIdMapping,
+                    minFeatureIndex,
+                    intervalEnds,
+                    highestIntervalEnd,
+                    intervalIndex,
+                    boundsIndex,
+                    conjunctionIntervalIndex,
+                    intervalStore,
+                    conjunctionIndex,
+                    zeroConstraintDocuments
+            );
+        }
+    }
+
     @Beta
     public class Searcher {
         private final byte[] nPostingListsForDocument;
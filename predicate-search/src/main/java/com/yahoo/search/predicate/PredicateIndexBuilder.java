@@ -141,7 +141,21 @@ public class PredicateIndexBuilder {
         zeroConstraintDocuments.add(docId);
     }
 
-    private void indexDocument(int docId, PredicateTreeAnnotations annotations) {
+    /**
+     * Throws the exception {@link #indexDocument(int, Predicate)} would throw for the given predicate,
+     * without indexing it.
+     */
+    void validate(Predicate predicate) {
+        if (isNeverMatchingDocument(predicate)) {
+            return;
+        }
+        predicate = optimizer.optimizePredicate(predicate);
+        if ( ! isAlwaysMatchingDocument(predicate)) {
+            validate(PredicateTreeAnnotator.createPredicateTreeAnnotations(predicate));
+        }
+    }
+
+    private static void validate(PredicateTreeAnnotations annotations) {
         int minFeature = annotations.minFeature;
         Preconditions.checkState(minFeature <= 0xFF,
                 "Predicate is too complex. Expected min-feature less than %d, was %d.", 0xFF, minFeature);
@@ -149,6 +163,12 @@ public class PredicateIndexBuilder {
         Preconditions.checkState(intervalEnd <= Interval.MAX_INTERVAL_END,
                 "Predicate is too complex. Expected min-feature less than %d, was %d.",
                 Interval.MAX_INTERVAL_END, intervalEnd);
+    }
+
+    private void indexDocument(int docId, PredicateTreeAnnotations annotations) {
+        validate(annotations);
+        int minFeature = annotations.minFeature;
+        int intervalEnd = annotations.intervalEnd;
         highestIntervalEnd = Math.max(highestIntervalEnd, intervalEnd);
         intervalEndsBuilder.add((short) intervalEnd);
         minFeatureIndexBuilder.add((byte) minFeature);
@@ -0,0 +1,396 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate;
+
+import com.google.common.annotations.Beta;
+import com.google.common.primitives.Ints;
+import com.yahoo.document.predicate.Predicate;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * An index of {@link Predicate} objects which can be updated while it is searched.
+ * <p>
+ * The documents are kept in two immutable {@link PredicateIndex} segments: A large base segment and a small
+ * delta segment containing the documents added or changed since the base segment was built.
+ * Documents in the base segment which are changed or removed are masked by tombstones.
+ * </p><p>
+ * An update returns once a delta segment containing it is searchable. The delta segment is rebuilt outside
+ * the lock of this, once for all the updates made while the previous rebuild was running, such that concurrent
+ * updates share rebuilds. When the delta reaches the given size, a new base segment containing all the documents
+ * is built in the background by the given executor. Updates wait for the merge to complete if the delta
+ * reaches twice the given size, which bounds the cost of rebuilding it. A failed merge is retried with
+ * an exponential backoff. An update to a full delta retries the merge itself once the backoff has passed,
+ * and fails if it has not, or if the merge can not be started.
+ * </p><p>
+ * Like {@link PredicateIndex}, this is thread-safe, but a {@link Searcher} is not.
+ * Each thread <strong>must</strong> use its own searcher.
+ * </p>
+ * @author agent
+ */
+@Beta
+public class UpdatablePredicateIndex {
+
+    private static final Logger log = Logger.getLogger(UpdatablePredicateIndex.class.getName());
+
+    private static final long INITIAL_MERGE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_MERGE_BACKOFF_MILLIS = 60 * 1000;
+
+    private final Config config;
+    private final int maxDeltaDocuments;
+    private final int maxChangedDocuments;
+    private final Executor mergeExecutor;
+    private final Clock clock;
+
+    /** Used to validate predicates only, which does not change it */
+    private final PredicateIndexBuilder validator;
+
+    /** All the documents of this index. Guarded by this */
+    private final Map<Integer, Predicate> documents = new LinkedHashMap<>();
+
+    /** The ids of the documents which are changed since the base segment was built. Guarded by this */
+    private Set<Integer> changedDocuments = new HashSet<>();
+
+    /** The ids of the documents which are changed since the running merge started, or null if not merging. Guarded by this */
+    private Set<Integer> changedDuringMerge = null;
+
+    /** Incremented on each change of the documents or the base segment. Guarded by this */
+    private long version = 0;
+
+    /** The version of the published segments. Guarded by this */
+    private long publishedVersion = 0;
+
+    /** Whether the delta segment is being rebuilt. Guarded by this */
+    private boolean refreshing = false;
+
+    /** Guarded by this */
+    private long mergeBackoffMillis = 0;
+    private long nextMergeTimeMillis = 0;
+    private RuntimeException lastMergeFailure = null;
+
+    private volatile Segments segments;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param config            The configuration of the segments of this index.
+     * @param maxDeltaDocuments The number of changed documents which causes a new base segment to be built.
+     * @param mergeExecutor     The executor building new base segments.
+     */
+    public UpdatablePredicateIndex(Config config, int maxDeltaDocuments, Executor mergeExecutor) {
+        this(config, maxDeltaDocuments, mergeExecutor, Collections.emptyMap());
+    }
+
+    /**
+     * Creates an index where the given documents are in the base segment.
+     *
+     * @param config            The configuration of the segments of this index.
+     * @param maxDeltaDocuments The number of changed documents which causes a new base segment to be built.
+     * @param mergeExecutor     The executor building new base segments.
+     * @param documents         The initial documents of this, by document id.
+     */
+    public UpdatablePredicateIndex(Config config, int maxDeltaDocuments, Executor mergeExecutor,
+                                   Map<Integer, Predicate> documents) {
+        this(config, maxDeltaDocuments, mergeExecutor, documents, Clock.systemUTC());
+    }
+
+    UpdatablePredicateIndex(Config config, int maxDeltaDocuments, Executor mergeExecutor,
+                            Map<Integer, Predicate> documents, Clock clock) {
+        if (maxDeltaDocuments < 1) {
+            throw new IllegalArgumentException("Expected max delta documents to be positive, was " + maxDeltaDocuments);
+        }
+        this.config = config;
+        this.maxDeltaDocuments = maxDeltaDocuments;
+        this.maxChangedDocuments = maxDeltaDocuments * 2;
+        this.mergeExecutor = mergeExecutor;
+        this.clock = clock;
+        this.validator = new PredicateIndexBuilder(config);
+        documents.forEach((docId, predicate) -> this.documents.put(docId, copyOf(predicate)));
+        this.segments = new Segments(buildIndex(this.documents), new int[0], null);
+    }
+
+    /**
+     * Adds a document, or replaces the predicate of the document if the id is already in use.
+     *
+     * @param docId     A 32-bit document id, returned in the Hit objects when the predicate matches.
+     * @param predicate The predicate to index.
+     * @throws IllegalStateException if the predicate can not be indexed, or the delta is full and can not be merged
+     */
+    public void indexDocument(int docId, Predicate predicate) {
+        Predicate copy = copyOf(predicate);
+        validator.validate(copyOf(predicate));
+        long version;
+        Map<Integer, Predicate> mergeSnapshot;
+        synchronized (this) {
+            awaitRoomFor(docId);
+            documents.put(docId, copy);
+            version = documentChanged(docId);
+            mergeSnapshot = startMergeIfNeeded();
+        }
+        submitMerge(mergeSnapshot);
+        refreshAndWait(version);
+    }
+
+    /**
+     * Removes a document.
+     *
+     * @return true if the document was in this index
+     * @throws IllegalStateException if the delta is full and can not be merged
+     */
+    public boolean removeDocument(int docId) {
+        long version;
+        Map<Integer, Predicate> mergeSnapshot;
+        synchronized (this) {
+            if ( ! documents.containsKey(docId)) {
+                return false;
+            }
+            awaitRoomFor(docId);
+            if (documents.remove(docId) == null) {
+                return false;
+            }
+            version = documentChanged(docId);
+            mergeSnapshot = startMergeIfNeeded();
+        }
+        submitMerge(mergeSnapshot);
+        refreshAndWait(version);
+        return true;
+    }
+
+    /** Returns the number of documents in this */
+    public synchronized int getDocumentCount() {
+        return documents.size();
+    }
+
+    /** Returns the number of documents which are changed or removed since the base segment was built */
+    public synchronized int getDeltaDocumentCount() {
+        return changedDocuments.size();
+    }
+
+    public void rebuildPostingListCache() {
+        segments.base.rebuildPostingListCache();
+    }
+
+    /**
+     * Create a new searcher.
+     */
+    public Searcher searcher() {
+        return new Searcher();
+    }
+
+    /**
+     * Waits until the given document can be changed without exceeding the max number of changed documents.
+     * If the last merge failed, this retries it when its backoff has passed, as no other update may do so.
+     */
+    private void awaitRoomFor(int docId) {
+        while (changedDocuments.size() >= maxChangedDocuments && ! changedDocuments.contains(docId)) {
+            if (changedDuringMerge == null) {
+                if (clock.millis() < nextMergeTimeMillis) {
+                    throw new IllegalStateException("Can not change more than " + maxChangedDocuments +
+                                                    " documents before they are merged, and merging failed",
+                                                    lastMergeFailure);
+                }
+                // Submitted while holding the lock, as this must wait for the merge anyway
+                submitMerge(startMergeIfNeeded());
+                continue;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the delta to be merged", e);
+            }
+        }
+    }
+
+    private long documentChanged(int docId) {
+        changedDocuments.add(docId);
+        if (changedDuringMerge != null) {
+            changedDuringMerge.add(docId);
+        }
+        return ++version;
+    }
+
+    /** Marks a merge as started and returns the documents to merge if one should be started, or null otherwise */
+    private Map<Integer, Predicate> startMergeIfNeeded() {
+        if (changedDuringMerge != null
+            || changedDocuments.size() < maxDeltaDocuments
+            || clock.millis() < nextMergeTimeMillis) {
+            return null;
+        }
+        changedDuringMerge = new HashSet<>();
+        return new LinkedHashMap<>(documents);
+    }
+
+    private void submitMerge(Map<Integer, Predicate> snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            mergeExecutor.execute(() -> merge(snapshot));
+        } catch (RuntimeException e) {
+            mergeFailed(e);
+        }
+    }
+
+    private void merge(Map<Integer, Predicate> snapshot) {
+        PredicateIndex base;
+        try {
+            base = buildIndex(snapshot);
+        } catch (RuntimeException e) {
+            mergeFailed(e);
+            return;
+        }
+        Map<Integer, Predicate> nextMergeSnapshot;
+        long version;
+        synchronized (this) {
+            changedDocuments = changedDuringMerge;
+            changedDuringMerge = null;
+            mergeBackoffMillis = 0;
+            nextMergeTimeMillis = 0;
+            lastMergeFailure = null;
+            // Consistent until refreshed, as the current tombstones includes all the documents of the current delta
+            segments = new Segments(base, segments.tombstones, segments.delta);
+            version = ++this.version;
+            nextMergeSnapshot = startMergeIfNeeded();
+            notifyAll();
+        }
+        refreshAndWait(version);
+        submitMerge(nextMergeSnapshot);
+    }
+
+    private synchronized void mergeFailed(RuntimeException e) {
+        log.log(Level.WARNING, "Failed to merge the delta of a predicate index", e);
+        changedDuringMerge = null;
+        mergeBackoffMillis = Math.min(Math.max(mergeBackoffMillis * 2, INITIAL_MERGE_BACKOFF_MILLIS),
+                                      MAX_MERGE_BACKOFF_MILLIS);
+        nextMergeTimeMillis = clock.millis() + mergeBackoffMillis;
+        lastMergeFailure = e;
+        notifyAll();
+    }
+
+    /**
+     * Rebuilds and publishes the delta segment unless the given version is published already.
+     * If another thread is rebuilding, this waits for it, and rebuilds again if that did not publish the given version.
+     */
+    private void refreshAndWait(long version) {
+        while (true) {
+            long snapshotVersion;
+            PredicateIndex base;
+            int[] tombstones;
+            Map<Integer, Predicate> delta = new LinkedHashMap<>();
+            synchronized (this) {
+                while (refreshing && publishedVersion < version) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (publishedVersion >= version) {
+                    return;
+                }
+                refreshing = true;
+                snapshotVersion = this.version;
+                base = segments.base;
+                tombstones = Ints.toArray(changedDocuments);
+                Arrays.sort(tombstones);
+                for (Integer docId : changedDocuments) {
+                    Predicate predicate = documents.get(docId);
+                    if (predicate != null) {
+                        delta.put(docId, predicate);
+                    }
+                }
+            }
+
+            PredicateIndex deltaIndex = null;
+            try {
+                deltaIndex = delta.isEmpty() ? null : buildIndex(delta);
+            } finally {
+                synchronized (this) {
+                    refreshing = false;
+                    if ((deltaIndex != null || delta.isEmpty()) && base == segments.base) {
+                        segments = new Segments(base, tombstones, deltaIndex);
+                        publishedVersion = snapshotVersion;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /** Builds an index of copies of the given predicates, as indexing changes predicates */
+    private PredicateIndex buildIndex(Map<Integer, Predicate> documents) {
+        PredicateIndexBuilder builder = new PredicateIndexBuilder(config);
+        documents.forEach((docId, predicate) -> builder.indexDocument(docId, copyOf(predicate)));
+        return builder.build();
+    }
+
+    private static Predicate copyOf(Predicate predicate) {
+        try {
+            return predicate.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** An immutable snapshot of the segments of this */
+    private static class Segments {
+        final PredicateIndex base;
+        final int[] tombstones;
+        final PredicateIndex delta;
+
+        /** The tombstones must be sorted, and must not be changed */
+        Segments(PredicateIndex base, int[] tombstones, PredicateIndex delta) {
+            this.base = base;
+            this.tombstones = tombstones;
+            this.delta = delta;
+        }
+    }
+
+    @Beta
+    public class Searcher {
+        private Segments segments;
+        private PredicateIndex.Searcher baseSearcher;
+        private PredicateIndex.Searcher deltaSearcher;
+
+        private Searcher() {}
+
+        /**
+         * Retrieves a stream of hits for the given query from the segments of the index as of when the search starts.
+         *
+         * @param query Specifies the boolean variables that are true.
+         * @return A stream of hits.
+         */
+        public Stream<Hit> search(PredicateQuery query) {
+            Segments current = UpdatablePredicateIndex.this.segments;
+            if (segments == null || segments.base != current.base) {
+                baseSearcher = current.base.searcher();
+            }
+            if (segments == null || segments.delta != current.delta) {
+                deltaSearcher = current.delta != null ? current.delta.searcher() : null;
+            }
+            segments = current;
+
+            Stream<Hit> hits = baseSearcher.search(query);
+            int[] tombstones = current.tombstones;
+            if (tombstones.length > 0) {
+                hits = hits.filter(hit -> Arrays.binarySearch(tombstones, hit.getDocId()) < 0);
+            }
+            if (deltaSearcher != null) {
+                hits = Stream.concat(hits, deltaSearcher.search(query));
+            }
+            return hits;
+        }
+    }
+
+}
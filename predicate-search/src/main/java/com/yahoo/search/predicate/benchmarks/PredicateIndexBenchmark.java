@@ -24,6 +24,7 @@ import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -68,7 +69,7 @@ public class PredicateIndexBenchmark {
                 .build();
         PredicateIndex index = getIndex(args, config);
         if (args.indexOutputFile != null) {
-            writeIndexToFile(index, args.indexOutputFile);
+            writeIndexToFile(index, args.indexOutputFile, args.mapped);
         }
         if (args.queryFile != null) {
             runQueries(args, index);
@@ -105,6 +106,11 @@ public class PredicateIndexBenchmark {
             PredicateIndex index = builder.build();
             output.put("Time prepare index", System.currentTimeMillis() - start);
             return index;
+        } else if (args.mapped) {
+            long start = System.currentTimeMillis();
+            PredicateIndex index = PredicateIndex.fromMappedFile(Paths.get(args.indexFile));
+            output.put("Time map index", System.currentTimeMillis() - start);
+            return index;
         } else {
             try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args.indexFile)))) {
                 long start = System.currentTimeMillis();
@@ -115,7 +121,13 @@ public class PredicateIndexBenchmark {
         }
     }
 
-    private static void writeIndexToFile(PredicateIndex index, String indexOutputFile) throws IOException {
+    private static void writeIndexToFile(PredicateIndex index, String indexOutputFile, boolean mapped) throws IOException {
+        if (mapped) {
+            long start = System.currentTimeMillis();
+            index.writeToMappedFile(Paths.get(indexOutputFile));
+            output.put("Time write index", System.currentTimeMillis() - start);
+            return;
+        }
         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexOutputFile)))) {
             long start = System.currentTimeMillis();
             index.writeToOutputStream(out);
@@ -134,6 +146,7 @@ public class PredicateIndexBenchmark {
         output.put("Feed file", args.feedFile);
         output.put("Query file", args.queryFile);
         output.put("Index file", args.indexFile);
+        output.put("Mapped index file format", args.mapped);
         output.put("Query format", args.format);
         output.put("Warmup", args.warmup);
     }
@@ -288,6 +301,10 @@ public class PredicateIndexBenchmark {
         @Option(name = {"-wi", "--write-index"}, description = "Serialize index to the given file")
         public String indexOutputFile;
 
+        @Option(name = {"-m", "--mapped"},
+                description = "Read and write index files in the memory mapped format instead of the serialized format")
+        public boolean mapped = false;
+
         @Option(name = {"-quf", "--query-file"}, description = "File path to a query file")
         public String queryFile;
 
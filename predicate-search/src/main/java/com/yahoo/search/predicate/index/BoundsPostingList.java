@@ -11,7 +11,7 @@ package com.yahoo.search.predicate.index;
 public class BoundsPostingList extends MultiIntervalPostingList {
     private final int valueDiff;
     private final IntervalWithBounds intervalWithBounds = new IntervalWithBounds();
-    private final PredicateIntervalStore store;
+    private final PredicateIntervalStore.Reader intervalReader;
     private int currentInterval;
 
     /**
@@ -20,12 +20,13 @@ public class BoundsPostingList extends MultiIntervalPostingList {
     public BoundsPostingList(PredicateIntervalStore store, int[] docIds, int[] dataRefs, long subquery, int valueDiff) {
         super(docIds, dataRefs, subquery);
         this.valueDiff = valueDiff;
-        this.store = store;
+        this.intervalReader = store.reader();
     }
 
     @Override
     protected boolean prepareIntervals(int dataRef) {
-        intervalWithBounds.setIntervalArray(store.get(dataRef), 0);
+        int[] intervals = intervalReader.read(dataRef);
+        intervalWithBounds.setIntervalArray(intervals, 0, intervalReader.length());
         return nextInterval();
     }
 
@@ -8,19 +8,21 @@ package com.yahoo.search.predicate.index;
  * @author bjorncs
  */
 public class IntervalPostingList extends MultiIntervalPostingList {
-    private final PredicateIntervalStore store;
+    private final PredicateIntervalStore.Reader intervalReader;
     private int[] currentIntervals;
+    private int currentIntervalCount;
     private int currentIntervalIndex;
     private int currentInterval;
 
     public IntervalPostingList(PredicateIntervalStore store, int[] docIds, int[] dataRefs, long subquery) {
         super(docIds, dataRefs, subquery);
-        this.store = store;
+        this.intervalReader = store.reader();
     }
 
     @Override
     protected boolean prepareIntervals(int dataRef) {
-        currentIntervals = store.get(dataRef);
+        currentIntervals = intervalReader.read(dataRef);
+        currentIntervalCount = intervalReader.length();
         currentIntervalIndex = 1;
         currentInterval = currentIntervals[0];
         return true;
@@ -28,7 +30,7 @@ public class IntervalPostingList extends MultiIntervalPostingList {
 
     @Override
     public boolean nextInterval() {
-        if (currentIntervalIndex < currentIntervals.length) {
+        if (currentIntervalIndex < currentIntervalCount) {
             this.currentInterval = currentIntervals[currentIntervalIndex++];
             return true;
         }
@@ -13,6 +13,7 @@ public class IntervalWithBounds {
 
     private int[] intervalBoundsArray;
     private int arrayIndex;
+    private int arrayLength;
 
     public IntervalWithBounds() {
         setIntervalArray(null, 0);
@@ -22,10 +23,17 @@ public class IntervalWithBounds {
     }
 
     public void setIntervalArray(int[] intervalBoundsArray, int arrayIndex) {
+        setIntervalArray(intervalBoundsArray, arrayIndex, intervalBoundsArray != null ? intervalBoundsArray.length : 0);
+    }
+    /**
+     * Sets the array of intervals and bounds, where only the first arrayLength elements are used.
+     */
+    public void setIntervalArray(int[] intervalBoundsArray, int arrayIndex, int arrayLength) {
         this.intervalBoundsArray = intervalBoundsArray;
         this.arrayIndex = arrayIndex;
+        this.arrayLength = arrayLength;
     }
-    public boolean hasValue() { return arrayIndex < intervalBoundsArray.length - 1; }
+    public boolean hasValue() { return arrayIndex < arrayLength - 1; }
     public void nextValue() { arrayIndex += 2; }
 
     public Stream<Integer> stream() { return Stream.of(getInterval(), getBounds()); }
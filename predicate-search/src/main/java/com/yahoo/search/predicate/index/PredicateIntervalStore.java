@@ -2,11 +2,14 @@
 package com.yahoo.search.predicate.index;
 
 import com.google.common.primitives.Ints;
+import com.yahoo.search.predicate.serialization.MappedFileReader;
+import com.yahoo.search.predicate.serialization.MappedFileWriter;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -14,28 +17,94 @@ import java.util.List;
 import java.util.Map;
 
 /**
+ * Stores the lists of intervals referenced by postings.
+ * <p>
+ * The intervals are either on the heap, or in a memory mapped file (see {@link #fromMappedFile}).
+ * Posting lists read intervals through a {@link Reader}, which copies mapped intervals into an array it reuses
+ * for every lookup, such that mapped intervals never take up heap beyond a search.
+ *
  * @author bjorncs
  */
 public class PredicateIntervalStore {
 
     private final int[][] intervalsList;
 
+    /** The offset of each list of intervals in mappedIntervals, followed by the end offset, or null if not mapped */
+    private final IntBuffer mappedOffsets;
+    private final IntBuffer mappedIntervals;
+
     public PredicateIntervalStore(int[][] intervalsList) {
         this.intervalsList = intervalsList;
+        this.mappedOffsets = null;
+        this.mappedIntervals = null;
+    }
+
+    private PredicateIntervalStore(IntBuffer mappedOffsets, IntBuffer mappedIntervals) {
+        if (mappedOffsets.limit() == 0) {
+            throw new IllegalArgumentException("Expected at least the end offset of the mapped intervals");
+        }
+        this.intervalsList = null;
+        this.mappedOffsets = mappedOffsets;
+        this.mappedIntervals = mappedIntervals;
     }
 
+    /** Returns the intervals of the given reference, in a new array if this is mapped */
     public int[] get(int intervalRef) {
+        if (mappedOffsets != null) {
+            Reader reader = reader();
+            return Arrays.copyOf(reader.read(intervalRef), reader.length());
+        }
         assert intervalRef < intervalsList.length;
         return intervalsList[intervalRef];
     }
 
+    /** Returns a new reader of the intervals in this */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /** Returns the number of interval lists in this */
+    private int size() {
+        return mappedOffsets != null ? mappedOffsets.limit() - 1 : intervalsList.length;
+    }
+
     public void writeToOutputStream(DataOutputStream out) throws IOException {
-        out.writeInt(intervalsList.length);
-        for (int[] intervals : intervalsList) {
-            SerializationHelper.writeIntArray(intervals, out);
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            SerializationHelper.writeIntArray(get(i), out);
+        }
+    }
+
+    /**
+     * Writes this in the format read by {@link #fromMappedFile}: The offset of each list of intervals,
+     * followed by the end offset, and all the intervals.
+     */
+    public void writeToMappedFile(MappedFileWriter out) throws IOException {
+        int size = size();
+        int[] offsets = new int[size + 1];
+        long offset = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = (int) offset;
+            offset += get(i).length;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many intervals to write to a mapped file: " + offset);
+            }
+        }
+        offsets[size] = (int) offset;
+        out.writeIntArray(offsets);
+        out.writeArrayLength((int) offset);
+        for (int i = 0; i < size; i++) {
+            out.writeInts(get(i));
         }
     }
 
+    /** Returns a store which reads its intervals from the memory mapped file */
+    public static PredicateIntervalStore fromMappedFile(MappedFileReader in) throws IOException {
+        IntBuffer offsets = in.mapIntArray();
+        IntBuffer intervals = in.mapIntArray();
+        return new PredicateIntervalStore(offsets, intervals);
+    }
+
     public static PredicateIntervalStore fromInputStream(DataInputStream in) throws IOException {
         int length = in.readInt();
         int[][] intervalsList = new int[length][];
@@ -45,6 +114,44 @@ public class PredicateIntervalStore {
         return new PredicateIntervalStore(intervalsList);
     }
 
+    /**
+     * Reads the intervals of references in this. A reader is not thread-safe, and the array returned by
+     * {@link #read} is only valid until the next read.
+     */
+    public class Reader {
+
+        private final IntBuffer intervals = mappedIntervals != null ? mappedIntervals.duplicate() : null;
+        private int[] buffer = new int[0];
+        private int length;
+
+        private Reader() {}
+
+        /** Returns an array where the first {@link #length()} elements are the intervals of the given reference */
+        public int[] read(int intervalRef) {
+            if (intervals == null) {
+                assert intervalRef < intervalsList.length;
+                int[] array = intervalsList[intervalRef];
+                length = array.length;
+                return array;
+            }
+            assert intervalRef < size();
+            int offset = mappedOffsets.get(intervalRef);
+            length = mappedOffsets.get(intervalRef + 1) - offset;
+            if (buffer.length < length) {
+                buffer = new int[Math.max(length, buffer.length * 2)];
+            }
+            intervals.position(offset);
+            intervals.get(buffer, 0, length);
+            return buffer;
+        }
+
+        /** Returns the number of intervals read by the last call to {@link #read} */
+        public int length() {
+            return length;
+        }
+
+    }
+
     public static class Builder {
         private final List<int[]> intervalsListBuilder = new ArrayList<>();
         private final Map<Entry, Integer> intervalsListIndexes = new HashMap<>();
@@ -4,28 +4,44 @@ package com.yahoo.search.predicate.index;
 import com.gs.collections.api.map.primitive.LongObjectMap;
 import com.gs.collections.api.tuple.primitive.LongObjectPair;
 import com.gs.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import com.yahoo.search.predicate.serialization.MappedFileReader;
+import com.yahoo.search.predicate.serialization.MappedFileWriter;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * An index mapping keys of type Long to lists of postings of generic data.
+ * <p>
+ * The posting lists are either on the heap, or in a memory mapped file (see {@link #fromMappedFile}),
+ * in which case a posting list is only read into the heap the first time it is looked up.
+ *
  * @author <a href="mailto:magnarn@yahoo-inc.com">Magnar Nedland</a>
  * @author bjorncs
  */
 public class SimpleIndex {
 
     private final LongObjectMap<Entry> dictionary;
+    private final MappedDictionary mappedDictionary;
 
     public SimpleIndex(LongObjectMap<Entry> dictionary) {
         this.dictionary = dictionary;
+        this.mappedDictionary = null;
+    }
+
+    private SimpleIndex(MappedDictionary mappedDictionary) {
+        this.dictionary = null;
+        this.mappedDictionary = mappedDictionary;
     }
 
     /**
@@ -34,10 +50,17 @@ public class SimpleIndex {
      * @return List of postings
      */
     public Entry getPostingList(long key) {
+        if (mappedDictionary != null) {
+            return mappedDictionary.get(key);
+        }
         return dictionary.get(key);
     }
 
     public void writeToOutputStream(DataOutputStream out) throws IOException {
+        if (mappedDictionary != null) {
+            mappedDictionary.writeToOutputStream(out);
+            return;
+        }
         out.writeInt(dictionary.size());
         for (LongObjectPair<Entry> pair : dictionary.keyValuesView()) {
             out.writeLong(pair.getOne());
@@ -47,6 +70,45 @@ public class SimpleIndex {
         }
     }
 
+    /**
+     * Writes this in the format read by {@link #fromMappedFile}: The keys in ascending order, the offset of the
+     * posting list of each key in the posting data, followed by the end offset, and the posting data, which for each
+     * posting list is the doc ids followed by the data refs.
+     */
+    public void writeToMappedFile(MappedFileWriter out) throws IOException {
+        if (mappedDictionary != null) {
+            mappedDictionary.writeToMappedFile(out);
+            return;
+        }
+        long[] keys = dictionary.keysView().toSortedArray();
+        int[] offsets = new int[keys.length + 1];
+        long offset = 0;
+        for (int i = 0; i < keys.length; i++) {
+            offsets[i] = (int) offset;
+            offset += 2L * dictionary.get(keys[i]).docIds.length;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many postings to write to a mapped file: " + offset);
+            }
+        }
+        offsets[keys.length] = (int) offset;
+        out.writeLongArray(keys);
+        out.writeIntArray(offsets);
+        out.writeArrayLength((int) offset);
+        for (long key : keys) {
+            Entry entry = dictionary.get(key);
+            out.writeInts(entry.docIds);
+            out.writeInts(entry.dataRefs);
+        }
+    }
+
+    /** Returns an index which reads its posting lists from the memory mapped file */
+    public static SimpleIndex fromMappedFile(MappedFileReader in) throws IOException {
+        LongBuffer keys = in.mapLongArray();
+        IntBuffer offsets = in.mapIntArray();
+        IntBuffer postings = in.mapIntArray();
+        return new SimpleIndex(new MappedDictionary(keys, offsets, postings));
+    }
+
     public static SimpleIndex fromInputStream(DataInputStream in) throws IOException {
         int nEntries = in.readInt();
         LongObjectHashMap<Entry> dictionary = new LongObjectHashMap<>(nEntries);
@@ -70,6 +132,98 @@ public class SimpleIndex {
         }
     }
 
+    /**
+     * A dictionary of keys and posting lists in a memory mapped file. Posting lists are read into the heap
+     * when they are first looked up and kept, such that a posting list is always represented by the same arrays,
+     * which {@link CachedPostingListCounter} depends on.
+     */
+    private static class MappedDictionary {
+
+        private final LongBuffer keys;
+        private final IntBuffer offsets;
+        private final IntBuffer postings;
+        private final AtomicReferenceArray<Entry> entries;
+
+        MappedDictionary(LongBuffer keys, IntBuffer offsets, IntBuffer postings) {
+            if (offsets.limit() != keys.limit() + 1) {
+                throw new IllegalArgumentException(
+                        "Expected " + (keys.limit() + 1) + " posting list offsets, got " + offsets.limit());
+            }
+            this.keys = keys;
+            this.offsets = offsets;
+            this.postings = postings;
+            this.entries = new AtomicReferenceArray<>(keys.limit());
+        }
+
+        Entry get(long key) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return null;
+            }
+            Entry entry = entries.get(index);
+            if (entry == null) {
+                entries.compareAndSet(index, null, read(index));
+                entry = entries.get(index);
+            }
+            return entry;
+        }
+
+        private int indexOf(long key) {
+            int low = 0;
+            int high = keys.limit() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midKey = keys.get(mid);
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private Entry read(int index) {
+            int offset = offsets.get(index);
+            int size = (offsets.get(index + 1) - offset) / 2;
+            int[] docIds = new int[size];
+            int[] dataRefs = new int[size];
+            IntBuffer postings = this.postings.duplicate();
+            postings.position(offset);
+            postings.get(docIds);
+            postings.get(dataRefs);
+            return new Entry(docIds, dataRefs);
+        }
+
+        void writeToOutputStream(DataOutputStream out) throws IOException {
+            out.writeInt(keys.limit());
+            for (int i = 0; i < keys.limit(); i++) {
+                out.writeLong(keys.get(i));
+                Entry entry = read(i);
+                SerializationHelper.writeIntArray(entry.docIds, out);
+                SerializationHelper.writeIntArray(entry.dataRefs, out);
+            }
+        }
+
+        void writeToMappedFile(MappedFileWriter out) throws IOException {
+            long[] keyArray = new long[keys.limit()];
+            keys.duplicate().get(keyArray);
+            out.writeLongArray(keyArray);
+            int[] offsetArray = new int[offsets.limit()];
+            offsets.duplicate().get(offsetArray);
+            out.writeIntArray(offsetArray);
+            out.writeArrayLength(postings.limit());
+            for (int i = 0; i < keyArray.length; i++) {
+                Entry entry = read(i);
+                out.writeInts(entry.docIds);
+                out.writeInts(entry.dataRefs);
+            }
+        }
+
+    }
+
     public static class Builder {
         private final HashMap<Long, List<Posting>> dictionaryBuilder = new HashMap<>();
         private int entryCount;
@@ -12,8 +12,9 @@ import com.yahoo.search.predicate.SubqueryBitmap;
  * @author bjorncs
  */
 public class ZstarCompressedPostingList extends MultiIntervalPostingList {
-    private final PredicateIntervalStore store;
+    private final PredicateIntervalStore.Reader intervalReader;
     private int[] currentIntervals;
+    private int currentIntervalCount;
     private int currentIntervalIndex;
     private int prevInterval;
     private int currentInterval;
@@ -24,12 +25,13 @@ public class ZstarCompressedPostingList extends MultiIntervalPostingList {
      */
     public ZstarCompressedPostingList(PredicateIntervalStore store, int[] docIds, int[] dataRefs) {
         super(docIds, dataRefs, SubqueryBitmap.ALL_SUBQUERIES);
-        this.store = store;
+        this.intervalReader = store.reader();
     }
 
     @Override
     protected boolean prepareIntervals(int dataRef) {
-        currentIntervals = store.get(dataRef);
+        currentIntervals = intervalReader.read(dataRef);
+        currentIntervalCount = intervalReader.length();
         currentIntervalIndex = 0;
         return nextInterval();
     }
@@ -37,7 +39,7 @@ public class ZstarCompressedPostingList extends MultiIntervalPostingList {
     @Override
     public boolean nextInterval() {
         int nextInterval = -1;
-        if (currentIntervalIndex < currentIntervals.length) {
+        if (currentIntervalIndex < currentIntervalCount) {
             nextInterval = currentIntervals[currentIntervalIndex];
         }
         if (prevInterval != 0) {
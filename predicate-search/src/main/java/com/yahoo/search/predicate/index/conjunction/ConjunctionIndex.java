@@ -10,6 +10,8 @@ import com.gs.collections.impl.map.mutable.primitive.LongObjectHashMap;
 import com.yahoo.document.predicate.FeatureConjunction;
 import com.yahoo.search.predicate.PredicateQuery;
 import com.yahoo.search.predicate.SubqueryBitmap;
+import com.yahoo.search.predicate.serialization.MappedFileReader;
+import com.yahoo.search.predicate.serialization.MappedFileWriter;
 import com.yahoo.search.predicate.serialization.SerializationHelper;
 import com.yahoo.search.predicate.utils.PrimitiveArraySorter;
 
@@ -67,6 +69,29 @@ public class ConjunctionIndex {
         return new ConjunctionIndex(kIndex, zList, idMapping);
     }
 
+    public void writeToMappedFile(MappedFileWriter out) throws IOException {
+        out.writeIntArray(zList);
+        out.writeLongArray(idMapping);
+        out.writeInt(kIndex.size());
+        for (IntObjectPair<FeatureIndex> p : kIndex.keyValuesView()) {
+            out.writeInt(p.getOne());
+            p.getTwo().writeToMappedFile(out);
+        }
+    }
+
+    public static ConjunctionIndex fromMappedFile(MappedFileReader in) throws IOException {
+        int[] zList = in.readIntArray();
+        long[] idMapping = in.readLongArray();
+        int kIndexSize = in.readInt();
+        IntObjectHashMap<FeatureIndex> kIndex = new IntObjectHashMap<>(kIndexSize);
+        for (int i = 0; i < kIndexSize; i++) {
+            int key = in.readInt();
+            kIndex.put(key, FeatureIndex.fromMappedFile(in));
+        }
+        kIndex.compact();
+        return new ConjunctionIndex(kIndex, zList, idMapping);
+    }
+
     public static class FeatureIndex {
         // Maps a feature id to conjunction id
         private final LongObjectMap<int[]> map;
@@ -97,6 +122,25 @@ public class ConjunctionIndex {
             map.compact();
             return new FeatureIndex(map);
         }
+
+        public void writeToMappedFile(MappedFileWriter out) throws IOException {
+            out.writeInt(map.size());
+            for (LongObjectPair<int[]> p : map.keyValuesView()) {
+                out.writeLong(p.getOne());
+                out.writeIntArray(p.getTwo());
+            }
+        }
+
+        public static FeatureIndex fromMappedFile(MappedFileReader in) throws IOException {
+            int mapSize = in.readInt();
+            LongObjectHashMap<int[]> map = new LongObjectHashMap<>(mapSize);
+            for (int i = 0; i < mapSize; i++) {
+                long key = in.readLong();
+                map.put(key, in.readIntArray());
+            }
+            map.compact();
+            return new FeatureIndex(map);
+        }
     }
 
     public class Searcher {
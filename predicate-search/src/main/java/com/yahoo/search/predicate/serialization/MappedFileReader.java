@@ -0,0 +1,152 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate.serialization;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads files written by {@link MappedFileWriter}.
+ * <p>
+ * Arrays are either read into the heap in bulk, or memory mapped, in which case the returned buffer view
+ * reads directly from the page cache of the file, stays valid after this is closed, and is shared by every
+ * process and index instance mapping the same file.
+ * A single mapped array can not be larger than 2 GB.
+ *
+ * @author agent
+ */
+public class MappedFileReader implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long bufferStart = 0;
+    private long position = 0;
+
+    public MappedFileReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, READ);
+        buffer.limit(0);
+    }
+
+    public int readInt() throws IOException {
+        int value = buffered(4).getInt();
+        position += 4;
+        return value;
+    }
+
+    public long readLong() throws IOException {
+        long value = buffered(8).getLong();
+        position += 8;
+        return value;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readInt() != 0;
+    }
+
+    /** Reads the length of an array, which must be followed by reading or mapping its elements */
+    public int readArrayLength() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            throw new IOException("Invalid array length " + length + " at position " + (position - 4));
+        }
+        position = (position + MappedFileWriter.ALIGNMENT - 1) & -MappedFileWriter.ALIGNMENT;
+        return length;
+    }
+
+    public int[] readIntArray() throws IOException {
+        int[] array = new int[readArrayLength()];
+        elements(array.length, 4).asIntBuffer().get(array);
+        return array;
+    }
+
+    public long[] readLongArray() throws IOException {
+        long[] array = new long[readArrayLength()];
+        elements(array.length, 8).asLongBuffer().get(array);
+        return array;
+    }
+
+    public short[] readShortArray() throws IOException {
+        short[] array = new short[readArrayLength()];
+        elements(array.length, 2).asShortBuffer().get(array);
+        return array;
+    }
+
+    public byte[] readByteArray() throws IOException {
+        byte[] array = new byte[readArrayLength()];
+        elements(array.length, 1).get(array);
+        return array;
+    }
+
+    /** Maps the elements of an int array of the given length, which has been read by {@link #readArrayLength} */
+    public IntBuffer mapInts(int length) throws IOException {
+        return map(length, 4).asIntBuffer();
+    }
+
+    /** Maps the elements of a long array of the given length, which has been read by {@link #readArrayLength} */
+    public LongBuffer mapLongs(int length) throws IOException {
+        return map(length, 8).asLongBuffer();
+    }
+
+    public IntBuffer mapIntArray() throws IOException {
+        return mapInts(readArrayLength());
+    }
+
+    public LongBuffer mapLongArray() throws IOException {
+        return mapLongs(readArrayLength());
+    }
+
+    /** Returns the elements of an array, buffered if small and mapped otherwise */
+    private ByteBuffer elements(int length, int elementSize) throws IOException {
+        long bytes = (long) length * elementSize;
+        if (bytes > buffer.capacity()) {
+            return map(length, elementSize);
+        }
+        ByteBuffer elements = buffered((int) bytes).slice().order(ByteOrder.LITTLE_ENDIAN);
+        elements.limit((int) bytes);
+        position += bytes;
+        return elements;
+    }
+
+    private ByteBuffer map(int length, int elementSize) throws IOException {
+        long bytes = (long) length * elementSize;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Array of " + bytes + " bytes at position " + position + " is too large to be mapped");
+        }
+        if (position + bytes > channel.size()) {
+            throw new EOFException("Array at position " + position + " is truncated");
+        }
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+        position += bytes;
+        return mapped;
+    }
+
+    /** Returns the buffer positioned at the current position, after ensuring that the given number of bytes are buffered */
+    private ByteBuffer buffered(int bytes) throws IOException {
+        if (position < bufferStart || position + bytes > bufferStart + buffer.limit()) {
+            buffer.clear();
+            bufferStart = position;
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer, bufferStart + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of file at position " + (bufferStart + buffer.position()));
+                }
+            }
+            buffer.flip();
+        }
+        buffer.position((int) (position - bufferStart));
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,122 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes files which are read by {@link MappedFileReader}.
+ * <p>
+ * Values are written in little-endian byte order. Arrays are written as their length, followed by
+ * padding to the next multiple of 8 bytes from the start of the file, followed by the elements,
+ * such that the elements of an array can be memory mapped as an aligned buffer view.
+ *
+ * @author agent
+ */
+public class MappedFileWriter implements Closeable {
+
+    static final int ALIGNMENT = 8;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long flushedBytes = 0;
+
+    public MappedFileWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING);
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensureRemaining(4);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensureRemaining(8);
+        buffer.putLong(value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeInt(value ? 1 : 0);
+    }
+
+    /** Writes the length of an array, which must be followed by the elements of the array */
+    public void writeArrayLength(int length) throws IOException {
+        writeInt(length);
+        ensureRemaining(ALIGNMENT);
+        while (position() % ALIGNMENT != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /** Writes the given values as (part of) the elements of an array */
+    public void writeInts(int[] values) throws IOException {
+        for (int value : values) {
+            writeInt(value);
+        }
+    }
+
+    public void writeIntArray(int[] array) throws IOException {
+        writeArrayLength(array.length);
+        writeInts(array);
+    }
+
+    public void writeLongArray(long[] array) throws IOException {
+        writeArrayLength(array.length);
+        for (long value : array) {
+            writeLong(value);
+        }
+    }
+
+    public void writeShortArray(short[] array) throws IOException {
+        writeArrayLength(array.length);
+        for (short value : array) {
+            ensureRemaining(2);
+            buffer.putShort(value);
+        }
+    }
+
+    public void writeByteArray(byte[] array) throws IOException {
+        writeArrayLength(array.length);
+        for (byte value : array) {
+            ensureRemaining(1);
+            buffer.put(value);
+        }
+    }
+
+    /** Returns the number of bytes written so far */
+    public long position() {
+        return flushedBytes + buffer.position();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushedBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+}
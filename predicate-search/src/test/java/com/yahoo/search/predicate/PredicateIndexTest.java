@@ -5,9 +5,12 @@ import com.yahoo.document.predicate.Predicate;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static com.yahoo.search.predicate.serialization.SerializationTestHelper.assertSerializationDeserializationMatches;
 import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -138,4 +141,47 @@ public class PredicateIndexTest {
         assertSerializationDeserializationMatches(
                 index, PredicateIndex::writeToOutputStream, PredicateIndex::fromInputStream);
     }
+
+    @Test
+    public void require_that_mapped_file_retains_data() throws IOException {
+        PredicateIndexBuilder builder = new PredicateIndexBuilder(10);
+        builder.indexDocument(1, Predicate.fromString("country in ['no', 'se'] and gender in ['male']"));
+        builder.indexDocument(2, Predicate.fromString("gender in ['female'] and age in [20..40]"));
+        builder.indexDocument(3, Predicate.fromString("country not in ['no']"));
+        builder.indexDocument(0x3fffffe, Predicate.fromString("country in ['no'] and gender in ['female']"));
+        PredicateIndex index = builder.build();
+
+        Path file = Files.createTempFile("predicate-index", ".dat");
+        Path copy = Files.createTempFile("predicate-index-copy", ".dat");
+        try {
+            index.writeToMappedFile(file);
+            PredicateIndex mappedIndex = PredicateIndex.fromMappedFile(file);
+            mappedIndex.writeToMappedFile(copy);
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy));
+
+            PredicateQuery query = new PredicateQuery();
+            query.addFeature("country", "no");
+            query.addFeature("gender", "female");
+            query.addRangeFeature("age", 30);
+            assertEquals(search(index, query), search(mappedIndex, query));
+            assertEquals("[2, 67108862]", search(mappedIndex, query));
+
+            query = new PredicateQuery();
+            query.addFeature("country", "se");
+            query.addFeature("gender", "male");
+            assertEquals(search(index, query), search(mappedIndex, query));
+            assertEquals("[1, 3]", search(mappedIndex, query));
+
+            assertSerializationDeserializationMatches(
+                    mappedIndex, PredicateIndex::writeToOutputStream, PredicateIndex::fromInputStream);
+        } finally {
+            Files.delete(file);
+            Files.delete(copy);
+        }
+    }
+
+    private static String search(PredicateIndex index, PredicateQuery query) {
+        return index.searcher().search(query).collect(toList()).toString();
+    }
+
 }
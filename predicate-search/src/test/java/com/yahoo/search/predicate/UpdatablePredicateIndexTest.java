@@ -0,0 +1,239 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.predicate;
+
+import com.yahoo.document.predicate.Predicate;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class UpdatablePredicateIndexTest {
+
+    private static final Config CONFIG = new Config.Builder().setArity(10).build();
+
+    @Test
+    public void require_that_added_documents_are_searchable() {
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 100, Runnable::run);
+        UpdatablePredicateIndex.Searcher searcher = index.searcher();
+        assertEquals("[]", search(searcher, "no", "male"));
+
+        index.indexDocument(1, Predicate.fromString("country in ['no', 'se'] and gender in ['male']"));
+        index.indexDocument(2, Predicate.fromString("country in ['no'] and gender in ['female']"));
+        assertEquals("[1]", search(searcher, "no", "male"));
+        assertEquals("[2]", search(searcher, "no", "female"));
+        assertEquals(2, index.getDeltaDocumentCount());
+    }
+
+    @Test
+    public void require_that_base_documents_can_be_updated_and_removed() {
+        Map<Integer, Predicate> documents = new TreeMap<>();
+        documents.put(1, Predicate.fromString("country in ['no', 'se'] and gender in ['male']"));
+        documents.put(2, Predicate.fromString("country in ['no'] and gender in ['female']"));
+        documents.put(3, Predicate.fromString("country not in ['se']"));
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 100, Runnable::run, documents);
+        UpdatablePredicateIndex.Searcher searcher = index.searcher();
+        assertEquals("[1, 3]", search(searcher, "no", "male"));
+        assertEquals(0, index.getDeltaDocumentCount());
+
+        index.indexDocument(1, Predicate.fromString("country in ['se'] and gender in ['male']"));
+        assertEquals("[3]", search(searcher, "no", "male"));
+        assertEquals("[1]", search(searcher, "se", "male"));
+
+        assertTrue(index.removeDocument(3));
+        assertFalse(index.removeDocument(3));
+        assertEquals("[]", search(searcher, "no", "male"));
+        assertEquals("[2]", search(searcher, "no", "female"));
+        assertEquals(2, index.getDocumentCount());
+        assertEquals(2, index.getDeltaDocumentCount());
+    }
+
+    @Test
+    public void require_that_delta_is_merged_into_base() {
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 3, Runnable::run);
+        UpdatablePredicateIndex.Searcher searcher = index.searcher();
+        index.indexDocument(1, Predicate.fromString("country in ['no']"));
+        index.indexDocument(2, Predicate.fromString("country in ['no']"));
+        assertEquals(2, index.getDeltaDocumentCount());
+        index.indexDocument(3, Predicate.fromString("country in ['no']"));
+        assertEquals(0, index.getDeltaDocumentCount());
+        assertEquals("[1, 2, 3]", search(searcher, "no", "male"));
+
+        index.removeDocument(2);
+        assertEquals(1, index.getDeltaDocumentCount());
+        assertEquals("[1, 3]", search(searcher, "no", "male"));
+    }
+
+    @Test
+    public void require_that_documents_changed_during_merge_are_kept_in_delta() {
+        List<Runnable> merges = new ArrayList<>();
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 2, merges::add);
+        UpdatablePredicateIndex.Searcher searcher = index.searcher();
+        index.indexDocument(1, Predicate.fromString("country in ['no']"));
+        index.indexDocument(2, Predicate.fromString("country in ['no']"));
+        assertEquals(1, merges.size());
+
+        index.removeDocument(1);
+        index.indexDocument(3, Predicate.fromString("country in ['no']"));
+        assertEquals("[2, 3]", search(searcher, "no", "male"));
+        assertEquals(1, merges.size());
+
+        merges.remove(0).run();
+        assertEquals(2, index.getDeltaDocumentCount());
+        assertEquals("[2, 3]", search(searcher, "no", "male"));
+        assertEquals(1, merges.size());
+
+        merges.remove(0).run();
+        assertEquals(0, index.getDeltaDocumentCount());
+        assertEquals("[2, 3]", search(searcher, "no", "male"));
+    }
+
+    @Test
+    public void require_that_invalid_predicates_do_not_change_index() {
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(
+                CONFIG, 100, Runnable::run,
+                Collections.singletonMap(1, Predicate.fromString("country in ['no']")));
+        StringBuilder complex = new StringBuilder("country in ['no']");
+        for (int i = 0; i < 300; i++) {
+            complex.append(" and key").append(i).append(" in ['value']");
+        }
+        try {
+            index.indexDocument(1, Predicate.fromString(complex.toString()));
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(0, index.getDeltaDocumentCount());
+        assertEquals("[1]", search(index.searcher(), "no", "male"));
+    }
+
+    @Test
+    public void require_that_failed_merges_are_retried_with_backoff_and_limit_the_delta() {
+        AtomicInteger mergeAttempts = new AtomicInteger();
+        Executor rejectingExecutor = command -> {
+            mergeAttempts.incrementAndGet();
+            throw new RejectedExecutionException("Rejected");
+        };
+        ManualClock clock = new ManualClock();
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 2, rejectingExecutor,
+                                                                    Collections.emptyMap(), clock);
+        index.indexDocument(1, Predicate.fromString("country in ['no']"));
+        index.indexDocument(2, Predicate.fromString("country in ['no']"));
+        assertEquals(1, mergeAttempts.get());
+        index.indexDocument(3, Predicate.fromString("country in ['no']"));
+        index.indexDocument(4, Predicate.fromString("country in ['no']"));
+        assertEquals(1, mergeAttempts.get());
+        assertIndexingFails(index, 5);
+        assertEquals(1, mergeAttempts.get());
+
+        clock.advance(1000);
+        assertIndexingFails(index, 5);
+        assertEquals(2, mergeAttempts.get());
+        assertIndexingFails(index, 5);
+        assertEquals(2, mergeAttempts.get());
+
+        index.indexDocument(1, Predicate.fromString("country in ['se']"));
+        assertEquals(4, index.getDeltaDocumentCount());
+        assertEquals("[2, 3, 4]", search(index.searcher(), "no", "male"));
+    }
+
+    @Test
+    public void require_that_full_delta_is_merged_by_update_after_backoff() {
+        AtomicInteger mergeAttempts = new AtomicInteger();
+        Executor failingOnceExecutor = command -> {
+            if (mergeAttempts.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("Rejected");
+            }
+            command.run();
+        };
+        ManualClock clock = new ManualClock();
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 2, failingOnceExecutor,
+                                                                    Collections.emptyMap(), clock);
+        for (int docId = 1; docId <= 4; docId++) {
+            index.indexDocument(docId, Predicate.fromString("country in ['no']"));
+        }
+        assertEquals(1, mergeAttempts.get());
+        assertIndexingFails(index, 5);
+
+        clock.advance(1000);
+        index.indexDocument(5, Predicate.fromString("country in ['no']"));
+        assertEquals(2, mergeAttempts.get());
+        assertEquals(1, index.getDeltaDocumentCount());
+        assertEquals("[1, 2, 3, 4, 5]", search(index.searcher(), "no", "male"));
+    }
+
+    private static void assertIndexingFails(UpdatablePredicateIndex index, int docId) {
+        try {
+            index.indexDocument(docId, Predicate.fromString("country in ['no']"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void require_that_updates_wait_for_merge_when_delta_is_full() throws InterruptedException {
+        List<Runnable> merges = new CopyOnWriteArrayList<>();
+        UpdatablePredicateIndex index = new UpdatablePredicateIndex(CONFIG, 1, merges::add);
+        index.indexDocument(1, Predicate.fromString("country in ['no']"));
+        index.indexDocument(2, Predicate.fromString("country in ['no']"));
+        assertEquals(1, merges.size());
+
+        Thread writer = new Thread(() -> index.indexDocument(3, Predicate.fromString("country in ['no']")));
+        writer.start();
+        writer.join(100);
+        assertTrue(writer.isAlive());
+        assertEquals("[1, 2]", search(index.searcher(), "no", "male"));
+
+        merges.remove(0).run();
+        writer.join();
+        assertEquals("[1, 2, 3]", search(index.searcher(), "no", "male"));
+        assertEquals(2, index.getDeltaDocumentCount());
+    }
+
+    private static String search(UpdatablePredicateIndex.Searcher searcher, String country, String gender) {
+        PredicateQuery query = new PredicateQuery();
+        query.addFeature("country", country);
+        query.addFeature("gender", gender);
+        return searcher.search(query).sorted().collect(toList()).toString();
+    }
+
+    private static class ManualClock extends Clock {
+
+        private Instant now = Instant.ofEpochMilli(0);
+
+        void advance(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public Instant instant() { return now; }
+
+        @Override
+        public ZoneId getZone() { return ZoneOffset.UTC; }
+
+        @Override
+        public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+
+    }
+
+}
@@ -2,9 +2,13 @@
 package com.yahoo.search.predicate.index;
 
 import com.google.common.primitives.Ints;
+import com.yahoo.search.predicate.serialization.MappedFileReader;
+import com.yahoo.search.predicate.serialization.MappedFileWriter;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -70,6 +74,34 @@ public class PredicateIntervalStoreTest {
         assertTrue(a1 == a2);
     }
 
+    @Test
+    public void requireThatMappedIntervalsAreReadIntoReusedArray() throws IOException {
+        PredicateIntervalStore.Builder builder = new PredicateIntervalStore.Builder();
+        int ref1 = builder.insert(Arrays.asList(0x00010001, 0x00020002, 0x00030003));
+        int ref2 = builder.insert(Arrays.asList(0x0fffffff));
+        Path file = Files.createTempFile("intervals", ".dat");
+        try {
+            try (MappedFileWriter out = new MappedFileWriter(file)) {
+                builder.build().writeToMappedFile(out);
+            }
+            PredicateIntervalStore store;
+            try (MappedFileReader in = new MappedFileReader(file)) {
+                store = PredicateIntervalStore.fromMappedFile(in);
+            }
+            PredicateIntervalStore.Reader reader = store.reader();
+            int[] intervals1 = reader.read(ref1);
+            assertEquals(3, reader.length());
+            assertArrayEquals(new int[] {0x00010001, 0x00020002, 0x00030003}, Arrays.copyOf(intervals1, 3));
+            int[] intervals2 = reader.read(ref2);
+            assertEquals(1, reader.length());
+            assertEquals(0x0fffffff, intervals2[0]);
+            assertTrue(intervals1 == intervals2);
+            assertArrayEquals(new int[] {0x0fffffff}, store.get(ref2));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     private static void testInsertAndRetrieve(int... intervals) {
         PredicateIntervalStore.Builder builder = new PredicateIntervalStore.Builder();
         int ref = builder.insert(Ints.asList(intervals));
@@ -33,6 +33,9 @@ public abstract class AbstractArrayContext extends Context implements Cloneable
     /** The name of the ranking expression this was created for */
     private final String rankingExpressionName;
 
+    /** Scratch space for evaluating compiled expressions, or null if not used yet */
+    private double[] evaluationStack = null;
+
     /**
      * Create a fast lookup context for an expression.
      * This instance should be reused indefinitely by a single thread.
@@ -83,6 +86,13 @@ public abstract class AbstractArrayContext extends Context implements Cloneable
     protected final double[] doubleValues() { return doubleValues; }
     protected final boolean ignoreUnknownValues() { return ignoreUnknownValues; }
 
+    /** Returns a scratch array of at least the given size for evaluating a compiled expression in this */
+    final double[] evaluationStack(int size) {
+        if (evaluationStack == null || evaluationStack.length < size)
+            evaluationStack = new double[size];
+        return evaluationStack;
+    }
+
     /**
      * Creates a clone of this context suitable for evaluating against the same ranking expression
      * in a different thread (i.e, name name to index map, different value set.
@@ -91,6 +101,7 @@ public abstract class AbstractArrayContext extends Context implements Cloneable
         try {
             AbstractArrayContext clone=(AbstractArrayContext)super.clone();
             clone.doubleValues=new double[nameToIndex.size()];
+            clone.evaluationStack=null;
             return clone;
         }
         catch (CloneNotSupportedException e) {
@@ -0,0 +1,163 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.rule.Function;
+import com.yahoo.searchlib.rankingexpression.rule.TruthOperator;
+
+/**
+ * A ranking expression compiled to a flat program of instructions for a stack machine over doubles,
+ * which evaluates without walking the expression tree or allocating values.
+ * Create instances by {@link ExpressionCompiler}.
+ * <p>
+ * The program is an array of ints where each instruction is an opcode, followed by an operand
+ * for those instructions which take one. Evaluation starts at the first instruction and
+ * ends after the last, leaving the result as the single element on the stack.
+ * <p>
+ * Instances are immutable and may be used by multiple threads at the same time.
+ *
+ * @author agent
+ */
+public final class CompiledExpression {
+
+    // Opcodes. Keep in sync with ExpressionCompiler
+
+    /** Push constants[operand] */
+    static final int CONSTANT = 0;
+    /** Push features[operand] */
+    static final int LOAD = 1;
+    /** Pop y, x, push x+y */
+    static final int ADD = 2;
+    /** Pop y, x, push x-y */
+    static final int SUBTRACT = 3;
+    /** Pop y, x, push x*y */
+    static final int MULTIPLY = 4;
+    /** Pop y, x, push x/y */
+    static final int DIVIDE = 5;
+    /** Pop x, push -x */
+    static final int NEGATE = 6;
+    /** Pop x, push the unary function given by the operand applied to x */
+    static final int FUNCTION1 = 7;
+    /** Pop y, x, push the binary function given by the operand applied to x, y */
+    static final int FUNCTION2 = 8;
+    /** Pop y, x, push 1 if the truth operator given by the operand is true for x, y, 0 otherwise */
+    static final int COMPARE = 9;
+    /** Pop operand values and the test value below them, push 1 if the test value is equal to any of them, 0 otherwise */
+    static final int IN = 10;
+    /** Pop x, continue at the operand position if x is 0 */
+    static final int JUMP_IF_FALSE = 11;
+    /** Continue at the operand position */
+    static final int JUMP = 12;
+
+    private static final Function[] functions = Function.values();
+    private static final TruthOperator[] truthOperators = TruthOperator.values();
+
+    private final String name;
+    private final int[] program;
+    private final double[] constants;
+    private final int maxStackSize;
+    private final int featureCount;
+
+    CompiledExpression(String name, int[] program, double[] constants, int maxStackSize, int featureCount) {
+        this.name = name;
+        this.program = program;
+        this.constants = constants;
+        this.maxStackSize = maxStackSize;
+        this.featureCount = featureCount;
+    }
+
+    /** Returns the number of elements of the stack needed to evaluate this */
+    public int maxStackSize() { return maxStackSize; }
+
+    /** Returns the number of feature values this reads, which is the size of the context it was compiled for */
+    public int featureCount() { return featureCount; }
+
+    /**
+     * Evaluates this using the values put in the given context.
+     * The context must be the one this was compiled with, or a clone of it.
+     */
+    public double evaluate(AbstractArrayContext context) {
+        return evaluate(context.doubleValues(), context.evaluationStack(maxStackSize));
+    }
+
+    /**
+     * Evaluates this over the given feature values
+     *
+     * @param features the value of each feature, in the index order of the context this was compiled with
+     * @param stack scratch space of at least maxStackSize() elements. The content is overwritten.
+     * @return the value of this expression
+     */
+    public double evaluate(double[] features, double[] stack) {
+        int sp = -1;
+        int pc = 0;
+        while (pc < program.length) {
+            switch (program[pc++]) {
+                case CONSTANT:
+                    stack[++sp] = constants[program[pc++]];
+                    break;
+                case LOAD:
+                    stack[++sp] = features[program[pc++]];
+                    break;
+                case ADD:
+                    sp--;
+                    stack[sp] = stack[sp] + stack[sp + 1];
+                    break;
+                case SUBTRACT:
+                    sp--;
+                    stack[sp] = stack[sp] - stack[sp + 1];
+                    break;
+                case MULTIPLY:
+                    sp--;
+                    stack[sp] = stack[sp] * stack[sp + 1];
+                    break;
+                case DIVIDE:
+                    sp--;
+                    stack[sp] = stack[sp] / stack[sp + 1];
+                    break;
+                case NEGATE:
+                    stack[sp] = -stack[sp];
+                    break;
+                case FUNCTION1:
+                    stack[sp] = functions[program[pc++]].evaluate(stack[sp], 0);
+                    break;
+                case FUNCTION2:
+                    sp--;
+                    stack[sp] = functions[program[pc++]].evaluate(stack[sp], stack[sp + 1]);
+                    break;
+                case COMPARE:
+                    sp--;
+                    stack[sp] = truthOperators[program[pc++]].evaluate(stack[sp], stack[sp + 1]) ? 1 : 0;
+                    break;
+                case IN:
+                    int setSize = program[pc++];
+                    sp -= setSize;
+                    double testValue = stack[sp];
+                    stack[sp] = 0;
+                    for (int i = 1; i <= setSize; i++) {
+                        if (stack[sp + i] == testValue) {
+                            stack[sp] = 1;
+                            break;
+                        }
+                    }
+                    break;
+                case JUMP_IF_FALSE:
+                    if (stack[sp--] == 0)
+                        pc = program[pc];
+                    else
+                        pc++;
+                    break;
+                case JUMP:
+                    pc = program[pc];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + program[pc - 1] + " at " + (pc - 1) + " in " + this);
+            }
+        }
+        return stack[0];
+    }
+
+    @Override
+    public String toString() {
+        return "compiled ranking expression '" + name + "' [" + program.length + " instructions]";
+    }
+
+}
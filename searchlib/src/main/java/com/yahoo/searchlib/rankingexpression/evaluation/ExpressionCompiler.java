@@ -0,0 +1,276 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticOperator;
+import com.yahoo.searchlib.rankingexpression.rule.ComparisonNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.EmbracedNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.FunctionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.NegativeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.searchlib.rankingexpression.rule.SetMembershipNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+import static com.yahoo.searchlib.rankingexpression.evaluation.CompiledExpression.*;
+
+/**
+ * Compiles ranking expressions over doubles to {@link CompiledExpression} programs,
+ * which can be evaluated over the values bound in an array context without creating any Value instances.
+ * <p>
+ * Expressions consisting of constants, simple feature references, arithmetic, negation, functions,
+ * comparisons, set membership and if expressions (which includes GBDT forests which are not already
+ * optimized into GBDT nodes) can be compiled.
+ * <p>
+ * This is multithread safe.
+ *
+ * @author agent
+ */
+public class ExpressionCompiler {
+
+    /**
+     * Compiles an expression for evaluation over the values of the given context
+     *
+     * @param expression the expression to compile
+     * @param context the context values will be bound in, which must be created for this expression
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the expression contains constructs which cannot be compiled
+     */
+    public CompiledExpression compile(RankingExpression expression, AbstractArrayContext context) {
+        Program program = new Program(context);
+        program.emit(expression.getRoot());
+        return program.toCompiledExpression(expression.getName());
+    }
+
+    /** A program under construction */
+    private static class Program {
+
+        private final AbstractArrayContext context;
+
+        private int[] instructions = new int[16];
+        private int size = 0;
+
+        private double[] constants = new double[8];
+        private int constantCount = 0;
+
+        private int stackSize = 0;
+        private int maxStackSize = 0;
+
+        Program(AbstractArrayContext context) {
+            this.context = context;
+        }
+
+        void emit(ExpressionNode node) {
+            if (node instanceof ConstantNode)
+                emitConstant((ConstantNode)node);
+            else if (node instanceof ReferenceNode)
+                emitReference((ReferenceNode)node);
+            else if (node instanceof ArithmeticNode)
+                emitArithmetic((ArithmeticNode)node);
+            else if (node instanceof NegativeNode)
+                emitNegative((NegativeNode)node);
+            else if (node instanceof EmbracedNode)
+                emit(((EmbracedNode)node).getValue());
+            else if (node instanceof FunctionNode)
+                emitFunction((FunctionNode)node);
+            else if (node instanceof ComparisonNode)
+                emitComparison((ComparisonNode)node);
+            else if (node instanceof SetMembershipNode)
+                emitSetMembership((SetMembershipNode)node);
+            else if (node instanceof IfNode)
+                emitIf((IfNode)node);
+            else
+                throw new IllegalArgumentException("Cannot compile " + node.getClass().getSimpleName() + " '" + node + "'");
+        }
+
+        private void emitConstant(ConstantNode node) {
+            double value;
+            try {
+                value = node.getValue().asDouble();
+            }
+            catch (UnsupportedOperationException e) {
+                throw new IllegalArgumentException("Cannot compile the non-double constant '" + node + "'");
+            }
+            if (constantCount == constants.length)
+                constants = Arrays.copyOf(constants, constants.length * 2);
+            constants[constantCount] = value;
+            add(CONSTANT, constantCount++);
+            push(1);
+        }
+
+        private void emitReference(ReferenceNode node) {
+            if ( ! node.getArguments().isEmpty())
+                throw new IllegalArgumentException("Cannot compile the reference with arguments '" + node + "'");
+            Integer index = context.nameToIndex().get(node.toString());
+            if (index == null)
+                throw new IllegalArgumentException("'" + node + "' is not known to " + context);
+            add(LOAD, index);
+            push(1);
+        }
+
+        /** Emits operands in postfix order, resolving precedence the same way as ArithmeticNode.evaluate */
+        private void emitArithmetic(ArithmeticNode node) {
+            Iterator<ExpressionNode> child = node.children().iterator();
+            Deque<OperandItem> stack = new ArrayDeque<>();
+            stack.push(new OperandItem(ArithmeticOperator.PLUS, new Operand(child.next())));
+            for (Iterator<ArithmeticOperator> it = node.operators().iterator(); it.hasNext() && child.hasNext();) {
+                ArithmeticOperator op = it.next();
+                while (stack.peek().op.hasPrecedenceOver(op))
+                    popStack(stack);
+                stack.push(new OperandItem(op, new Operand(child.next())));
+            }
+            while (stack.size() > 1)
+                popStack(stack);
+            emit(stack.getFirst().operand);
+        }
+
+        private void popStack(Deque<OperandItem> stack) {
+            OperandItem rhs = stack.pop();
+            OperandItem lhs = stack.peek();
+            lhs.operand = new Operand(lhs.operand, rhs.op, rhs.operand);
+        }
+
+        private void emit(Operand operand) {
+            if (operand.node != null) {
+                emit(operand.node);
+                return;
+            }
+            emit(operand.left);
+            emit(operand.right);
+            switch (operand.op) {
+                case PLUS: add(ADD); break;
+                case MINUS: add(SUBTRACT); break;
+                case MULTIPLY: add(MULTIPLY); break;
+                case DIVIDE: add(DIVIDE); break;
+                default: throw new IllegalArgumentException("Cannot compile the operator " + operand.op);
+            }
+            pop(1);
+        }
+
+        private void emitNegative(NegativeNode node) {
+            emit(node.getValue());
+            add(NEGATE);
+        }
+
+        private void emitFunction(FunctionNode node) {
+            for (ExpressionNode argument : node.children())
+                emit(argument);
+            if (node.getFunction().arity() == 1) {
+                add(FUNCTION1, node.getFunction().ordinal());
+            }
+            else {
+                add(FUNCTION2, node.getFunction().ordinal());
+                pop(1);
+            }
+        }
+
+        private void emitComparison(ComparisonNode node) {
+            emit(node.getLeftCondition());
+            emit(node.getRightCondition());
+            add(COMPARE, node.getOperator().ordinal());
+            pop(1);
+        }
+
+        private void emitSetMembership(SetMembershipNode node) {
+            emit(node.getTestValue());
+            for (ExpressionNode setValue : node.getSetValues())
+                emit(setValue);
+            add(IN, node.getSetValues().size());
+            pop(node.getSetValues().size());
+        }
+
+        private void emitIf(IfNode node) {
+            emit(node.getCondition());
+            add(JUMP_IF_FALSE, -1);
+            pop(1);
+            int falseJumpOperand = size - 1;
+
+            emit(node.getTrueExpression());
+            add(JUMP, -1);
+            int endJumpOperand = size - 1;
+            pop(1); // only one of the branches leaves its value on the stack
+
+            instructions[falseJumpOperand] = size;
+            emit(node.getFalseExpression());
+            instructions[endJumpOperand] = size;
+        }
+
+        private void add(int opcode) {
+            ensureCapacity(1);
+            instructions[size++] = opcode;
+        }
+
+        private void add(int opcode, int operand) {
+            ensureCapacity(2);
+            instructions[size++] = opcode;
+            instructions[size++] = operand;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > instructions.length)
+                instructions = Arrays.copyOf(instructions, Math.max(instructions.length * 2, size + additional));
+        }
+
+        private void push(int count) {
+            stackSize += count;
+            maxStackSize = Math.max(maxStackSize, stackSize);
+        }
+
+        private void pop(int count) {
+            stackSize -= count;
+        }
+
+        CompiledExpression toCompiledExpression(String name) {
+            return new CompiledExpression(name,
+                                          Arrays.copyOf(instructions, size),
+                                          Arrays.copyOf(constants, constantCount),
+                                          Math.max(1, maxStackSize),
+                                          context.size());
+        }
+
+    }
+
+    /** An operand of an arithmetic expression: Either an expression node, or a binary operation on operands */
+    private static class Operand {
+
+        final ExpressionNode node;
+        final Operand left;
+        final ArithmeticOperator op;
+        final Operand right;
+
+        Operand(ExpressionNode node) {
+            this.node = node;
+            this.left = null;
+            this.op = null;
+            this.right = null;
+        }
+
+        Operand(Operand left, ArithmeticOperator op, Operand right) {
+            this.node = null;
+            this.left = left;
+            this.op = op;
+            this.right = right;
+        }
+
+    }
+
+    private static class OperandItem {
+
+        final ArithmeticOperator op;
+        Operand operand;
+
+        OperandItem(ArithmeticOperator op, Operand operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+    }
+
+}
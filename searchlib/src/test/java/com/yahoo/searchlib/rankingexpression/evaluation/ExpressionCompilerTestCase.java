@@ -0,0 +1,115 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that compiled expressions evaluate to the same values as the expression trees they are compiled from
+ *
+ * @author agent
+ */
+public class ExpressionCompilerTestCase {
+
+    private static final double delta = 0.000001;
+
+    @Test
+    public void testArithmetic() {
+        assertCompiles(7, "1 + 2 * 3");
+        assertCompiles(4, "8 / 4 * 2");
+        assertCompiles(2, "1 - 2 + 3");
+        assertCompiles(5.5, "10 - 3 * 2 + 6 / 4");
+        assertCompiles(9, "(1 + 2) * 3");
+        assertCompiles(-1, "-(3 - 2)");
+        assertCompiles(3 * 0.5 + 2 - 1 / 0.5, "a * b + c - 1 / b", 3, 0.5, 2);
+        assertCompiles(1 - 0.5 * 2 / 4 + 1, "a - b * c / 4 + a", 1, 0.5, 2);
+    }
+
+    @Test
+    public void testFunctions() {
+        assertCompiles(Math.sqrt(16) + Math.max(2, 3), "sqrt(a) + max(b, c)", 16, 2, 3);
+        assertCompiles(Math.pow(2, 3), "pow(a, b)", 2, 3);
+        assertCompiles(1 / (1 + Math.exp(-0.5)), "sigmoid(a)", 0.5);
+    }
+
+    @Test
+    public void testConditionals() {
+        assertCompiles(3, "if (a < b, c, 4)", 1, 2, 3);
+        assertCompiles(4, "if (a >= b, c, 4)", 1, 2, 3);
+        assertCompiles(1, "a in [1, 2, 3]", 2);
+        assertCompiles(0, "a in [1, 2, 3]", 5);
+        assertCompiles(10, "if (a in [1, 2], 10, 20)", 1);
+        assertCompiles(2 + 0.5, "if (a < 1, if (b > 2, 1, 2), 3) + if (b == 0.5, 0.5, 0)", 0.5, 0.5);
+        assertCompiles(1, "(a < b) + (b < a)", 1, 2);
+    }
+
+    @Test
+    public void testForest() {
+        String forest = "if (f1 < 0.5, if (f2 < 1.5, 1.0, 2.0), if (f3 in [1, 2], 3.0, 4.0)) + " +
+                        "if (f2 < 0.5, 0.1, if (f1 >= 1.0, 0.2, 0.3))";
+        assertCompiles(1.3, forest, 0.0, 1.0, 0.0);
+        assertCompiles(2.3, forest, 0.0, 2.0, 0.0);
+        assertCompiles(3.2, forest, 1.0, 2.0, 2.0);
+        assertCompiles(4.1, forest, 1.0, 0.0, 5.0);
+    }
+
+    @Test
+    public void testCompiledExpressionCanBeEvaluatedWithManyContexts() throws ParseException {
+        RankingExpression expression = new RankingExpression("a * 2 + b");
+        DoubleOnlyArrayContext context = new DoubleOnlyArrayContext(expression);
+        CompiledExpression compiled = new ExpressionCompiler().compile(expression, context);
+        DoubleOnlyArrayContext clone = (DoubleOnlyArrayContext)context.clone();
+
+        context.put(context.getIndex("a"), 1);
+        context.put(context.getIndex("b"), 2);
+        clone.put(clone.getIndex("a"), 3);
+        clone.put(clone.getIndex("b"), 4);
+        assertEquals(4, compiled.evaluate(context), delta);
+        assertEquals(10, compiled.evaluate(clone), delta);
+        assertEquals(4, compiled.evaluate(context), delta);
+    }
+
+    @Test
+    public void testUnsupportedExpressions() throws ParseException {
+        assertNotCompilable("reduce(tensor0, sum)");
+        assertNotCompilable("foo(1, 2) + 1");
+    }
+
+    private void assertNotCompilable(String expressionString) throws ParseException {
+        RankingExpression expression = new RankingExpression(expressionString);
+        try {
+            new ExpressionCompiler().compile(expression, new DoubleOnlyArrayContext(expression));
+            fail("Expected an exception when compiling " + expression);
+        }
+        catch (IllegalArgumentException | UnsupportedOperationException expected) {
+        }
+    }
+
+    /**
+     * Compiles the given expression and asserts that it evaluates to the expected value, and the same value
+     * as the uncompiled expression, with the given values bound to the variables of the expression in order.
+     */
+    private void assertCompiles(double expected, String expressionString, double ... values) {
+        try {
+            RankingExpression expression = new RankingExpression(expressionString);
+            DoubleOnlyArrayContext context = new DoubleOnlyArrayContext(expression);
+            assertEquals("Values are given for all variables", context.size(), values.length);
+            for (int i = 0; i < values.length; i++)
+                context.put(i, values[i]);
+
+            CompiledExpression compiled = new ExpressionCompiler().compile(expression, context);
+            assertEquals("Tree evaluation of " + expressionString, expected, expression.evaluate(context).asDouble(), delta);
+            assertEquals("Compiled evaluation of " + expressionString, expected, compiled.evaluate(context), delta);
+            assertEquals("Evaluation over an array of " + expressionString,
+                         expected, compiled.evaluate(values, new double[compiled.maxStackSize()]), delta);
+        }
+        catch (ParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
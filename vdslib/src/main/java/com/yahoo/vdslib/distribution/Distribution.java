@@ -18,6 +18,11 @@ public class Distribution {
     private int redundancy;
     private boolean distributorAutoOwnershipTransferOnWholeGroupDown = false;
     private ConfigSubscriber configSub;
+    /** Precomputed ideal distributors for one cluster state, or null if none is prepared */
+    private volatile DistributorTable distributorTable = null;
+
+    /** The highest distribution bit count we will precompute a distributor table for */
+    public static final int MAX_DISTRIBUTOR_TABLE_BITS = 16;
 
     public Group getRootGroup() {
         return nodeGraph;
@@ -404,12 +409,71 @@ public class Distribution {
             super(message);
         }
     }
+    /** The ideal distributor of each bucket at the distribution bit count of a given cluster state and config */
+    private static class DistributorTable {
+        final ClusterState state;
+        final String upStates;
+        final Group nodeGraph;
+        /** The ideal distributor of each bucket, indexed by its distribution bits, or -1 if there is none */
+        final int[] distributors;
+
+        DistributorTable(ClusterState state, String upStates, Group nodeGraph, int[] distributors) {
+            this.state = state;
+            this.upStates = upStates;
+            this.nodeGraph = nodeGraph;
+            this.distributors = distributors;
+        }
+
+        boolean isFor(ClusterState state, String upStates, Group nodeGraph) {
+            return this.state == state && this.nodeGraph == nodeGraph && this.upStates.equals(upStates);
+        }
+    }
+
+    /**
+     * Precomputes the ideal distributor of every bucket at the distribution bit count of the given state,
+     * such that subsequent calls to {@link #getIdealDistributorNode} with this state instance and these
+     * up states become a table lookup. This is expensive and should be done outside the hot path each time
+     * a new cluster state is seen. The state must not be modified after this is called.
+     * This does nothing if the state uses more than {@link #MAX_DISTRIBUTOR_TABLE_BITS} distribution bits.
+     */
+    public void prepareDistributorTable(ClusterState state, String upStates) {
+        int distributionBits = state.getDistributionBitCount();
+        if (distributionBits > MAX_DISTRIBUTOR_TABLE_BITS) return;
+
+        Group graph = nodeGraph;
+        DistributorTable current = distributorTable;
+        if (current != null && current.isFor(state, upStates, graph)) return;
+
+        int[] distributors = new int[1 << distributionBits];
+        for (int i = 0; i < distributors.length; ++i) {
+            try {
+                distributors[i] = computeIdealDistributorNode(state, new BucketId(distributionBits, i), upStates);
+            } catch (NoDistributorsAvailableException e) {
+                distributors[i] = -1;
+            } catch (RuntimeException e) {
+                return; // Leave it to lookups of individual buckets to fail in the usual way
+            }
+        }
+        if (graph != nodeGraph) return; // Reconfigured while building; the table may be inconsistent
+        distributorTable = new DistributorTable(state, upStates, graph, distributors);
+    }
+
     public int getIdealDistributorNode(ClusterState state, BucketId bucket, String upStates) throws TooFewBucketBitsInUseException, NoDistributorsAvailableException {
         if (bucket.getUsedBits() < state.getDistributionBitCount()) {
             throw new TooFewBucketBitsInUseException("Cannot get ideal state for bucket " + bucket + " using " + bucket.getUsedBits()
                     + " bits when cluster uses " + state.getDistributionBitCount() + " distribution bits.");
         }
 
+        DistributorTable table = distributorTable;
+        if (table != null && table.isFor(state, upStates, nodeGraph)) {
+            int distributor = table.distributors[getDistributorSeed(bucket, state)];
+            if (distributor < 0) throw noDistributorsAvailable(upStates);
+            return distributor;
+        }
+        return computeIdealDistributorNode(state, bucket, upStates);
+    }
+
+    private int computeIdealDistributorNode(ClusterState state, BucketId bucket, String upStates) throws NoDistributorsAvailableException {
         Group idealGroup = getIdealDistributorGroup(bucket, state, nodeGraph, redundancy);
         int seed = getDistributorSeed(bucket, state);
         RandomGen random = new RandomGen(seed);
@@ -439,12 +503,15 @@ public class Distribution {
             }
         }
         if (node.reliability == 0) {
-            throw new NoDistributorsAvailableException(
-                    "No available distributors in any of the given upstates '"
-                    + upStates + "'.");
+            throw noDistributorsAvailable(upStates);
         }
         return node.index;
     }
+
+    private static NoDistributorsAvailableException noDistributorsAvailable(String upStates) {
+        return new NoDistributorsAvailableException("No available distributors in any of the given upstates '"
+                                                    + upStates + "'.");
+    }
     private boolean visitGroups(GroupVisitor visitor, Map<Integer, Group> groups) {
         for (Group g : groups.values()) {
             if (!visitor.visitGroup(g)) return false;
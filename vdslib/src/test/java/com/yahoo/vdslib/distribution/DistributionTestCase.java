@@ -384,4 +384,40 @@ public class DistributionTestCase extends junit.framework.TestCase {
         assertTrue(Arrays.toString(counts) + ": Too large diff" + diff, diff < 3.1);
         assertTrue(Arrays.toString(counts) + ": Too small diff" + diff, diff > 2.9);
     }
+
+    public void testPreparedDistributorTableGivesSameDistributors() throws Exception {
+        StorDistributionConfig config = new StorDistributionConfig(buildHierarchicalConfig(2, 3, 2, "1|*", 2));
+        Distribution prepared = new Distribution(config);
+        Distribution reference = new Distribution(config);
+        ClusterState state = new ClusterState("bits:8 distributor:18 .3.s:d .7.s:i .11.c:2.5");
+        prepared.prepareDistributorTable(state, "uim");
+        Random random = new Random(17);
+        for (int i=0; i<1000; ++i) {
+            BucketId bucket = new BucketId(8 + random.nextInt(50), random.nextLong());
+            assertEquals(bucket.toString(),
+                         reference.getIdealDistributorNode(state, bucket, "uim"),
+                         prepared.getIdealDistributorNode(state, bucket, "uim"));
+            assertEquals(bucket.toString(),
+                         reference.getIdealDistributorNode(state, bucket, "ui"),
+                         prepared.getIdealDistributorNode(state, bucket, "ui"));
+        }
+        try {
+            prepared.getIdealDistributorNode(state, new BucketId(7, 0), "uim");
+            fail("Expected exception");
+        } catch (Distribution.TooFewBucketBitsInUseException e) {
+            // Expected
+        }
+    }
+
+    public void testPreparedDistributorTableWithNoDistributorsAvailable() throws Exception {
+        Distribution distribution = new Distribution(new StorDistributionConfig(buildHierarchicalConfig(2, 2, 1, "1|*", 1)));
+        ClusterState state = new ClusterState("bits:4 distributor:2 .0.s:d .1.s:d");
+        distribution.prepareDistributorTable(state, "uim");
+        try {
+            distribution.getIdealDistributorNode(state, new BucketId(16, 5), "uim");
+            fail("Expected exception");
+        } catch (Distribution.NoDistributorsAvailableException e) {
+            assertEquals("No available distributors in any of the given upstates 'uim'.", e.getMessage());
+        }
+    }
 }
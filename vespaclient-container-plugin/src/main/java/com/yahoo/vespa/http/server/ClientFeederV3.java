@@ -1,17 +1,19 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.vespa.http.server;
 
-import com.yahoo.container.jdisc.HttpRequest;
-import com.yahoo.container.jdisc.HttpResponse;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.documentapi.messagebus.protocol.DocumentMessage;
 import com.yahoo.documentapi.messagebus.protocol.DocumentProtocol;
 import com.yahoo.documentapi.metrics.DocumentOperationType;
 import com.yahoo.jdisc.Metric;
 import com.yahoo.jdisc.ReferencedResource;
+import com.yahoo.jdisc.ResourceReference;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.jdisc.handler.ResponseHandler;
+import com.yahoo.jdisc.http.HttpRequest;
 import com.yahoo.log.LogLevel;
 import com.yahoo.messagebus.Message;
-import com.yahoo.messagebus.ReplyHandler;
 import com.yahoo.messagebus.Result;
 import com.yahoo.messagebus.shared.SharedSourceSession;
 import com.yahoo.vespa.http.client.core.ErrorCode;
@@ -20,16 +22,20 @@ import com.yahoo.vespa.http.client.core.OperationStatus;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 import com.yahoo.yolean.Exceptions;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -41,6 +47,11 @@ import static com.yahoo.messagebus.ErrorCode.SEND_QUEUE_FULL;
  * The implementation is based on the code from V2, but the object model is rewritten to simplify the logic and
  * avoid using a threadpool that has no effect with all the extra that comes with it. V2 has one instance per thread
  * on the client, while this is one instance for all threads.
+ *
+ * No thread is held by a request while it waits: The request content is received through a
+ * {@link ContentChannel}, operations are parsed and sent by tasks on a shared worker pool as their data arrives,
+ * and a request which is throttled by message bus waits in {@link ThrottledRequests} until there is capacity.
+ * The response is written when all the operations of the request are sent.
  */
 class ClientFeederV3 {
 
@@ -49,17 +60,19 @@ class ClientFeederV3 {
     private final static AtomicInteger outstandingOperations = new AtomicInteger(0);
     private final BlockingQueue<OperationStatus> feedReplies = new LinkedBlockingQueue<>();
     private final ReferencedResource<SharedSourceSession> sourceSession;
+    private final FeedReaderFactory feedReaderFactory;
+    private final DocumentTypeManager docTypeManager;
     private final String clientId;
-    private final ReplyHandler feedReplyHandler;
+    private final ThrottledRequests throttledRequests;
     private final Metric metric;
+    private final Executor workers;
     private Instant prevOpsPerSecTime = Instant.now();
     private double operationsForOpsPerSec = 0d;
 
     private final Object monitor = new Object();
-    private final StreamReaderV3 streamReaderV3;
     private final AtomicInteger ongoingRequests = new AtomicInteger(0);
     private String hostName;
-    private AtomicInteger threadsAvailableForFeeding;
+    private final AtomicInteger requestsAvailableForFeeding;
 
     ClientFeederV3(
             ReferencedResource<SharedSourceSession> sourceSession,
@@ -67,14 +80,17 @@ class ClientFeederV3 {
             DocumentTypeManager docTypeManager,
             String clientId,
             Metric metric,
-            ReplyHandler feedReplyHandler,
-            AtomicInteger threadsAvailableForFeeding) {
+            ThrottledRequests throttledRequests,
+            AtomicInteger requestsAvailableForFeeding,
+            Executor workers) {
         this.sourceSession = sourceSession;
+        this.feedReaderFactory = feedReaderFactory;
+        this.docTypeManager = docTypeManager;
         this.clientId = clientId;
-        this.feedReplyHandler = feedReplyHandler;
+        this.throttledRequests = throttledRequests;
         this.metric = metric;
-        this.threadsAvailableForFeeding = threadsAvailableForFeeding;
-        this.streamReaderV3 = new StreamReaderV3(feedReaderFactory, docTypeManager);
+        this.requestsAvailableForFeeding = requestsAvailableForFeeding;
+        this.workers = workers;
         try {
             this.hostName = InetAddress.getLocalHost().getHostName();
         } catch (UnknownHostException e) {
@@ -91,11 +107,13 @@ class ClientFeederV3 {
 
     public void kill() {
         // No new requests should be sent to this object, but there can be old one, even though this is very unlikely.
-        while (ongoingRequests.get() > 0) {
-            try {
-                ongoingRequests.wait(100);
-            } catch (InterruptedException e) {
-                break;
+        synchronized (monitor) {
+            while (ongoingRequests.get() > 0) {
+                try {
+                    monitor.wait(100);
+                } catch (InterruptedException e) {
+                    break;
+                }
             }
         }
         sourceSession.getReference().close();
@@ -110,168 +128,119 @@ class ClientFeederV3 {
         }
     }
 
-    public HttpResponse handleRequest(HttpRequest request) throws IOException {
-        threadsAvailableForFeeding.decrementAndGet();
+    /**
+     * Starts handling a feed request, and returns the channel which receives its content.
+     * The response is passed to the given handler when all the operations in the content are sent.
+     */
+    public ContentChannel handleRequest(HttpRequest request, ResponseHandler responseHandler) {
+        FeederSettings feederSettings = new FeederSettings(request);
+        requestsAvailableForFeeding.decrementAndGet();
         ongoingRequests.incrementAndGet();
+        /**
+         * The gateway handle overload from clients in different ways.
+         *
+         * If the backend is overloaded, but not the gateway, it will fill the backend, messagebus throttler
+         * will start to make new documents wait and finally all requestsAvailableForFeeding will be waiting.
+         * However, as more requests are added, the gateway will not wait for messagebus but return
+         * transitive errors on the documents that can not be processed. These errors will cause the client(s) to
+         * back off a bit.
+         *
+         * However, we can also have the case that the gateway becomes the bottleneck (e.g. CPU). In this case
+         * we need to stop processing of new messages as early as possible and reject the request. This
+         * will cause the client(s) to back off for a while. We want some slack before we enter this mode.
+         * If we can simply transitively fail each document, it is nicer. Therefor we allow some requests to be
+         * busy processing requests with transitive errors before entering this mode. Since we already
+         * have flooded the backend, have several requests waiting for capacity, the number should
+         * not be very large. We try 10 for now. This should only kick in with very massive feeding to few
+         * gateway nodes.
+         */
+        if (feederSettings.denyIfBusy && requestsAvailableForFeeding.get() < -10) {
+            requestDone();
+            FeedHandlerV3.dispatch(new ErrorHttpResponse(getOverloadReturnCode(request), "Gateway overloaded"),
+                                   responseHandler);
+            return new FeedHandlerV3.IgnoredContent();
+        }
         try {
-            FeederSettings feederSettings = new FeederSettings(request);
-            /**
-             * The gateway handle overload from clients in different ways.
-             *
-             * If the backend is overloaded, but not the gateway, it will fill the backend, messagebus throttler
-             * will start to block new documents and finally all threadsAvailableForFeeding will be blocking.
-             * However, as more threads are added, the gateway will not block on messagebus but return
-             * transitive errors on the documents that can not be processed. These errors will cause the client(s) to
-             * back off a bit.
-             *
-             * However, we can also have the case that the gateway becomes the bottleneck (e.g. CPU). In this case
-             * we need to stop processing of new messages as early as possible and reject the request. This
-             * will cause the client(s) to back off for a while. We want some slack before we enter this mode.
-             * If we can simply transitively fail each document, it is nicer. Therefor we allow some threads to be
-             * busy processing requests with transitive errors before entering this mode. Since we already
-             * have flooded the backend, have several threads hanging and waiting for capacity, the number should
-             * not be very large. Too much slack can lead to too many threads handling feed and impacting query traffic.
-             * We try 10 for now. This should only kick in with very massive feeding to few gateway nodes.
-             */
-            if (feederSettings.denyIfBusy && threadsAvailableForFeeding.get() < -10) {
-                return new ErrorHttpResponse(getOverloadReturnCode(request), "Gateway overloaded");
-            }
+            return new RequestFeeder(request, feederSettings, responseHandler);
+        } catch (RuntimeException e) {
+            requestDone();
+            throw e;
+        }
+    }
 
-            InputStream inputStream = StreamReaderV3.unzipStreamIfNeeded(request);
-            final BlockingQueue<OperationStatus> replies = new LinkedBlockingQueue<>();
-            try {
-                feed(feederSettings, inputStream, replies, threadsAvailableForFeeding);
-                synchronized (monitor) {
-                    // Handshake requests do not have DATA_FORMAT, we do not want to give responses to
-                    // handshakes as it won't be processed by the client.
-                    if (request.getJDiscRequest().headers().get(Headers.DATA_FORMAT) != null) {
-                        transferPreviousRepliesToResponse(replies);
-                    }
-                }
-            } catch (InterruptedException e) {
-                // NOP, just terminate
-            } catch (Throwable e) {
-                log.log(LogLevel.WARNING, "Unhandled exception while feeding: "
-                        + Exceptions.toMessageString(e), e);
-            } finally {
-                try {
-                    replies.add(createOperationStatus("-", "-", ErrorCode.END_OF_FEED, false, null));
-                } catch (InterruptedException e) {
-                    // NOP, we are already exiting the thread
-                }
-            }
-            return new FeedResponse(200, replies, 3 /* protocol version */, clientId, outstandingOperations.get(), hostName);
-        } finally {
+    private void requestDone() {
+        synchronized (monitor) {
             ongoingRequests.decrementAndGet();
-            threadsAvailableForFeeding.incrementAndGet();
+            requestsAvailableForFeeding.incrementAndGet();
+            monitor.notifyAll();
         }
     }
 
     private int getOverloadReturnCode(HttpRequest request) {
-        if (request.getHeader(Headers.SILENTUPGRADE) != null ) {
+        if (request.headers().getFirst(Headers.SILENTUPGRADE) != null ) {
             return 299;
         }
         return 429;
     }
 
-    private Optional<DocumentOperationMessageV3> pullMessageFromRequest(
-            FeederSettings settings, InputStream requestInputStream, BlockingQueue<OperationStatus> repliesFromOldMessages) {
-        while (true) {
-            final Optional<String> operationId;
-            try {
-                operationId = streamReaderV3.getNextOperationId(requestInputStream);
-            } catch (IOException ioe) {
-                if (log.isLoggable(LogLevel.DEBUG)) {
-                    log.log(LogLevel.DEBUG, Exceptions.toMessageString(ioe), ioe);
-                }
-                return Optional.empty();
-            }
-            if (! operationId.isPresent()) {
-                return Optional.empty();
-            }
-            final DocumentOperationMessageV3 msg;
-            try {
-                msg = getNextMessage(operationId.get(), requestInputStream, settings);
-            } catch (Exception e) {
-                if (log.isLoggable(LogLevel.DEBUG)) {
-                    log.log(LogLevel.DEBUG, Exceptions.toMessageString(e), e);
-                }
-                repliesFromOldMessages.add(new OperationStatus(
-                        Exceptions.toMessageString(e), operationId.get(), ErrorCode.ERROR, false, ""));
-
-                continue;
+    private Optional<DocumentOperationMessageV3> toMessage(
+            StreamReaderV3.RawOperation operation, FeederSettings settings, BlockingQueue<OperationStatus> replies) {
+        final DocumentOperationMessageV3 msg;
+        try {
+            msg = getNextMessage(operation.getOperationId(), new ByteArrayInputStream(operation.getData()), settings);
+        } catch (Exception e) {
+            if (log.isLoggable(LogLevel.DEBUG)) {
+                log.log(LogLevel.DEBUG, Exceptions.toMessageString(e), e);
             }
-            setRoute(msg, settings);
-            return Optional.of(msg);
+            replies.add(new OperationStatus(
+                    Exceptions.toMessageString(e), operation.getOperationId(), ErrorCode.ERROR, false, ""));
+            return Optional.empty();
         }
-    }
-
-    private Result sendMessage(
-            FeederSettings settings,
-            DocumentOperationMessageV3 msg,
-            AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
-        Result result = null;
-        while (result == null || result.getError().getCode() == SEND_QUEUE_FULL) {
-            msg.getMessage().pushHandler(feedReplyHandler);
-
-            if (settings.denyIfBusy && threadsAvailableForFeeding.get() < 1) {
-                return sourceSession.getResource().sendMessage(msg.getMessage());
-            } else {
-                result = sourceSession.getResource().sendMessageBlocking(msg.getMessage());
-            }
-            if (result.isAccepted()) {
-                return result;
-            }
-            Thread.sleep(100);
+        if (msg == null) {
+            return Optional.empty();
         }
-        return result;
+        setRoute(msg, settings);
+        setMessageParameters(msg, settings);
+        msg.getMessage().pushHandler(throttledRequests);
+        return Optional.of(msg);
     }
 
-    private void feed(
-            FeederSettings settings,
-            InputStream requestInputStream,
-            BlockingQueue<OperationStatus> repliesFromOldMessages,
-            AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
-        while (true) {
-
-            Optional<DocumentOperationMessageV3> msg = pullMessageFromRequest(settings, requestInputStream, repliesFromOldMessages);
-
-            if (! msg.isPresent()) {
-                break;
-            }
-            setMessageParameters(msg.get(), settings);
-
-            final Result result;
-            try {
-                result = sendMessage(settings, msg.get(), threadsAvailableForFeeding);
-
-            } catch  (RuntimeException e) {
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(), Exceptions.toMessageString(e),
-                        ErrorCode.ERROR, false, msg.get().getMessage()));
-                continue;
-            }
+    /**
+     * Sends the given message, or reports why it could not be sent.
+     *
+     * @return false if the message should be sent again when the session has capacity for it, true otherwise
+     */
+    private boolean send(FeederSettings settings, DocumentOperationMessageV3 msg, BlockingQueue<OperationStatus> replies) {
+        final Result result;
+        try {
+            result = sourceSession.getResource().sendMessage(msg.getMessage());
+        } catch (RuntimeException e) {
+            replies.add(createOperationStatus(msg.getOperationId(), Exceptions.toMessageString(e),
+                    ErrorCode.ERROR, false, msg.getMessage()));
+            return true;
+        }
 
-            if (result.isAccepted()) {
-                outstandingOperations.incrementAndGet();
-                updateOpsPerSec();
-                log(LogLevel.DEBUG, "Sent message successfully, document id: ", msg.get().getOperationId());
-            } else if (!result.getError().isFatal()) {
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(), result.getError().getMessage(),
-                        ErrorCode.TRANSIENT_ERROR, false, msg.get().getMessage()));
-                continue;
-            } else {
-                // should probably not happen, but everybody knows stuff that
-                // shouldn't happen, happens all the time
-                boolean isConditionNotMet = result.getError().getCode() == DocumentProtocol.ERROR_TEST_AND_SET_CONDITION_FAILED;
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(), result.getError().getMessage(),
-                        ErrorCode.ERROR, isConditionNotMet, msg.get().getMessage()));
-                continue;
-            }
+        if (result.isAccepted()) {
+            outstandingOperations.incrementAndGet();
+            updateOpsPerSec();
+            log(LogLevel.DEBUG, "Sent message successfully, document id: ", msg.getOperationId());
+        } else if (result.getError().getCode() == SEND_QUEUE_FULL &&
+                   ! (settings.denyIfBusy && requestsAvailableForFeeding.get() < 1)) {
+            return false;
+        } else if (!result.getError().isFatal()) {
+            replies.add(createOperationStatus(msg.getOperationId(), result.getError().getMessage(),
+                    ErrorCode.TRANSIENT_ERROR, false, msg.getMessage()));
+        } else {
+            // should probably not happen, but everybody knows stuff that
+            // shouldn't happen, happens all the time
+            boolean isConditionNotMet = result.getError().getCode() == DocumentProtocol.ERROR_TEST_AND_SET_CONDITION_FAILED;
+            replies.add(createOperationStatus(msg.getOperationId(), result.getError().getMessage(),
+                    ErrorCode.ERROR, isConditionNotMet, msg.getMessage()));
         }
+        return true;
     }
 
-    private OperationStatus createOperationStatus(String id, String message, ErrorCode code, boolean isConditionNotMet, Message msg)
-            throws InterruptedException {
+    private OperationStatus createOperationStatus(String id, String message, ErrorCode code, boolean isConditionNotMet, Message msg) {
         String traceMessage = msg != null && msg.getTrace() != null &&  msg.getTrace().getLevel() > 0
                 ? msg.getTrace().toString()
                 : "";
@@ -280,8 +249,9 @@ class ClientFeederV3 {
 
     // protected for mocking
     protected DocumentOperationMessageV3 getNextMessage(
-            String operationId, InputStream requestInputStream, FeederSettings settings) throws Exception {
-        VespaXMLFeedReader.Operation operation = streamReaderV3.getNextOperation(requestInputStream, settings);
+            String operationId, InputStream operationData, FeederSettings settings) throws Exception {
+        StreamReaderV3 streamReaderV3 = new StreamReaderV3(feedReaderFactory, docTypeManager, false);
+        VespaXMLFeedReader.Operation operation = streamReaderV3.getNextOperation(operationData, settings);
 
         // This is a bit hard to set up while testing, so we accept that things are not perfect.
         if (sourceSession.getResource().session() != null) {
@@ -355,4 +325,191 @@ class ClientFeederV3 {
         }
     }
 
+    /**
+     * Feeds the operations of one request as its content is received. All reading, parsing and sending is done
+     * by one task at the time on the worker pool, so operations are sent in the order they are received.
+     */
+    private class RequestFeeder implements ContentChannel {
+
+        private final HttpRequest request;
+        private final FeederSettings settings;
+        private final ResponseHandler responseHandler;
+        private final ResourceReference requestReference;
+        private final StreamReaderV3 streamReader;
+        private final BlockingQueue<OperationStatus> replies = new LinkedBlockingQueue<>();
+
+        /** Received content which is not yet read */
+        private final Queue<Content> received = new ConcurrentLinkedQueue<>();
+        private volatile CompletionHandler closeHandler = null;
+        private volatile boolean closed = false;
+
+        /** Whether a task feeding this is scheduled or running */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        /** Whether this is waiting in throttledRequests */
+        private final AtomicBoolean throttled = new AtomicBoolean(false);
+
+        // The fields below are only accessed by the feeding task
+        /** A message which is waiting for capacity to be sent, or null if none */
+        private DocumentOperationMessageV3 unsent = null;
+        /** Whether the content of this could not be read, such that the rest of it should be ignored */
+        private boolean failed = false;
+        private boolean done = false;
+
+        RequestFeeder(HttpRequest request, FeederSettings settings, ResponseHandler responseHandler) {
+            this.request = request;
+            this.settings = settings;
+            this.responseHandler = responseHandler;
+            this.streamReader = new StreamReaderV3(feedReaderFactory, docTypeManager,
+                                                   "gzip".equals(request.headers().getFirst("content-encoding")));
+            this.requestReference = request.refer();
+        }
+
+        @Override
+        public void write(ByteBuffer buf, CompletionHandler handler) {
+            received.add(new Content(buf, handler));
+            schedule();
+        }
+
+        @Override
+        public void close(CompletionHandler handler) {
+            closeHandler = handler;
+            closed = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true))
+                workers.execute(this::feed);
+        }
+
+        private void resume() {
+            throttled.set(false);
+            schedule();
+        }
+
+        private void feed() {
+            try {
+                feedReceived();
+            } catch (Throwable e) {
+                log.log(LogLevel.WARNING, "Unhandled exception while feeding: " + Exceptions.toMessageString(e), e);
+                failed = true;
+                unsent = null;
+            } finally {
+                scheduled.set(false);
+            }
+            // Schedule again if this was resumed, or content was received, after this stopped looking for it
+            if (done) return;
+            if (unsent != null ? ! throttled.get() : ( ! received.isEmpty() || closed))
+                schedule();
+        }
+
+        private void feedReceived() throws Exception {
+            if (done) return;
+            if (unsent != null) {
+                if ( ! send(settings, unsent, replies)) {
+                    waitForCapacity();
+                    return;
+                }
+                unsent = null;
+            }
+            while (true) {
+                if ( ! failed && ! sendReadOperations()) {
+                    waitForCapacity();
+                    return;
+                }
+                Content content = received.poll();
+                if (content == null) break;
+                read(content);
+            }
+            if (closed && received.isEmpty()) {
+                if ( ! failed && streamReader.hasUnreadData())
+                    replies.add(new OperationStatus("Incomplete operation at end of feed", "-",
+                                                    ErrorCode.ERROR, false, ""));
+                respond();
+            }
+        }
+
+        /**
+         * Sends all the operations which are fully received.
+         *
+         * @return false if this stopped because there is no capacity to send the next message
+         */
+        private boolean sendReadOperations() {
+            while (true) {
+                Optional<StreamReaderV3.RawOperation> operation;
+                try {
+                    operation = streamReader.getNextOperation();
+                } catch (IllegalStateException e) {
+                    // The position of the next operation is unknown, so the rest of the content can not be read
+                    replies.add(new OperationStatus(Exceptions.toMessageString(e), "-", ErrorCode.ERROR, false, ""));
+                    failed = true;
+                    return true;
+                }
+                if ( ! operation.isPresent()) return true;
+
+                Optional<DocumentOperationMessageV3> msg = toMessage(operation.get(), settings, replies);
+                if (msg.isPresent() && ! send(settings, msg.get(), replies)) {
+                    unsent = msg.get();
+                    return false;
+                }
+            }
+        }
+
+        private void read(Content content) {
+            try {
+                if ( ! failed)
+                    streamReader.receive(content.data);
+            } catch (Exception e) {
+                if (log.isLoggable(LogLevel.DEBUG)) {
+                    log.log(LogLevel.DEBUG, Exceptions.toMessageString(e), e);
+                }
+                replies.add(new OperationStatus(Exceptions.toMessageString(e), "-", ErrorCode.ERROR, false, ""));
+                failed = true;
+            } finally {
+                if (content.handler != null)
+                    content.handler.completed();
+            }
+        }
+
+        private void waitForCapacity() {
+            if (throttled.compareAndSet(false, true))
+                throttledRequests.add(this::resume);
+        }
+
+        private void respond() throws InterruptedException {
+            done = true;
+            streamReader.close();
+            if (closeHandler != null)
+                closeHandler.completed();
+            try (ResourceReference reference = requestReference) {
+                synchronized (monitor) {
+                    // Handshake requests do not have DATA_FORMAT, we do not want to give responses to
+                    // handshakes as it won't be processed by the client.
+                    if (request.headers().get(Headers.DATA_FORMAT) != null) {
+                        transferPreviousRepliesToResponse(replies);
+                    }
+                }
+                replies.add(createOperationStatus("-", "-", ErrorCode.END_OF_FEED, false, null));
+                FeedHandlerV3.dispatch(new FeedResponse(200, replies, 3 /* protocol version */, clientId,
+                                                        outstandingOperations.get(), hostName),
+                                       responseHandler);
+            } finally {
+                requestDone();
+            }
+        }
+
+    }
+
+    private static class Content {
+
+        final ByteBuffer data;
+        final CompletionHandler handler;
+
+        Content(ByteBuffer data, CompletionHandler handler) {
+            this.data = data;
+            this.handler = handler;
+        }
+
+    }
+
 }
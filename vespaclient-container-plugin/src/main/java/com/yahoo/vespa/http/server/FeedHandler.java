@@ -13,6 +13,10 @@ import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.config.DocumentmanagerConfig;
 import com.yahoo.documentapi.metrics.DocumentApiMetrics;
 import com.yahoo.jdisc.Metric;
+import com.yahoo.jdisc.Request;
+import com.yahoo.jdisc.handler.AbstractRequestHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.jdisc.handler.ResponseHandler;
 import com.yahoo.jdisc.http.HttpResponse.Status;
 import com.yahoo.log.LogLevel;
 import com.yahoo.messagebus.ReplyHandler;
@@ -37,6 +41,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -45,7 +50,9 @@ import java.util.zip.GZIPInputStream;
  * @author Steinar Knutsen
  * @since 5.1
  */
-public class FeedHandler extends LoggingRequestHandler {
+public class FeedHandler extends AbstractRequestHandler {
+
+    private static final Logger log = Logger.getLogger(FeedHandler.class.getName());
 
     private final ExecutorService workers = Executors.newCachedThreadPool(ThreadFactoryFactory.getThreadFactory("feedhandler"));
     private final DocumentTypeManager docTypeManager;
@@ -58,6 +65,7 @@ public class FeedHandler extends LoggingRequestHandler {
     private static final List<Integer> serverSupportedVersions = Collections.unmodifiableList(Arrays.asList(2));
     private final String localHostname;
     private final FeedHandlerV3 feedHandlerV3;
+    private final V2Handler v2Handler;
 
     @Inject
     public FeedHandler(
@@ -68,9 +76,9 @@ public class FeedHandler extends LoggingRequestHandler {
             AccessLog accessLog,
             ThreadpoolConfig threadpoolConfig,
             MetricReceiver metricReceiver) throws Exception {
-        super(executor, accessLog);
+        v2Handler = new V2Handler(executor, accessLog);
         DocumentApiMetrics metricsHelper = new DocumentApiMetrics(metricReceiver, "vespa.http.server");
-        feedHandlerV3 = new FeedHandlerV3(executor, documentManagerConfig, sessionCache, metric, accessLog, threadpoolConfig, metricsHelper);
+        feedHandlerV3 = new FeedHandlerV3(documentManagerConfig, sessionCache, metric, threadpoolConfig, metricsHelper);
         docTypeManager = createDocumentManager(documentManagerConfig);
         clients = new HashMap<>();
         this.sessionCache = sessionCache;
@@ -166,16 +174,28 @@ public class FeedHandler extends LoggingRequestHandler {
         return splittedVersions;
     }
 
+    /**
+     * Passes requests using protocol version 3 to the v3 handler, which reads the request content as it arrives,
+     * and all others to the v2 handler, which reads it in a thread from the container pool.
+     */
     @Override
+    public ContentChannel handleRequest(Request request, ResponseHandler responseHandler) {
+        List<String> versions = request.headers().get(Headers.VERSION);
+        if (versions != null && 3 == doCheckProtocolVersion(versions).second) {
+            if (request.getTimeout(TimeUnit.SECONDS) == null && v2Handler.getTimeout() != null) {
+                request.setTimeout(v2Handler.getTimeout().getSeconds(), TimeUnit.SECONDS);
+            }
+            return feedHandlerV3.handleRequest(request, responseHandler);
+        }
+        return v2Handler.handleRequest(request, responseHandler);
+    }
+
     public HttpResponse handle(HttpRequest request) {
         Tuple2<HttpResponse, Integer> protocolVersion = checkProtocolVersion(request);
 
         if (protocolVersion.first != null) {
             return protocolVersion.first;
         }
-        if (3 == protocolVersion.second) {
-            return feedHandlerV3.handle(request);
-        }
         final BlockingQueue<OperationStatus> operations = new LinkedBlockingQueue<>();
         Tuple2<String, Boolean> clientId;
         clientId = sessionId(request);
@@ -314,6 +334,7 @@ public class FeedHandler extends LoggingRequestHandler {
 
     private void internalDestroy() {
         super.destroy();
+        v2Handler.release();
         workers.shutdown();
         cron.shutdown();
         synchronized (clients) {
@@ -336,6 +357,20 @@ public class FeedHandler extends LoggingRequestHandler {
         }
     }
 
+    /** Handles requests using protocol version 2 by blocking a thread while reading the request content */
+    private class V2Handler extends LoggingRequestHandler {
+
+        V2Handler(Executor executor, AccessLog accessLog) {
+            super(executor, accessLog);
+        }
+
+        @Override
+        public HttpResponse handle(HttpRequest request) {
+            return FeedHandler.this.handle(request);
+        }
+
+    }
+
     /**
      * Guess what, testing only.
      */
@@ -3,27 +3,36 @@ package com.yahoo.vespa.http.server;
 
 import com.yahoo.concurrent.ThreadFactoryFactory;
 import com.yahoo.container.handler.ThreadpoolConfig;
-import com.yahoo.container.jdisc.HttpRequest;
 import com.yahoo.container.jdisc.HttpResponse;
-import com.yahoo.container.jdisc.LoggingRequestHandler;
+import com.yahoo.container.jdisc.ThreadedHttpRequestHandler;
 import com.yahoo.container.jdisc.messagebus.SessionCache;
-import com.yahoo.container.logging.AccessLog;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.config.DocumentmanagerConfig;
 import com.yahoo.documentapi.metrics.DocumentApiMetrics;
 import com.yahoo.jdisc.Metric;
 import com.yahoo.jdisc.ReferencedResource;
+import com.yahoo.jdisc.Request;
+import com.yahoo.jdisc.handler.AbstractRequestHandler;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.jdisc.handler.ResponseDispatch;
+import com.yahoo.jdisc.handler.ResponseHandler;
+import com.yahoo.jdisc.http.HttpRequest;
 import com.yahoo.log.LogLevel;
-import com.yahoo.messagebus.ReplyHandler;
 import com.yahoo.messagebus.SourceSessionParams;
 import com.yahoo.messagebus.shared.SharedSourceSession;
 import com.yahoo.vespa.http.client.core.Headers;
 import com.yahoo.yolean.Exceptions;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,39 +45,40 @@ import java.util.logging.Logger;
  * 
  * @author dybis
  */
-public class FeedHandlerV3 extends LoggingRequestHandler {
+public class FeedHandlerV3 extends AbstractRequestHandler {
 
     private DocumentTypeManager docTypeManager;
     private final Map<String, ClientFeederV3> clientFeederByClientId = new HashMap<>();
     private final ScheduledThreadPoolExecutor cron;
+    private final ExecutorService workers = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), ThreadFactoryFactory.getThreadFactory("feedhandlerv3.worker"));
     private final SessionCache sessionCache;
-    protected final ReplyHandler feedReplyHandler;
+    protected final ThrottledRequests throttledRequests;
     private final Metric metric;
     private final Object monitor = new Object();
-    private final AtomicInteger threadsAvailableForFeeding;
+    private final AtomicInteger requestsAvailableForFeeding;
     private static final Logger log = Logger.getLogger(FeedHandlerV3.class.getName());
 
     public FeedHandlerV3(
-            Executor executor,
             DocumentmanagerConfig documentManagerConfig,
             SessionCache sessionCache,
             Metric metric,
-            AccessLog accessLog,
             ThreadpoolConfig threadpoolConfig,
             DocumentApiMetrics metricsHelper) throws Exception {
-        super(executor, accessLog);
         docTypeManager = new DocumentTypeManager(documentManagerConfig);
         this.sessionCache = sessionCache;
-        feedReplyHandler = new FeedReplyReader(metric, metricsHelper);
+        throttledRequests = new ThrottledRequests(new FeedReplyReader(metric, metricsHelper));
         cron = new ScheduledThreadPoolExecutor(1, ThreadFactoryFactory.getThreadFactory("feedhandlerv3.cron"));
         cron.scheduleWithFixedDelay(this::removeOldClients, 16, 11, TimeUnit.MINUTES);
+        // Resume throttled requests also when capacity is freed by replies to other users of the session
+        cron.scheduleWithFixedDelay(throttledRequests::resumeAll, 100, 100, TimeUnit.MILLISECONDS);
         this.metric = metric;
-        // 40% of the threads can be blocking on feeding before we deny requests.
+        // Requests stop waiting for capacity when as many are ongoing as 40% of the container threads.
         if (threadpoolConfig != null) {
-            threadsAvailableForFeeding = new AtomicInteger(Math.max((int) (0.4 * threadpoolConfig.maxthreads()), 1));
+            requestsAvailableForFeeding = new AtomicInteger(Math.max((int) (0.4 * threadpoolConfig.maxthreads()), 1));
         } else {
-            log.warning("No config for threadpool, using 200 for max blocking threads for feeding.");
-            threadsAvailableForFeeding = new AtomicInteger(200);
+            log.warning("No config for threadpool, using 200 for max waiting requests for feeding.");
+            requestsAvailableForFeeding = new AtomicInteger(200);
         }
     }
 
@@ -79,36 +89,40 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
     // TODO: If this is set up to run without first invoking the old FeedHandler code, we should
     // verify the version header first. This is done in the old code.
     @Override
-    public HttpResponse handle(HttpRequest request) {
-        final String clientId = clientId(request);
-        final ClientFeederV3 clientFeederV3;
-        synchronized (monitor) {
-            if (! clientFeederByClientId.containsKey(clientId)) {
-                SourceSessionParams sourceSessionParams = sourceSessionParams(request);
-                clientFeederByClientId.put(
-                        clientId,
-                        new ClientFeederV3(
-                                retainSource(sessionCache, sourceSessionParams),
-                                new FeedReaderFactory(),
-                                docTypeManager,
-                                clientId,
-                                metric,
-                                feedReplyHandler,
-                                threadsAvailableForFeeding));
-            }
-            clientFeederV3 = clientFeederByClientId.get(clientId);
-        }
+    public ContentChannel handleRequest(Request jdiscRequest, ResponseHandler responseHandler) {
+        HttpRequest request = (HttpRequest) jdiscRequest;
         try {
-            return clientFeederV3.handleRequest(request);
+            final String clientId = clientId(request);
+            final ClientFeederV3 clientFeederV3;
+            synchronized (monitor) {
+                if (! clientFeederByClientId.containsKey(clientId)) {
+                    SourceSessionParams sourceSessionParams = sourceSessionParams(request);
+                    clientFeederByClientId.put(
+                            clientId,
+                            new ClientFeederV3(
+                                    retainSource(sessionCache, sourceSessionParams),
+                                    new FeedReaderFactory(),
+                                    docTypeManager,
+                                    clientId,
+                                    metric,
+                                    throttledRequests,
+                                    requestsAvailableForFeeding,
+                                    workers));
+                }
+                clientFeederV3 = clientFeederByClientId.get(clientId);
+            }
+            return clientFeederV3.handleRequest(request, responseHandler);
         } catch (UnknownClientException uce) {
             String msg = Exceptions.toMessageString(uce);
             log.log(LogLevel.WARNING, msg);
-            return new ErrorHttpResponse(com.yahoo.jdisc.http.HttpResponse.Status.BAD_REQUEST, msg);
+            dispatch(new ErrorHttpResponse(com.yahoo.jdisc.http.HttpResponse.Status.BAD_REQUEST, msg), responseHandler);
         } catch (Exception e) {
             String msg = "Could not initialize document parsing: " + Exceptions.toMessageString(e);
             log.log(LogLevel.WARNING, msg);
-            return new ErrorHttpResponse(com.yahoo.jdisc.http.HttpResponse.Status.INTERNAL_SERVER_ERROR, msg);
+            dispatch(new ErrorHttpResponse(com.yahoo.jdisc.http.HttpResponse.Status.INTERNAL_SERVER_ERROR, msg),
+                     responseHandler);
         }
+        return new IgnoredContent();
     }
 
     // SessionCache is final and no easy way to mock it so we need this to be able to do testing.
@@ -130,13 +144,33 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
                 }
                 clientFeederByClientId.clear();
             }
+            workers.shutdown();
         });
         destroyer.setDaemon(true);
         destroyer.start();
     }
 
+    /** Renders the given response and passes it to the given handler */
+    static void dispatch(HttpResponse response, ResponseHandler responseHandler) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            response.render(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if ( ! response.headers().containsKey(ThreadedHttpRequestHandler.CONTENT_TYPE) && response.getContentType() != null) {
+            StringBuilder s = new StringBuilder(response.getContentType());
+            if (response.getCharacterEncoding() != null) {
+                s.append("; charset=").append(response.getCharacterEncoding());
+            }
+            response.headers().put(ThreadedHttpRequestHandler.CONTENT_TYPE, s.toString());
+        }
+        ResponseDispatch.newInstance(response.getJdiscResponse(), ByteBuffer.wrap(content.toByteArray()))
+                        .dispatch(responseHandler);
+    }
+
     private String clientId(HttpRequest request) {
-        String clientDictatedId = request.getHeader(Headers.CLIENT_ID);
+        String clientDictatedId = request.headers().getFirst(Headers.CLIENT_ID);
         if (clientDictatedId == null ||  clientDictatedId.isEmpty()) {
             throw new IllegalArgumentException("Did not get any CLIENT_ID header (" + Headers.CLIENT_ID + ")");
         }
@@ -145,7 +179,7 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
 
     private SourceSessionParams sourceSessionParams(HttpRequest request) {
         SourceSessionParams params = new SourceSessionParams();
-        String timeout = request.getHeader(Headers.TIMEOUT);
+        String timeout = request.headers().getFirst(Headers.TIMEOUT);
 
         if (timeout != null) {
             try {
@@ -170,4 +204,21 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
         }
     }
 
+    /** Receives the content of a request which is responded to without reading it */
+    static class IgnoredContent implements ContentChannel {
+
+        @Override
+        public void write(ByteBuffer buf, CompletionHandler handler) {
+            if (handler != null)
+                handler.completed();
+        }
+
+        @Override
+        public void close(CompletionHandler handler) {
+            if (handler != null)
+                handler.completed();
+        }
+
+    }
+
 }
@@ -22,8 +22,12 @@ public class FeederSettings {
     public final Integer traceLevel;
 
     public FeederSettings(HttpRequest request) {
+        this(request.getJDiscRequest());
+    }
+
+    public FeederSettings(com.yahoo.jdisc.http.HttpRequest request) {
         {
-            String tmpDrain = request.getHeader(Headers.DRAIN);
+            String tmpDrain = request.headers().getFirst(Headers.DRAIN);
             if (tmpDrain != null) {
                 drain = Boolean.parseBoolean(tmpDrain);
             } else {
@@ -31,7 +35,7 @@ public class FeederSettings {
             }
         }
         {
-            String tmpRoute = request.getHeader(Headers.ROUTE);
+            String tmpRoute = request.headers().getFirst(Headers.ROUTE);
             if (tmpRoute != null) {
                 route = Route.parse(tmpRoute);
             } else {
@@ -39,7 +43,7 @@ public class FeederSettings {
             }
         }
         {
-            String tmpDenyIfBusy = request.getHeader(Headers.DENY_IF_BUSY);
+            String tmpDenyIfBusy = request.headers().getFirst(Headers.DENY_IF_BUSY);
             if (tmpDenyIfBusy != null) {
                 denyIfBusy = Boolean.parseBoolean(tmpDenyIfBusy);
             } else {
@@ -47,7 +51,7 @@ public class FeederSettings {
             }
         }
         {
-            String tmpDataFormat = request.getHeader(Headers.DATA_FORMAT);
+            String tmpDataFormat = request.headers().getFirst(Headers.DATA_FORMAT);
             if (tmpDataFormat != null) {
                 dataFormat = DataFormat.valueOf(tmpDataFormat);
             } else {
@@ -55,7 +59,7 @@ public class FeederSettings {
             }
         }
         {
-            String tmpDataFormat = request.getHeader(Headers.PRIORITY);
+            String tmpDataFormat = request.headers().getFirst(Headers.PRIORITY);
             if (tmpDataFormat != null) {
                 priority = tmpDataFormat;
             } else {
@@ -63,7 +67,7 @@ public class FeederSettings {
             }
         }
         {
-            String tmpDataFormat = request.getHeader(Headers.TRACE_LEVEL);
+            String tmpDataFormat = request.headers().getFirst(Headers.TRACE_LEVEL);
             if (tmpDataFormat != null) {
                 traceLevel = Integer.valueOf(tmpDataFormat);
             } else {
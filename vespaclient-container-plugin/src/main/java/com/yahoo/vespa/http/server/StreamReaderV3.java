@@ -1,21 +1,26 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.vespa.http.server;
 
-import com.yahoo.container.jdisc.HttpRequest;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.vespa.http.client.core.Encoder;
-import com.yahoo.vespa.http.server.util.ByteLimitedInputStream;
+import com.yahoo.vespa.http.server.util.GzipDecoder;
 import com.yahoo.vespaxmlparser.FeedReader;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * This code is based on v2 code, but restructured so stream reading code is in one dedicated class.
+ * The content of a request is given to this as it is received, and operations are read from it
+ * once all their data is received, such that no thread needs to wait for more data.
+ *
  * @author dybis
  */
 public class StreamReaderV3 {
@@ -25,62 +30,142 @@ public class StreamReaderV3 {
     private final FeedReaderFactory feedReaderFactory;
     private final DocumentTypeManager docTypeManager;
 
-    public StreamReaderV3(FeedReaderFactory feedReaderFactory, DocumentTypeManager docTypeManager) {
+    /** The decoder of the received data, or null if it is not compressed */
+    private final GzipDecoder gzipDecoder;
+
+    /** The received data which is not yet read, in buffer[start, end> */
+    private byte[] buffer = new byte[8192];
+    private int start = 0;
+    private int end = 0;
+
+    private final OutputStream bufferWriter = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) {
+            append(b, offset, length);
+        }
+
+    };
+
+    public StreamReaderV3(FeedReaderFactory feedReaderFactory, DocumentTypeManager docTypeManager, boolean gzipped) {
         this.feedReaderFactory = feedReaderFactory;
         this.docTypeManager = docTypeManager;
+        this.gzipDecoder = gzipped ? new GzipDecoder() : null;
     }
 
-    public VespaXMLFeedReader.Operation getNextOperation(
-            InputStream requestInputStream, FeederSettings settings) throws Exception {
-        VespaXMLFeedReader.Operation op = new VespaXMLFeedReader.Operation();
+    /** Adds the given data received from the client to the data to read operations from */
+    public void receive(ByteBuffer data) throws IOException {
+        if (gzipDecoder != null) {
+            gzipDecoder.decode(data, bufferWriter);
+        }
+        else if (data.hasArray()) {
+            append(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        }
+        else {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            append(bytes, 0, bytes.length);
+        }
+    }
 
-        int length = readByteLength(requestInputStream);
+    /**
+     * Returns the id and data of the next operation, if all of it is received.
+     * An operation is on the form "id length\ndata", where the length of the data is in hex.
+     *
+     * @throws IllegalStateException if the length of the next operation is invalid
+     */
+    public Optional<RawOperation> getNextOperation() {
+        int space = indexOf((byte) ' ', start);
+        if (space < 0) return Optional.empty();
+        int newline = indexOf((byte) '\n', space + 1);
+        if (newline < 0) return Optional.empty();
 
-        try (InputStream limitedInputStream = new ByteLimitedInputStream(requestInputStream, length)){
-            FeedReader reader = feedReaderFactory.createReader(limitedInputStream, docTypeManager, settings.dataFormat);
-            reader.read(op);
-        }
+        String operationId = Encoder.decode(ascii(start, space), new StringBuilder(space - start)).toString();
+        int length = readByteLength(operationId, space + 1, newline);
+        int dataStart = newline + 1;
+        if (end - dataStart < length) return Optional.empty();
+
+        start = dataStart + length;
+        return Optional.of(new RawOperation(operationId, Arrays.copyOfRange(buffer, dataStart, start)));
+    }
+
+    /** Returns whether there is received data which is not read as operations */
+    public boolean hasUnreadData() {
+        return end > start;
+    }
+
+    /** Releases the resources used by this */
+    public void close() {
+        if (gzipDecoder != null)
+            gzipDecoder.close();
+    }
+
+    public VespaXMLFeedReader.Operation getNextOperation(
+            InputStream operationData, FeederSettings settings) throws Exception {
+        VespaXMLFeedReader.Operation op = new VespaXMLFeedReader.Operation();
+        FeedReader reader = feedReaderFactory.createReader(operationData, docTypeManager, settings.dataFormat);
+        reader.read(op);
         return op;
     }
 
-    public Optional<String> getNextOperationId(InputStream requestInputStream) throws IOException {
-        StringBuilder idBuf = new StringBuilder(100);
-        int c;
-        while ((c = requestInputStream.read()) != -1) {
-            if (c == 32) {
-                break;
-            }
-            idBuf.append((char) c);  //it's ASCII
+    private int readByteLength(String operationId, int from, int to) {
+        if (from == to) {
+            throw new IllegalStateException("Operation length missing for operation " + operationId);
+        }
+        try {
+            return Integer.parseInt(ascii(from, to), 16);
         }
-        if (idBuf.length() == 0) {
-            return Optional.empty();
+        catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid operation length '" + ascii(from, to) + "' for operation " +
+                                            operationId);
         }
-        return Optional.of(Encoder.decode(idBuf.toString(), new StringBuilder(idBuf.length())).toString());
     }
 
-    private int readByteLength(InputStream requestInputStream) throws IOException {
-        StringBuilder lenBuf = new StringBuilder(8);
-        int c;
-        while ((c = requestInputStream.read()) != -1) {
-            if (c == 10) {
-                break;
-            }
-            lenBuf.append((char) c);  //it's ASCII
-        }
-        if (lenBuf.length() == 0) {
-            throw new IllegalStateException("Operation length missing.");
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < end; i++)
+            if (buffer[i] == b) return i;
+        return -1;
+    }
+
+    private String ascii(int from, int to) {
+        return new String(buffer, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (end + length > buffer.length) {
+            int unread = end - start;
+            if (unread + length > buffer.length)
+                buffer = Arrays.copyOfRange(buffer, start, start + Math.max(buffer.length * 2, unread + length));
+            else
+                System.arraycopy(buffer, start, buffer, 0, unread);
+            start = 0;
+            end = unread;
         }
-        return Integer.valueOf(lenBuf.toString(), 16);
+        System.arraycopy(data, offset, buffer, end, length);
+        end += length;
     }
 
-    public static InputStream unzipStreamIfNeeded(final HttpRequest httpRequest)
-            throws IOException {
-        final String contentEncodingHeader = httpRequest.getHeader("content-encoding");
-        if ("gzip".equals(contentEncodingHeader)) {
-            return new GZIPInputStream(httpRequest.getData());
-        } else {
-            return httpRequest.getData();
+    /** The id and the still unparsed data of an operation */
+    public static class RawOperation {
+
+        private final String operationId;
+        private final byte[] data;
+
+        RawOperation(String operationId, byte[] data) {
+            this.operationId = operationId;
+            this.data = data;
         }
+
+        public String getOperationId() { return operationId; }
+
+        public byte[] getData() { return data; }
+
     }
 
 }
@@ -0,0 +1,52 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.server;
+
+import com.yahoo.messagebus.Reply;
+import com.yahoo.messagebus.ReplyHandler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the requests which are waiting for the message bus source session to accept more messages,
+ * instead of having them hold a thread while waiting. Replies free capacity in the session, so all waiting
+ * requests are resumed when a reply is passed through this. They should also be resumed periodically, as the
+ * session may be shared with other senders whose replies do not pass through this.
+ *
+ * @author agent
+ */
+class ThrottledRequests implements ReplyHandler {
+
+    private final ReplyHandler replyHandler;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /** Creates this as a reply handler which passes replies on to the given handler */
+    ThrottledRequests(ReplyHandler replyHandler) {
+        this.replyHandler = replyHandler;
+    }
+
+    /** Adds a request which waits for capacity. The given task is run once when it should try to send again. */
+    void add(Runnable resume) {
+        waiting.add(resume);
+    }
+
+    /** Resumes all the requests which are currently waiting */
+    void resumeAll() {
+        for (int count = waiting.size(); count > 0; count--) {
+            Runnable resume = waiting.poll();
+            if (resume == null) return;
+            resume.run();
+        }
+    }
+
+    @Override
+    public void handleReply(Reply reply) {
+        try {
+            replyHandler.handleReply(reply);
+        }
+        finally {
+            resumeAll();
+        }
+    }
+
+}
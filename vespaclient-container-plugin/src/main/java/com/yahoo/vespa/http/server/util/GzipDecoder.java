@@ -0,0 +1,113 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.server.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip stream which is received in chunks, without waiting for more data
+ * than what is given to it. Unlike {@link java.util.zip.GZIPInputStream}, this never blocks.
+ * Data following the first gzip member is ignored.
+ *
+ * @author agent
+ */
+public class GzipDecoder {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] output = new byte[8192];
+
+    /** The part of the header received so far, or null when the header is read */
+    private ByteArrayOutputStream header = new ByteArrayOutputStream(10);
+
+    /**
+     * Decompresses the given data and writes the result to the given stream.
+     *
+     * @throws ZipException if the data is not in the gzip format
+     */
+    public void decode(ByteBuffer data, OutputStream out) throws IOException {
+        byte[] input = new byte[data.remaining()];
+        data.get(input);
+        int offset = 0;
+        if (header != null) {
+            offset = readHeader(input);
+            if (header != null) return;
+        }
+        if (inflater.finished()) return;
+
+        inflater.setInput(input, offset, input.length - offset);
+        try {
+            while ( ! inflater.needsInput() && ! inflater.finished()) {
+                int length = inflater.inflate(output);
+                if (length == 0 && inflater.needsDictionary())
+                    throw new ZipException("Unexpected preset dictionary in gzip data");
+                out.write(output, 0, length);
+            }
+        }
+        catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    /** Returns whether the end of the compressed data is reached */
+    public boolean isFinished() {
+        return inflater.finished();
+    }
+
+    /** Releases the resources used by this */
+    public void close() {
+        inflater.end();
+    }
+
+    /**
+     * Adds the given input to the header, and returns the offset of the first byte after it
+     * if the header is complete.
+     */
+    private int readHeader(byte[] input) throws ZipException {
+        int received = header.size();
+        header.write(input, 0, input.length);
+        int length = headerLength(header.toByteArray());
+        if (length < 0) return input.length;
+        header = null;
+        return length - received;
+    }
+
+    /** Returns the length of the header at the start of the given bytes, or -1 if it is not all there */
+    private static int headerLength(byte[] bytes) throws ZipException {
+        if (bytes.length < 10) return -1;
+        if ((bytes[0] & 0xff) != 0x1f || (bytes[1] & 0xff) != 0x8b)
+            throw new ZipException("Not in gzip format");
+        if (bytes[2] != 8)
+            throw new ZipException("Unsupported gzip compression method " + bytes[2]);
+
+        int flags = bytes[3];
+        int length = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (bytes.length < length + 2) return -1;
+            length += 2 + ((bytes[length] & 0xff) | (bytes[length + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0)
+            length = skipZeroTerminated(bytes, length);
+        if ((flags & FCOMMENT) != 0 && length >= 0)
+            length = skipZeroTerminated(bytes, length);
+        if ((flags & FHCRC) != 0 && length >= 0)
+            length += 2;
+        return length <= bytes.length ? length : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int offset) {
+        for (int i = offset; i < bytes.length; i++)
+            if (bytes[i] == 0) return i + 1;
+        return -1;
+    }
+
+}
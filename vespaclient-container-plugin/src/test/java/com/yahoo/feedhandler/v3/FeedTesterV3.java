@@ -2,9 +2,7 @@
 package com.yahoo.feedhandler.v3;
 
 import com.google.common.base.Splitter;
-import com.yahoo.container.jdisc.HttpResponse;
 import com.yahoo.container.jdisc.messagebus.SessionCache;
-import com.yahoo.container.logging.AccessLog;
 import com.yahoo.document.DataType;
 import com.yahoo.document.DocumentType;
 import com.yahoo.document.DocumentTypeManager;
@@ -12,7 +10,12 @@ import com.yahoo.document.config.DocumentmanagerConfig;
 import com.yahoo.documentapi.messagebus.protocol.PutDocumentMessage;
 import com.yahoo.documentapi.metrics.DocumentApiMetrics;
 import com.yahoo.feedhandler.NullFeedMetric;
+import com.yahoo.io.IOUtils;
 import com.yahoo.jdisc.ReferencedResource;
+import com.yahoo.jdisc.Response;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.jdisc.handler.FutureResponse;
+import com.yahoo.jdisc.handler.ReadableContentChannel;
 import com.yahoo.messagebus.SourceSessionParams;
 import com.yahoo.messagebus.shared.SharedSourceSession;
 import com.yahoo.metrics.simple.MetricReceiver;
@@ -27,10 +30,10 @@ import org.junit.Test;
 import com.yahoo.container.jdisc.HttpRequest;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -46,25 +49,54 @@ public class FeedTesterV3 {
     @Test
     public void feedOneDocument() throws Exception {
         final FeedHandlerV3 feedHandlerV3 = setupFeederHandler();
-        HttpResponse httpResponse = feedHandlerV3.handle(createRequest(1));
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        httpResponse.render(outStream);
-        assertThat(httpResponse.getContentType(), is("text/plain"));
-        assertThat(Utf8.toString(outStream.toByteArray()), is("1230 OK message trace\n"));
-
+        ReadableContentChannel responseContent = new ReadableContentChannel();
+        FutureResponse futureResponse = new FutureResponse(responseContent);
+        feed(feedHandlerV3, createRequest(1), futureResponse, 1);
+        Response response = futureResponse.get(60, TimeUnit.SECONDS);
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.headers().getFirst("Content-Type"), is("text/plain; charset=US-ASCII"));
+        assertThat(read(responseContent), is("1230 OK message trace\n"));
     }
 
     @Test
     public void feedManyDocument() throws Exception {
         final FeedHandlerV3 feedHandlerV3 = setupFeederHandler();
-        HttpResponse httpResponse = feedHandlerV3.handle(createRequest(100));
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-        httpResponse.render(outStream);
-        assertThat(httpResponse.getContentType(), is("text/plain"));
-        String result = Utf8.toString(outStream.toByteArray());
+        ReadableContentChannel responseContent = new ReadableContentChannel();
+        FutureResponse futureResponse = new FutureResponse(responseContent);
+        feed(feedHandlerV3, createRequest(100), futureResponse, 1);
+        Response response = futureResponse.get(60, TimeUnit.SECONDS);
+        assertThat(response.getStatus(), is(200));
+        String result = read(responseContent);
+        assertThat(Splitter.on("\n").splitToList(result).size(), is(101));
+    }
+
+    @Test
+    public void feedManyDocumentsInSmallChunks() throws Exception {
+        final FeedHandlerV3 feedHandlerV3 = setupFeederHandler();
+        ReadableContentChannel responseContent = new ReadableContentChannel();
+        FutureResponse futureResponse = new FutureResponse(responseContent);
+        feed(feedHandlerV3, createRequest(100), futureResponse, 7);
+        Response response = futureResponse.get(60, TimeUnit.SECONDS);
+        assertThat(response.getStatus(), is(200));
+        String result = read(responseContent);
         assertThat(Splitter.on("\n").splitToList(result).size(), is(101));
     }
 
+    /** Writes the data of the given request to the given handler in chunks of the given size */
+    private void feed(FeedHandlerV3 feedHandlerV3, HttpRequest request, FutureResponse response, int chunks)
+            throws IOException {
+        byte[] data = IOUtils.readBytes(request.getData(), 8192);
+        ContentChannel requestContent = feedHandlerV3.handleRequest(request.getJDiscRequest(), response);
+        int chunkSize = data.length / chunks + 1;
+        for (int offset = 0; offset < data.length; offset += chunkSize)
+            requestContent.write(ByteBuffer.wrap(data, offset, Math.min(chunkSize, data.length - offset)), null);
+        requestContent.close(null);
+    }
+
+    private String read(ReadableContentChannel content) throws IOException {
+        return Utf8.toString(IOUtils.readBytes(content.toStream(), 8192));
+    }
+
     DocumentTypeManager createDoctypeManager() {
         DocumentTypeManager docTypeManager = new DocumentTypeManager();
         DocumentType documentType = new DocumentType("testdocument");
@@ -98,28 +130,23 @@ public class FeedTesterV3 {
     }
 
     FeedHandlerV3 setupFeederHandler() throws Exception {
-        Executor threadPool = Executors.newCachedThreadPool();
         DocumentmanagerConfig docMan = new DocumentmanagerConfig(new DocumentmanagerConfig.Builder().enablecompression(true));
         FeedHandlerV3 feedHandlerV3 = new FeedHandlerV3(
-                threadPool, docMan, null /* session cache */ , new NullFeedMetric(), AccessLog.voidAccessLog(), null, new DocumentApiMetrics(MetricReceiver.nullImplementation, "test")) {
+                docMan, null /* session cache */ , new NullFeedMetric(), null, new DocumentApiMetrics(MetricReceiver.nullImplementation, "test")) {
             @Override
             protected ReferencedResource<SharedSourceSession> retainSource(
                     SessionCache sessionCache, SourceSessionParams sessionParams)  {
                 SharedSourceSession sharedSourceSession = mock(SharedSourceSession.class);
 
-                try {
-                    Mockito.stub(sharedSourceSession.sendMessageBlocking(anyObject())).toAnswer((Answer) invocation -> {
-                        Object[] args = invocation.getArguments();
-                        PutDocumentMessage putDocumentMessage = (PutDocumentMessage) args[0];
-                        ReplyContext replyContext = (ReplyContext)putDocumentMessage.getContext();
-                        replyContext.feedReplies.add(new OperationStatus("message", replyContext.docId, ErrorCode.OK, false, "trace"));
-                        Result result = mock(Result.class);
-                        when(result.isAccepted()).thenReturn(true);
-                        return result;
-                    });
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+                Mockito.stub(sharedSourceSession.sendMessage(anyObject())).toAnswer((Answer) invocation -> {
+                    Object[] args = invocation.getArguments();
+                    PutDocumentMessage putDocumentMessage = (PutDocumentMessage) args[0];
+                    ReplyContext replyContext = (ReplyContext)putDocumentMessage.getContext();
+                    replyContext.feedReplies.add(new OperationStatus("message", replyContext.docId, ErrorCode.OK, false, "trace"));
+                    Result result = mock(Result.class);
+                    when(result.isAccepted()).thenReturn(true);
+                    return result;
+                });
 
                 Result result = mock(Result.class);
                 when(result.isAccepted()).thenReturn(true);
@@ -7,6 +7,10 @@ import com.yahoo.documentapi.metrics.DocumentApiMetrics;
 import com.yahoo.jdisc.Metric;
 import com.yahoo.jdisc.ReferencedResource;
 import com.yahoo.jdisc.References;
+import com.yahoo.jdisc.Response;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.jdisc.handler.FutureResponse;
+import com.yahoo.jdisc.handler.ReadableContentChannel;
 import com.yahoo.messagebus.ErrorCode;
 import com.yahoo.messagebus.Message;
 import com.yahoo.messagebus.MessageBus;
@@ -24,17 +28,17 @@ import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.IOException;
 import java.io.InputStream;
-
-
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
 
 
 public class V3CongestionTestCase {
-    AtomicInteger threadsAvail = new AtomicInteger(10);
+    AtomicInteger requestsAvail = new AtomicInteger(10);
     AtomicInteger requests = new AtomicInteger(0);
 
 
@@ -42,8 +46,8 @@ public class V3CongestionTestCase {
 
         private final DocumentOperationMessageV3 docOp;
 
-        ClientFeederWithMocks(ReferencedResource<SharedSourceSession> sourceSession, FeedReaderFactory feedReaderFactory, DocumentTypeManager docTypeManager, String clientId, Metric metric, ReplyHandler feedReplyHandler, AtomicInteger threadsAvailableForFeeding) {
-            super(sourceSession, feedReaderFactory, docTypeManager, clientId, metric, feedReplyHandler, threadsAvailableForFeeding);
+        ClientFeederWithMocks(ReferencedResource<SharedSourceSession> sourceSession, FeedReaderFactory feedReaderFactory, DocumentTypeManager docTypeManager, String clientId, Metric metric, ThrottledRequests throttledRequests, AtomicInteger requestsAvailableForFeeding) {
+            super(sourceSession, feedReaderFactory, docTypeManager, clientId, metric, throttledRequests, requestsAvailableForFeeding, Runnable::run);
             // The operation to return from the client feeder.
             VespaXMLFeedReader.Operation op = new VespaXMLFeedReader.Operation();
             docOp = DocumentOperationMessageV3.newRemoveMessage(op, "operation id");
@@ -53,12 +57,6 @@ public class V3CongestionTestCase {
         @Override
         protected DocumentOperationMessageV3 getNextMessage(
                 String operationId, InputStream requestInputStream, FeederSettings settings) throws Exception {
-            while (true) {
-                int data = requestInputStream.read();
-                if (data == -1 || data == (char)'\n') {
-                    break;
-                }
-            }
             return docOp;
         }
     }
@@ -66,33 +64,39 @@ public class V3CongestionTestCase {
     final static int NUMBER_OF_QUEUE_FULL_RESPONSES = 5;
 
     ClientFeederV3 clientFeederV3;
-    HttpRequest request;
+    ThrottledRequests throttledRequests;
+    com.yahoo.jdisc.http.HttpRequest request;
+    ReadableContentChannel responseContent;
+    FutureResponse response;
 
     @Before
     public void setup() {
-        // Set up a request to be used from the tests.
-        InputStream in = new MetaStream(new byte[] { 1 });
         request = HttpRequest
                 .createTestRequest(
                         "http://foo.bar:19020/reserved-for-internal-use/feedapi",
-                        com.yahoo.jdisc.http.HttpRequest.Method.POST, in);
-        request.getJDiscRequest().headers().add(Headers.VERSION, "3");
-        request.getJDiscRequest().headers().add(Headers.CLIENT_ID, "clientId");
+                        com.yahoo.jdisc.http.HttpRequest.Method.POST)
+                .getJDiscRequest();
+        request.headers().add(Headers.VERSION, "3");
+        request.headers().add(Headers.CLIENT_ID, "clientId");
+        responseContent = new ReadableContentChannel();
+        response = new FutureResponse(responseContent);
 
+        throttledRequests = new ThrottledRequests(
+                new FeedReplyReader(new DummyMetric(), new DocumentApiMetrics(MetricReceiver.nullImplementation, "tester")));
 
-        // Create a mock that does not parse the message, only reads the rest of the line. Makes it easier
+        // Create a mock that does not parse the message, only returns a remove. Makes it easier
         // to write tests. It uses a mock for message bus.
         clientFeederV3 = new ClientFeederWithMocks(
                 retainMockSession(new SourceSessionParams(), requests),
                 new MockFeedReaderFactory(),
                 null /*DocTypeManager*/,
                 "clientID",
-                null/*metric*/,
-                new FeedReplyReader(null/*metric*/, new DocumentApiMetrics(MetricReceiver.nullImplementation, "tester")),
-                threadsAvail);
+                new DummyMetric(),
+                throttledRequests,
+                requestsAvail);
     }
 
-    // A mock for message bus that can simulate blocking requests.
+    // A mock for message bus that can simulate throttling.
     private static class MockSharedSession extends SharedSourceSession {
         boolean queuFull = true;
         AtomicInteger requests;
@@ -110,7 +114,6 @@ public class V3CongestionTestCase {
 
         @Override
         public Result sendMessage(Message msg) {
-            ReplyHandler handler = msg.popHandler();
             if (queuFull) {
                 requests.incrementAndGet();
                 // Disable queue full after some attempts
@@ -121,6 +124,7 @@ public class V3CongestionTestCase {
                 return r;
             }
 
+            ReplyHandler handler = msg.popHandler();
             handler.handleReply(new MockReply(msg.getContext()));
             return Result.ACCEPTED;
         }
@@ -133,30 +137,52 @@ public class V3CongestionTestCase {
         return new ReferencedResource<>(session, References.fromResource(session));
     }
 
+    /** Feeds one operation, and resumes throttled requests until the response is written */
+    private Response feed() throws Exception {
+        ContentChannel content = clientFeederV3.handleRequest(request, response);
+        content.write(ByteBuffer.wrap("operationid 1\nx".getBytes(StandardCharsets.US_ASCII)), null);
+        content.close(null);
+        for (int i = 0; i < 100 && ! response.isDone(); i++)
+            throttledRequests.resumeAll();
+        return response.get(60, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRetriesWhenRequestsAvailable() throws Exception {
+        request.headers().add(Headers.DENY_IF_BUSY, "true");
+        requestsAvail.set(10);
+
+        assertEquals(200, feed().getStatus());
+        assertEquals(NUMBER_OF_QUEUE_FULL_RESPONSES, requests.get());
+        assertEquals(10, requestsAvail.get());
+    }
+
     @Test
-    public void testRetriesWhenThreadsAvailable() throws IOException {
-        request.getJDiscRequest().headers().add(Headers.DENY_IF_BUSY, "true");
-        threadsAvail.set(10);
+    public void testNoRetriesWhenNoRequestsAvailable() throws Exception {
+        request.headers().add(Headers.DENY_IF_BUSY, "true");
+        requestsAvail.set(0);
 
-        clientFeederV3.handleRequest(request);
-        assertTrue(requests.get() == NUMBER_OF_QUEUE_FULL_RESPONSES);
+        assertEquals(200, feed().getStatus());
+        assertEquals(1, requests.get());
+        assertEquals(0, requestsAvail.get());
     }
 
     @Test
-    public void testNoRetriesWhenNoThreadsAvailable() throws IOException {
-        request.getJDiscRequest().headers().add(Headers.DENY_IF_BUSY, "true");
-        threadsAvail.set(0);
+    public void testRetriesWhenNoRequestsAvailableButNoDenyIfBusy() throws Exception {
+        request.headers().add(Headers.DENY_IF_BUSY, "false");
+        requestsAvail.set(0);
 
-        clientFeederV3.handleRequest(request);
-        assertTrue(requests.get() == 1);
+        assertEquals(200, feed().getStatus());
+        assertEquals(NUMBER_OF_QUEUE_FULL_RESPONSES, requests.get());
     }
 
     @Test
-    public void testRetriesWhenNoThreadsAvailableButNoDenyIfBusy() throws IOException {
-        request.getJDiscRequest().headers().add(Headers.DENY_IF_BUSY, "false");
-        threadsAvail.set(0);
+    public void testDeniesRequestWhenOverloaded() throws Exception {
+        request.headers().add(Headers.DENY_IF_BUSY, "true");
+        requestsAvail.set(-10);
 
-        clientFeederV3.handleRequest(request);
-        assertTrue(requests.get() == NUMBER_OF_QUEUE_FULL_RESPONSES);
+        assertEquals(429, feed().getStatus());
+        assertEquals(0, requests.get());
+        assertEquals(-10, requestsAvail.get());
     }
 }
@@ -0,0 +1,73 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.server.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author agent
+ */
+public class GzipDecoderTestCase {
+
+    private static final String text = "Some text which is repeated. Some text which is repeated. Some text which is repeated.";
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String decode(byte[] compressed, int chunkSize) throws IOException {
+        GzipDecoder decoder = new GzipDecoder();
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        for (int offset = 0; offset < compressed.length; offset += chunkSize)
+            decoder.decode(ByteBuffer.wrap(compressed, offset, Math.min(chunkSize, compressed.length - offset)),
+                           decompressed);
+        assertThat(decoder.isFinished(), is(true));
+        decoder.close();
+        return new String(decompressed.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void requireThatDataIsDecodedInOneChunk() throws IOException {
+        byte[] compressed = gzip(text.getBytes(StandardCharsets.UTF_8));
+        assertThat(decode(compressed, compressed.length), is(text));
+    }
+
+    @Test
+    public void requireThatDataIsDecodedInChunksSplittingTheHeader() throws IOException {
+        byte[] compressed = gzip(text.getBytes(StandardCharsets.UTF_8));
+        assertThat(decode(compressed, 1), is(text));
+        assertThat(decode(compressed, 3), is(text));
+    }
+
+    @Test
+    public void requireThatOptionalHeaderFieldsAreSkipped() throws IOException {
+        byte[] compressed = gzip(text.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream withName = new ByteArrayOutputStream();
+        withName.write(compressed, 0, 3);
+        withName.write(compressed[3] | 8); // FNAME
+        withName.write(compressed, 4, 6);
+        withName.write("name".getBytes(StandardCharsets.US_ASCII));
+        withName.write(0);
+        withName.write(compressed, 10, compressed.length - 10);
+        assertThat(decode(withName.toByteArray(), 2), is(text));
+    }
+
+    @Test(expected = ZipException.class)
+    public void requireThatDataNotInGzipFormatIsRejected() throws IOException {
+        decode(text.getBytes(StandardCharsets.UTF_8), 20);
+    }
+
+}
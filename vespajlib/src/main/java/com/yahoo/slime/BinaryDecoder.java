@@ -1,12 +1,15 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.slime;
 
+import java.util.function.ToIntFunction;
+
 import static com.yahoo.slime.BinaryFormat.*;
 
 final class BinaryDecoder {
     BufferedInput in;
 
     private final SlimeInserter slimeInserter = new SlimeInserter();
+    private final CompactSlimeInserter compactSlimeInserter = new CompactSlimeInserter();
     private final ArrayInserter arrayInserter = new ArrayInserter();
     private final ObjectInserter objectInserter = new ObjectInserter();
 
@@ -18,7 +21,7 @@ final class BinaryDecoder {
     public Slime decode(byte[] bytes, int offset, int length) {
         Slime slime = new Slime();
         in = new BufferedInput(bytes, offset, length);
-        decodeSymbolTable(slime);
+        decodeSymbolTable(slime::insert);
         decodeValue(slimeInserter.adjust(slime));
         if (in.failed()) {
             slime.wrap("partial_result");
@@ -28,6 +31,19 @@ final class BinaryDecoder {
         return slime;
     }
 
+    public CompactSlime decodeCompact(byte[] bytes, int offset, int length) {
+        CompactSlime slime = new CompactSlime();
+        in = new BufferedInput(bytes, offset, length);
+        decodeSymbolTable(slime::insert);
+        decodeValue(compactSlimeInserter.adjust(slime));
+        if (in.failed()) {
+            slime.wrap("partial_result");
+            slime.get().setData("offending_input", in.getOffending());
+            slime.get().setString("error_message", in.getErrorMessage());
+        }
+        return slime;
+    }
+
     long read_cmpr_long() {
         long next = in.getByte();
         long value = (next & 0x7f);
@@ -143,7 +159,7 @@ final class BinaryDecoder {
         }
     }
 
-    void decodeSymbolTable(Slime slime) {
+    void decodeSymbolTable(ToIntFunction<String> symbols) {
         long numSymbols = read_cmpr_long();
         final byte [] backing = in.getBacking();
         for (int i = 0; i < numSymbols; ++i) {
@@ -151,7 +167,7 @@ final class BinaryDecoder {
             int sz = (int)size; // XXX
             int offset = in.getPosition();
             in.skip(sz);
-            int symbol = slime.insert(Utf8Codec.decode(backing, offset, sz));
+            int symbol = symbols.applyAsInt(Utf8Codec.decode(backing, offset, sz));
             if (symbol != i) {
                 in.fail("duplicate symbols in symbol table");
                 return;
@@ -1,6 +1,8 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.slime;
 
+import java.util.function.IntFunction;
+
 import static com.yahoo.slime.BinaryFormat.*;
 
 final class BinaryEncoder implements
@@ -18,7 +20,14 @@ ArrayTraverser, ObjectSymbolTraverser
 
     public byte[] encode(Slime slime) {
         out.reset();
-        encodeSymbolTable(slime);
+        encodeSymbolTable(slime.symbols(), slime::inspect);
+        encodeValue(slime.get());
+        return out.toArray();
+    }
+
+    public byte[] encode(CompactSlime slime) {
+        out.reset();
+        encodeSymbolTable(slime.symbols(), slime::inspect);
         encodeValue(slime.get());
         return out.toArray();
     }
@@ -122,11 +131,10 @@ ArrayTraverser, ObjectSymbolTraverser
         assert false : "Should not be reached";
     }
 
-    void encodeSymbolTable(Slime slime) {
-        int numSymbols = slime.symbols();
+    void encodeSymbolTable(int numSymbols, IntFunction<String> symbols) {
         encode_cmpr_long(numSymbols);
         for (int i = 0 ; i < numSymbols; ++i) {
-            String name = slime.inspect(i);
+            String name = symbols.apply(i);
             byte[] bytes = Utf8Codec.encode(name);
             encode_cmpr_long(bytes.length);
             out.put(bytes);
@@ -85,4 +85,40 @@ public class BinaryFormat {
         BinaryDecoder decoder = new BinaryDecoder();
         return decoder.decode(data, offset, length);
     }
+
+    /**
+     * Take a CompactSlime object and serialize it into binary format.
+     * The result is identical to that of encoding a Slime with the same content.
+     * @param slime the object which is to be serialized.
+     * @return a new byte array with just the encoded slime.
+     **/
+    public static byte[] encode(CompactSlime slime) {
+        BinaryEncoder encoder = new BinaryEncoder();
+        return encoder.encode(slime);
+    }
+
+    /**
+     * Take binary data and deserialize it into a CompactSlime object.
+     * Errors are handled as in @ref decode().
+     *
+     * @param data the data to be deserialized.
+     * @return a new CompactSlime object constructed from the data.
+     **/
+    public static CompactSlime decodeCompact(byte[] data) {
+        return decodeCompact(data, 0, data.length);
+    }
+
+    /**
+     * Take binary data and deserialize it into a CompactSlime object.
+     * Errors are handled as in @ref decode().
+     *
+     * @param data array containing the data to be deserialized.
+     * @param offset where in the array to start deserializing.
+     * @param length how many bytes the deserializer is allowed to consume.
+     * @return a new CompactSlime object constructed from the data.
+     **/
+    public static CompactSlime decodeCompact(byte[] data, int offset, int length) {
+        BinaryDecoder decoder = new BinaryDecoder();
+        return decoder.decodeCompact(data, offset, length);
+    }
 }
@@ -0,0 +1,415 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.slime;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.yahoo.slime.BinaryFormat.decode_double;
+import static com.yahoo.slime.BinaryFormat.decode_meta;
+import static com.yahoo.slime.BinaryFormat.decode_type;
+import static com.yahoo.slime.BinaryFormat.decode_zigzag;
+
+/**
+ * A read only view of a value in binary format which reads directly from the encoded bytes
+ * instead of decoding them into a Slime first.
+ * Arrays and objects are indexed on first access to their children, and leaf values are
+ * not decoded until they are read, so inspecting a few fields of a large value only
+ * costs skipping over the rest of it.
+ * <p>
+ * The bytes viewed must not be changed while views of them are in use.
+ * Views may be inspected by multiple threads.
+ *
+ * @author agent
+ */
+public final class BinaryView implements Inspector {
+
+    private final Encoded encoded;
+
+    /** The position of the type and meta byte of this value */
+    private final int position;
+
+    /** The positions of the children of this if it is an array or object, or null if not indexed yet */
+    private ChildIndex index = null;
+
+    private BinaryView(Encoded encoded, int position) {
+        this.encoded = encoded;
+        this.position = position;
+    }
+
+    /** Returns a view of the value encoded in the given bytes */
+    public static Inspector inspect(byte[] bytes) {
+        return inspect(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns a view of the value encoded in the given range of bytes
+     *
+     * @throws IllegalArgumentException if the bytes does not start with a valid symbol table
+     */
+    public static Inspector inspect(byte[] bytes, int offset, int length) {
+        Encoded encoded = new Encoded(bytes, offset, length);
+        return new BinaryView(encoded, encoded.rootPosition);
+    }
+
+    private int meta() { return decode_meta(encoded.byteAt(position)); }
+
+    @Override
+    public boolean valid() { return true; }
+
+    @Override
+    public Type type() { return decode_type(encoded.byteAt(position)); }
+
+    @Override
+    public int children() {
+        Type type = type();
+        return type == Type.ARRAY || type == Type.OBJECT ? (int)encoded.readSize(position) : 0;
+    }
+
+    @Override
+    public int entries() { return type() == Type.ARRAY ? (int)encoded.readSize(position) : 0; }
+
+    @Override
+    public int fields() { return type() == Type.OBJECT ? (int)encoded.readSize(position) : 0; }
+
+    @Override
+    public boolean asBool() { return type() == Type.BOOL && meta() != 0; }
+
+    @Override
+    public long asLong() {
+        switch (type()) {
+            case LONG: return decode_zigzag(encoded.readBytesLittleEndian(position + 1, meta()));
+            case DOUBLE: return (long)asDouble();
+            default: return 0;
+        }
+    }
+
+    @Override
+    public double asDouble() {
+        switch (type()) {
+            case DOUBLE: return decode_double(encoded.readBytesBigEndian(position + 1, meta()));
+            case LONG: return asLong();
+            default: return 0.0;
+        }
+    }
+
+    @Override
+    public String asString() {
+        if (type() != Type.STRING) return "";
+        return Utf8Codec.decode(encoded.bytes, encoded.payloadStart(position), encoded.payloadSize(position));
+    }
+
+    @Override
+    public byte[] asUtf8() {
+        return type() == Type.STRING ? payload() : new byte[0];
+    }
+
+    @Override
+    public byte[] asData() {
+        return type() == Type.DATA ? payload() : new byte[0];
+    }
+
+    private byte[] payload() {
+        int start = encoded.payloadStart(position);
+        return Arrays.copyOfRange(encoded.bytes, start, start + encoded.payloadSize(position));
+    }
+
+    @Override
+    public void accept(Visitor v) {
+        switch (type()) {
+            case NIX: v.visitNix(); break;
+            case BOOL: v.visitBool(asBool()); break;
+            case LONG: v.visitLong(asLong()); break;
+            case DOUBLE: v.visitDouble(asDouble()); break;
+            case STRING: v.visitString(asUtf8()); break;
+            case DATA: v.visitData(asData()); break;
+            case ARRAY: v.visitArray(this); break;
+            case OBJECT: v.visitObject(this); break;
+        }
+    }
+
+    @Override
+    public void traverse(ArrayTraverser at) {
+        if (type() != Type.ARRAY) return;
+        int[] positions = index().positions;
+        for (int i = 0; i < positions.length; i++)
+            at.entry(i, new BinaryView(encoded, positions[i]));
+    }
+
+    @Override
+    public void traverse(ObjectSymbolTraverser ot) {
+        if (type() != Type.OBJECT) return;
+        ChildIndex index = index();
+        for (int i = 0; i < index.positions.length; i++)
+            ot.field(index.symbols[i], new BinaryView(encoded, index.positions[i]));
+    }
+
+    @Override
+    public void traverse(ObjectTraverser ot) {
+        if (type() != Type.OBJECT) return;
+        ChildIndex index = index();
+        for (int i = 0; i < index.positions.length; i++)
+            ot.field(encoded.symbolName(index.symbols[i]), new BinaryView(encoded, index.positions[i]));
+    }
+
+    @Override
+    public Inspector entry(int idx) {
+        if (type() != Type.ARRAY) return NixValue.invalid();
+        int[] positions = index().positions;
+        if (idx < 0 || idx >= positions.length) return NixValue.invalid();
+        return new BinaryView(encoded, positions[idx]);
+    }
+
+    @Override
+    public Inspector field(int sym) {
+        if (sym < 0 || type() != Type.OBJECT) return NixValue.invalid();
+        int position = index().positionOf(sym);
+        if (position < 0) return NixValue.invalid();
+        return new BinaryView(encoded, position);
+    }
+
+    @Override
+    public Inspector field(String name) {
+        if (type() != Type.OBJECT) return NixValue.invalid();
+        return field(encoded.symbol(name));
+    }
+
+    private ChildIndex index() {
+        if (index == null)
+            index = new ChildIndex(encoded, position, type() == Type.OBJECT);
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            ByteArrayOutputStream a = new ByteArrayOutputStream();
+            new JsonFormat(true).encode(a, this);
+            byte[] utf8 = a.toByteArray();
+            return Utf8Codec.decode(utf8, 0, utf8.length);
+        } catch (Exception e) {
+            return "null";
+        }
+    }
+
+    /**
+     * The positions, and symbols if an object, of the children of an array or object.
+     * The fields of an object are also sorted by symbol, to look them up by binary search.
+     */
+    private static final class ChildIndex {
+
+        final int[] symbols;
+        final int[] positions;
+
+        private final int[] sortedSymbols;
+        private final int[] sortedPositions;
+
+        ChildIndex(Encoded encoded, int position, boolean isObject) {
+            int count = (int)encoded.readSize(position);
+            symbols = isObject ? new int[count] : null;
+            positions = new int[count];
+            int next = encoded.payloadStart(position);
+            for (int i = 0; i < count; i++) {
+                if (isObject) {
+                    symbols[i] = (int)encoded.readCompressed(next);
+                    next += encoded.compressedLength(next);
+                }
+                positions[i] = next;
+                next = encoded.skip(next);
+            }
+
+            if (isObject) {
+                long[] symbolsAndPositions = new long[count];
+                for (int i = 0; i < count; i++)
+                    symbolsAndPositions[i] = ((long)symbols[i] << 32) | (positions[i] & 0xffffffffL);
+                Arrays.sort(symbolsAndPositions);
+                sortedSymbols = new int[count];
+                sortedPositions = new int[count];
+                for (int i = 0; i < count; i++) {
+                    sortedSymbols[i] = (int)(symbolsAndPositions[i] >>> 32);
+                    sortedPositions[i] = (int)symbolsAndPositions[i];
+                }
+            }
+            else {
+                sortedSymbols = null;
+                sortedPositions = null;
+            }
+        }
+
+        /** Returns the position of the field with the given symbol, or -1 if there is none */
+        int positionOf(int symbol) {
+            int i = Arrays.binarySearch(sortedSymbols, symbol);
+            return i < 0 ? -1 : sortedPositions[i];
+        }
+
+    }
+
+    /** The encoded bytes and symbol table shared by all the views of a value */
+    private static final class Encoded {
+
+        final byte[] bytes;
+        private final int end;
+
+        private final int[] symbolOffsets;
+        private final int[] symbolLengths;
+        private final String[] symbolNames;
+
+        /** The symbols by name, or null if not created yet */
+        private volatile Map<String, Integer> symbolsByName = null;
+
+        /** The position of the root value, following the symbol table */
+        final int rootPosition;
+
+        Encoded(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.end = offset + length;
+
+            int next = offset;
+            int symbolCount = (int)readCompressed(next);
+            next += compressedLength(next);
+            symbolOffsets = new int[symbolCount];
+            symbolLengths = new int[symbolCount];
+            symbolNames = new String[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                symbolLengths[i] = (int)readCompressed(next);
+                next += compressedLength(next);
+                symbolOffsets[i] = next;
+                next += symbolLengths[i];
+            }
+            if (next >= end)
+                throw new IllegalArgumentException("Binary slime is truncated: No value after the symbol table");
+            rootPosition = next;
+        }
+
+        byte byteAt(int position) {
+            if (position >= end)
+                throw new IllegalArgumentException("Binary slime is truncated: Read at " + position +
+                                                   " but the value ends at " + end);
+            return bytes[position];
+        }
+
+        long readCompressed(int position) {
+            long value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = byteAt(position++);
+                value |= ((long)(next & 0x7f) << shift);
+                shift += 7;
+            } while ((next & 0x80) != 0);
+            return value;
+        }
+
+        int compressedLength(int position) {
+            int length = 1;
+            while ((byteAt(position++) & 0x80) != 0)
+                length++;
+            return length;
+        }
+
+        /** Returns the size of the string, data, array or object at this position */
+        long readSize(int position) {
+            int meta = decode_meta(byteAt(position));
+            return meta == 0 ? readCompressed(position + 1) : meta - 1;
+        }
+
+        /** Returns the size of the string or data at this position, after checking that it is within the viewed bytes */
+        int payloadSize(int position) {
+            int size = (int)readSize(position);
+            if (payloadStart(position) + size > end)
+                throw new IllegalArgumentException("Binary slime is truncated: Value at " + position +
+                                                   " ends after " + end);
+            return size;
+        }
+
+        /** Returns the position of the first payload byte, or child, of the string, data, array or object at this position */
+        int payloadStart(int position) {
+            int meta = decode_meta(byteAt(position));
+            return meta == 0 ? position + 1 + compressedLength(position + 1) : position + 1;
+        }
+
+        long readBytesLittleEndian(int position, int count) {
+            long value = 0;
+            int shift = 0;
+            for (int i = 0; i < count; i++) {
+                value |= ((long)(byteAt(position + i) & 0xff)) << shift;
+                shift += 8;
+            }
+            return value;
+        }
+
+        long readBytesBigEndian(int position, int count) {
+            long value = 0;
+            int shift = 56;
+            for (int i = 0; i < count; i++) {
+                value |= ((long)(byteAt(position + i) & 0xff)) << shift;
+                shift -= 8;
+            }
+            return value;
+        }
+
+        /** Returns the position following the value at this position */
+        int skip(int position) {
+            byte typeAndMeta = byteAt(position);
+            int meta = decode_meta(typeAndMeta);
+            switch (decode_type(typeAndMeta)) {
+                case NIX:
+                case BOOL:
+                    return position + 1;
+                case LONG:
+                case DOUBLE:
+                    return position + 1 + meta;
+                case STRING:
+                case DATA:
+                    return payloadStart(position) + (int)readSize(position);
+                case ARRAY: {
+                    long count = readSize(position);
+                    int next = payloadStart(position);
+                    for (long i = 0; i < count; i++)
+                        next = skip(next);
+                    return next;
+                }
+                case OBJECT: {
+                    long count = readSize(position);
+                    int next = payloadStart(position);
+                    for (long i = 0; i < count; i++) {
+                        next += compressedLength(next);
+                        next = skip(next);
+                    }
+                    return next;
+                }
+                default:
+                    throw new IllegalStateException("Unknown type " + decode_type(typeAndMeta));
+            }
+        }
+
+        /** Returns the symbol of the given name, or -1 if it is not present in this */
+        int symbol(String name) {
+            Integer symbol = symbolsByName().get(name);
+            return symbol == null ? -1 : symbol;
+        }
+
+        private Map<String, Integer> symbolsByName() {
+            Map<String, Integer> symbols = symbolsByName;
+            if (symbols == null) { // Concurrent callers may create it more than once, which is harmless
+                symbols = new HashMap<>(symbolNames.length * 2);
+                for (int i = 0; i < symbolNames.length; i++)
+                    symbols.putIfAbsent(symbolName(i), i);
+                symbolsByName = symbols;
+            }
+            return symbols;
+        }
+
+        String symbolName(int symbol) {
+            String name = symbolNames[symbol];
+            if (name == null) {
+                name = Utf8Codec.decode(bytes, symbolOffsets[symbol], symbolLengths[symbol]);
+                symbolNames[symbol] = name;
+            }
+            return name;
+        }
+
+    }
+
+}
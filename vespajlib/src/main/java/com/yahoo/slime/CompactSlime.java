@@ -0,0 +1,469 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.slime;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * A Slime which stores its values in a few primitive arrays and a byte arena
+ * instead of in one object per value. Building and inspecting this creates no
+ * long-lived objects per value, which makes it suitable for large payloads.
+ * The cursors returned are views of a position in the arrays; they are cheap
+ * to create and may be discarded freely.
+ * <p>
+ * This has the same data model and API as {@link Slime}, and is encoded and
+ * decoded to the same binary and json formats. Unlike Slime, setting a new root
+ * value discards all the values of this, so cursors obtained before setting a
+ * new root must not be used after it.
+ * <p>
+ * This is not thread safe.
+ *
+ * @author agent
+ **/
+public final class CompactSlime {
+
+    private static final int initialCapacity = 16;
+    private static final byte[] emptyBytes = new byte[0];
+
+    private final SymbolTable names = new SymbolTable();
+
+    /** The type id of each value */
+    private byte[] types = new byte[initialCapacity];
+
+    /**
+     * The content of each value: The value of longs and bools, the raw bits of doubles,
+     * the arena offset and length of strings and data, and the number of children of arrays and objects
+     */
+    private long[] values = new long[initialCapacity];
+
+    /** The symbol of the field holding each value, or -1 if it is not a field */
+    private int[] symbols = new int[initialCapacity];
+
+    /** The first and last child of each array and object, and the next sibling of each value, or -1 if none */
+    private int[] firstChild = new int[initialCapacity];
+    private int[] lastChild = new int[initialCapacity];
+    private int[] nextSibling = new int[initialCapacity];
+
+    private int used = 0;
+
+    /** The utf-8 of strings and the bytes of data values */
+    private byte[] arena = new byte[initialCapacity * 8];
+    private int arenaUsed = 0;
+
+    /**
+     * An open addressing hash from a parent value and a field symbol or entry index
+     * to the value at that position, giving constant time field and entry lookup.
+     * Keys are (parent << 32 | symbol or index), and slots where childValues is 0 are empty,
+     * as values are stored as value + 1.
+     */
+    private long[] childKeys = new long[initialCapacity * 2];
+    private int[] childValues = new int[initialCapacity * 2];
+    private int childrenUsed = 0;
+
+    private int root;
+
+    public CompactSlime() {
+        root = add(Type.NIX, 0, -1, -1);
+    }
+
+    public int symbols() { return names.symbols(); }
+
+    public String inspect(int symbol) { return names.inspect(symbol); }
+
+    public int insert(String name) { return names.insert(name); }
+
+    public int lookup(String name) { return names.lookup(name); }
+
+    public Cursor get() { return new ValueCursor(root); }
+
+    public Cursor setNix() { return setRoot(Type.NIX, 0); }
+
+    public Cursor setBool(boolean bit) { return setRoot(Type.BOOL, bit ? 1 : 0); }
+
+    public Cursor setLong(long l) { return setRoot(Type.LONG, l); }
+
+    public Cursor setDouble(double d) { return setRoot(Type.DOUBLE, Double.doubleToRawLongBits(d)); }
+
+    public Cursor setString(String str) {
+        if (str == null) return setNix();
+        return setString(Utf8Codec.encode(str));
+    }
+
+    public Cursor setString(byte[] utf8) { return setRoot(Type.STRING, utf8); }
+
+    public Cursor setData(byte[] data) { return setRoot(Type.DATA, data); }
+
+    public Cursor setArray() { return setRoot(Type.ARRAY, 0); }
+
+    public Cursor setObject() { return setRoot(Type.OBJECT, 0); }
+
+    public Cursor wrap(int sym) {
+        int wrapped = root;
+        root = add(Type.OBJECT, 0, -1, -1);
+        link(root, wrapped, sym);
+        return new ValueCursor(root);
+    }
+
+    public Cursor wrap(String name) {
+        return wrap(names.insert(name));
+    }
+
+    private Cursor setRoot(Type type, long value) {
+        clear();
+        root = add(type, value, -1, -1);
+        return new ValueCursor(root);
+    }
+
+    private Cursor setRoot(Type type, byte[] bytes) {
+        if (bytes == null) return setNix();
+        clear();
+        root = add(type, store(bytes), -1, -1);
+        return new ValueCursor(root);
+    }
+
+    /** Discards all values, but keeps the symbols and the allocated arrays */
+    private void clear() {
+        used = 0;
+        arenaUsed = 0;
+        if (childrenUsed > 0) {
+            Arrays.fill(childValues, 0);
+            childrenUsed = 0;
+        }
+    }
+
+    /** Adds a value and returns its index */
+    private int add(Type type, long value, int parent, int symbol) {
+        if (used == types.length)
+            growValues();
+        int index = used++;
+        types[index] = type.ID;
+        values[index] = value;
+        symbols[index] = -1;
+        firstChild[index] = -1;
+        lastChild[index] = -1;
+        nextSibling[index] = -1;
+        if (parent >= 0)
+            link(parent, index, symbol);
+        return index;
+    }
+
+    /** Adds the given value as the last child of parent, as a field if symbol is not -1 */
+    private void link(int parent, int child, int symbol) {
+        symbols[child] = symbol;
+        if (lastChild[parent] < 0)
+            firstChild[parent] = child;
+        else
+            nextSibling[lastChild[parent]] = child;
+        lastChild[parent] = child;
+        putChild(parent, symbol >= 0 ? symbol : (int)values[parent], child);
+        values[parent]++;
+    }
+
+    private void growValues() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        values = Arrays.copyOf(values, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+    }
+
+    /** Stores the given bytes in the arena and returns their offset and length */
+    private long store(byte[] bytes) {
+        if (arenaUsed + bytes.length > arena.length)
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaUsed + bytes.length));
+        System.arraycopy(bytes, 0, arena, arenaUsed, bytes.length);
+        long offsetAndLength = ((long)arenaUsed << 32) | bytes.length;
+        arenaUsed += bytes.length;
+        return offsetAndLength;
+    }
+
+    private static int offset(long offsetAndLength) { return (int)(offsetAndLength >>> 32); }
+
+    private static int length(long offsetAndLength) { return (int)offsetAndLength; }
+
+    private static long childKey(int parent, int symbolOrIndex) {
+        return ((long)parent << 32) | (symbolOrIndex & 0xffffffffL);
+    }
+
+    private int childSlot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int)(hash ^ (hash >>> 32)) & (childKeys.length - 1);
+    }
+
+    private void putChild(int parent, int symbolOrIndex, int child) {
+        if ((childrenUsed + 1) * 2 > childKeys.length)
+            growChildren();
+        long key = childKey(parent, symbolOrIndex);
+        int slot = childSlot(key);
+        while (childValues[slot] != 0)
+            slot = (slot + 1) & (childKeys.length - 1);
+        childKeys[slot] = key;
+        childValues[slot] = child + 1;
+        childrenUsed++;
+    }
+
+    /** Returns the child of the parent at the given field symbol or entry index, or -1 if none */
+    private int getChild(int parent, int symbolOrIndex) {
+        long key = childKey(parent, symbolOrIndex);
+        int slot = childSlot(key);
+        while (childValues[slot] != 0) {
+            if (childKeys[slot] == key)
+                return childValues[slot] - 1;
+            slot = (slot + 1) & (childKeys.length - 1);
+        }
+        return -1;
+    }
+
+    private void growChildren() {
+        long[] oldKeys = childKeys;
+        int[] oldValues = childValues;
+        childKeys = new long[oldKeys.length * 2];
+        childValues = new int[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == 0) continue;
+            int slot = childSlot(oldKeys[i]);
+            while (childValues[slot] != 0)
+                slot = (slot + 1) & (childKeys.length - 1);
+            childKeys[slot] = oldKeys[i];
+            childValues[slot] = oldValues[i];
+        }
+    }
+
+    /** A view of a single value in this */
+    private final class ValueCursor implements Cursor {
+
+        private final int index;
+
+        ValueCursor(int index) {
+            this.index = index;
+        }
+
+        private boolean is(Type type) { return types[index] == type.ID; }
+
+        private byte[] bytes() {
+            long offsetAndLength = values[index];
+            return Arrays.copyOfRange(arena, offset(offsetAndLength), offset(offsetAndLength) + length(offsetAndLength));
+        }
+
+        @Override
+        public boolean valid() { return true; }
+
+        @Override
+        public Type type() { return Type.asType(types[index]); }
+
+        @Override
+        public int children() { return is(Type.ARRAY) || is(Type.OBJECT) ? (int)values[index] : 0; }
+
+        @Override
+        public int entries() { return is(Type.ARRAY) ? (int)values[index] : 0; }
+
+        @Override
+        public int fields() { return is(Type.OBJECT) ? (int)values[index] : 0; }
+
+        @Override
+        public boolean asBool() { return is(Type.BOOL) && values[index] != 0; }
+
+        @Override
+        public long asLong() {
+            if (is(Type.LONG)) return values[index];
+            if (is(Type.DOUBLE)) return (long)Double.longBitsToDouble(values[index]);
+            return 0;
+        }
+
+        @Override
+        public double asDouble() {
+            if (is(Type.DOUBLE)) return Double.longBitsToDouble(values[index]);
+            if (is(Type.LONG)) return (double)values[index];
+            return 0.0;
+        }
+
+        @Override
+        public String asString() {
+            if ( ! is(Type.STRING)) return "";
+            return Utf8Codec.decode(arena, offset(values[index]), length(values[index]));
+        }
+
+        @Override
+        public byte[] asUtf8() { return is(Type.STRING) ? bytes() : emptyBytes; }
+
+        @Override
+        public byte[] asData() { return is(Type.DATA) ? bytes() : emptyBytes; }
+
+        @Override
+        public void accept(Visitor v) {
+            switch (type()) {
+                case NIX: v.visitNix(); break;
+                case BOOL: v.visitBool(asBool()); break;
+                case LONG: v.visitLong(asLong()); break;
+                case DOUBLE: v.visitDouble(asDouble()); break;
+                case STRING: v.visitString(asUtf8()); break;
+                case DATA: v.visitData(asData()); break;
+                case ARRAY: v.visitArray(this); break;
+                case OBJECT: v.visitObject(this); break;
+            }
+        }
+
+        @Override
+        public void traverse(ArrayTraverser at) {
+            if ( ! is(Type.ARRAY)) return;
+            int i = 0;
+            for (int child = firstChild[index]; child >= 0; child = nextSibling[child])
+                at.entry(i++, new ValueCursor(child));
+        }
+
+        @Override
+        public void traverse(ObjectSymbolTraverser ot) {
+            if ( ! is(Type.OBJECT)) return;
+            for (int child = firstChild[index]; child >= 0; child = nextSibling[child])
+                ot.field(symbols[child], new ValueCursor(child));
+        }
+
+        @Override
+        public void traverse(ObjectTraverser ot) {
+            if ( ! is(Type.OBJECT)) return;
+            for (int child = firstChild[index]; child >= 0; child = nextSibling[child])
+                ot.field(names.inspect(symbols[child]), new ValueCursor(child));
+        }
+
+        @Override
+        public Cursor entry(int idx) {
+            if ( ! is(Type.ARRAY) || idx < 0 || idx >= values[index]) return NixValue.invalid();
+            return new ValueCursor(getChild(index, idx));
+        }
+
+        @Override
+        public Cursor field(int sym) {
+            if ( ! is(Type.OBJECT) || sym < 0) return NixValue.invalid();
+            int child = getChild(index, sym);
+            return child < 0 ? NixValue.invalid() : new ValueCursor(child);
+        }
+
+        @Override
+        public Cursor field(String name) {
+            if ( ! is(Type.OBJECT)) return NixValue.invalid();
+            return field(names.lookup(name));
+        }
+
+        private Cursor addChild(Type type, long value) {
+            if ( ! is(Type.ARRAY)) return NixValue.invalid();
+            return new ValueCursor(add(type, value, index, -1));
+        }
+
+        private Cursor addBytes(Type type, byte[] bytes) {
+            if (bytes == null) return addNix();
+            if ( ! is(Type.ARRAY)) return NixValue.invalid();
+            return new ValueCursor(add(type, store(bytes), index, -1));
+        }
+
+        @Override
+        public Cursor addNix() { return addChild(Type.NIX, 0); }
+
+        @Override
+        public Cursor addBool(boolean bit) { return addChild(Type.BOOL, bit ? 1 : 0); }
+
+        @Override
+        public Cursor addLong(long l) { return addChild(Type.LONG, l); }
+
+        @Override
+        public Cursor addDouble(double d) { return addChild(Type.DOUBLE, Double.doubleToRawLongBits(d)); }
+
+        @Override
+        public Cursor addString(String str) { return addBytes(Type.STRING, str == null ? null : Utf8Codec.encode(str)); }
+
+        @Override
+        public Cursor addString(byte[] utf8) { return addBytes(Type.STRING, utf8); }
+
+        @Override
+        public Cursor addData(byte[] data) { return addBytes(Type.DATA, data); }
+
+        @Override
+        public Cursor addArray() { return addChild(Type.ARRAY, 0); }
+
+        @Override
+        public Cursor addObject() { return addChild(Type.OBJECT, 0); }
+
+        private Cursor setChild(int sym, Type type, long value) {
+            if ( ! is(Type.OBJECT) || sym < 0 || getChild(index, sym) >= 0) return NixValue.invalid();
+            return new ValueCursor(add(type, value, index, sym));
+        }
+
+        private Cursor setBytes(int sym, Type type, byte[] bytes) {
+            if (bytes == null) return setNix(sym);
+            if ( ! is(Type.OBJECT) || sym < 0 || getChild(index, sym) >= 0) return NixValue.invalid();
+            return new ValueCursor(add(type, store(bytes), index, sym));
+        }
+
+        @Override
+        public Cursor setNix(int sym) { return setChild(sym, Type.NIX, 0); }
+
+        @Override
+        public Cursor setBool(int sym, boolean bit) { return setChild(sym, Type.BOOL, bit ? 1 : 0); }
+
+        @Override
+        public Cursor setLong(int sym, long l) { return setChild(sym, Type.LONG, l); }
+
+        @Override
+        public Cursor setDouble(int sym, double d) { return setChild(sym, Type.DOUBLE, Double.doubleToRawLongBits(d)); }
+
+        @Override
+        public Cursor setString(int sym, String str) { return setBytes(sym, Type.STRING, str == null ? null : Utf8Codec.encode(str)); }
+
+        @Override
+        public Cursor setString(int sym, byte[] utf8) { return setBytes(sym, Type.STRING, utf8); }
+
+        @Override
+        public Cursor setData(int sym, byte[] data) { return setBytes(sym, Type.DATA, data); }
+
+        @Override
+        public Cursor setArray(int sym) { return setChild(sym, Type.ARRAY, 0); }
+
+        @Override
+        public Cursor setObject(int sym) { return setChild(sym, Type.OBJECT, 0); }
+
+        /** Returns the symbol to use for a new field of the given name, or -1 if this is not an object */
+        private int symbolOf(String name) { return is(Type.OBJECT) ? names.insert(name) : -1; }
+
+        @Override
+        public Cursor setNix(String name) { return setNix(symbolOf(name)); }
+
+        @Override
+        public Cursor setBool(String name, boolean bit) { return setBool(symbolOf(name), bit); }
+
+        @Override
+        public Cursor setLong(String name, long l) { return setLong(symbolOf(name), l); }
+
+        @Override
+        public Cursor setDouble(String name, double d) { return setDouble(symbolOf(name), d); }
+
+        @Override
+        public Cursor setString(String name, String str) { return setString(symbolOf(name), str); }
+
+        @Override
+        public Cursor setString(String name, byte[] utf8) { return setString(symbolOf(name), utf8); }
+
+        @Override
+        public Cursor setData(String name, byte[] data) { return setData(symbolOf(name), data); }
+
+        @Override
+        public Cursor setArray(String name) { return setArray(symbolOf(name)); }
+
+        @Override
+        public Cursor setObject(String name) { return setObject(symbolOf(name)); }
+
+        @Override
+        public String toString() {
+            try {
+                ByteArrayOutputStream a = new ByteArrayOutputStream();
+                new JsonFormat(true).encode(a, this);
+                byte[] utf8 = a.toByteArray();
+                return Utf8Codec.decode(utf8, 0, utf8.length);
+            } catch (Exception e) {
+                return "null";
+            }
+        }
+
+    }
+
+}
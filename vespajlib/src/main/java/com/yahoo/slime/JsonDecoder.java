@@ -19,6 +19,7 @@ public class JsonDecoder {
     private byte c;
 
     private final SlimeInserter slimeInserter = new SlimeInserter();
+    private final CompactSlimeInserter compactSlimeInserter = new CompactSlimeInserter();
     private final ArrayInserter arrayInserter = new ArrayInserter();
     private final JsonObjectInserter objectInserter = new JsonObjectInserter();
     private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
@@ -47,6 +48,18 @@ public class JsonDecoder {
         return slime;
     }
 
+    public CompactSlime decode(CompactSlime slime, byte[] bytes) {
+        in = new BufferedInput(bytes);
+        next();
+        decodeValue(compactSlimeInserter.adjust(slime));
+        if (in.failed()) {
+            slime.wrap("partial_result");
+            slime.get().setData("offending_input", in.getOffending());
+            slime.get().setString("error_message", in.getErrorMessage());
+        }
+        return slime;
+    }
+
     private void decodeValue(Inserter inserter) {
         skipWhiteSpace();
         switch (c) {
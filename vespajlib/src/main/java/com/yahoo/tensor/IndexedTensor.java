@@ -118,6 +118,21 @@ public class IndexedTensor implements Tensor {
         }
     }
 
+    /**
+     * Returns the value at the given index in the internal value order of this.
+     * The value index of a cell is the sum of its index in each dimension times the {@link #stride} of that
+     * dimension. This allows iterating over values without creating addresses or boxing values.
+     *
+     * @throws IndexOutOfBoundsException if the index is not between 0 and size() - 1
+     */
+    public double valueAt(int valueIndex) { return values[valueIndex]; }
+
+    /**
+     * Returns the distance in the internal value order between two cells whose index in the
+     * given dimension differ by one (and which have the same index in all other dimensions).
+     */
+    public int stride(int dimensionIndex) { return productOfDimensionsAfter(dimensionIndex, dimensionSizes); }
+
     private double get(int valueIndex) { return values[valueIndex]; }
     
     private static int toValueIndex(int[] indexes, DimensionSizes sizes) {
@@ -199,7 +214,7 @@ public class IndexedTensor implements Tensor {
          * and, agree with the type size information when specified in the type.
          * If sizes are completely specified in the type this size information is redundant.
          */
-        public static Builder of(TensorType type, DimensionSizes sizes) {
+        public static BoundBuilder of(TensorType type, DimensionSizes sizes) {
             // validate
             if (sizes.dimensions() != type.dimensions().size())
                 throw new IllegalArgumentException(sizes.dimensions() + " is the wrong number of dimensions " + 
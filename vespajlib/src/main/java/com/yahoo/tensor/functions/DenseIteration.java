@@ -0,0 +1,102 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.TensorType;
+
+import java.util.Optional;
+
+/**
+ * Iterates over all the cells of a dense space in the standard indexed tensor value order
+ * while keeping track of the corresponding value index in each of a number of dense tensors,
+ * by adding the stride each tensor has in each dimension of the space.
+ * Dimensions of the space which a tensor does not have get stride 0 in that tensor, such that the tensor
+ * is repeated along that dimension.
+ * <p>
+ * This allows joining and reducing dense tensors without creating addresses or boxing values.
+ * The iteration starts at the first cell, so next() should be called after visiting each cell.
+ *
+ * @author agent
+ */
+final class DenseIteration {
+
+    /** The sizes of the space iterated over */
+    private final DimensionSizes sizes;
+
+    /** The stride of each dimension of the space iterated over in each tensor */
+    private final int[][] strides;
+
+    /** The current index in each dimension of the space iterated over */
+    private final int[] indexes;
+
+    /** The current value index in each tensor */
+    private final int[] valueIndexes;
+
+    private final int size;
+
+    /**
+     * Creates an iteration over a space
+     *
+     * @param sizes the sizes of the space to iterate over
+     * @param strides the strides of each tensor, one entry per dimension of the space, as returned by strides()
+     */
+    DenseIteration(DimensionSizes sizes, int[] ... strides) {
+        this.sizes = sizes;
+        this.strides = strides;
+        this.indexes = new int[sizes.dimensions()];
+        this.valueIndexes = new int[strides.length];
+        this.size = sizes.totalSize();
+    }
+
+    /** Returns the number of cells in the space iterated over */
+    int size() { return size; }
+
+    /** Returns the value index of the current cell in the given tensor */
+    int valueIndex(int tensor) { return valueIndexes[tensor]; }
+
+    /** Advances to the next cell of the space. Calling this at the last cell goes back to the first. */
+    void next() {
+        for (int dimension = indexes.length - 1; dimension >= 0; dimension--) {
+            if (++indexes[dimension] < sizes.size(dimension)) {
+                for (int tensor = 0; tensor < valueIndexes.length; tensor++)
+                    valueIndexes[tensor] += strides[tensor][dimension];
+                return;
+            }
+            // carry over: rewind this dimension
+            for (int tensor = 0; tensor < valueIndexes.length; tensor++)
+                valueIndexes[tensor] -= strides[tensor][dimension] * (indexes[dimension] - 1);
+            indexes[dimension] = 0;
+        }
+    }
+
+    /** Returns the strides of the given tensor in each dimension of a space of the given type */
+    static int[] strides(IndexedTensor tensor, TensorType spaceType) {
+        int[] strides = new int[spaceType.dimensions().size()];
+        for (int i = 0; i < strides.length; i++) {
+            Optional<Integer> index = tensor.type().indexOfDimension(spaceType.dimensions().get(i).name());
+            if (index.isPresent())
+                strides[i] = tensor.stride(index.get());
+        }
+        return strides;
+    }
+
+    /**
+     * Returns the strides a tensor of the given type and sizes will have in each dimension
+     * of a space of the given type
+     */
+    static int[] strides(TensorType type, DimensionSizes sizes, TensorType spaceType) {
+        int[] strides = new int[spaceType.dimensions().size()];
+        for (int i = 0; i < strides.length; i++) {
+            Optional<Integer> index = type.indexOfDimension(spaceType.dimensions().get(i).name());
+            if ( ! index.isPresent()) continue;
+
+            int stride = 1;
+            for (int j = index.get() + 1; j < sizes.dimensions(); j++)
+                stride *= sizes.size(j);
+            strides[i] = stride;
+        }
+        return strides;
+    }
+
+}
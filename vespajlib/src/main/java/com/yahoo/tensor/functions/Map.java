@@ -3,6 +3,7 @@ package com.yahoo.tensor.functions;
 
 import com.google.common.annotations.Beta;
 import com.google.common.collect.ImmutableMap;
+import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.MappedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
@@ -53,6 +54,9 @@ public class Map extends PrimitiveTensorFunction {
     @Override
     public Tensor evaluate(EvaluationContext context) {
         Tensor argument = argument().evaluate(context);
+        if (argument instanceof IndexedTensor)
+            return mapIndexed((IndexedTensor)argument);
+
         Tensor.Builder builder = Tensor.Builder.of(argument.type());
         for (Iterator<Tensor.Cell> i = argument.cellIterator(); i.hasNext(); ) {
             java.util.Map.Entry<TensorAddress, Double> cell = i.next();
@@ -61,6 +65,14 @@ public class Map extends PrimitiveTensorFunction {
         return builder.build();
     }
 
+    /** Maps a dense tensor in value order, without creating addresses or boxing values */
+    private Tensor mapIndexed(IndexedTensor argument) {
+        IndexedTensor.BoundBuilder builder = IndexedTensor.Builder.of(argument.type(), argument.dimensionSizes());
+        for (int i = 0; i < argument.size(); i++)
+            builder.cellByDirectIndex(i, mapper.applyAsDouble(argument.valueAt(i)));
+        return builder.build();
+    }
+
     @Override
     public String toString(ToStringContext context) {
         return "map(" + argument.toString(context) + ", " + mapper + ")";
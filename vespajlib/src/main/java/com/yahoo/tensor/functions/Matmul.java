@@ -7,6 +7,10 @@ import com.google.common.collect.ImmutableList;
 import java.util.List;
 
 /**
+ * The <i>matmul</i> tensor function produces the sum of the products of the argument tensors over a dimension.
+ * This is evaluated as a reduce by sum of a join by multiplication, which is computed in a single pass
+ * without creating the joined tensor when both arguments are dense.
+ *
  * @author bratseth
  */
 @Beta
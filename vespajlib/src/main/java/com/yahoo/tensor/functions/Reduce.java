@@ -3,6 +3,7 @@ package com.yahoo.tensor.functions;
 
 import com.google.common.annotations.Beta;
 import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
@@ -92,25 +93,31 @@ public class Reduce extends PrimitiveTensorFunction {
 
     @Override
     public Tensor evaluate(EvaluationContext context) {
-        Tensor argument = this.argument.evaluate(context);
-        if ( ! dimensions.isEmpty() && ! argument.type().dimensionNames().containsAll(dimensions))
-            throw new IllegalArgumentException("Cannot reduce " + argument + " over dimensions " + 
-                                               dimensions + ": Not all those dimensions are present in this tensor");
+        if (isSumOfProducts()) {
+            Join join = (Join)this.argument;
+            Tensor a = join.argumentA().evaluate(context);
+            Tensor b = join.argumentB().evaluate(context);
+            if (a instanceof IndexedTensor && b instanceof IndexedTensor && a.size() > 0 && b.size() > 0)
+                return sumOfIndexedProducts((IndexedTensor)a, (IndexedTensor)b);
+            return reduce(new Join(new ConstantTensor(a), new ConstantTensor(b), join.combinator()).evaluate(context));
+        }
+        return reduce(this.argument.evaluate(context));
+    }
+
+    private Tensor reduce(Tensor argument) {
+        verifyDimensionsArePresentIn(argument.type());
 
         // Special case: Reduce all
         if (dimensions.isEmpty() || dimensions.size() == argument.type().dimensions().size())
-            if (argument.type().dimensions().size() == 1 && argument instanceof IndexedTensor)
-                return reduceIndexedVector((IndexedTensor)argument);
+            if (argument instanceof IndexedTensor)
+                return reduceAllIndexed((IndexedTensor)argument);
             else
                 return reduceAllGeneral(argument);
         
-        // Reduce type
-        TensorType.Builder builder = new TensorType.Builder();
-        for (TensorType.Dimension dimension : argument.type().dimensions())
-            if ( ! dimensions.contains(dimension.name())) // keep
-                builder.dimension(dimension);
-        TensorType reducedType = builder.build();
-        
+        TensorType reducedType = reducedType(argument.type());
+        if (argument instanceof IndexedTensor && argument.size() > 0)
+            return reduceIndexed((IndexedTensor)argument, reducedType);
+
         // Reduce cells
         Map<TensorAddress, ValueAggregator> aggregatingCells = new HashMap<>();
         for (Iterator<Tensor.Cell> i = argument.cellIterator(); i.hasNext(); ) {
@@ -125,7 +132,85 @@ public class Reduce extends PrimitiveTensorFunction {
         
         return reducedBuilder.build();
     }
-    
+
+    private void verifyDimensionsArePresentIn(TensorType type) {
+        if ( ! dimensions.isEmpty() && ! type.dimensionNames().containsAll(dimensions))
+            throw new IllegalArgumentException("Cannot reduce " + type + " over dimensions " +
+                                               dimensions + ": Not all those dimensions are present in this tensor");
+    }
+
+    /** Returns the given type with the dimensions reduced by this removed */
+    private TensorType reducedType(TensorType argumentType) {
+        TensorType.Builder builder = new TensorType.Builder();
+        if (dimensions.isEmpty()) return builder.build(); // reduce all
+        for (TensorType.Dimension dimension : argumentType.dimensions())
+            if ( ! dimensions.contains(dimension.name())) // keep
+                builder.dimension(dimension);
+        return builder.build();
+    }
+
+    /** Returns whether this is a reduce by sum of a join by multiplication, the primitive form of matmul */
+    private boolean isSumOfProducts() {
+        return aggregator == Aggregator.sum &&
+               argument instanceof Join &&
+               ((Join)argument).combinator() instanceof ScalarFunctions.Multiplication;
+    }
+
+    /**
+     * Computes the reduced sum of the product of two dense tensors in a single pass over the joined space,
+     * without creating the joined tensor.
+     */
+    private Tensor sumOfIndexedProducts(IndexedTensor a, IndexedTensor b) {
+        TensorType joinedType = new TensorType.Builder(a.type(), b.type()).build();
+        verifyDimensionsArePresentIn(joinedType);
+        TensorType reducedType = reducedType(joinedType);
+        DimensionSizes joinedSizes = Join.joinedSize(joinedType, a, b);
+        DimensionSizes reducedSizes = sizesOf(reducedType, joinedType, joinedSizes);
+
+        double[] sums = new double[reducedSizes.totalSize()];
+        DenseIteration iteration = new DenseIteration(joinedSizes,
+                                                      DenseIteration.strides(a, joinedType),
+                                                      DenseIteration.strides(b, joinedType),
+                                                      DenseIteration.strides(reducedType, reducedSizes, joinedType));
+        for (int i = 0; i < iteration.size(); i++) {
+            sums[iteration.valueIndex(2)] += a.valueAt(iteration.valueIndex(0)) * b.valueAt(iteration.valueIndex(1));
+            iteration.next();
+        }
+
+        IndexedTensor.BoundBuilder builder = IndexedTensor.Builder.of(reducedType, reducedSizes);
+        for (int i = 0; i < sums.length; i++)
+            builder.cellByDirectIndex(i, sums[i]);
+        return builder.build();
+    }
+
+    /** Reduces a dense tensor by iterating over its values in order, keeping track of the reduced cell by strides */
+    private Tensor reduceIndexed(IndexedTensor argument, TensorType reducedType) {
+        DimensionSizes reducedSizes = sizesOf(reducedType, argument.type(), argument.dimensionSizes());
+        ValueAggregator[] aggregators = new ValueAggregator[reducedSizes.totalSize()];
+        for (int i = 0; i < aggregators.length; i++)
+            aggregators[i] = ValueAggregator.ofType(aggregator);
+
+        DenseIteration iteration = new DenseIteration(argument.dimensionSizes(),
+                                                      DenseIteration.strides(reducedType, reducedSizes, argument.type()));
+        for (int i = 0; i < argument.size(); i++) {
+            aggregators[iteration.valueIndex(0)].aggregate(argument.valueAt(i));
+            iteration.next();
+        }
+
+        IndexedTensor.BoundBuilder builder = IndexedTensor.Builder.of(reducedType, reducedSizes);
+        for (int i = 0; i < aggregators.length; i++)
+            builder.cellByDirectIndex(i, aggregators[i].aggregatedValue());
+        return builder.build();
+    }
+
+    /** Returns the sizes of the dimensions of the given type, taken from a supertype */
+    private DimensionSizes sizesOf(TensorType type, TensorType supertype, DimensionSizes supertypeSizes) {
+        DimensionSizes.Builder builder = new DimensionSizes.Builder(type.dimensions().size());
+        for (int i = 0; i < type.dimensions().size(); i++)
+            builder.set(i, supertypeSizes.size(supertype.indexOfDimension(type.dimensions().get(i).name()).get()));
+        return builder.build();
+    }
+
     private TensorAddress reduceDimensions(TensorAddress address, TensorType argumentType, TensorType reducedType) {
         Set<Integer> indexesToRemove = new HashSet<>();
         for (String dimensionToRemove : this.dimensions)
@@ -146,10 +231,10 @@ public class Reduce extends PrimitiveTensorFunction {
         return Tensor.Builder.of(TensorType.empty).cell((valueAggregator.aggregatedValue())).build();
     }
 
-    private Tensor reduceIndexedVector(IndexedTensor argument) {
+    private Tensor reduceAllIndexed(IndexedTensor argument) {
         ValueAggregator valueAggregator = ValueAggregator.ofType(aggregator);
-        for (int i = 0; i < argument.dimensionSizes().size(0); i++)
-            valueAggregator.aggregate(argument.get(i));
+        for (int i = 0; i < argument.size(); i++)
+            valueAggregator.aggregate(argument.valueAt(i));
         return Tensor.Builder.of(TensorType.empty).cell((valueAggregator.aggregatedValue())).build();
     }
 
@@ -0,0 +1,149 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.slime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ */
+public class BinaryViewTestCase {
+
+    @Test
+    public void testViewOfLeafValues() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setNix("nix");
+        root.setBool("bool", true);
+        root.setLong("long", -123456789012L);
+        root.setLong("small", 3);
+        root.setDouble("double", 2.5);
+        root.setString("string", "value æøå");
+        root.setString("empty", "");
+        root.setData("data", new byte[] { 1, 2, 3 });
+        Inspector view = BinaryView.inspect(BinaryFormat.encode(slime));
+
+        assertEquals(Type.OBJECT, view.type());
+        assertEquals(8, view.fields());
+        assertEquals(8, view.children());
+        assertEquals(0, view.entries());
+        assertEquals(Type.NIX, view.field("nix").type());
+        assertTrue(view.field("nix").valid());
+        assertTrue(view.field("bool").asBool());
+        assertEquals(-123456789012L, view.field("long").asLong());
+        assertEquals(3, view.field("small").asLong());
+        assertEquals(3.0, view.field("small").asDouble(), 0);
+        assertEquals(2.5, view.field("double").asDouble(), 0);
+        assertEquals(2, view.field("double").asLong());
+        assertEquals("value æøå", view.field("string").asString());
+        assertArrayEquals(Utf8Codec.encode("value æøå"), view.field("string").asUtf8());
+        assertEquals("", view.field("empty").asString());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, view.field("data").asData());
+        assertEquals(0, view.field("string").asLong());
+        assertEquals("", view.field("long").asString());
+
+        assertFalse(view.field("nonexisting").valid());
+        assertFalse(view.field(99).valid());
+        assertFalse(view.entry(0).valid());
+    }
+
+    @Test
+    public void testViewOfNestedValues() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        Cursor array = root.setArray("array");
+        for (int i = 0; i < 40; i++) // more than fits in the meta bits
+            array.addLong(i);
+        Cursor nested = root.setObject("nested");
+        nested.setString("a", "A");
+        nested.setArray("empty");
+        nested.setObject("inner").setDouble("x", 1.5);
+        root.setString("last", "after nested values");
+        Inspector view = BinaryView.inspect(BinaryFormat.encode(slime));
+
+        assertEquals(40, view.field("array").entries());
+        assertEquals(39, view.field("array").entry(39).asLong());
+        assertFalse(view.field("array").entry(40).valid());
+        assertEquals("A", view.field("nested").field("a").asString());
+        assertEquals(0, view.field("nested").field("empty").entries());
+        assertEquals(1.5, view.field("nested").field("inner").field("x").asDouble(), 0);
+        assertEquals("after nested values", view.field("last").asString());
+
+        List<String> names = new ArrayList<>();
+        view.field("nested").traverse((ObjectTraverser)(name, value) -> names.add(name));
+        assertEquals("[a, empty, inner]", names.toString());
+
+        long[] sum = new long[1];
+        view.field("array").traverse((ArrayTraverser)(index, value) -> sum[0] += value.asLong());
+        assertEquals(780, sum[0]);
+    }
+
+    @Test
+    public void testFieldLookupInLargeObjects() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        Cursor nested = root.setObject("nested");
+        for (int i = 99; i >= 0; i--) { // fields in the opposite order of their symbols in nested
+            root.setLong("field" + i, i);
+            nested.setLong("field" + (99 - i), i);
+        }
+        Inspector view = BinaryView.inspect(BinaryFormat.encode(slime));
+
+        assertEquals(101, view.fields());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, view.field("field" + i).asLong());
+            assertEquals(99 - i, view.field("nested").field("field" + i).asLong());
+            assertEquals(i, view.field(slime.lookup("field" + i)).asLong());
+        }
+        assertFalse(view.field("field100").valid());
+        assertFalse(view.field("nested").field("nested").valid());
+    }
+
+    @Test
+    public void testViewRendersAsDecodedSlime() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setString("title", "foo");
+        root.setLong("count", 7);
+        Cursor array = root.setArray("tags");
+        array.addString("a");
+        array.addString("b");
+        byte[] encoded = BinaryFormat.encode(slime);
+
+        assertEquals(BinaryFormat.decode(encoded).get().toString(), BinaryView.inspect(encoded).toString());
+    }
+
+    @Test
+    public void testViewOfRange() {
+        Slime slime = new Slime();
+        slime.setObject().setString("field", "value");
+        byte[] encoded = BinaryFormat.encode(slime);
+        byte[] padded = new byte[encoded.length + 10];
+        System.arraycopy(encoded, 0, padded, 5, encoded.length);
+
+        assertEquals("value", BinaryView.inspect(padded, 5, encoded.length).field("field").asString());
+    }
+
+    @Test
+    public void testTruncatedInput() {
+        Slime slime = new Slime();
+        slime.setObject().setString("field", "value");
+        byte[] encoded = BinaryFormat.encode(slime);
+        Inspector view = BinaryView.inspect(encoded, 0, encoded.length - 2);
+        try {
+            view.field("field").asString();
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
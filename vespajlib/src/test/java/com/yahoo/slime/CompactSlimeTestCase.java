@@ -0,0 +1,153 @@
+// Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.slime;
+
+import com.yahoo.text.Utf8;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ */
+public class CompactSlimeTestCase {
+
+    @Test
+    public void testLeafValues() {
+        CompactSlime slime = new CompactSlime();
+        assertEquals(Type.NIX, slime.get().type());
+        assertTrue(slime.get().valid());
+
+        Cursor root = slime.setObject();
+        root.setNix("nix");
+        root.setBool("bool", true);
+        root.setLong("long", -123456789012L);
+        root.setDouble("double", 2.5);
+        root.setString("string", "value æøå");
+        root.setString("utf8", Utf8.toBytes("bytes"));
+        root.setData("data", new byte[] { 1, 2, 3 });
+
+        Inspector inspector = slime.get();
+        assertEquals(7, inspector.fields());
+        assertEquals(Type.NIX, inspector.field("nix").type());
+        assertTrue(inspector.field("bool").asBool());
+        assertEquals(-123456789012L, inspector.field("long").asLong());
+        assertEquals(-123456789012.0, inspector.field("long").asDouble(), 0);
+        assertEquals(2.5, inspector.field("double").asDouble(), 0);
+        assertEquals(2, inspector.field("double").asLong());
+        assertEquals("value æøå", inspector.field("string").asString());
+        assertEquals("bytes", inspector.field("utf8").asString());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, inspector.field("data").asData());
+        assertEquals("", inspector.field("long").asString());
+        assertFalse(inspector.field("nonexisting").valid());
+        assertFalse(inspector.entry(0).valid());
+    }
+
+    @Test
+    public void testContainers() {
+        CompactSlime slime = new CompactSlime();
+        Cursor root = slime.setObject();
+        Cursor array = root.setArray("array");
+        Cursor nested = root.setObject("nested");
+        for (int i = 0; i < 1000; i++) { // interleave additions to different containers
+            array.addLong(i);
+            nested.setLong("field" + i, i);
+        }
+        array.addObject().setString("last", "entry");
+
+        assertEquals(1001, root.field("array").entries());
+        assertEquals(1001, root.field("array").children());
+        assertEquals(500, root.field("array").entry(500).asLong());
+        assertEquals("entry", root.field("array").entry(1000).field("last").asString());
+        assertFalse(root.field("array").entry(1001).valid());
+        assertFalse(root.field("array").entry(-1).valid());
+        assertEquals(1000, root.field("nested").fields());
+        assertEquals(999, root.field("nested").field("field999").asLong());
+
+        List<String> names = new ArrayList<>();
+        root.field("nested").traverse((ObjectTraverser)(name, value) -> names.add(name));
+        assertEquals(1000, names.size());
+        assertEquals("field0", names.get(0));
+        assertEquals("field999", names.get(999));
+
+        long[] sum = new long[1];
+        root.field("array").traverse((ArrayTraverser)(index, value) -> sum[0] += value.asLong());
+        assertEquals(499500, sum[0]);
+    }
+
+    @Test
+    public void testInvalidOperations() {
+        CompactSlime slime = new CompactSlime();
+        Cursor root = slime.setObject();
+        assertTrue(root.setLong("a", 1).valid());
+        assertFalse("Fields can only be set once", root.setLong("a", 2).valid());
+        assertEquals(1, root.field("a").asLong());
+        assertFalse("Objects have no entries", root.addLong(3).valid());
+        assertFalse("Leaves have no fields", root.field("a").setLong("b", 4).valid());
+        assertFalse(root.setArray("array").setLong("c", 5).valid());
+        assertEquals(SymbolTable.INVALID, slime.lookup("c"));
+    }
+
+    @Test
+    public void testSettingRootDiscardsValues() {
+        CompactSlime slime = new CompactSlime();
+        slime.setObject().setString("foo", "bar");
+        slime.setArray().addString("baz");
+        assertEquals(Type.ARRAY, slime.get().type());
+        assertEquals(1, slime.get().entries());
+        assertEquals("baz", slime.get().entry(0).asString());
+        assertEquals(1, slime.symbols());
+    }
+
+    @Test
+    public void testWrap() {
+        CompactSlime slime = new CompactSlime();
+        slime.setLong(42);
+        slime.wrap("wrapped");
+        assertEquals(Type.OBJECT, slime.get().type());
+        assertEquals(42, slime.get().field("wrapped").asLong());
+    }
+
+    @Test
+    public void testBinaryFormatIsCompatibleWithSlime() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setString("title", "foo");
+        root.setLong("count", 7);
+        root.setDouble("score", 0.5);
+        root.setBool("flag", true);
+        root.setData("data", new byte[] { 4, 5 });
+        Cursor array = root.setArray("tags");
+        for (int i = 0; i < 40; i++)
+            array.addString("tag" + i);
+        root.setObject("nested").setNix("nothing");
+
+        byte[] encoded = BinaryFormat.encode(slime);
+        CompactSlime compact = BinaryFormat.decodeCompact(encoded);
+        assertEquals(slime.get().toString(), compact.get().toString());
+        assertArrayEquals(encoded, BinaryFormat.encode(compact));
+        assertEquals(slime.get().toString(), BinaryFormat.decode(BinaryFormat.encode(compact)).get().toString());
+    }
+
+    @Test
+    public void testDecodingInvalidBinaryFormat() {
+        CompactSlime compact = BinaryFormat.decodeCompact(new byte[] { 0, 0x47 });
+        assertTrue(compact.get().field("error_message").valid());
+        assertTrue(compact.get().field("partial_result").valid());
+    }
+
+    @Test
+    public void testJsonFormat() {
+        String json = "{\"a\":[1,2.5,\"three\",true,null],\"b\":{\"c\":\"d\"}}";
+        CompactSlime compact = new JsonDecoder().decode(new CompactSlime(), Utf8.toBytes(json));
+        Slime slime = new JsonDecoder().decode(new Slime(), Utf8.toBytes(json));
+        assertEquals(slime.get().toString(), compact.get().toString());
+        assertEquals("three", compact.get().field("a").entry(2).asString());
+    }
+
+}
@@ -45,5 +45,18 @@ public class JoinTestCase {
                      Tensor.from("tensor(x[],y[]):{ {x:0,y:0}:6, {x:1,y:0}:8, {x:0,y:1}:20, {x:1,y:1}:24 }")
                              .divide(Tensor.from("tensor(y[],z[]):{ {y:0,z:0}:2, {y:1,z:0}:4, {y:2,z:0}:6 }")));
     }
+
+    /** Test the fused dense join and reduce used to evaluate matmul */
+    @Test
+    public void testIndexedSumOfProducts() {
+        Tensor matrix = Tensor.from("tensor(x[],y[]):{ {x:0,y:0}:1, {x:0,y:1}:2, {x:0,y:2}:3, {x:1,y:0}:4, {x:1,y:1}:5, {x:1,y:2}:6 }");
+        Tensor vector = Tensor.from("tensor(y[]):{ {y:0}:1, {y:1}:10, {y:2}:100 }");
+        assertEquals(Tensor.from("tensor(x[]):{ {x:0}:321, {x:1}:654 }"), matrix.matmul(vector, "y"));
+        assertEquals(Tensor.from("tensor():{975}"),
+                     new Reduce(new Join(new ConstantTensor(matrix), new ConstantTensor(vector), ScalarFunctions.multiply()),
+                                Reduce.Aggregator.sum).evaluate());
+        assertEquals(Tensor.from("tensor(y[]):{ {y:0}:5, {y:1}:7, {y:2}:9 }"),
+                     new Reduce(new ConstantTensor(matrix), Reduce.Aggregator.sum, "x").evaluate());
+    }
     
 }